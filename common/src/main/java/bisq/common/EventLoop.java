@@ -0,0 +1,180 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single threaded executor for the user thread of headless apps. Tasks are executed one after another in the order
+ * they got submitted.
+ * <p>
+ * Tasks submitted with executeWithBackPressure are limited to capacity tasks in the queue. If that limit is reached
+ * the submitting thread blocks until the loop has caught up, so a flood of network messages slows down reading from
+ * the sockets instead of filling up the memory. That is only meant for the threads reading from the connections.
+ * Tasks submitted with execute never block, as other threads (e.g. workers posting their results) might be waited
+ * for by a task of the loop, which would be a deadlock. Tasks submitted from the loop thread itself never block
+ * either. A capacity of 0 means unbounded.
+ * <p>
+ * Unlike a ThreadPoolExecutor the loop survives exceptions of tasks. We pass them to the default uncaught exception
+ * handler which is set up in CommonSetup.
+ */
+@Slf4j
+public class EventLoop implements Executor {
+    public static final int DEFAULT_CAPACITY = 10_000;
+
+    private final BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+    private final int capacity;
+    private final Semaphore permits;
+    private final Thread thread;
+    private volatile boolean stopped;
+
+    private final AtomicInteger maxQueueSize = new AtomicInteger();
+    private final LongAdder numExecutedTasks = new LongAdder();
+    private final LongAdder numBlockedSubmissions = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public EventLoop(String name, int capacity) {
+        this.capacity = capacity;
+        permits = capacity > 0 ? new Semaphore(capacity) : null;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void execute(Runnable command) {
+        if (stopped) {
+            log.warn("We got a task submitted after the event loop {} has been stopped. We ignore it.", thread.getName());
+            return;
+        }
+
+        queue.add(command);
+        updateMaxQueueSize();
+    }
+
+    // Blocks if capacity tasks submitted by that method are in the queue already
+    public void executeWithBackPressure(Runnable command) {
+        if (stopped) {
+            log.warn("We got a task submitted after the event loop {} has been stopped. We ignore it.", thread.getName());
+            return;
+        }
+
+        if (permits == null || Thread.currentThread() == thread) {
+            queue.add(command);
+        } else {
+            if (!permits.tryAcquire()) {
+                long ts = System.nanoTime();
+                permits.acquireUninterruptibly();
+                numBlockedSubmissions.increment();
+                blockedNanos.add(System.nanoTime() - ts);
+            }
+            queue.add(() -> {
+                permits.release();
+                command.run();
+            });
+        }
+        updateMaxQueueSize();
+    }
+
+    public void shutDown() {
+        stopped = true;
+        thread.interrupt();
+        // Unblock threads which wait for a free slot
+        if (permits != null)
+            permits.release(capacity);
+    }
+
+    public boolean isEventLoopThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize.get();
+    }
+
+    public long getNumExecutedTasks() {
+        return numExecutedTasks.sum();
+    }
+
+    // Number of submissions which had to wait because the queue was full
+    public long getNumBlockedSubmissions() {
+        return numBlockedSubmissions.sum();
+    }
+
+    public long getBlockedMillis() {
+        return blockedNanos.sum() / 1_000_000;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void updateMaxQueueSize() {
+        int queueSize = queue.size();
+        if (queueSize > maxQueueSize.get())
+            maxQueueSize.accumulateAndGet(queueSize, Math::max);
+    }
+
+    private void run() {
+        while (!stopped) {
+            Runnable task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            try {
+                task.run();
+            } catch (Throwable t) {
+                Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+                if (handler != null)
+                    handler.uncaughtException(thread, t);
+                else
+                    log.error("Exception at task of event loop " + thread.getName(), t);
+            }
+            numExecutedTasks.increment();
+        }
+    }
+}
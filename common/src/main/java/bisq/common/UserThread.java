@@ -24,44 +24,52 @@ import java.time.Duration;
 import java.util.Random;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
-
-import java.lang.reflect.InvocationTargetException;
+import java.util.function.Supplier;
 
 import lombok.Getter;
 import lombok.Setter;
-import lombok.extern.slf4j.Slf4j;
 
 
 /**
  * Defines which thread is used as user thread. The user thread is the the main thread in the single threaded context.
  * For JavaFX it is usually the Platform::RunLater executor, for a headless application it is any single threaded
  * executor.
- * Additionally sets a timer class so JavaFX and headless applications can set different timers (UITimer for JavaFX
+ * Headless applications use an EventLoop.
+ * Additionally sets a timer factory so JavaFX and headless applications can set different timers (UITimer for JavaFX
  * otherwise we use the default FrameRateTimer).
  * <p>
  * Provides also methods for delayed and periodic executions.
  */
-@Slf4j
 public class UserThread {
-    private static Class<? extends Timer> timerClass;
+    private static Supplier<Timer> timerFactory;
     @Getter
     @Setter
     private static Executor executor;
 
-    public static void setTimerClass(Class<? extends Timer> timerClass) {
-        UserThread.timerClass = timerClass;
+    public static void setTimerFactory(Supplier<Timer> timerFactory) {
+        UserThread.timerFactory = timerFactory;
     }
 
     static {
         // If not defined we use same thread as caller thread
         executor = MoreExecutors.directExecutor();
-        timerClass = FrameRateTimer.class;
+        timerFactory = FrameRateTimer::new;
     }
 
     public static void execute(Runnable command) {
         UserThread.executor.execute(command);
     }
 
+    // Used by the threads reading from the network connections. If the user thread is an EventLoop with a full queue
+    // the caller blocks until the user thread has caught up. Other threads must use execute.
+    public static void executeWithBackPressure(Runnable command) {
+        Executor executor = UserThread.executor;
+        if (executor instanceof EventLoop)
+            ((EventLoop) executor).executeWithBackPressure(command);
+        else
+            executor.execute(command);
+    }
+
     // Prefer FxTimer if a delay is needed in a JavaFx class (gui module)
     public static Timer runAfterRandomDelay(Runnable runnable, long minDelayInSec, long maxDelayInSec) {
         return UserThread.runAfterRandomDelay(runnable, minDelayInSec, maxDelayInSec, TimeUnit.SECONDS);
@@ -89,12 +97,6 @@ public class UserThread {
     }
 
     private static Timer getTimer() {
-        try {
-            return timerClass.getDeclaredConstructor().newInstance();
-        } catch (InstantiationException | NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
-            String message = "Could not instantiate timer bsTimerClass=" + timerClass;
-            log.error(message, e);
-            throw new RuntimeException(message);
-        }
+        return timerFactory.get();
     }
 }
@@ -39,5 +39,8 @@ public enum Capability {
     BUNDLE_OF_ENVELOPES,                // Supports bundling of messages if many messages are sent in short interval
 
     SIGNED_ACCOUNT_AGE_WITNESS,         // Supports the signed account age witness feature
-    MEDIATION                           // Supports mediation feature
+    MEDIATION,                          // Supports mediation feature
+    KEY_SET_SUMMARY,                    // Supports a summary of the append-only data keys at GetDataRequests instead of all keys
+    DAO_STATE_HASH_V2,                  // Supports the incrementally created DAO state hash
+    CHUNKED_GET_DATA_RESPONSE           // Supports GetDataResponses sent in chunks which are requested one by one
 }
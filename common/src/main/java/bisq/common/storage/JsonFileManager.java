@@ -23,6 +23,7 @@ import bisq.common.util.Utilities;
 import java.nio.file.Paths;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 
 import java.util.concurrent.ThreadPoolExecutor;
@@ -63,38 +64,46 @@ public class JsonFileManager {
 
     public void writeToDisc(String json, String fileName) {
         executor.execute(() -> {
-            File jsonFile = new File(Paths.get(dir.getAbsolutePath(), fileName + ".json").toString());
-            File tempFile = null;
-            PrintWriter printWriter = null;
             try {
-                tempFile = File.createTempFile("temp", null, dir);
-                if (!executor.isShutdown() && !executor.isTerminated() && !executor.isTerminating())
-                    tempFile.deleteOnExit();
-
-                printWriter = new PrintWriter(tempFile);
-                printWriter.println(json);
-
-                // This close call and comment is borrowed from FileManager. Not 100% sure it that is really needed but
-                // seems that had fixed in the past and we got reported issues on Windows so that fix might be still
-                // required.
-                // Close resources before replacing file with temp file because otherwise it causes problems on windows
-                // when rename temp file
-                printWriter.close();
-
-                FileUtil.renameFile(tempFile, jsonFile);
+                writeToDiscSync(json, fileName);
             } catch (Throwable t) {
-                log.error("storageFile " + jsonFile.toString());
+                log.error("storageFile " + fileName);
                 t.printStackTrace();
-            } finally {
-                if (tempFile != null && tempFile.exists()) {
-                    log.warn("Temp file still exists after failed save. We will delete it now. storageFile=" + fileName);
-                    if (!tempFile.delete())
-                        log.error("Cannot delete temp file.");
-                }
-
-                if (printWriter != null)
-                    printWriter.close();
             }
         });
     }
+
+    // Writes the file in the calling thread and throws if it failed. Used if the caller needs to know when the file
+    // has been written.
+    public void writeToDiscSync(String json, String fileName) throws IOException {
+        File jsonFile = new File(Paths.get(dir.getAbsolutePath(), fileName + ".json").toString());
+        File tempFile = null;
+        PrintWriter printWriter = null;
+        try {
+            tempFile = File.createTempFile("temp", null, dir);
+            if (!executor.isShutdown() && !executor.isTerminated() && !executor.isTerminating())
+                tempFile.deleteOnExit();
+
+            printWriter = new PrintWriter(tempFile);
+            printWriter.println(json);
+
+            // This close call and comment is borrowed from FileManager. Not 100% sure it that is really needed but
+            // seems that had fixed in the past and we got reported issues on Windows so that fix might be still
+            // required.
+            // Close resources before replacing file with temp file because otherwise it causes problems on windows
+            // when rename temp file
+            printWriter.close();
+
+            FileUtil.renameFile(tempFile, jsonFile);
+        } finally {
+            if (tempFile != null && tempFile.exists()) {
+                log.warn("Temp file still exists after failed save. We will delete it now. storageFile=" + fileName);
+                if (!tempFile.delete())
+                    log.error("Cannot delete temp file.");
+            }
+
+            if (printWriter != null)
+                printWriter.close();
+        }
+    }
 }
@@ -0,0 +1,260 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.storage;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Append-only log of binary records which is split into segment files of limited size.
+ * <p>
+ * Each record is written as its length, the CRC32 checksum of the data and the data, so appending a record costs one
+ * small sequential write. At reading we verify the checksum of each record. A record which was not completely written
+ * because the application crashed (torn tail) or which is corrupted is cut off together with all records following it
+ * in that segment, so new records are appended after the last valid one.
+ * <p>
+ * With compact the whole content gets written to new segments before the old ones get deleted. If that gets
+ * interrupted we end up with duplicated records, which the caller needs to tolerate (and can remove with another
+ * compaction).
+ * <p>
+ * The class is not designed for concurrent use from several instances with the same directory.
+ */
+@Slf4j
+public class SegmentedLog {
+    private static final String SEGMENT_FILE_POSTFIX = ".log";
+    // We do not expect records larger than a few kB. If we read a larger length the data is corrupted.
+    private static final int MAX_RECORD_SIZE = 10 * 1024 * 1024;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final File dir;
+    private final long maxSegmentSize;
+
+    private FileOutputStream outputStream;
+    private int currentSegmentIndex = -1;
+    private long currentSegmentSize;
+    // True if data got cut off at the last read.
+    @Getter
+    private boolean recovered;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public SegmentedLog(File dir, long maxSegmentSize) {
+        checkArgument(maxSegmentSize > RECORD_HEADER_SIZE, "maxSegmentSize too small");
+        this.dir = dir;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public synchronized boolean exists() {
+        return dir.isDirectory();
+    }
+
+    public synchronized int getNumSegments() {
+        return getSegmentIndices().length;
+    }
+
+    /**
+     * Reads all valid records of all segments in the order they have been written and cuts off invalid data, so that
+     * further records get appended after the last valid one.
+     */
+    public synchronized List<byte[]> read() throws IOException {
+        closeOutputStream();
+        recovered = false;
+        List<byte[]> records = new ArrayList<>();
+        for (int index : getSegmentIndices()) {
+            File segment = getSegmentFile(index);
+            long validLength = readSegment(segment, records);
+            if (validLength < segment.length()) {
+                log.warn("Segment {} contains invalid data after position {}. We truncate it from {} bytes. " +
+                        "That is expected if the application was not shut down properly.", segment, validLength, segment.length());
+                try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+                    file.setLength(validLength);
+                }
+                recovered = true;
+            }
+        }
+        return records;
+    }
+
+    public synchronized void append(byte[] record) throws IOException {
+        checkArgument(record.length <= MAX_RECORD_SIZE, "Record too large");
+        byte[] bytes = toRecordBytes(record);
+        if (outputStream == null)
+            openSegment(true);
+        else if (currentSegmentSize > 0 && currentSegmentSize + bytes.length > maxSegmentSize)
+            openSegment(false);
+
+        outputStream.write(bytes);
+        currentSegmentSize += bytes.length;
+    }
+
+    /**
+     * Replaces the content of the log with the given records.
+     */
+    public synchronized void compact(Collection<byte[]> records) throws IOException {
+        int[] oldSegmentIndices = getSegmentIndices();
+        closeOutputStream();
+        // We start a new segment so we never write into an old one
+        openSegment(false);
+        for (byte[] record : records) {
+            append(record);
+        }
+        sync();
+
+        for (int index : oldSegmentIndices) {
+            FileUtil.deleteFileIfExists(getSegmentFile(index));
+        }
+        recovered = false;
+    }
+
+    // Forces the appended data to the storage device.
+    public synchronized void sync() throws IOException {
+        if (outputStream != null) {
+            outputStream.flush();
+            outputStream.getFD().sync();
+        }
+    }
+
+    public synchronized void close() {
+        try {
+            sync();
+        } catch (IOException e) {
+            log.error("Could not sync segment at close. dir={}", dir, e);
+        }
+        closeOutputStream();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static byte[] toRecordBytes(byte[] record) throws IOException {
+        CRC32 crc32 = new CRC32();
+        crc32.update(record);
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(RECORD_HEADER_SIZE + record.length);
+        DataOutputStream dataOutputStream = new DataOutputStream(byteArrayOutputStream);
+        dataOutputStream.writeInt(record.length);
+        dataOutputStream.writeInt((int) crc32.getValue());
+        dataOutputStream.write(record);
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    // Returns the length of the valid data of the segment.
+    private static long readSegment(File segment, List<byte[]> records) throws IOException {
+        long validLength = 0;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] record;
+                try {
+                    length = inputStream.readInt();
+                    if (length < 0 || length > MAX_RECORD_SIZE)
+                        return validLength;
+                    checksum = inputStream.readInt();
+                    record = new byte[length];
+                    inputStream.readFully(record);
+                } catch (EOFException e) {
+                    return validLength;
+                }
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(record);
+                if ((int) crc32.getValue() != checksum)
+                    return validLength;
+
+                records.add(record);
+                validLength += RECORD_HEADER_SIZE + length;
+            }
+        }
+    }
+
+    private void openSegment(boolean continueLastSegment) throws IOException {
+        if (outputStream != null)
+            sync();
+        closeOutputStream();
+        if (!dir.exists() && !dir.mkdirs())
+            throw new IOException("Could not create directory " + dir);
+
+        int[] indices = getSegmentIndices();
+        int lastIndex = Math.max(currentSegmentIndex, indices.length > 0 ? indices[indices.length - 1] : -1);
+        if (continueLastSegment && lastIndex >= 0 && getSegmentFile(lastIndex).length() < maxSegmentSize)
+            currentSegmentIndex = lastIndex;
+        else
+            currentSegmentIndex = lastIndex + 1;
+
+        File segment = getSegmentFile(currentSegmentIndex);
+        currentSegmentSize = segment.length();
+        outputStream = new FileOutputStream(segment, true);
+    }
+
+    private void closeOutputStream() {
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                log.error("Could not close segment. dir={}", dir, e);
+            }
+            outputStream = null;
+        }
+    }
+
+    private File getSegmentFile(int index) {
+        return new File(dir, String.format("%08d", index) + SEGMENT_FILE_POSTFIX);
+    }
+
+    private int[] getSegmentIndices() {
+        String[] fileNames = dir.list((d, name) -> name.endsWith(SEGMENT_FILE_POSTFIX));
+        if (fileNames == null)
+            return new int[0];
+
+        return Arrays.stream(fileNames)
+                .map(name -> name.substring(0, name.length() - SEGMENT_FILE_POSTFIX.length()))
+                .filter(name -> name.matches("\\d+"))
+                .mapToInt(Integer::parseInt)
+                .sorted()
+                .toArray();
+    }
+}
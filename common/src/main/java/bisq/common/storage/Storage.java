@@ -131,6 +131,13 @@ public class Storage<T extends PersistableEnvelope> {
         }
     }
 
+    // Save on the calling thread
+    public void saveNow(T persistable) {
+        checkNotNull(storageFile, "storageFile = null. Call setupFileStorage before using read/write.");
+
+        fileManager.saveNow(persistable);
+    }
+
     public void remove(String fileName) {
         fileManager.removeFile(fileName);
     }
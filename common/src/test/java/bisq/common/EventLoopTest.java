@@ -0,0 +1,145 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventLoopTest {
+    private EventLoop eventLoop;
+
+    @After
+    public void tearDown() {
+        if (eventLoop != null)
+            eventLoop.shutDown();
+    }
+
+    @Test
+    public void testTasksRunInOrder() throws InterruptedException {
+        eventLoop = new EventLoop("test", 10);
+        List<Integer> result = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            eventLoop.execute(() -> result.add(value));
+        }
+        eventLoop.execute(done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(100, result.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) result.get(i));
+        }
+    }
+
+    @Test
+    public void testSubmissionsBlockIfQueueIsFull() throws InterruptedException {
+        eventLoop = new EventLoop("test", 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.executeWithBackPressure(() -> awaitUninterruptibly(release));
+        // The blocking task has left the queue, so 2 more fit in
+        while (eventLoop.getQueueSize() > 0)
+            Thread.sleep(1);
+        eventLoop.executeWithBackPressure(() -> {
+        });
+        eventLoop.executeWithBackPressure(() -> {
+        });
+
+        Thread producer = new Thread(() -> eventLoop.executeWithBackPressure(done::countDown));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());
+        assertEquals(2, eventLoop.getQueueSize());
+
+        release.countDown();
+        producer.join(5000);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, eventLoop.getNumBlockedSubmissions());
+    }
+
+    @Test
+    public void testLoopThreadDoesNotBlockOnFullQueue() throws InterruptedException {
+        eventLoop = new EventLoop("test", 1);
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.execute(() -> {
+            for (int i = 0; i < 10; i++) {
+                eventLoop.executeWithBackPressure(() -> {
+                });
+            }
+            eventLoop.executeWithBackPressure(done::countDown);
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, eventLoop.getNumBlockedSubmissions());
+    }
+
+    @Test
+    public void testExecuteDoesNotBlockOnFullQueue() throws InterruptedException {
+        eventLoop = new EventLoop("test", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        eventLoop.execute(() -> awaitUninterruptibly(release));
+        eventLoop.executeWithBackPressure(() -> {
+        });
+        for (int i = 0; i < 10; i++) {
+            eventLoop.execute(() -> {
+            });
+        }
+        eventLoop.execute(done::countDown);
+
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, eventLoop.getNumBlockedSubmissions());
+    }
+
+    @Test
+    public void testLoopSurvivesException() throws InterruptedException {
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        CountDownLatch handled = new CountDownLatch(1);
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> handled.countDown());
+        try {
+            eventLoop = new EventLoop("test", 10);
+            CountDownLatch done = new CountDownLatch(1);
+            eventLoop.execute(() -> {
+                throw new RuntimeException("test");
+            });
+            eventLoop.execute(done::countDown);
+
+            assertTrue(handled.await(5, TimeUnit.SECONDS));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ignore) {
+        }
+    }
+}
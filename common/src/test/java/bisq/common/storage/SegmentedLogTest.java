@@ -0,0 +1,150 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.common.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentedLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setup() throws IOException {
+        dir = new File(folder.getRoot(), "log");
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 1024);
+        assertFalse(log.exists());
+        for (int i = 0; i < 10; i++) {
+            log.append(getRecord(i, 10));
+        }
+        log.close();
+
+        List<byte[]> records = new SegmentedLog(dir, 1024).read();
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(getRecord(i, 10), records.get(i));
+        }
+    }
+
+    @Test
+    public void testRollOverSegments() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 100);
+        for (int i = 0; i < 10; i++) {
+            log.append(getRecord(i, 42));
+        }
+        log.close();
+        // 2 records of 50 bytes fit into one segment
+        assertEquals(5, log.getNumSegments());
+
+        SegmentedLog reopened = new SegmentedLog(dir, 100);
+        assertEquals(10, reopened.read().size());
+        reopened.append(getRecord(10, 42));
+        reopened.close();
+        assertEquals(6, reopened.getNumSegments());
+        assertEquals(11, new SegmentedLog(dir, 100).read().size());
+    }
+
+    @Test
+    public void testTornTailGetsTruncated() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 1024);
+        for (int i = 0; i < 3; i++) {
+            log.append(getRecord(i, 10));
+        }
+        log.close();
+
+        // Simulate a crash in the middle of writing the last record
+        File segment = dir.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 4);
+        }
+
+        SegmentedLog reopened = new SegmentedLog(dir, 1024);
+        assertEquals(2, reopened.read().size());
+        assertTrue(reopened.isRecovered());
+        reopened.append(getRecord(3, 10));
+        reopened.close();
+
+        List<byte[]> records = new SegmentedLog(dir, 1024).read();
+        assertEquals(3, records.size());
+        assertArrayEquals(getRecord(3, 10), records.get(2));
+    }
+
+    @Test
+    public void testCorruptedRecordGetsTruncated() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 1024);
+        for (int i = 0; i < 3; i++) {
+            log.append(getRecord(i, 10));
+        }
+        log.close();
+
+        // Flip a byte of the data of the second record
+        File segment = dir.listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(18 + 8);
+            file.write(0xFF);
+        }
+
+        SegmentedLog reopened = new SegmentedLog(dir, 1024);
+        assertEquals(1, reopened.read().size());
+        assertTrue(reopened.isRecovered());
+    }
+
+    @Test
+    public void testCompact() throws IOException {
+        SegmentedLog log = new SegmentedLog(dir, 100);
+        for (int i = 0; i < 10; i++) {
+            log.append(getRecord(i, 42));
+        }
+        log.compact(Arrays.asList(getRecord(20, 42), getRecord(21, 42), getRecord(22, 42)));
+        log.append(getRecord(23, 42));
+        log.close();
+
+        SegmentedLog reopened = new SegmentedLog(dir, 100);
+        List<byte[]> records = reopened.read();
+        assertEquals(4, records.size());
+        assertArrayEquals(getRecord(20, 42), records.get(0));
+        assertArrayEquals(getRecord(23, 42), records.get(3));
+        assertEquals(2, reopened.getNumSegments());
+    }
+
+    private static byte[] getRecord(int seed, int size) {
+        byte[] record = new byte[size];
+        Arrays.fill(record, (byte) seed);
+        return record;
+    }
+}
@@ -19,7 +19,7 @@ package bisq.core.account.sign;
 
 import bisq.network.p2p.storage.P2PDataStorage;
 import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
-import bisq.network.p2p.storage.persistence.MapStoreService;
+import bisq.network.p2p.storage.persistence.AppendOnlyLogStoreService;
 
 import bisq.common.storage.Storage;
 
@@ -36,7 +36,7 @@ import lombok.extern.slf4j.Slf4j;
 import static com.google.common.base.Preconditions.checkArgument;
 
 @Slf4j
-public class SignedWitnessStorageService extends MapStoreService<SignedWitnessStore, PersistableNetworkPayload> {
+public class SignedWitnessStorageService extends AppendOnlyLogStoreService<SignedWitnessStore> {
     private static final String FILE_NAME = "SignedWitnessStore";
 
 
@@ -79,6 +79,11 @@ public class SignedWitnessStorageService extends MapStoreService<SignedWitnessSt
         return new SignedWitnessStore();
     }
 
+    @Override
+    protected PersistableNetworkPayload fromProto(protobuf.PersistableNetworkPayload proto) {
+        return SignedWitness.fromProto(proto.getSignedWitness());
+    }
+
     @Override
     protected void readStore() {
         super.readStore();
@@ -19,7 +19,7 @@ package bisq.core.account.witness;
 
 import bisq.network.p2p.storage.P2PDataStorage;
 import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
-import bisq.network.p2p.storage.persistence.MapStoreService;
+import bisq.network.p2p.storage.persistence.AppendOnlyLogStoreService;
 
 import bisq.common.storage.Storage;
 
@@ -36,7 +36,7 @@ import lombok.extern.slf4j.Slf4j;
 import static com.google.common.base.Preconditions.checkArgument;
 
 @Slf4j
-public class AccountAgeWitnessStorageService extends MapStoreService<AccountAgeWitnessStore, PersistableNetworkPayload> {
+public class AccountAgeWitnessStorageService extends AppendOnlyLogStoreService<AccountAgeWitnessStore> {
     private static final String FILE_NAME = "AccountAgeWitnessStore";
 
 
@@ -79,6 +79,11 @@ public class AccountAgeWitnessStorageService extends MapStoreService<AccountAgeW
         return new AccountAgeWitnessStore();
     }
 
+    @Override
+    protected PersistableNetworkPayload fromProto(protobuf.PersistableNetworkPayload proto) {
+        return AccountAgeWitness.fromProto(proto.getAccountAgeWitness());
+    }
+
     @Override
     protected void readStore() {
         super.readStore();
@@ -24,6 +24,7 @@ import bisq.core.btc.wallet.BsqWalletService;
 import bisq.core.btc.wallet.BtcWalletService;
 import bisq.core.dao.DaoOptionKeys;
 import bisq.core.dao.DaoSetup;
+import bisq.core.dao.node.full.RpcService;
 import bisq.core.exceptions.BisqException;
 import bisq.core.offer.OpenOfferManager;
 import bisq.core.setup.CorePersistedDataHost;
@@ -36,6 +37,7 @@ import bisq.network.p2p.P2PService;
 import bisq.network.p2p.network.ConnectionConfig;
 
 import bisq.common.CommonOptionKeys;
+import bisq.common.EventLoop;
 import bisq.common.UserThread;
 import bisq.common.app.AppModule;
 import bisq.common.app.DevEnv;
@@ -347,6 +349,27 @@ public abstract class BisqExecutable implements GracefulShutDownHandler, BisqSet
                 .withRequiredArg()
                 .ofType(boolean.class);
 
+        parser.accepts(NetworkOptionKeys.USE_NIO_TRANSPORT,
+                format("Use non-blocking NIO transport for the localhost P2P network (default: %s)", "false"))
+                .withRequiredArg()
+                .ofType(boolean.class);
+
+        parser.accepts(NetworkOptionKeys.PERSIST_VERIFIED_SIGNATURES,
+                format("Persist the cache of verified signatures of the P2P network data (default: %s)", "true"))
+                .withRequiredArg()
+                .ofType(boolean.class);
+
+        parser.accepts(NetworkOptionKeys.METRICS_ENABLED,
+                format("Record metrics of the P2P network and export them over JMX (default: %s)", "false"))
+                .withRequiredArg()
+                .ofType(boolean.class);
+
+        parser.accepts(NetworkOptionKeys.METRICS_PORT,
+                "Local port to serve the P2P network metrics in the Prometheus text format at seed nodes. " +
+                        "Requires --" + NetworkOptionKeys.METRICS_ENABLED + "=true")
+                .withRequiredArg()
+                .ofType(int.class);
+
         parser.accepts(NetworkOptionKeys.MAX_CONNECTIONS,
                 format("Max. connections a peer will try to keep (default: %s)", P2PService.MAX_CONNECTIONS_DEFAULT))
                 .withRequiredArg()
@@ -436,6 +459,13 @@ public abstract class BisqExecutable implements GracefulShutDownHandler, BisqSet
                 format("Max. permitted memory (used only at headless versions) (default: %s)", "600"))
                 .withRequiredArg();
 
+        parser.accepts(AppOptionKeys.USER_THREAD_QUEUE_CAPACITY,
+                format("Max. number of received network messages queued up for the user thread before reading " +
+                        "from the connections gets blocked, 0 for unlimited (used only at headless versions) " +
+                        "(default: %s)", EventLoop.DEFAULT_CAPACITY))
+                .withRequiredArg()
+                .ofType(int.class);
+
         parser.accepts(AppOptionKeys.APP_DATA_DIR_KEY,
                 format("Application data directory (default: %s)", BisqEnvironment.DEFAULT_APP_DATA_DIR))
                 .withRequiredArg();
@@ -559,12 +589,32 @@ public abstract class BisqExecutable implements GracefulShutDownHandler, BisqSet
                 "Bitcoind rpc accepted incoming host for block notifications")
                 .withRequiredArg();
 
+        parser.accepts(DaoOptionKeys.RPC_PARALLEL_BLOCK_REQUESTS,
+                format("Number of blocks a DAO full node requests in parallel from Bitcoin Core while parsing " +
+                        "the blockchain (default: %s)", RpcService.DEFAULT_PARALLEL_BLOCK_REQUESTS))
+                .withRequiredArg()
+                .ofType(int.class);
+
+        parser.accepts(DaoOptionKeys.RPC_BINARY_BLOCKS,
+                format("If set to true a DAO full node requests the serialized blocks from Bitcoin Core while " +
+                        "parsing the blockchain and decodes only the txs which can be BSQ txs (default: %s)", "false"))
+                .withRequiredArg()
+                .ofType(boolean.class);
+
         parser.accepts(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA,
                 format("If set to true the blockchain data from RPC requests to Bitcoin Core are " +
                         "stored as json file in the data dir. (default: %s)", "false"))
                 .withRequiredArg()
                 .ofType(boolean.class);
 
+        parser.accepts(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA_INCREMENTAL,
+                format("If set to true together with --%s we only write the json files of new blocks and of the " +
+                        "txs spent by them, and the blocks in chunks instead of one file. " +
+                        "An interrupted export is resumed at the next start. (default: %s)",
+                        DaoOptionKeys.DUMP_BLOCKCHAIN_DATA, "false"))
+                .withRequiredArg()
+                .ofType(boolean.class);
+
         parser.accepts(DaoOptionKeys.FULL_DAO_NODE,
                 "If set to true the node requests the blockchain data via RPC requests " +
                         "from Bitcoin Core and provide the validated BSQ txs to the network. " +
@@ -19,6 +19,7 @@ package bisq.core.app;
 
 import bisq.core.CoreModule;
 
+import bisq.common.EventLoop;
 import bisq.common.UserThread;
 import bisq.common.app.AppModule;
 import bisq.common.app.Version;
@@ -26,11 +27,6 @@ import bisq.common.setup.CommonSetup;
 
 import joptsimple.OptionSet;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -64,11 +60,9 @@ public class BisqHeadlessAppMain extends BisqExecutable {
 
     @Override
     protected void configUserThread() {
-        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat(this.getClass().getSimpleName())
-                .setDaemon(true)
-                .build();
-        UserThread.setExecutor(Executors.newSingleThreadExecutor(threadFactory));
+        int capacity = bisqEnvironment.getProperty(AppOptionKeys.USER_THREAD_QUEUE_CAPACITY, int.class,
+                EventLoop.DEFAULT_CAPACITY);
+        UserThread.setExecutor(new EventLoop(this.getClass().getSimpleName(), capacity));
     }
 
     @Override
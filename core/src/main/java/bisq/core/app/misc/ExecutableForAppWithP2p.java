@@ -28,6 +28,7 @@ import bisq.core.support.dispute.arbitration.arbitrator.ArbitratorManager;
 
 import bisq.network.p2p.P2PService;
 
+import bisq.common.EventLoop;
 import bisq.common.UserThread;
 import bisq.common.handlers.ResultHandler;
 import bisq.common.setup.GracefulShutDownHandler;
@@ -35,13 +36,8 @@ import bisq.common.setup.UncaughtExceptionHandler;
 import bisq.common.util.Profiler;
 import bisq.common.util.RestartUtil;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
 import java.io.IOException;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
-
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -57,11 +53,9 @@ public abstract class ExecutableForAppWithP2p extends BisqExecutable implements
 
     @Override
     protected void configUserThread() {
-        final ThreadFactory threadFactory = new ThreadFactoryBuilder()
-                .setNameFormat(this.getClass().getSimpleName())
-                .setDaemon(true)
-                .build();
-        UserThread.setExecutor(Executors.newSingleThreadExecutor(threadFactory));
+        int capacity = bisqEnvironment.getProperty(AppOptionKeys.USER_THREAD_QUEUE_CAPACITY, int.class,
+                EventLoop.DEFAULT_CAPACITY);
+        UserThread.setExecutor(new EventLoop(this.getClass().getSimpleName(), capacity));
     }
 
     @Override
@@ -231,8 +231,15 @@ public class DaoModule extends AppModule {
                 .to(environment.getRequiredProperty(DaoOptionKeys.RPC_BLOCK_NOTIFICATION_PORT));
         bindConstant().annotatedWith(named(DaoOptionKeys.RPC_BLOCK_NOTIFICATION_HOST))
                 .to(environment.getRequiredProperty(DaoOptionKeys.RPC_BLOCK_NOTIFICATION_HOST));
+        bind(Integer.class).annotatedWith(Names.named(DaoOptionKeys.RPC_PARALLEL_BLOCK_REQUESTS))
+                .toInstance(environment.getProperty(DaoOptionKeys.RPC_PARALLEL_BLOCK_REQUESTS, int.class,
+                        RpcService.DEFAULT_PARALLEL_BLOCK_REQUESTS));
+        bind(Boolean.class).annotatedWith(Names.named(DaoOptionKeys.RPC_BINARY_BLOCKS))
+                .toInstance(environment.getProperty(DaoOptionKeys.RPC_BINARY_BLOCKS, boolean.class, false));
         bindConstant().annotatedWith(named(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA))
                 .to(environment.getRequiredProperty(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA));
+        bindConstant().annotatedWith(named(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA_INCREMENTAL))
+                .to(environment.getRequiredProperty(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA_INCREMENTAL));
         bindConstant().annotatedWith(named(DaoOptionKeys.FULL_DAO_NODE))
                 .to(environment.getRequiredProperty(DaoOptionKeys.FULL_DAO_NODE));
 
@@ -18,6 +18,7 @@
 package bisq.core.dao.monitoring;
 
 import bisq.core.app.AppOptionKeys;
+import bisq.core.app.BisqEnvironment;
 import bisq.core.dao.DaoSetupService;
 import bisq.core.dao.monitoring.model.DaoStateBlock;
 import bisq.core.dao.monitoring.model.DaoStateHash;
@@ -38,11 +39,15 @@ import bisq.network.p2p.network.Connection;
 import bisq.network.p2p.seed.SeedNodeRepository;
 
 import bisq.common.UserThread;
+import bisq.common.app.Capabilities;
+import bisq.common.app.Capability;
 import bisq.common.crypto.Hash;
 import bisq.common.storage.FileManager;
 import bisq.common.storage.Storage;
 import bisq.common.util.Utilities;
 
+import com.google.common.annotations.VisibleForTesting;
+
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -82,11 +87,23 @@ import static com.google.common.base.Preconditions.checkArgument;
  * state to the peers to not get ignored it in case they have not received the block yet.
  *
  * We do persist that chain of hashes with the snapshot.
+ *
+ * From the activation height on we create the incremental hash (version 2) where the UTXO set and the spent info map
+ * are represented by hashes which the DaoStateService maintains at each change. That avoids serializing the full
+ * state at each block. Below the activation height we keep the legacy hash so the existing hash chain and the
+ * checkpoints stay valid. Incremental hashes are only exchanged with peers supporting the DAO_STATE_HASH_V2
+ * capability and we ignore hashes of a different version than ours, so nodes not supporting it do not cause conflicts.
+ * A hash chain persisted by an earlier version contains legacy hashes above the activation height. As we cannot create
+ * the incremental hashes for the past blocks from the persisted state, the DaoStateSnapshotService does not apply such
+ * a snapshot and we parse again from the genesis block.
  */
 @Slf4j
 public class DaoStateMonitoringService implements DaoSetupService, DaoStateListener,
         DaoStateNetworkService.Listener<NewDaoStateHashMessage, GetDaoStateHashesRequest, DaoStateHash> {
 
+    // Testnet and regtest use the incremental hash from the genesis block on
+    private static final int INCREMENTAL_HASH_ACTIVATION_HEIGHT_MAINNET = 610000; // about 2019-12-28
+
     public interface Listener {
         void onChangeAfterBatchProcessing();
 
@@ -117,8 +134,13 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
     );
     private boolean checkpointFailed;
     private boolean ignoreDevMsg;
+    private final int incrementalHashActivationHeight;
+    @Getter
     private int numCalls;
+    // Durations of updateHashChain in nano seconds
     private long accumulatedDuration;
+    @Getter
+    private long maxDuration;
 
     private final File storageDir;
 
@@ -138,6 +160,9 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
         this.genesisTxInfo = genesisTxInfo;
         this.storageDir = storageDir;
         this.ignoreDevMsg = ignoreDevMsg;
+        incrementalHashActivationHeight = BisqEnvironment.getBaseCurrencyNetwork().isMainnet() ?
+                INCREMENTAL_HASH_ACTIVATION_HEIGHT_MAINNET :
+                genesisTxInfo.getGenesisBlockHeight();
         seedNodeAddresses = seedNodeRepository.getSeedNodeAddresses().stream()
                 .map(NodeAddress::getFullAddress)
                 .collect(Collectors.toSet());
@@ -180,10 +205,11 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
         }
 
         log.info("ParseBlockChainComplete: Accumulated updateHashChain() calls for {} block took {} ms " +
-                        "({} ms in average / block)",
+                        "({} ms in average / block, max. {} ms)",
                 numCalls,
-                accumulatedDuration,
-                (int) ((double) accumulatedDuration / (double) numCalls));
+                accumulatedDuration / 1_000_000,
+                String.format("%.3f", getAverageDuration() / 1_000_000d),
+                String.format("%.3f", maxDuration / 1_000_000d));
     }
 
     @Override
@@ -216,9 +242,12 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
     @Override
     public void onGetStateHashRequest(Connection connection, GetDaoStateHashesRequest getStateHashRequest) {
         int fromHeight = getStateHashRequest.getHeight();
+        boolean supportsIncrementalHash = connection.getCapabilities().containsAll(
+                new Capabilities(Capability.DAO_STATE_HASH_V2));
         List<DaoStateHash> daoStateHashes = daoStateBlockChain.stream()
                 .filter(e -> e.getHeight() >= fromHeight)
                 .map(DaoStateBlock::getMyStateHash)
+                .filter(e -> supportsIncrementalHash || !e.isIncremental())
                 .collect(Collectors.toList());
         daoStateNetworkService.sendGetStateHashesResponse(connection, getStateHashRequest.getNonce(), daoStateHashes);
     }
@@ -248,10 +277,27 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
         updateHashChain(block);
     }
 
+    // Average duration of updateHashChain in nano seconds
+    public long getAverageDuration() {
+        return numCalls > 0 ? accumulatedDuration / numCalls : 0;
+    }
+
     public void requestHashesFromGenesisBlockHeight(String peersAddress) {
         daoStateNetworkService.requestHashes(genesisTxInfo.getGenesisBlockHeight(), peersAddress);
     }
 
+    // Returns false if the hash chain contains legacy hashes at or above the activation height of the incremental hash.
+    // Our new hashes would be chained to them and conflict with the hashes of all peers.
+    public boolean isHashChainCompatible(List<DaoStateHash> daoStateHashChain) {
+        return isHashChainCompatible(daoStateHashChain, incrementalHashActivationHeight);
+    }
+
+    @VisibleForTesting
+    static boolean isHashChainCompatible(List<DaoStateHash> daoStateHashChain, int incrementalHashActivationHeight) {
+        return daoStateHashChain.stream()
+                .noneMatch(e -> e.getHeight() >= incrementalHashActivationHeight && !e.isIncremental());
+    }
+
     public void applySnapshot(LinkedList<DaoStateHash> persistedDaoStateHashChain) {
         // We could got a reset from a reorg, so we clear all and start over from the genesis block.
         daoStateHashChain.clear();
@@ -285,7 +331,7 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private void updateHashChain(Block block) {
-        long ts = System.currentTimeMillis();
+        long ts = System.nanoTime();
         byte[] prevHash;
         int height = block.getHeight();
         if (daoStateBlockChain.isEmpty()) {
@@ -304,13 +350,17 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
                     height, daoStateBlockChain.getLast().getHeight());
             prevHash = daoStateBlockChain.getLast().getHash();
         }
-        byte[] stateHash = daoStateService.getSerializedStateForHashChain();
+        boolean useIncrementalHash = height >= incrementalHashActivationHeight;
+        byte[] stateHash = useIncrementalHash ?
+                daoStateService.getSerializedStateForIncrementalHashChain() :
+                daoStateService.getSerializedStateForHashChain();
         // We include the prev. hash in our new hash so we can be sure that if one hash is matching all the past would
         // match as well.
         byte[] combined = ArrayUtils.addAll(prevHash, stateHash);
         byte[] hash = Hash.getSha256Ripemd160hash(combined);
 
-        DaoStateHash myDaoStateHash = new DaoStateHash(height, hash, prevHash);
+        int version = useIncrementalHash ? DaoStateHash.INCREMENTAL_VERSION : DaoStateHash.LEGACY_VERSION;
+        DaoStateHash myDaoStateHash = new DaoStateHash(height, hash, prevHash, version);
         DaoStateBlock daoStateBlock = new DaoStateBlock(myDaoStateHash);
         daoStateBlockChain.add(daoStateBlock);
         daoStateHashChain.add(myDaoStateHash);
@@ -325,12 +375,14 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
             int delayInSec = 5 + new Random().nextInt(10);
             UserThread.runAfter(() -> daoStateNetworkService.broadcastMyStateHash(myDaoStateHash), delayInSec);
         }
-        long duration = System.currentTimeMillis() - ts;
+        long duration = System.nanoTime() - ts;
         // We don't want to spam the output. We log accumulated time after parsing is completed.
-        log.trace("updateHashChain for block {} took {} ms",
+        log.debug("updateHashChain for block {} with hash version {} took {} ms",
                 block.getHeight(),
-                duration);
+                version,
+                String.format("%.3f", duration / 1_000_000d));
         accumulatedDuration += duration;
+        maxDuration = Math.max(maxDuration, duration);
         numCalls++;
     }
 
@@ -343,6 +395,14 @@ public class DaoStateMonitoringService implements DaoSetupService, DaoStateListe
         daoStateBlockChain.stream()
                 .filter(e -> e.getHeight() == daoStateHash.getHeight()).findAny()
                 .ifPresent(daoStateBlock -> {
+                    if (daoStateBlock.getMyStateHash().getVersion() != daoStateHash.getVersion()) {
+                        // Hashes of different versions are never equal. That happens with peers not supporting the
+                        // incremental hash above the activation height.
+                        log.debug("We ignore a daoStateHash of version {} from peer {} at height {} as our version is {}",
+                                daoStateHash.getVersion(), peersNodeAddress, daoStateHash.getHeight(),
+                                daoStateBlock.getMyStateHash().getVersion());
+                        return;
+                    }
                     String peersNodeAddressAsString = peersNodeAddress.map(NodeAddress::getFullAddress)
                             .orElseGet(() -> "Unknown peer " + new Random().nextInt(10000));
                     daoStateBlock.putInPeersMap(peersNodeAddressAsString, daoStateHash);
@@ -21,11 +21,30 @@ package bisq.core.dao.monitoring.model;
 import com.google.protobuf.ByteString;
 
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
 
 @EqualsAndHashCode(callSuper = true)
+@Getter
 public final class DaoStateHash extends StateHash {
+    // Hash over the full serialized DaoState
+    public static final int LEGACY_VERSION = 0;
+    // Hash with the UTXO set and the spent info map represented by their incrementally maintained hashes.
+    // Requires the DAO_STATE_HASH_V2 capability.
+    public static final int INCREMENTAL_VERSION = 2;
+
+    private final int version;
+
     public DaoStateHash(int height, byte[] hash, byte[] prevHash) {
+        this(height, hash, prevHash, LEGACY_VERSION);
+    }
+
+    public DaoStateHash(int height, byte[] hash, byte[] prevHash, int version) {
         super(height, hash, prevHash);
+        this.version = version;
+    }
+
+    public boolean isIncremental() {
+        return version >= INCREMENTAL_VERSION;
     }
 
 
@@ -38,12 +57,21 @@ public final class DaoStateHash extends StateHash {
         return protobuf.DaoStateHash.newBuilder()
                 .setHeight(height)
                 .setHash(ByteString.copyFrom(hash))
-                .setPrevHash(ByteString.copyFrom(prevHash)).build();
+                .setPrevHash(ByteString.copyFrom(prevHash))
+                .setVersion(version).build();
     }
 
     public static DaoStateHash fromProto(protobuf.DaoStateHash proto) {
         return new DaoStateHash(proto.getHeight(),
                 proto.getHash().toByteArray(),
-                proto.getPrevHash().toByteArray());
+                proto.getPrevHash().toByteArray(),
+                proto.getVersion());
+    }
+
+    @Override
+    public String toString() {
+        return "DaoStateHash{" +
+                "\n     version=" + version +
+                "\n} " + super.toString();
     }
 }
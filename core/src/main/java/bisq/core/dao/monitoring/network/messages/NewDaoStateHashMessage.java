@@ -57,6 +57,9 @@ public final class NewDaoStateHashMessage extends NewStateHashMessage<DaoStateHa
 
     @Override
     public Capabilities getRequiredCapabilities() {
-        return new Capabilities(Capability.DAO_STATE);
+        // Peers which do not support the incremental hash would see a conflict, so we do not send it to them.
+        return stateHash.isIncremental() ?
+                new Capabilities(Capability.DAO_STATE, Capability.DAO_STATE_HASH_V2) :
+                new Capabilities(Capability.DAO_STATE);
     }
 }
@@ -19,6 +19,7 @@ package bisq.core.dao.node.explorer;
 
 import bisq.core.dao.DaoOptionKeys;
 import bisq.core.dao.DaoSetupService;
+import bisq.core.dao.state.DaoStateListener;
 import bisq.core.dao.state.DaoStateService;
 import bisq.core.dao.state.model.DaoState;
 import bisq.core.dao.state.model.blockchain.Block;
@@ -26,6 +27,8 @@ import bisq.core.dao.state.model.blockchain.PubKeyScript;
 import bisq.core.dao.state.model.blockchain.Tx;
 import bisq.core.dao.state.model.blockchain.TxOutput;
 import bisq.core.dao.state.model.blockchain.TxType;
+import bisq.core.dao.state.model.governance.Issuance;
+import bisq.core.dao.state.model.governance.IssuanceType;
 
 import bisq.common.storage.FileUtil;
 import bisq.common.storage.JsonFileManager;
@@ -36,45 +39,96 @@ import org.bitcoinj.core.Utils;
 
 import com.google.inject.Inject;
 
+import com.google.gson.Gson;
+
 import javax.inject.Named;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 
 import java.io.File;
 import java.io.IOException;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.stream.Collectors;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import org.jetbrains.annotations.NotNull;
 
+import javax.annotation.Nullable;
+
+/**
+ * Writes the BSQ blocks, txs and tx outputs as json files for the block explorer.
+ *
+ * By default we write all data again at each new block. In the incremental mode (dumpBlockchainDataIncremental) we
+ * only write the txs of the new blocks and the txs of earlier blocks which got outputs added to or removed from the
+ * UTXO set by the new blocks, e.g. by spending them or by an issuance (the spent info and the unspent state are part of
+ * the tx output). Instead of one file with all blocks we write the blocks in chunks of BLOCKS_PER_CHUNK blocks and only
+ * the affected chunks get written again. The initial export serializes and writes the chunks in parallel. After
+ * each CHUNKS_PER_CHECKPOINT chunks we persist the last exported block to a checkpoint file, so an interrupted
+ * export is resumed at the next start. If the checkpoint block is not in our chain anymore after a reorg we start
+ * over.
+ */
 @Slf4j
-public class ExportJsonFilesService implements DaoSetupService {
+public class ExportJsonFilesService implements DaoSetupService, DaoStateListener {
+    @VisibleForTesting
+    static final int BLOCKS_PER_CHUNK = 1000;
+    private static final int CHUNKS_PER_CHECKPOINT = 10;
+    private static final String CHECKPOINT_FILE_NAME = "checkpoint";
+
     private final DaoStateService daoStateService;
     private final File storageDir;
     private final boolean dumpBlockchainData;
+    private final boolean dumpBlockchainDataIncremental;
 
     private final ListeningExecutorService executor = Utilities.getListeningExecutorService("JsonExporter",
             1, 1, 1200);
     private JsonFileManager txFileManager, txOutputFileManager, bsqStateFileManager;
 
+    // Incremental mode
+    // The executors of Utilities drop tasks if the queue is full, but we must not skip any block or reorder the
+    // exports, so we use executors with unbounded queues.
+    private ListeningExecutorService incrementalExecutor, parallelExecutor;
+    private JsonFileManager blocksFileManager, checkpointFileManager;
+    private File jsonDir, txDir, txOutputDir, blocksDir;
+    // Last block we have handed over to the incrementalExecutor. Only accessed from the user thread.
+    @Nullable
+    private JsonExportCheckpoint exportedCheckpoint;
+    // Txs which got outputs added to or removed from the UTXO set at the blocks parsed since the last export. Only
+    // accessed from the user thread.
+    private final Set<String> txIdsWithChangedTxOutputs = new HashSet<>();
+
     @Inject
     public ExportJsonFilesService(DaoStateService daoStateService,
                                   @Named(Storage.STORAGE_DIR) File storageDir,
-                                  @Named(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA) boolean dumpBlockchainData) {
+                                  @Named(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA) boolean dumpBlockchainData,
+                                  @Named(DaoOptionKeys.DUMP_BLOCKCHAIN_DATA_INCREMENTAL) boolean dumpBlockchainDataIncremental) {
         this.daoStateService = daoStateService;
         this.storageDir = storageDir;
         this.dumpBlockchainData = dumpBlockchainData;
+        this.dumpBlockchainDataIncremental = dumpBlockchainDataIncremental;
     }
 
 
@@ -84,44 +138,66 @@ public class ExportJsonFilesService implements DaoSetupService {
 
     @Override
     public void addListeners() {
+        if (dumpBlockchainData && dumpBlockchainDataIncremental)
+            daoStateService.addDaoStateListener(this);
     }
 
     @Override
     public void start() {
         if (dumpBlockchainData) {
-            File jsonDir = new File(Paths.get(storageDir.getAbsolutePath(), "json").toString());
-            File txDir = new File(Paths.get(storageDir.getAbsolutePath(), "json", "tx").toString());
-            File txOutputDir = new File(Paths.get(storageDir.getAbsolutePath(), "json", "txo").toString());
+            jsonDir = new File(Paths.get(storageDir.getAbsolutePath(), "json").toString());
+            txDir = new File(Paths.get(storageDir.getAbsolutePath(), "json", "tx").toString());
+            txOutputDir = new File(Paths.get(storageDir.getAbsolutePath(), "json", "txo").toString());
             File bsqStateDir = new File(Paths.get(storageDir.getAbsolutePath(), "json", "all").toString());
-            try {
-                if (txDir.exists())
-                    FileUtil.deleteDirectory(txDir);
-                if (txOutputDir.exists())
-                    FileUtil.deleteDirectory(txOutputDir);
-                if (bsqStateDir.exists())
-                    FileUtil.deleteDirectory(bsqStateDir);
-                if (jsonDir.exists())
-                    FileUtil.deleteDirectory(jsonDir);
-            } catch (IOException e) {
-                log.error(e.toString());
-                e.printStackTrace();
+            blocksDir = new File(Paths.get(storageDir.getAbsolutePath(), "json", "blocks").toString());
+
+            if (dumpBlockchainDataIncremental)
+                exportedCheckpoint = readCheckpoint(jsonDir);
+
+            // If we have a checkpoint we keep the files to resume the export
+            if (exportedCheckpoint == null) {
+                try {
+                    if (txDir.exists())
+                        FileUtil.deleteDirectory(txDir);
+                    if (txOutputDir.exists())
+                        FileUtil.deleteDirectory(txOutputDir);
+                    if (bsqStateDir.exists())
+                        FileUtil.deleteDirectory(bsqStateDir);
+                    if (blocksDir.exists())
+                        FileUtil.deleteDirectory(blocksDir);
+                    if (jsonDir.exists())
+                        FileUtil.deleteDirectory(jsonDir);
+                } catch (IOException e) {
+                    log.error(e.toString());
+                    e.printStackTrace();
+                }
             }
 
-            if (!jsonDir.mkdir())
+            if (!jsonDir.exists() && !jsonDir.mkdir())
                 log.warn("make jsonDir failed.\njsonDir=" + jsonDir.getAbsolutePath());
 
-            if (!txDir.mkdir())
+            if (!txDir.exists() && !txDir.mkdir())
                 log.warn("make txDir failed.\ntxDir=" + txDir.getAbsolutePath());
 
-            if (!txOutputDir.mkdir())
+            if (!txOutputDir.exists() && !txOutputDir.mkdir())
                 log.warn("make txOutputDir failed.\ntxOutputDir=" + txOutputDir.getAbsolutePath());
 
-            if (!bsqStateDir.mkdir())
+            if (!bsqStateDir.exists() && !bsqStateDir.mkdir())
                 log.warn("make bsqStateDir failed.\nbsqStateDir=" + bsqStateDir.getAbsolutePath());
 
             txFileManager = new JsonFileManager(txDir);
             txOutputFileManager = new JsonFileManager(txOutputDir);
             bsqStateFileManager = new JsonFileManager(bsqStateDir);
+
+            if (dumpBlockchainDataIncremental) {
+                blocksFileManager = new JsonFileManager(blocksDir);
+                checkpointFileManager = new JsonFileManager(jsonDir);
+                incrementalExecutor = MoreExecutors.listeningDecorator(
+                        Executors.newSingleThreadExecutor(getThreadFactory("JsonExporterIncremental")));
+                parallelExecutor = MoreExecutors.listeningDecorator(
+                        Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                getThreadFactory("JsonExporterParallel-%d")));
+            }
         }
     }
 
@@ -130,12 +206,25 @@ public class ExportJsonFilesService implements DaoSetupService {
             txFileManager.shutDown();
             txOutputFileManager.shutDown();
             bsqStateFileManager.shutDown();
+
+            if (dumpBlockchainDataIncremental) {
+                // An interrupted export gets resumed from the last checkpoint at the next start
+                incrementalExecutor.shutdownNow();
+                parallelExecutor.shutdownNow();
+                blocksFileManager.shutDown();
+                checkpointFileManager.shutDown();
+            }
         }
     }
 
     public void maybeExportToJson() {
         if (dumpBlockchainData &&
                 daoStateService.isParseBlockChainComplete()) {
+            if (dumpBlockchainDataIncremental) {
+                exportIncrementally();
+                return;
+            }
+
             // We store the data we need once we write the data to disk (in the thread) locally.
             // Access to daoStateService is single threaded, we must not access daoStateService from the thread.
             List<JsonTxOutput> allJsonTxOutputs = new ArrayList<>();
@@ -172,6 +261,243 @@ public class ExportJsonFilesService implements DaoSetupService {
         }
     }
 
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // DaoStateListener
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void onDaoStateChanged(Block block) {
+        // Called after all state changes of the block, including the issuance and the bond confiscation
+        txIdsWithChangedTxOutputs.addAll(daoStateService.getTxIdsWithChangedTxOutputs());
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Incremental mode
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Returns the future of the write task or null if there is nothing to export
+    @VisibleForTesting
+    @Nullable
+    ListenableFuture<Void> exportIncrementally() {
+        Optional<Block> optionalLastBlock = daoStateService.getLastBlock();
+        if (!optionalLastBlock.isPresent())
+            return null;
+
+        Block lastBlock = optionalLastBlock.get();
+        boolean reset = false;
+        if (exportedCheckpoint != null) {
+            if (lastBlock.getHeight() < exportedCheckpoint.getHeight()) {
+                // After a reorg we parse again from the last snapshot. We wait until we are at the exported height.
+                return null;
+            }
+
+            String exportedBlockHash = exportedCheckpoint.getBlockHash();
+            boolean isExportedBlockInChain = findBlock(exportedCheckpoint.getHeight())
+                    .map(block -> block.getHash().equals(exportedBlockHash))
+                    .orElse(false);
+            if (!isExportedBlockInChain) {
+                log.info("The exported block at height {} is not in our chain anymore. We start over with the export.",
+                        exportedCheckpoint.getHeight());
+                exportedCheckpoint = null;
+                reset = true;
+            }
+        }
+
+        int fromHeight = exportedCheckpoint != null ? exportedCheckpoint.getHeight() + 1 : 0;
+        if (lastBlock.getHeight() < fromHeight)
+            return null;
+
+        // Chunks we need to write, by chunk index
+        TreeMap<Integer, LinkedList<Block>> blocksByChunk = new TreeMap<>();
+        // Txs of earlier blocks we have exported already but which got outputs added to or removed from the UTXO set
+        // by the new blocks. We track those changes at the blocks we have parsed. The blocks from the checkpoint up to
+        // the persisted DAO state of an earlier session did not get parsed again, so we derive the spent outputs from
+        // the inputs of the new blocks and the issued outputs from the issuances as well.
+        Set<String> changedTxIds = new HashSet<>(txIdsWithChangedTxOutputs);
+        txIdsWithChangedTxOutputs.clear();
+        Iterator<Block> iterator = daoStateService.getBlocks().descendingIterator();
+        while (iterator.hasNext()) {
+            Block block = iterator.next();
+            if (block.getHeight() < fromHeight)
+                break;
+
+            blocksByChunk.putIfAbsent(getChunkIndex(block.getHeight()), new LinkedList<>());
+            block.getTxs().forEach(tx -> tx.getTxInputs().forEach(txInput ->
+                    changedTxIds.add(txInput.getConnectedTxOutputTxId())));
+        }
+        for (IssuanceType issuanceType : IssuanceType.values()) {
+            daoStateService.getIssuanceSet(issuanceType).stream()
+                    .filter(issuance -> issuance.getChainHeight() >= fromHeight)
+                    .map(Issuance::getTxId)
+                    .forEach(changedTxIds::add);
+        }
+
+        Set<String> rewrittenTxIds = new HashSet<>();
+        changedTxIds.forEach(txId -> daoStateService.getTx(txId)
+                .filter(tx -> tx.getBlockHeight() < fromHeight)
+                .ifPresent(tx -> {
+                    rewrittenTxIds.add(tx.getId());
+                    blocksByChunk.putIfAbsent(getChunkIndex(tx.getBlockHeight()), new LinkedList<>());
+                }));
+
+        // We collect the blocks of all chunks we need to write in one walk from the chain tip
+        int lowestHeight = blocksByChunk.firstKey() * BLOCKS_PER_CHUNK;
+        iterator = daoStateService.getBlocks().descendingIterator();
+        while (iterator.hasNext()) {
+            Block block = iterator.next();
+            if (block.getHeight() < lowestHeight)
+                break;
+
+            LinkedList<Block> blocks = blocksByChunk.get(getChunkIndex(block.getHeight()));
+            if (blocks != null)
+                blocks.addFirst(block);
+        }
+
+        // We create the json objects at the user thread as we must not access the daoStateService from other threads.
+        int chainHeight = daoStateService.getChainHeight();
+        List<JsonChunk> jsonChunks = blocksByChunk.entrySet().stream()
+                .map(entry -> {
+                    List<Block> blocks = entry.getValue();
+                    List<JsonBlock> jsonBlocks = blocks.stream()
+                            .map(this::getJsonBlock)
+                            .collect(Collectors.toList());
+                    List<JsonTx> jsonTxs = jsonBlocks.stream()
+                            .flatMap(jsonBlock -> jsonBlock.getTxs().stream())
+                            .filter(jsonTx -> jsonTx.getBlockHeight() >= fromHeight || rewrittenTxIds.contains(jsonTx.getId()))
+                            .collect(Collectors.toList());
+                    Block lastBlockOfChunk = blocks.get(blocks.size() - 1);
+                    JsonExportCheckpoint checkpoint = lastBlockOfChunk.getHeight() >= fromHeight ?
+                            new JsonExportCheckpoint(lastBlockOfChunk.getHeight(), lastBlockOfChunk.getHash()) :
+                            null;
+                    return new JsonChunk(entry.getKey() * BLOCKS_PER_CHUNK,
+                            new JsonBlocks(chainHeight, jsonBlocks),
+                            jsonTxs,
+                            checkpoint);
+                })
+                .collect(Collectors.toList());
+
+        exportedCheckpoint = new JsonExportCheckpoint(lastBlock.getHeight(), lastBlock.getHash());
+        log.debug("Export {} chunks with {} txs from height {}", jsonChunks.size(),
+                jsonChunks.stream().mapToInt(e -> e.getJsonTxs().size()).sum(), fromHeight);
+
+        boolean clearFiles = reset;
+        ListenableFuture<Void> future = incrementalExecutor.submit(() -> {
+            long ts = System.currentTimeMillis();
+            if (clearFiles)
+                clearIncrementalExport();
+
+            // Chunks are sorted by height and the checkpoint only covers blocks of completed chunks
+            for (List<JsonChunk> segment : Lists.partition(jsonChunks, CHUNKS_PER_CHECKPOINT)) {
+                List<ListenableFuture<Object>> futures = segment.stream()
+                        .map(jsonChunk -> parallelExecutor.submit(() -> {
+                            writeChunk(jsonChunk);
+                            return null;
+                        }))
+                        .collect(Collectors.toList());
+                Futures.allAsList(futures).get();
+
+                JsonExportCheckpoint checkpoint = segment.get(segment.size() - 1).getCheckpoint();
+                if (checkpoint != null)
+                    checkpointFileManager.writeToDiscSync(Utilities.objectToJson(checkpoint), CHECKPOINT_FILE_NAME);
+            }
+            log.debug("Writing {} chunks took {} ms", jsonChunks.size(), System.currentTimeMillis() - ts);
+            return null;
+        });
+
+        Futures.addCallback(future, new FutureCallback<>() {
+            public void onSuccess(Void ignore) {
+            }
+
+            public void onFailure(@NotNull Throwable throwable) {
+                log.error(throwable.toString());
+                throwable.printStackTrace();
+            }
+        });
+        return future;
+    }
+
+    private void writeChunk(JsonChunk jsonChunk) throws IOException {
+        blocksFileManager.writeToDiscSync(Utilities.objectToJson(jsonChunk.getJsonBlocks()),
+                String.valueOf(jsonChunk.getStartHeight()));
+        for (JsonTx jsonTx : jsonChunk.getJsonTxs()) {
+            for (JsonTxOutput jsonTxOutput : jsonTx.getOutputs()) {
+                txOutputFileManager.writeToDiscSync(Utilities.objectToJson(jsonTxOutput), jsonTxOutput.getId());
+            }
+            txFileManager.writeToDiscSync(Utilities.objectToJson(jsonTx), jsonTx.getId());
+        }
+    }
+
+    private void clearIncrementalExport() throws IOException {
+        FileUtil.deleteFileIfExists(new File(jsonDir, CHECKPOINT_FILE_NAME + ".json"));
+        for (File dir : new File[]{txDir, txOutputDir, blocksDir}) {
+            FileUtil.deleteDirectory(dir);
+            if (!dir.mkdir())
+                log.warn("make dir failed.\ndir=" + dir.getAbsolutePath());
+        }
+    }
+
+    // Blocks are appended, so we search from the tail
+    private Optional<Block> findBlock(int height) {
+        Iterator<Block> iterator = daoStateService.getBlocks().descendingIterator();
+        while (iterator.hasNext()) {
+            Block block = iterator.next();
+            if (block.getHeight() == height)
+                return Optional.of(block);
+            if (block.getHeight() < height)
+                break;
+        }
+        return Optional.empty();
+    }
+
+    @Nullable
+    private static JsonExportCheckpoint readCheckpoint(File jsonDir) {
+        File file = new File(jsonDir, CHECKPOINT_FILE_NAME + ".json");
+        if (!file.exists())
+            return null;
+
+        try {
+            String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            JsonExportCheckpoint checkpoint = new Gson().fromJson(json, JsonExportCheckpoint.class);
+            if (checkpoint != null && checkpoint.getBlockHash() != null) {
+                log.info("We resume the json export after block {}", checkpoint.getHeight());
+                return checkpoint;
+            }
+        } catch (Throwable t) {
+            log.warn("Could not read json export checkpoint. We start over with the export. {}", t.toString());
+        }
+        return null;
+    }
+
+    private static int getChunkIndex(int height) {
+        return height / BLOCKS_PER_CHUNK;
+    }
+
+    private static ThreadFactory getThreadFactory(String name) {
+        return new ThreadFactoryBuilder()
+                .setNameFormat(name)
+                .setDaemon(true)
+                .build();
+    }
+
+    @Value
+    private static class JsonChunk {
+        private final int startHeight;
+        private final JsonBlocks jsonBlocks;
+        // Txs of the chunk which are new or got outputs added to or removed from the UTXO set
+        private final List<JsonTx> jsonTxs;
+        // Last block of the chunk if it is covered by this export
+        @Nullable
+        private final JsonExportCheckpoint checkpoint;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Json objects
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
     private JsonBlock getJsonBlock(Block block) {
         List<JsonTx> jsonTxs = block.getTxs().stream()
                 .map(this::getJsonTx)
@@ -0,0 +1,396 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.core.dao.state.model.blockchain.PubKeyScript;
+import bisq.core.dao.state.model.blockchain.TxInput;
+import bisq.core.dao.state.model.blockchain.TxOutputKey;
+
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+
+import com.google.common.collect.ImmutableList;
+
+import java.security.MessageDigest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+
+/**
+ * Decodes the serialized blocks we get from Bitcoin Core with getblock verbosity 0.
+ * <p>
+ * Decoding is split into two steps. The decode method only walks the bytes and records where the txs, inputs and
+ * outputs are, so it is cheap and can run in parallel for several blocks. The toRawBlock method is called in height
+ * order when the block gets parsed. Only then we know the BSQ outputs which exist at that block, so we filter there
+ * and create the RawTxs only for the txs which spend a BSQ output (or an output of a tx we kept before in that block)
+ * or have an OP_RETURN output. The BlockParser ignores all other txs anyway. Most txs of a block are not relevant
+ * for BSQ, so we neither hash them nor create any objects for their inputs and outputs.
+ * <p>
+ * The resulting RawTxs are the same as those we create from the json of getblock verbosity 2, see ScriptDecoder.
+ */
+@Slf4j
+class BinaryBlockDecoder {
+    interface BsqTxFilter {
+        // We keep all txs of the genesis block as the genesis tx has no BSQ inputs
+        boolean keepAllTxs(int blockHeight);
+
+        boolean isBsqTxOutput(TxOutputKey txOutputKey);
+    }
+
+    private static final int OP_RETURN = 0x6a;
+
+    private final ScriptDecoder scriptDecoder;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    BinaryBlockDecoder(NetworkParameters params) {
+        scriptDecoder = new ScriptDecoder(params);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    static DecodedBlock decode(int height, String hash, String hex) {
+        return decode(height, hash, decodeHex(hex));
+    }
+
+    static DecodedBlock decode(int height, String hash, byte[] bytes) {
+        Reader reader = new Reader(bytes);
+        reader.skip(4); // version
+        String previousBlockHash = reader.readHash();
+        reader.skip(32); // merkle root
+        long time = reader.readUint32();
+        reader.skip(8); // bits and nonce
+
+        int numTxs = (int) reader.readVarInt();
+        List<DecodedTx> txs = new ArrayList<>(numTxs);
+        for (int i = 0; i < numTxs; i++) {
+            txs.add(decodeTx(reader, i == 0));
+        }
+        if (reader.position != bytes.length)
+            throw new IllegalArgumentException("Block has " + (bytes.length - reader.position) + " unexpected bytes");
+
+        // The genesis block of the chain has no previous block
+        if (previousBlockHash.chars().allMatch(c -> c == '0'))
+            previousBlockHash = null;
+
+        return new DecodedBlock(bytes, height, hash, previousBlockHash, time, txs);
+    }
+
+    RawBlock toRawBlock(DecodedBlock block, BsqTxFilter bsqTxFilter) {
+        long blockTime = block.time * 1000; // We convert block time from sec to ms
+        boolean keepAllTxs = bsqTxFilter.keepAllTxs(block.height);
+        Set<String> keptTxIds = new HashSet<>();
+        List<RawTx> rawTxs = new ArrayList<>();
+        for (DecodedTx tx : block.txs) {
+            if (keepAllTxs || tx.hasOpReturnOutput || spendsBsqTxOutput(tx, keptTxIds, bsqTxFilter)) {
+                String txId = getTxId(block.bytes, tx);
+                keptTxIds.add(txId);
+                rawTxs.add(toRawTx(block, blockTime, tx, txId));
+            }
+        }
+        log.debug("We keep {} of {} txs of block {}", rawTxs.size(), block.txs.size(), block.height);
+        return new RawBlock(block.height,
+                blockTime,
+                block.hash,
+                block.previousBlockHash,
+                ImmutableList.copyOf(rawTxs));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static DecodedTx decodeTx(Reader reader, boolean isCoinBase) {
+        int start = reader.position;
+        reader.skip(4); // version
+        boolean hasWitness = reader.peek() == 0;
+        if (hasWitness)
+            reader.skip(2); // marker and flag
+
+        int inputsStart = reader.position;
+        int numInputs = (int) reader.readVarInt();
+        // We ignore the input of the coinbase tx like the json has no txid for it
+        int numConnectedInputs = isCoinBase ? 0 : numInputs;
+        String[] connectedTxIds = new String[numConnectedInputs];
+        int[] connectedIndices = new int[numConnectedInputs];
+        int[] scriptSigOffsets = new int[numConnectedInputs];
+        for (int i = 0; i < numInputs; i++) {
+            if (!isCoinBase) {
+                connectedTxIds[i] = reader.readHash();
+                connectedIndices[i] = (int) reader.readUint32();
+                scriptSigOffsets[i] = reader.position;
+            } else {
+                reader.skip(36);
+            }
+            reader.skip((int) reader.readVarInt()); // scriptSig
+            reader.skip(4); // sequence
+        }
+
+        int numOutputs = (int) reader.readVarInt();
+        int[] outputOffsets = new int[numOutputs];
+        boolean hasOpReturnOutput = false;
+        for (int i = 0; i < numOutputs; i++) {
+            outputOffsets[i] = reader.position;
+            reader.skip(8); // value
+            int scriptLength = (int) reader.readVarInt();
+            if (scriptLength > 0 && (reader.peek() & 0xff) == OP_RETURN)
+                hasOpReturnOutput = true;
+            reader.skip(scriptLength);
+        }
+        int inputsAndOutputsEnd = reader.position;
+
+        if (hasWitness) {
+            for (int i = 0; i < numInputs; i++) {
+                long numItems = reader.readVarInt();
+                for (long item = 0; item < numItems; item++) {
+                    reader.skip((int) reader.readVarInt());
+                }
+            }
+        }
+        int lockTimeStart = reader.position;
+        reader.skip(4);
+
+        return new DecodedTx(start, inputsStart, inputsAndOutputsEnd, lockTimeStart, connectedTxIds,
+                connectedIndices, scriptSigOffsets, outputOffsets, hasOpReturnOutput);
+    }
+
+    private static boolean spendsBsqTxOutput(DecodedTx tx, Set<String> keptTxIds, BsqTxFilter bsqTxFilter) {
+        for (int i = 0; i < tx.connectedTxIds.length; i++) {
+            String connectedTxId = tx.connectedTxIds[i];
+            if (keptTxIds.contains(connectedTxId) ||
+                    bsqTxFilter.isBsqTxOutput(new TxOutputKey(connectedTxId, tx.connectedIndices[i])))
+                return true;
+        }
+        return false;
+    }
+
+    // The txId is the double SHA256 hash of the tx without the witness data
+    private static String getTxId(byte[] bytes, DecodedTx tx) {
+        MessageDigest digest = Sha256Hash.newDigest();
+        digest.update(bytes, tx.start, 4);
+        digest.update(bytes, tx.inputsStart, tx.inputsAndOutputsEnd - tx.inputsStart);
+        digest.update(bytes, tx.lockTimeStart, 4);
+        byte[] hash = digest.digest(digest.digest());
+        return Utils.HEX.encode(Utils.reverseBytes(hash));
+    }
+
+    private RawTx toRawTx(DecodedBlock block, long blockTime, DecodedTx tx, String txId) {
+        Reader reader = new Reader(block.bytes);
+        List<TxInput> txInputs = new ArrayList<>(tx.connectedTxIds.length);
+        for (int i = 0; i < tx.connectedTxIds.length; i++) {
+            reader.position = tx.scriptSigOffsets[i];
+            byte[] scriptSig = reader.readBytes((int) reader.readVarInt());
+            String asm = ScriptDecoder.toAsm(scriptSig, true);
+            txInputs.add(new TxInput(tx.connectedTxIds[i], tx.connectedIndices[i],
+                    ScriptDecoder.getPubKeyFromScriptSigAsm(txId, asm)));
+        }
+
+        List<RawTxOutput> txOutputs = new ArrayList<>(tx.outputOffsets.length);
+        for (int i = 0; i < tx.outputOffsets.length; i++) {
+            reader.position = tx.outputOffsets[i];
+            long value = reader.readInt64();
+            byte[] script = reader.readBytes((int) reader.readVarInt());
+            PubKeyScript pubKeyScript = scriptDecoder.toPubKeyScript(script);
+            // We don't support raw MS which are the only case where scriptPubKey.getAddresses()>1
+            String address = pubKeyScript.getAddresses() != null && pubKeyScript.getAddresses().size() == 1 ?
+                    pubKeyScript.getAddresses().get(0) : null;
+            txOutputs.add(new RawTxOutput(i,
+                    value,
+                    txId,
+                    pubKeyScript,
+                    address,
+                    ScriptDecoder.getOpReturnData(pubKeyScript.getScriptType(), pubKeyScript.getAsm()),
+                    block.height));
+        }
+
+        return new RawTx(txId,
+                block.height,
+                block.hash,
+                blockTime,
+                ImmutableList.copyOf(txInputs),
+                ImmutableList.copyOf(txOutputs));
+    }
+
+    private static byte[] decodeHex(String hex) {
+        int length = hex.length() / 2;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0)
+                throw new IllegalArgumentException("Invalid hex character at position " + 2 * i);
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Inner classes
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    static class DecodedBlock {
+        private final byte[] bytes;
+        private final int height;
+        private final String hash;
+        @Nullable
+        private final String previousBlockHash;
+        private final long time;
+        private final List<DecodedTx> txs;
+
+        private DecodedBlock(byte[] bytes,
+                             int height,
+                             String hash,
+                             @Nullable String previousBlockHash,
+                             long time,
+                             List<DecodedTx> txs) {
+            this.bytes = bytes;
+            this.height = height;
+            this.hash = hash;
+            this.previousBlockHash = previousBlockHash;
+            this.time = time;
+            this.txs = txs;
+        }
+
+        int getNumTxs() {
+            return txs.size();
+        }
+    }
+
+    // Offsets of a tx in the block
+    private static class DecodedTx {
+        private final int start;
+        private final int inputsStart;
+        private final int inputsAndOutputsEnd;
+        private final int lockTimeStart;
+        private final String[] connectedTxIds;
+        private final int[] connectedIndices;
+        private final int[] scriptSigOffsets;
+        private final int[] outputOffsets;
+        private final boolean hasOpReturnOutput;
+
+        private DecodedTx(int start,
+                          int inputsStart,
+                          int inputsAndOutputsEnd,
+                          int lockTimeStart,
+                          String[] connectedTxIds,
+                          int[] connectedIndices,
+                          int[] scriptSigOffsets,
+                          int[] outputOffsets,
+                          boolean hasOpReturnOutput) {
+            this.start = start;
+            this.inputsStart = inputsStart;
+            this.inputsAndOutputsEnd = inputsAndOutputsEnd;
+            this.lockTimeStart = lockTimeStart;
+            this.connectedTxIds = connectedTxIds;
+            this.connectedIndices = connectedIndices;
+            this.scriptSigOffsets = scriptSigOffsets;
+            this.outputOffsets = outputOffsets;
+            this.hasOpReturnOutput = hasOpReturnOutput;
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int peek() {
+            checkAvailable(1);
+            return bytes[position];
+        }
+
+        void skip(int numBytes) {
+            checkAvailable(numBytes);
+            position += numBytes;
+        }
+
+        byte[] readBytes(int numBytes) {
+            checkAvailable(numBytes);
+            byte[] result = Arrays.copyOfRange(bytes, position, position + numBytes);
+            position += numBytes;
+            return result;
+        }
+
+        long readUint32() {
+            checkAvailable(4);
+            long result = Utils.readUint32(bytes, position);
+            position += 4;
+            return result;
+        }
+
+        long readInt64() {
+            checkAvailable(8);
+            long result = Utils.readInt64(bytes, position);
+            position += 8;
+            return result;
+        }
+
+        long readVarInt() {
+            int first = peek() & 0xff;
+            position++;
+            if (first < 0xfd)
+                return first;
+            if (first == 0xfd) {
+                checkAvailable(2);
+                int result = (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8;
+                position += 2;
+                return result;
+            }
+            if (first == 0xfe)
+                return readUint32();
+            return readInt64();
+        }
+
+        // Hashes are serialized in little endian but displayed in big endian
+        String readHash() {
+            checkAvailable(32);
+            char[] hex = new char[64];
+            for (int i = 0; i < 32; i++) {
+                int b = bytes[position + 31 - i] & 0xff;
+                hex[2 * i] = Character.forDigit(b >> 4, 16);
+                hex[2 * i + 1] = Character.forDigit(b & 0x0f, 16);
+            }
+            position += 32;
+            return new String(hex);
+        }
+
+        private void checkAvailable(int numBytes) {
+            if (numBytes < 0 || bytes.length - position < numBytes)
+                throw new IllegalArgumentException("Unexpected end of block at position " + position);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.common.UserThread;
+import bisq.common.handlers.ResultHandler;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Requests the blocks of a height range with several requests in parallel and delivers them strictly in height order
+ * at the UserThread.
+ * <p>
+ * We request at most maxPrefetchedBlocks blocks ahead of the block we deliver next, so if parsing is slower than
+ * Bitcoin Core the blocks do not pile up in memory. If the chain changes while we prefetch (reorg) the BlockParser
+ * detects that the next block does not connect and the FullNode starts a reorg from the last snapshot. It stops the
+ * prefetcher then, so we do not deliver the outstanding blocks of the old chain.
+ * <p>
+ * Not thread safe, all calls are expected at the UserThread.
+ *
+ * @param <T> The type of the requested blocks
+ */
+@Slf4j
+class BlockPrefetcher<T> {
+    interface BlockSupplier<T> {
+        T getBlock(int blockHeight) throws Exception;
+    }
+
+    private final ListeningExecutorService executor;
+    private final BlockSupplier<T> blockSupplier;
+    private final int maxPrefetchedBlocks;
+    private final int chainHeight;
+    private final Consumer<T> blockHandler;
+    private final ResultHandler resultHandler;
+    private final Consumer<Throwable> errorHandler;
+
+    // Requested blocks in height order
+    private final Deque<ListenableFuture<T>> pendingBlocks = new ArrayDeque<>();
+    private int nextBlockHeight;
+    private boolean stopped;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    BlockPrefetcher(ListeningExecutorService executor,
+                    BlockSupplier<T> blockSupplier,
+                    int maxPrefetchedBlocks,
+                    int startBlockHeight,
+                    int chainHeight,
+                    Consumer<T> blockHandler,
+                    ResultHandler resultHandler,
+                    Consumer<Throwable> errorHandler) {
+        this.executor = executor;
+        this.blockSupplier = blockSupplier;
+        this.maxPrefetchedBlocks = maxPrefetchedBlocks;
+        this.chainHeight = chainHeight;
+        this.blockHandler = blockHandler;
+        this.resultHandler = resultHandler;
+        this.errorHandler = errorHandler;
+
+        nextBlockHeight = startBlockHeight;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void start() {
+        requestBlocks();
+    }
+
+    void stop() {
+        if (stopped)
+            return;
+
+        stopped = true;
+        if (!pendingBlocks.isEmpty())
+            log.info("We stop prefetching blocks and cancel {} pending requests", pendingBlocks.size());
+
+        pendingBlocks.forEach(future -> future.cancel(false));
+        pendingBlocks.clear();
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void requestBlocks() {
+        while (pendingBlocks.size() < maxPrefetchedBlocks && nextBlockHeight <= chainHeight) {
+            int blockHeight = nextBlockHeight++;
+            ListenableFuture<T> future = executor.submit(() -> {
+                try {
+                    return blockSupplier.getBlock(blockHeight);
+                } catch (Exception e) {
+                    log.error("Error at requesting block: blockHeight={}", blockHeight);
+                    throw e;
+                }
+            });
+            pendingBlocks.add(future);
+            // Requests can complete in any order, deliverBlocks only takes completed ones from the head of the queue
+            future.addListener(() -> UserThread.execute(this::deliverBlocks), MoreExecutors.directExecutor());
+        }
+
+        if (pendingBlocks.isEmpty()) {
+            stopped = true;
+            resultHandler.handleResult();
+        }
+    }
+
+    private void deliverBlocks() {
+        if (stopped)
+            return;
+
+        while (!pendingBlocks.isEmpty() && pendingBlocks.peek().isDone()) {
+            T block;
+            try {
+                block = Futures.getDone(pendingBlocks.poll());
+            } catch (ExecutionException e) {
+                stop();
+                errorHandler.accept(e.getCause());
+                return;
+            }
+
+            blockHandler.accept(block);
+
+            // The blockHandler stops us in case of a reorg
+            if (stopped)
+                return;
+        }
+
+        requestBlocks();
+    }
+}
@@ -27,6 +27,7 @@ import bisq.core.dao.node.parser.exceptions.RequiredReorgFromSnapshotException;
 import bisq.core.dao.state.DaoStateService;
 import bisq.core.dao.state.DaoStateSnapshotService;
 import bisq.core.dao.state.model.blockchain.Block;
+import bisq.core.dao.state.model.blockchain.TxOutputKey;
 
 import bisq.network.p2p.P2PService;
 
@@ -40,6 +41,8 @@ import javax.inject.Inject;
 
 import java.util.function.Consumer;
 
+import javax.annotation.Nullable;
+
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -57,6 +60,8 @@ public class FullNode extends BsqNode {
     private boolean addBlockHandlerAdded;
     private int blocksToParseInBatch;
     private long parseInBatchStartTime;
+    @Nullable
+    private BlockPrefetcher<?> blockPrefetcher;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -95,6 +100,8 @@ public class FullNode extends BsqNode {
     }
 
     public void shutDown() {
+        stopBlockPrefetcher();
+        rpcService.shutDown();
         super.shutDown();
         fullNodeNetworkService.shutDown();
     }
@@ -111,6 +118,8 @@ public class FullNode extends BsqNode {
 
     @Override
     protected void startReOrgFromLastSnapshot() {
+        // The blocks we have prefetched might be from the old chain
+        stopBlockPrefetcher();
         super.startReOrgFromLastSnapshot();
 
         int startBlockHeight = getStartBlockHeight();
@@ -228,34 +237,40 @@ public class FullNode extends BsqNode {
                              Consumer<Block> newBlockHandler,
                              ResultHandler resultHandler,
                              Consumer<Throwable> errorHandler) {
-        parseBlockRecursively(startBlockHeight, chainHeight, newBlockHandler, resultHandler, errorHandler);
-    }
+        stopBlockPrefetcher();
+        // The blocks are requested in parallel but delivered in height order
+        blockPrefetcher = rpcService.requestBtcBlocks(startBlockHeight,
+                chainHeight,
+                new BinaryBlockDecoder.BsqTxFilter() {
+                    @Override
+                    public boolean keepAllTxs(int blockHeight) {
+                        return blockHeight == daoStateService.getGenesisBlockHeight();
+                    }
 
-    private void parseBlockRecursively(int blockHeight,
-                                       int chainHeight,
-                                       Consumer<Block> newBlockHandler,
-                                       ResultHandler resultHandler,
-                                       Consumer<Throwable> errorHandler) {
-        rpcService.requestBtcBlock(blockHeight,
+                    @Override
+                    public boolean isBsqTxOutput(TxOutputKey txOutputKey) {
+                        return daoStateService.isUnspent(txOutputKey);
+                    }
+                },
                 rawBlock -> {
                     try {
                         doParseBlock(rawBlock).ifPresent(newBlockHandler);
-
-                        // Increment blockHeight and recursively call parseBlockAsync until we reach chainHeight
-                        if (blockHeight < chainHeight) {
-                            int newBlockHeight = blockHeight + 1;
-                            parseBlockRecursively(newBlockHeight, chainHeight, newBlockHandler, resultHandler, errorHandler);
-                        } else {
-                            // We are done
-                            resultHandler.handleResult();
-                        }
                     } catch (RequiredReorgFromSnapshotException ignore) {
-                        // If we get a reorg we don't continue to call parseBlockRecursively
+                        // If we get a reorg the prefetcher got stopped at startReOrgFromLastSnapshot and we don't
+                        // receive more blocks
                     }
                 },
+                resultHandler,
                 errorHandler);
     }
 
+    private void stopBlockPrefetcher() {
+        if (blockPrefetcher != null) {
+            blockPrefetcher.stop();
+            blockPrefetcher = null;
+        }
+    }
+
     private void handleError(Throwable throwable) {
         if (throwable instanceof BlockHashNotConnectingException || throwable instanceof BlockHeightNotConnectingException) {
             // We do not escalate that exception as it is handled with the snapshot manager to recover its state.
@@ -27,15 +27,12 @@ import bisq.common.UserThread;
 import bisq.common.handlers.ResultHandler;
 import bisq.common.util.Utilities;
 
-import org.bitcoinj.core.Utils;
-
 import com.neemre.btcdcli4j.core.BitcoindException;
 import com.neemre.btcdcli4j.core.BtcdCli4jVersion;
 import com.neemre.btcdcli4j.core.CommunicationException;
 import com.neemre.btcdcli4j.core.client.BtcdClient;
 import com.neemre.btcdcli4j.core.client.BtcdClientImpl;
 import com.neemre.btcdcli4j.core.domain.RawTransaction;
-import com.neemre.btcdcli4j.core.domain.enums.ScriptTypes;
 import com.neemre.btcdcli4j.daemon.BtcdDaemon;
 import com.neemre.btcdcli4j.daemon.BtcdDaemonImpl;
 import com.neemre.btcdcli4j.daemon.event.BlockListener;
@@ -53,9 +50,14 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -70,6 +72,9 @@ import org.jetbrains.annotations.NotNull;
  */
 @Slf4j
 public class RpcService {
+    // Bitcoin Core handles 4 RPC requests in parallel by default (rpcthreads)
+    public static final int DEFAULT_PARALLEL_BLOCK_REQUESTS = 4;
+
     private final String rpcUser;
     private final String rpcPassword;
     private final String rpcHost;
@@ -80,9 +85,12 @@ public class RpcService {
     private BtcdClient client;
     private BtcdDaemon daemon;
 
-    // We could use multiple threads but then we need to support ordering of results in a queue
-    // Keep that for optimization after measuring performance differences
     private final ListeningExecutorService executor = Utilities.getSingleThreadExecutor("RpcService");
+    // Used for requesting blocks in parallel at the initial parsing. The BlockPrefetcher takes care of the ordering.
+    private final ListeningExecutorService blockRequestExecutor;
+    private final int numParallelBlockRequests;
+    private final boolean useBinaryBlocks;
+    private final BinaryBlockDecoder binaryBlockDecoder;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -95,7 +103,9 @@ public class RpcService {
                       @Named(DaoOptionKeys.RPC_HOST) String rpcHost,
                       @Named(DaoOptionKeys.RPC_PORT) String rpcPort,
                       @Named(DaoOptionKeys.RPC_BLOCK_NOTIFICATION_PORT) String rpcBlockPort,
-                      @Named(DaoOptionKeys.RPC_BLOCK_NOTIFICATION_HOST) String rpcBlockHost) {
+                      @Named(DaoOptionKeys.RPC_BLOCK_NOTIFICATION_HOST) String rpcBlockHost,
+                      @Named(DaoOptionKeys.RPC_PARALLEL_BLOCK_REQUESTS) int numParallelBlockRequests,
+                      @Named(DaoOptionKeys.RPC_BINARY_BLOCKS) boolean useBinaryBlocks) {
         this.rpcUser = preferences.getRpcUser();
         this.rpcPassword = preferences.getRpcPw();
 
@@ -114,6 +124,17 @@ public class RpcService {
         boolean isBlockHostSet = rpcBlockHost != null && !rpcBlockHost.isEmpty();
         this.rpcBlockPort = isBlockPortSet ? rpcBlockPort : "5125";
         this.rpcBlockHost = isBlockHostSet ? rpcBlockHost : "127.0.0.1";
+
+        this.numParallelBlockRequests = Math.max(1, numParallelBlockRequests);
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("RpcService-BlockRequest-%d")
+                .setDaemon(true)
+                .build();
+        blockRequestExecutor = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(this.numParallelBlockRequests, threadFactory));
+
+        this.useBinaryBlocks = useBinaryBlocks;
+        binaryBlockDecoder = new BinaryBlockDecoder(BisqEnvironment.getBaseCurrencyNetwork().getParameters());
     }
 
 
@@ -121,6 +142,12 @@ public class RpcService {
     // API
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    void shutDown() {
+        // Requests which are still running get interrupted. The BlockPrefetcher got stopped before, so their results
+        // would not be used anyway.
+        MoreExecutors.shutdownAndAwaitTermination(blockRequestExecutor, 500, TimeUnit.MILLISECONDS);
+    }
+
     void setup(ResultHandler resultHandler, Consumer<Throwable> errorHandler) {
         ListenableFuture<Void> future = executor.submit(() -> {
             try {
@@ -131,6 +158,9 @@ public class RpcService {
 
                 long startTs = System.currentTimeMillis();
                 PoolingHttpClientConnectionManager cm = new PoolingHttpClientConnectionManager();
+                // Default is 2 connections per route, we need one for each parallel block request
+                cm.setDefaultMaxPerRoute(numParallelBlockRequests + 1);
+                cm.setMaxTotal(numParallelBlockRequests + 1);
                 CloseableHttpClient httpProvider = HttpClients.custom().setConnectionManager(cm).build();
                 Properties nodeConfig = new Properties();
                 nodeConfig.setProperty("node.bitcoind.rpc.protocol", "http");
@@ -224,21 +254,7 @@ public class RpcService {
     void requestBtcBlock(int blockHeight,
                          Consumer<RawBlock> resultHandler,
                          Consumer<Throwable> errorHandler) {
-        ListenableFuture<RawBlock> future = executor.submit(() -> {
-            long startTs = System.currentTimeMillis();
-            String blockHash = client.getBlockHash(blockHeight);
-            com.neemre.btcdcli4j.core.domain.RawBlock rawBtcBlock = client.getBlock(blockHash, 2);
-            List<RawTx> txList = rawBtcBlock.getTx().stream()
-                    .map(e -> getTxFromRawTransaction(e, rawBtcBlock))
-                    .collect(Collectors.toList());
-            log.info("requestBtcBlock from bitcoind at blockHeight {} with {} txs took {} ms",
-                    blockHeight, txList.size(), System.currentTimeMillis() - startTs);
-            return new RawBlock(rawBtcBlock.getHeight(),
-                    rawBtcBlock.getTime() * 1000, // rawBtcBlock.getTime() is in sec but we want ms
-                    rawBtcBlock.getHash(),
-                    rawBtcBlock.getPreviousBlockHash(),
-                    ImmutableList.copyOf(txList));
-        });
+        ListenableFuture<RawBlock> future = executor.submit(() -> getBtcBlock(blockHeight));
 
         Futures.addCallback(future, new FutureCallback<>() {
             @Override
@@ -254,11 +270,80 @@ public class RpcService {
         });
     }
 
+    /**
+     * Requests the blocks from startBlockHeight to chainHeight with up to numParallelBlockRequests requests in
+     * parallel. The blocks are delivered in height order at the UserThread. The caller has to stop the returned
+     * BlockPrefetcher if it does not want to receive the outstanding blocks anymore (e.g. at a reorg).
+     * <p>
+     * If we use binary blocks the bsqTxFilter is applied right before the block gets delivered, so it sees the DAO
+     * state of the previous block. The delivered RawBlock then contains only the txs which can be BSQ txs.
+     */
+    BlockPrefetcher<?> requestBtcBlocks(int startBlockHeight,
+                                        int chainHeight,
+                                        BinaryBlockDecoder.BsqTxFilter bsqTxFilter,
+                                        Consumer<RawBlock> blockHandler,
+                                        ResultHandler resultHandler,
+                                        Consumer<Throwable> errorHandler) {
+        // We prefetch twice as many blocks as we request in parallel so the request threads are still busy while
+        // the UserThread parses the delivered blocks.
+        int maxPrefetchedBlocks = 2 * numParallelBlockRequests;
+        BlockPrefetcher<?> blockPrefetcher;
+        if (useBinaryBlocks) {
+            blockPrefetcher = new BlockPrefetcher<>(blockRequestExecutor,
+                    this::getBinaryBtcBlock,
+                    maxPrefetchedBlocks,
+                    startBlockHeight,
+                    chainHeight,
+                    decodedBlock -> blockHandler.accept(binaryBlockDecoder.toRawBlock(decodedBlock, bsqTxFilter)),
+                    resultHandler,
+                    errorHandler);
+        } else {
+            blockPrefetcher = new BlockPrefetcher<>(blockRequestExecutor,
+                    this::getBtcBlock,
+                    maxPrefetchedBlocks,
+                    startBlockHeight,
+                    chainHeight,
+                    blockHandler,
+                    resultHandler,
+                    errorHandler);
+        }
+        blockPrefetcher.start();
+        return blockPrefetcher;
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    private RawBlock getBtcBlock(int blockHeight) throws BitcoindException, CommunicationException {
+        long startTs = System.currentTimeMillis();
+        String blockHash = client.getBlockHash(blockHeight);
+        com.neemre.btcdcli4j.core.domain.RawBlock rawBtcBlock = client.getBlock(blockHash, 2);
+        List<RawTx> txList = rawBtcBlock.getTx().stream()
+                .map(e -> getTxFromRawTransaction(e, rawBtcBlock))
+                .collect(Collectors.toList());
+        log.info("requestBtcBlock from bitcoind at blockHeight {} with {} txs took {} ms",
+                blockHeight, txList.size(), System.currentTimeMillis() - startTs);
+        return new RawBlock(rawBtcBlock.getHeight(),
+                rawBtcBlock.getTime() * 1000, // rawBtcBlock.getTime() is in sec but we want ms
+                rawBtcBlock.getHash(),
+                rawBtcBlock.getPreviousBlockHash(),
+                ImmutableList.copyOf(txList));
+    }
+
+    private BinaryBlockDecoder.DecodedBlock getBinaryBtcBlock(int blockHeight)
+            throws BitcoindException, CommunicationException {
+        long startTs = System.currentTimeMillis();
+        String blockHash = client.getBlockHash(blockHeight);
+        // With verbosity 0 we get the serialized block as hex
+        String hex = (String) client.getBlock(blockHash, false);
+        BinaryBlockDecoder.DecodedBlock decodedBlock = BinaryBlockDecoder.decode(blockHeight, blockHash, hex);
+        log.info("requestBtcBlock from bitcoind at blockHeight {} with {} txs and {} bytes took {} ms",
+                blockHeight, decodedBlock.getNumTxs(), hex.length() / 2, System.currentTimeMillis() - startTs);
+        return decodedBlock;
+    }
+
     private RawTx getTxFromRawTransaction(RawTransaction rawBtcTx,
                                           com.neemre.btcdcli4j.core.domain.RawBlock rawBtcBlock) {
         String txId = rawBtcTx.getTxId();
@@ -269,20 +354,8 @@ public class RpcService {
                 .stream()
                 .filter(rawInput -> rawInput != null && rawInput.getVOut() != null && rawInput.getTxId() != null)
                 .map(rawInput -> {
-                    // We don't support segWit inputs yet as well as no pay to pubkey txs...
-                    String[] split = rawInput.getScriptSig().getAsm().split("\\[ALL] ");
-                    String pubKeyAsHex;
-                    if (split.length == 2) {
-                        pubKeyAsHex = rawInput.getScriptSig().getAsm().split("\\[ALL] ")[1];
-                    } else {
-                        // If we receive a pay to pubkey tx the pubKey is not included as
-                        // it is in the output already.
-                        // Bitcoin Core creates payToPubKey tx when spending mined coins (regtest)...
-                        pubKeyAsHex = null;
-                        log.debug("pubKeyAsHex is not set as we received a not supported sigScript " +
-                                        "(segWit or payToPubKey tx). txId={}, asm={}",
-                                rawBtcTx.getTxId(), rawInput.getScriptSig().getAsm());
-                    }
+                    String pubKeyAsHex = ScriptDecoder.getPubKeyFromScriptSigAsm(rawBtcTx.getTxId(),
+                            rawInput.getScriptSig().getAsm());
                     return new TxInput(rawInput.getTxId(), rawInput.getVOut(), pubKeyAsHex);
                 })
                 .collect(Collectors.toList());
@@ -291,28 +364,13 @@ public class RpcService {
                 .stream()
                 .filter(e -> e != null && e.getN() != null && e.getValue() != null && e.getScriptPubKey() != null)
                 .map(rawBtcTxOutput -> {
-                            byte[] opReturnData = null;
                             com.neemre.btcdcli4j.core.domain.PubKeyScript scriptPubKey = rawBtcTxOutput.getScriptPubKey();
-                            if (ScriptTypes.NULL_DATA.equals(scriptPubKey.getType()) && scriptPubKey.getAsm() != null) {
-                                String[] chunks = scriptPubKey.getAsm().split(" ");
-                                // We get on testnet a lot of "OP_RETURN 0" data, so we filter those away
-                                if (chunks.length == 2 && "OP_RETURN".equals(chunks[0]) && !"0".equals(chunks[1])) {
-                                    try {
-                                        opReturnData = Utils.HEX.decode(chunks[1]);
-                                    } catch (Throwable t) {
-                                        log.debug("Error at Utils.HEX.decode(chunks[1]): " + t.toString() +
-                                                " / chunks[1]=" + chunks[1] +
-                                                "\nWe get sometimes exceptions with opReturn data, seems BitcoinJ " +
-                                                "cannot handle all " +
-                                                "existing OP_RETURN data, but we ignore them anyway as the OP_RETURN " +
-                                                "data used for DAO transactions are all valid in BitcoinJ");
-                                    }
-                                }
-                            }
                             // We don't support raw MS which are the only case where scriptPubKey.getAddresses()>1
                             String address = scriptPubKey.getAddresses() != null &&
                                     scriptPubKey.getAddresses().size() == 1 ? scriptPubKey.getAddresses().get(0) : null;
                             PubKeyScript pubKeyScript = new PubKeyScript(scriptPubKey);
+                            byte[] opReturnData = ScriptDecoder.getOpReturnData(pubKeyScript.getScriptType(),
+                                    scriptPubKey.getAsm());
                             return new RawTxOutput(rawBtcTxOutput.getN(),
                                     rawBtcTxOutput.getValue().movePointRight(8).longValue(),
                                     rawBtcTx.getTxId(),
@@ -0,0 +1,526 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.core.dao.state.model.blockchain.PubKeyScript;
+import bisq.core.dao.state.model.blockchain.ScriptType;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Utils;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.ByteArrayOutputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+
+/**
+ * Renders scripts the same way as Bitcoin Core does in the json results of its RPC API (asm, type, reqSigs and
+ * addresses of ScriptToAsmStr, Solver and ExtractDestinations in Bitcoin Core 0.17). We need exactly the same data as
+ * with the decoded blocks from Bitcoin Core, as the PubKeyScript and the pubKey of the TxInput are part of the DAO
+ * state.
+ * <p>
+ * Also contains the helpers for extracting the pubKey and the OP_RETURN data from the asm strings which are used for
+ * both the json and the binary blocks.
+ */
+@Slf4j
+class ScriptDecoder {
+    private static final int OP_0 = 0x00;
+    private static final int OP_PUSHDATA1 = 0x4c;
+    private static final int OP_PUSHDATA2 = 0x4d;
+    private static final int OP_PUSHDATA4 = 0x4e;
+    private static final int OP_1 = 0x51;
+    private static final int OP_16 = 0x60;
+    private static final int OP_RETURN = 0x6a;
+    private static final int OP_DUP = 0x76;
+    private static final int OP_EQUAL = 0x87;
+    private static final int OP_EQUALVERIFY = 0x88;
+    private static final int OP_HASH160 = 0xa9;
+    private static final int OP_CHECKSIG = 0xac;
+    private static final int OP_CHECKMULTISIG = 0xae;
+    private static final int OP_INVALIDOPCODE = 0xff;
+    private static final int MAX_SCRIPT_SIZE = 10_000;
+
+    // Names of the opcodes from 0x61 (OP_NOP) to 0xb9 (OP_NOP10)
+    private static final String[] OP_NAMES = {
+            "OP_NOP", "OP_VER", "OP_IF", "OP_NOTIF", "OP_VERIF", "OP_VERNOTIF", "OP_ELSE", "OP_ENDIF", "OP_VERIFY",
+            "OP_RETURN", "OP_TOALTSTACK", "OP_FROMALTSTACK", "OP_2DROP", "OP_2DUP", "OP_3DUP", "OP_2OVER", "OP_2ROT",
+            "OP_2SWAP", "OP_IFDUP", "OP_DEPTH", "OP_DROP", "OP_DUP", "OP_NIP", "OP_OVER", "OP_PICK", "OP_ROLL",
+            "OP_ROT", "OP_SWAP", "OP_TUCK", "OP_CAT", "OP_SUBSTR", "OP_LEFT", "OP_RIGHT", "OP_SIZE", "OP_INVERT",
+            "OP_AND", "OP_OR", "OP_XOR", "OP_EQUAL", "OP_EQUALVERIFY", "OP_RESERVED1", "OP_RESERVED2", "OP_1ADD",
+            "OP_1SUB", "OP_2MUL", "OP_2DIV", "OP_NEGATE", "OP_ABS", "OP_NOT", "OP_0NOTEQUAL", "OP_ADD", "OP_SUB",
+            "OP_MUL", "OP_DIV", "OP_MOD", "OP_LSHIFT", "OP_RSHIFT", "OP_BOOLAND", "OP_BOOLOR", "OP_NUMEQUAL",
+            "OP_NUMEQUALVERIFY", "OP_NUMNOTEQUAL", "OP_LESSTHAN", "OP_GREATERTHAN", "OP_LESSTHANOREQUAL",
+            "OP_GREATERTHANOREQUAL", "OP_MIN", "OP_MAX", "OP_WITHIN", "OP_RIPEMD160", "OP_SHA1", "OP_SHA256",
+            "OP_HASH160", "OP_HASH256", "OP_CODESEPARATOR", "OP_CHECKSIG", "OP_CHECKSIGVERIFY", "OP_CHECKMULTISIG",
+            "OP_CHECKMULTISIGVERIFY", "OP_NOP1", "OP_CHECKLOCKTIMEVERIFY", "OP_CHECKSEQUENCEVERIFY", "OP_NOP4",
+            "OP_NOP5", "OP_NOP6", "OP_NOP7", "OP_NOP8", "OP_NOP9", "OP_NOP10"
+    };
+
+    private static final String BECH32_CHARSET = "qpzry9x8gf2tvdw0s3jn54khce6mua7l";
+
+    private final NetworkParameters params;
+    private final String bech32Hrp;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    ScriptDecoder(NetworkParameters params) {
+        this.params = params;
+        switch (params.getId()) {
+            case NetworkParameters.ID_MAINNET:
+                bech32Hrp = "bc";
+                break;
+            case NetworkParameters.ID_TESTNET:
+                bech32Hrp = "tb";
+                break;
+            default:
+                bech32Hrp = "bcrt";
+                break;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Asm helpers
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // We don't support segWit inputs yet as well as no pay to pubkey txs...
+    @Nullable
+    static String getPubKeyFromScriptSigAsm(String txId, String asm) {
+        String[] split = asm.split("\\[ALL] ");
+        if (split.length == 2)
+            return split[1];
+
+        // If we receive a pay to pubkey tx the pubKey is not included as
+        // it is in the output already.
+        // Bitcoin Core creates payToPubKey tx when spending mined coins (regtest)...
+        log.debug("pubKeyAsHex is not set as we received a not supported sigScript " +
+                "(segWit or payToPubKey tx). txId={}, asm={}", txId, asm);
+        return null;
+    }
+
+    @Nullable
+    static byte[] getOpReturnData(ScriptType scriptType, @Nullable String asm) {
+        if (ScriptType.NULL_DATA.equals(scriptType) && asm != null) {
+            String[] chunks = asm.split(" ");
+            // We get on testnet a lot of "OP_RETURN 0" data, so we filter those away
+            if (chunks.length == 2 && "OP_RETURN".equals(chunks[0]) && !"0".equals(chunks[1])) {
+                try {
+                    return Utils.HEX.decode(chunks[1]);
+                } catch (Throwable t) {
+                    log.debug("Error at Utils.HEX.decode(chunks[1]): " + t.toString() +
+                            " / chunks[1]=" + chunks[1] +
+                            "\nWe get sometimes exceptions with opReturn data, seems BitcoinJ " +
+                            "cannot handle all " +
+                            "existing OP_RETURN data, but we ignore them anyway as the OP_RETURN " +
+                            "data used for DAO transactions are all valid in BitcoinJ");
+                }
+            }
+        }
+        return null;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Script decoding
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    PubKeyScript toPubKeyScript(byte[] script) {
+        String asm = toAsm(script, false);
+        String hex = Utils.HEX.encode(script);
+        List<byte[]> solutions = new ArrayList<>();
+        ScriptType scriptType = solve(script, solutions);
+        switch (scriptType) {
+            case PUB_KEY:
+                return new PubKeyScript(1, scriptType,
+                        ImmutableList.of(new Address(params, Utils.sha256hash160(solutions.get(0))).toString()), asm, hex);
+            case PUB_KEY_HASH:
+                return new PubKeyScript(1, scriptType,
+                        ImmutableList.of(new Address(params, solutions.get(0)).toString()), asm, hex);
+            case SCRIPT_HASH:
+                return new PubKeyScript(1, scriptType,
+                        ImmutableList.of(Address.fromP2SHHash(params, solutions.get(0)).toString()), asm, hex);
+            case WITNESS_V0_KEYHASH:
+            case WITNESS_V0_SCRIPTHASH:
+                return new PubKeyScript(1, scriptType,
+                        ImmutableList.of(toSegwitAddress(0, solutions.get(0))), asm, hex);
+            case WITNESS_UNKNOWN:
+                return new PubKeyScript(1, scriptType,
+                        ImmutableList.of(toSegwitAddress(solutions.get(0)[0], solutions.get(1))), asm, hex);
+            case MULTISIG:
+                ImmutableList.Builder<String> addresses = ImmutableList.builder();
+                solutions.subList(1, solutions.size())
+                        .forEach(pubKey -> addresses.add(new Address(params, Utils.sha256hash160(pubKey)).toString()));
+                return new PubKeyScript(solutions.get(0)[0], scriptType, addresses.build(), asm, hex);
+            default:
+                // No destinations for NULL_DATA and NONSTANDARD
+                return new PubKeyScript(0, scriptType, null, asm, hex);
+        }
+    }
+
+    // ScriptToAsmStr of Bitcoin Core. We decode the sighash type only for the scriptSig of inputs.
+    static String toAsm(byte[] script, boolean attemptSighashDecode) {
+        StringBuilder sb = new StringBuilder();
+        ScriptReader reader = new ScriptReader(script);
+        boolean isUnspendable = (script.length > 0 && (script[0] & 0xff) == OP_RETURN) ||
+                script.length > MAX_SCRIPT_SIZE;
+        while (reader.hasNext()) {
+            if (sb.length() > 0)
+                sb.append(' ');
+
+            if (!reader.next()) {
+                sb.append("[error]");
+                break;
+            }
+
+            int opcode = reader.opcode;
+            if (opcode <= OP_PUSHDATA4) {
+                byte[] data = reader.data;
+                if (data.length <= 4) {
+                    sb.append(decodeScriptNum(data));
+                } else if (attemptSighashDecode && !isUnspendable && isValidSignatureEncoding(data) &&
+                        isDefinedHashtype(data)) {
+                    String sigHashType = getSigHashTypeName(data[data.length - 1] & 0xff);
+                    if (sigHashType != null) {
+                        sb.append(Utils.HEX.encode(Arrays.copyOf(data, data.length - 1)))
+                                .append('[').append(sigHashType).append(']');
+                    } else {
+                        sb.append(Utils.HEX.encode(data));
+                    }
+                } else {
+                    sb.append(Utils.HEX.encode(data));
+                }
+            } else {
+                sb.append(getOpName(opcode));
+            }
+        }
+        return sb.toString();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Solver of Bitcoin Core
+    private static ScriptType solve(byte[] script, List<byte[]> solutions) {
+        int length = script.length;
+        if (length == 23 && (script[0] & 0xff) == OP_HASH160 && script[1] == 20 && (script[22] & 0xff) == OP_EQUAL) {
+            solutions.add(Arrays.copyOfRange(script, 2, 22));
+            return ScriptType.SCRIPT_HASH;
+        }
+
+        if (length >= 4 && length <= 42 && isOpN(script[0] & 0xff, true) && (script[1] & 0xff) + 2 == length) {
+            int witnessVersion = decodeOpN(script[0] & 0xff);
+            byte[] witnessProgram = Arrays.copyOfRange(script, 2, length);
+            if (witnessVersion == 0 && witnessProgram.length == 20) {
+                solutions.add(witnessProgram);
+                return ScriptType.WITNESS_V0_KEYHASH;
+            }
+            if (witnessVersion == 0 && witnessProgram.length == 32) {
+                solutions.add(witnessProgram);
+                return ScriptType.WITNESS_V0_SCRIPTHASH;
+            }
+            if (witnessVersion != 0) {
+                solutions.add(new byte[]{(byte) witnessVersion});
+                solutions.add(witnessProgram);
+                return ScriptType.WITNESS_UNKNOWN;
+            }
+            return ScriptType.NONSTANDARD;
+        }
+
+        if (length >= 1 && (script[0] & 0xff) == OP_RETURN && isPushOnly(script, 1))
+            return ScriptType.NULL_DATA;
+
+        if ((length == 67 && script[0] == 65 || length == 35 && script[0] == 33) &&
+                (script[length - 1] & 0xff) == OP_CHECKSIG) {
+            byte[] pubKey = Arrays.copyOfRange(script, 1, length - 1);
+            if (isValidPubKeySize(pubKey)) {
+                solutions.add(pubKey);
+                return ScriptType.PUB_KEY;
+            }
+        }
+
+        if (length == 25 && (script[0] & 0xff) == OP_DUP && (script[1] & 0xff) == OP_HASH160 && script[2] == 20 &&
+                (script[23] & 0xff) == OP_EQUALVERIFY && (script[24] & 0xff) == OP_CHECKSIG) {
+            solutions.add(Arrays.copyOfRange(script, 3, 23));
+            return ScriptType.PUB_KEY_HASH;
+        }
+
+        if (matchMultisig(script, solutions))
+            return ScriptType.MULTISIG;
+
+        solutions.clear();
+        return ScriptType.NONSTANDARD;
+    }
+
+    private static boolean matchMultisig(byte[] script, List<byte[]> solutions) {
+        if (script.length < 1 || (script[script.length - 1] & 0xff) != OP_CHECKMULTISIG)
+            return false;
+
+        ScriptReader reader = new ScriptReader(script);
+        if (!reader.next() || !isOpN(reader.opcode, false))
+            return false;
+
+        int required = decodeOpN(reader.opcode);
+        List<byte[]> pubKeys = new ArrayList<>();
+        boolean hasNext;
+        while ((hasNext = reader.next()) && isValidPubKeySize(reader.data)) {
+            pubKeys.add(reader.data);
+        }
+        if (!hasNext || !isOpN(reader.opcode, false))
+            return false;
+
+        int keys = decodeOpN(reader.opcode);
+        if (pubKeys.size() != keys || keys < required || reader.position + 1 != script.length)
+            return false;
+
+        solutions.add(new byte[]{(byte) required});
+        solutions.addAll(pubKeys);
+        return true;
+    }
+
+    private static boolean isPushOnly(byte[] script, int offset) {
+        ScriptReader reader = new ScriptReader(script);
+        reader.position = offset;
+        while (reader.hasNext()) {
+            if (!reader.next() || reader.opcode > OP_16)
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isOpN(int opcode, boolean includeOp0) {
+        return (includeOp0 && opcode == OP_0) || (opcode >= OP_1 && opcode <= OP_16);
+    }
+
+    private static int decodeOpN(int opcode) {
+        return opcode == OP_0 ? 0 : opcode - (OP_1 - 1);
+    }
+
+    private static boolean isValidPubKeySize(byte[] pubKey) {
+        if (pubKey.length == 0)
+            return false;
+
+        int header = pubKey[0];
+        if (header == 2 || header == 3)
+            return pubKey.length == 33;
+        if (header == 4 || header == 6 || header == 7)
+            return pubKey.length == 65;
+        return false;
+    }
+
+    // CScriptNum of Bitcoin Core: little endian with the sign in the most significant bit
+    private static long decodeScriptNum(byte[] data) {
+        if (data.length == 0)
+            return 0;
+
+        long result = 0;
+        for (int i = 0; i < data.length; i++) {
+            result |= ((long) (data[i] & 0xff)) << (8 * i);
+        }
+        if ((data[data.length - 1] & 0x80) != 0)
+            return -(result & ~(0x80L << (8 * (data.length - 1))));
+        return result;
+    }
+
+    // BIP66 strict DER encoding
+    private static boolean isValidSignatureEncoding(byte[] sig) {
+        if (sig.length < 9 || sig.length > 73)
+            return false;
+        if ((sig[0] & 0xff) != 0x30 || (sig[1] & 0xff) != sig.length - 3)
+            return false;
+
+        int lenR = sig[3] & 0xff;
+        if (5 + lenR >= sig.length)
+            return false;
+
+        int lenS = sig[5 + lenR] & 0xff;
+        if (lenR + lenS + 7 != sig.length)
+            return false;
+        if (sig[2] != 0x02 || lenR == 0 || (sig[4] & 0x80) != 0)
+            return false;
+        if (lenR > 1 && sig[4] == 0x00 && (sig[5] & 0x80) == 0)
+            return false;
+        if (sig[lenR + 4] != 0x02 || lenS == 0 || (sig[lenR + 6] & 0x80) != 0)
+            return false;
+        return !(lenS > 1 && sig[lenR + 6] == 0x00 && (sig[lenR + 7] & 0x80) == 0);
+    }
+
+    private static boolean isDefinedHashtype(byte[] sig) {
+        int hashType = sig[sig.length - 1] & 0x7f;
+        return hashType >= 1 && hashType <= 3;
+    }
+
+    @Nullable
+    private static String getSigHashTypeName(int sigHashType) {
+        switch (sigHashType) {
+            case 0x01:
+                return "ALL";
+            case 0x81:
+                return "ALL|ANYONECANPAY";
+            case 0x02:
+                return "NONE";
+            case 0x82:
+                return "NONE|ANYONECANPAY";
+            case 0x03:
+                return "SINGLE";
+            case 0x83:
+                return "SINGLE|ANYONECANPAY";
+            default:
+                return null;
+        }
+    }
+
+    private static String getOpName(int opcode) {
+        if (opcode == 0x4f)
+            return "-1";
+        if (opcode == 0x50)
+            return "OP_RESERVED";
+        if (opcode >= OP_1 && opcode <= OP_16)
+            return String.valueOf(decodeOpN(opcode));
+        if (opcode >= 0x61 && opcode <= 0xb9)
+            return OP_NAMES[opcode - 0x61];
+        if (opcode == OP_INVALIDOPCODE)
+            return "OP_INVALIDOPCODE";
+        return "OP_UNKNOWN";
+    }
+
+    // Segwit addresses (BIP173). Bitcoin Core 0.17 uses bech32 for all witness versions.
+    private String toSegwitAddress(int witnessVersion, byte[] witnessProgram) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(witnessVersion);
+        // Convert the 8 bit bytes to 5 bit groups with padding
+        int accumulator = 0;
+        int bits = 0;
+        for (byte b : witnessProgram) {
+            accumulator = (accumulator << 8) | (b & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                data.write((accumulator >> bits) & 0x1f);
+            }
+        }
+        if (bits > 0)
+            data.write((accumulator << (5 - bits)) & 0x1f);
+
+        byte[] values = data.toByteArray();
+        int polymod = bech32Polymod(bech32ExpandHrp(values)) ^ 1;
+        StringBuilder sb = new StringBuilder(bech32Hrp).append('1');
+        for (byte value : values) {
+            sb.append(BECH32_CHARSET.charAt(value));
+        }
+        for (int i = 0; i < 6; i++) {
+            sb.append(BECH32_CHARSET.charAt((polymod >> (5 * (5 - i))) & 0x1f));
+        }
+        return sb.toString();
+    }
+
+    // Returns the expanded hrp followed by the values and room for the checksum
+    private byte[] bech32ExpandHrp(byte[] values) {
+        int hrpLength = bech32Hrp.length();
+        byte[] result = new byte[hrpLength * 2 + 1 + values.length + 6];
+        for (int i = 0; i < hrpLength; i++) {
+            result[i] = (byte) (bech32Hrp.charAt(i) >> 5);
+            result[i + hrpLength + 1] = (byte) (bech32Hrp.charAt(i) & 0x1f);
+        }
+        System.arraycopy(values, 0, result, hrpLength * 2 + 1, values.length);
+        return result;
+    }
+
+    private static int bech32Polymod(byte[] values) {
+        int[] generator = {0x3b6a57b2, 0x26508e6d, 0x1ea119fa, 0x3d4233dd, 0x2a1462b3};
+        int checksum = 1;
+        for (byte value : values) {
+            int top = checksum >>> 25;
+            checksum = ((checksum & 0x1ffffff) << 5) ^ value;
+            for (int i = 0; i < 5; i++) {
+                if (((top >>> i) & 1) != 0)
+                    checksum ^= generator[i];
+            }
+        }
+        return checksum;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // ScriptReader
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // GetScriptOp of Bitcoin Core
+    private static class ScriptReader {
+        private final byte[] script;
+        private int position;
+        private int opcode;
+        private byte[] data;
+
+        ScriptReader(byte[] script) {
+            this.script = script;
+        }
+
+        boolean hasNext() {
+            return position < script.length;
+        }
+
+        boolean next() {
+            opcode = OP_INVALIDOPCODE;
+            data = new byte[0];
+            if (position >= script.length)
+                return false;
+
+            int op = script[position++] & 0xff;
+            if (op <= OP_PUSHDATA4) {
+                long size;
+                if (op < OP_PUSHDATA1) {
+                    size = op;
+                } else if (op == OP_PUSHDATA1) {
+                    if (script.length - position < 1)
+                        return false;
+                    size = script[position] & 0xff;
+                    position += 1;
+                } else if (op == OP_PUSHDATA2) {
+                    if (script.length - position < 2)
+                        return false;
+                    size = (script[position] & 0xff) | (script[position + 1] & 0xff) << 8;
+                    position += 2;
+                } else {
+                    if (script.length - position < 4)
+                        return false;
+                    size = Utils.readUint32(script, position);
+                    position += 4;
+                }
+                if (script.length - position < size)
+                    return false;
+                data = Arrays.copyOfRange(script, position, position + (int) size);
+                position += size;
+            }
+            opcode = op;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full.network;
+
+import bisq.core.dao.node.full.RawBlock;
+import bisq.core.dao.state.DaoStateService;
+import bisq.core.dao.state.model.blockchain.Block;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Caches the RawBlocks and their proto messages we send in GetBlocksResponses to lite nodes.
+ * <p>
+ * After a release many lite nodes request blocks from about the same height. Without the cache we converted each
+ * block to a RawBlock and its proto message again for each request. We keep chunks of CHUNK_SIZE consecutive blocks,
+ * so overlapping requests share the chunks. A chunk is only cached once all its blocks are parsed. The blocks
+ * above the last full chunk get converted at each request.
+ * <p>
+ * A chunk is valid as long as the last block of the chunk has still the same hash. The blocks are linked by the
+ * previous block hash, so after a reorg or after applying a snapshot any changed block would lead to a different hash
+ * at the end of the chunk.
+ * <p>
+ * Requests are handled on the user thread, so we do not need to synchronize and identical concurrent requests are
+ * served from the chunks created by the first one.
+ */
+@Slf4j
+class BlocksResponseCache {
+    static final int CHUNK_SIZE = 100;
+    // With 100 blocks per chunk we keep the last 20000 requested blocks
+    private static final int MAX_CHUNKS = 200;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Blocks
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Getter
+    static class Blocks {
+        private final List<RawBlock> rawBlocks = new ArrayList<>();
+        private final List<protobuf.BaseBlock> protoBlocks = new ArrayList<>();
+
+        private void add(Chunk chunk, int fromIndex, int toIndex) {
+            rawBlocks.addAll(chunk.rawBlocks.subList(fromIndex, toIndex));
+            protoBlocks.addAll(chunk.protoBlocks.subList(fromIndex, toIndex));
+        }
+    }
+
+    private static class Chunk {
+        private final String lastBlockHash;
+        private final ImmutableList<RawBlock> rawBlocks;
+        private final ImmutableList<protobuf.BaseBlock> protoBlocks;
+
+        private Chunk(List<Block> blocks) {
+            lastBlockHash = blocks.get(blocks.size() - 1).getHash();
+            ImmutableList.Builder<RawBlock> rawBlocksBuilder = ImmutableList.builder();
+            ImmutableList.Builder<protobuf.BaseBlock> protoBlocksBuilder = ImmutableList.builder();
+            blocks.forEach(block -> {
+                RawBlock rawBlock = RawBlock.fromBlock(block);
+                rawBlocksBuilder.add(rawBlock);
+                protoBlocksBuilder.add(rawBlock.toProtoMessage());
+            });
+            rawBlocks = rawBlocksBuilder.build();
+            protoBlocks = protoBlocksBuilder.build();
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Class fields
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private final DaoStateService daoStateService;
+    // Key is the index of the chunk, access ordered so we evict the least recently used chunk
+    private final Map<Integer, Chunk> chunks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Chunk> eldest) {
+            return size() > MAX_CHUNKS;
+        }
+    };
+    @Getter
+    private long numChunkHits;
+    @Getter
+    private long numChunkMisses;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    BlocksResponseCache(DaoStateService daoStateService) {
+        this.daoStateService = daoStateService;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Same blocks as daoStateService.getBlocksFromBlockHeight would deliver
+    Blocks getBlocks(int fromBlockHeight, int numMaxBlocks) {
+        Blocks result = new Blocks();
+        if (daoStateService.getBlocks().isEmpty())
+            return result;
+
+        int firstHeight = daoStateService.getBlocks().getFirst().getHeight();
+        int lastHeight = daoStateService.getBlockHeightOfLastBlock();
+        int height = Math.max(fromBlockHeight, firstHeight);
+        long toHeight = Math.min(lastHeight, (long) height + numMaxBlocks - 1);
+        while (height <= toHeight) {
+            // Chunks are aligned to the first block, so all nodes with the same genesis use the same chunks
+            int chunkIndex = (height - firstHeight) / CHUNK_SIZE;
+            int chunkStartHeight = firstHeight + chunkIndex * CHUNK_SIZE;
+            int chunkEndHeight = chunkStartHeight + CHUNK_SIZE - 1;
+            int endHeight = (int) Math.min(toHeight, chunkEndHeight);
+            if (chunkEndHeight <= lastHeight) {
+                Chunk chunk = getChunk(chunkIndex, chunkStartHeight, chunkEndHeight);
+                result.add(chunk, height - chunkStartHeight, endHeight - chunkStartHeight + 1);
+            } else {
+                // The chunk at the chain tip is not complete yet, we do not cache it
+                Chunk tip = new Chunk(daoStateService.getBlocksFromBlockHeight(height, endHeight - height + 1));
+                result.add(tip, 0, tip.rawBlocks.size());
+            }
+            height = endHeight + 1;
+        }
+        return result;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private Chunk getChunk(int chunkIndex, int chunkStartHeight, int chunkEndHeight) {
+        Chunk chunk = chunks.get(chunkIndex);
+        Optional<Block> lastBlock = daoStateService.getBlockAtHeight(chunkEndHeight);
+        if (chunk != null && lastBlock.isPresent() && chunk.lastBlockHash.equals(lastBlock.get().getHash())) {
+            numChunkHits++;
+            return chunk;
+        }
+
+        if (chunk != null)
+            log.info("Blocks of cached chunk at height {} have changed. We replace the chunk.", chunkStartHeight);
+
+        numChunkMisses++;
+        chunk = new Chunk(daoStateService.getBlocksFromBlockHeight(chunkStartHeight, CHUNK_SIZE));
+        chunks.put(chunkIndex, chunk);
+        return chunk;
+    }
+}
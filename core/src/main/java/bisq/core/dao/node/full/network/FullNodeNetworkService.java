@@ -60,7 +60,7 @@ public class FullNodeNetworkService implements MessageListener, PeerManager.List
     private final PeerManager peerManager;
     private final Broadcaster broadcaster;
     private final MissingDataRequestService missingDataRequestService;
-    private final DaoStateService daoStateService;
+    private final BlocksResponseCache blocksResponseCache;
 
     // Key is connection UID
     private final Map<String, GetBlocksRequestHandler> getBlocksRequestHandlers = new HashMap<>();
@@ -81,7 +81,7 @@ public class FullNodeNetworkService implements MessageListener, PeerManager.List
         this.peerManager = peerManager;
         this.broadcaster = broadcaster;
         this.missingDataRequestService = missingDataRequestService;
-        this.daoStateService = daoStateService;
+        this.blocksResponseCache = new BlocksResponseCache(daoStateService);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -141,7 +141,7 @@ public class FullNodeNetworkService implements MessageListener, PeerManager.List
                 final String uid = connection.getUid();
                 if (!getBlocksRequestHandlers.containsKey(uid)) {
                     GetBlocksRequestHandler requestHandler = new GetBlocksRequestHandler(networkNode,
-                            daoStateService,
+                            blocksResponseCache,
                             new GetBlocksRequestHandler.Listener() {
                                 @Override
                                 public void onComplete() {
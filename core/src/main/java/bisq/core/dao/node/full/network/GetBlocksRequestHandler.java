@@ -17,11 +17,8 @@
 
 package bisq.core.dao.node.full.network;
 
-import bisq.core.dao.node.full.RawBlock;
 import bisq.core.dao.node.messages.GetBlocksRequest;
 import bisq.core.dao.node.messages.GetBlocksResponse;
-import bisq.core.dao.state.DaoStateService;
-import bisq.core.dao.state.model.blockchain.Block;
 
 import bisq.network.p2p.network.CloseConnectionReason;
 import bisq.network.p2p.network.Connection;
@@ -34,10 +31,7 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
 
-import java.util.LinkedList;
-import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -67,7 +61,7 @@ class GetBlocksRequestHandler {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private final NetworkNode networkNode;
-    private final DaoStateService daoStateService;
+    private final BlocksResponseCache blocksResponseCache;
     private final Listener listener;
     private Timer timeoutTimer;
     private boolean stopped;
@@ -77,9 +71,9 @@ class GetBlocksRequestHandler {
     // Constructor
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    public GetBlocksRequestHandler(NetworkNode networkNode, DaoStateService daoStateService, Listener listener) {
+    public GetBlocksRequestHandler(NetworkNode networkNode, BlocksResponseCache blocksResponseCache, Listener listener) {
         this.networkNode = networkNode;
-        this.daoStateService = daoStateService;
+        this.blocksResponseCache = blocksResponseCache;
         this.listener = listener;
     }
 
@@ -90,9 +84,9 @@ class GetBlocksRequestHandler {
 
     public void onGetBlocksRequest(GetBlocksRequest getBlocksRequest, final Connection connection) {
         // We limit number of blocks to 6000 which is about 1.5 month.
-        List<Block> blocks = new LinkedList<>(daoStateService.getBlocksFromBlockHeight(getBlocksRequest.getFromBlockHeight(), 6000));
-        List<RawBlock> rawBlocks = blocks.stream().map(RawBlock::fromBlock).collect(Collectors.toList());
-        GetBlocksResponse getBlocksResponse = new GetBlocksResponse(rawBlocks, getBlocksRequest.getNonce());
+        BlocksResponseCache.Blocks blocks = blocksResponseCache.getBlocks(getBlocksRequest.getFromBlockHeight(), 6000);
+        GetBlocksResponse getBlocksResponse = new GetBlocksResponse(blocks.getRawBlocks(), blocks.getProtoBlocks(),
+                getBlocksRequest.getNonce());
         log.info("Received GetBlocksRequest from {} for blocks from height {}",
                 connection.getPeersNodeAddressOptional(), getBlocksRequest.getFromBlockHeight());
         if (timeoutTimer == null) {
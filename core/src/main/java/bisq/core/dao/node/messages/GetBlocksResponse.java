@@ -29,19 +29,32 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
+import javax.annotation.Nullable;
+
 @EqualsAndHashCode(callSuper = true)
 @Getter
 @Slf4j
 public final class GetBlocksResponse extends NetworkEnvelope implements DirectMessage, ExtendedDataSizePermission {
     private final List<RawBlock> blocks;
     private final int requestNonce;
+    // Proto messages of the blocks if the full node has them already (see BlocksResponseCache). Same content as blocks,
+    // so they are not part of equals.
+    @Nullable
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    private final List<protobuf.BaseBlock> protoBlocks;
 
     public GetBlocksResponse(List<RawBlock> blocks, int requestNonce) {
-        this(blocks, requestNonce, Version.getP2PMessageVersion());
+        this(blocks, null, requestNonce, Version.getP2PMessageVersion());
+    }
+
+    public GetBlocksResponse(List<RawBlock> blocks, List<protobuf.BaseBlock> protoBlocks, int requestNonce) {
+        this(blocks, protoBlocks, requestNonce, Version.getP2PMessageVersion());
     }
 
 
@@ -49,9 +62,13 @@ public final class GetBlocksResponse extends NetworkEnvelope implements DirectMe
     // PROTO BUFFER
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    private GetBlocksResponse(List<RawBlock> blocks, int requestNonce, int messageVersion) {
+    private GetBlocksResponse(List<RawBlock> blocks,
+                              @Nullable List<protobuf.BaseBlock> protoBlocks,
+                              int requestNonce,
+                              int messageVersion) {
         super(messageVersion);
         this.blocks = blocks;
+        this.protoBlocks = protoBlocks;
         this.requestNonce = requestNonce;
     }
 
@@ -59,9 +76,11 @@ public final class GetBlocksResponse extends NetworkEnvelope implements DirectMe
     public protobuf.NetworkEnvelope toProtoNetworkEnvelope() {
         return getNetworkEnvelopeBuilder()
                 .setGetBlocksResponse(protobuf.GetBlocksResponse.newBuilder()
-                        .addAllRawBlocks(blocks.stream()
-                                .map(RawBlock::toProtoMessage)
-                                .collect(Collectors.toList()))
+                        .addAllRawBlocks(protoBlocks != null ?
+                                protoBlocks :
+                                blocks.stream()
+                                        .map(RawBlock::toProtoMessage)
+                                        .collect(Collectors.toList()))
                         .setRequestNonce(requestNonce))
                 .build();
     }
@@ -74,6 +93,7 @@ public final class GetBlocksResponse extends NetworkEnvelope implements DirectMe
         return new GetBlocksResponse(proto.getRawBlocksList().isEmpty() ?
                 new ArrayList<>() :
                 list,
+                null,
                 proto.getRequestNonce(),
                 messageVersion);
     }
@@ -40,13 +40,24 @@ import bisq.core.util.ParsingUtils;
 
 import org.bitcoinj.core.Coin;
 
+import com.google.protobuf.Message;
+
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+
 import javax.inject.Inject;
 
+import java.nio.charset.StandardCharsets;
+
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TreeMap;
@@ -74,6 +85,38 @@ public class DaoStateService implements DaoSetupService {
     private boolean parseBlockChainComplete;
     private boolean allowDaoStateChange;
 
+    // Index of the blocks by height and by hash. The parser only adds blocks which connect to the last block, so the
+    // heights are ascending without gaps and the position of a block in blocksByHeight is its height minus the height
+    // of the first block.
+    private final List<Block> blocksByHeight = new ArrayList<>();
+    private final Map<String, Block> blocksByHash = new HashMap<>();
+
+    // Index of the txs of all blocks by txId. It is derived from the blocks, so it is not part of the DaoState.
+    // The parser adds the txs to the last block after the block got added, so we index the txs of the last block
+    // lazily at lookups.
+    private final Map<String, Tx> txCache = new HashMap<>();
+    @Nullable
+    private Block lastIndexedBlock;
+    private int numIndexedTxsOfLastIndexedBlock;
+
+    // Txs and tx outputs by their type and the totals of the burnt BSQ, maintained together with the txCache.
+    // Txs and tx outputs are immutable, so their type does not change after they got indexed. The indexes are in
+    // the order of the blocks.
+    private final Map<TxType, List<Tx>> txsByTxType = new EnumMap<>(TxType.class);
+    private final Map<TxOutputType, List<TxOutput>> txOutputsByTxOutputType = new EnumMap<>(TxOutputType.class);
+    private final List<Tx> burntFeeTxs = new ArrayList<>();
+    private long totalBurntFee;
+    private long totalInvalidatedBsq;
+
+    // Order independent hashes of the UTXO set and the spent info map. We update them at each change so we do not
+    // need to serialize the full maps for the DAO state hash chain.
+    private final MultisetHash unspentTxOutputsHash = new MultisetHash();
+    private final MultisetHash spentInfosHash = new MultisetHash();
+
+    // Ids of the txs which got outputs added to or removed from the UTXO set or got a bond confiscated at the current
+    // block. Besides the new txs those can be txs of earlier blocks, e.g. if their outputs got spent or issued.
+    private final Set<String> txIdsWithChangedTxOutputs = new HashSet<>();
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
@@ -84,6 +127,10 @@ public class DaoStateService implements DaoSetupService {
         this.daoState = daoState;
         this.genesisTxInfo = genesisTxInfo;
         this.bsqFormatter = bsqFormatter;
+
+        rebuildBlockIndex();
+        rebuildTxCache();
+        rebuildStateHashes();
     }
 
 
@@ -117,6 +164,9 @@ public class DaoStateService implements DaoSetupService {
 
         daoState.getBlocks().clear();
         daoState.getBlocks().addAll(snapshot.getBlocks());
+        rebuildBlockIndex();
+        rebuildTxCache();
+        txIdsWithChangedTxOutputs.clear();
 
         daoState.getCycles().clear();
         daoState.getCycles().addAll(snapshot.getCycles());
@@ -141,20 +191,31 @@ public class DaoStateService implements DaoSetupService {
 
         daoState.getDecryptedBallotsWithMeritsList().clear();
         daoState.getDecryptedBallotsWithMeritsList().addAll(snapshot.getDecryptedBallotsWithMeritsList());
+
+        rebuildStateHashes();
     }
 
     public DaoState getClone() {
         return DaoState.getClone(daoState);
     }
 
-    DaoState getClone(DaoState snapshotCandidate) {
-        return DaoState.getClone(snapshotCandidate);
+    // Copy which shares the immutable elements with our daoState. Must only be called after a block is completed.
+    public DaoState getSnapshot() {
+        return DaoState.getSnapshot(daoState);
     }
 
     public byte[] getSerializedStateForHashChain() {
         return daoState.getSerializedStateForHashChain();
     }
 
+    // Same content as getSerializedStateForHashChain but the UTXO set and the spent info map are represented by
+    // their incrementally maintained hashes. The costs do not grow with the size of those maps.
+    public byte[] getSerializedStateForIncrementalHashChain() {
+        return Bytes.concat(daoState.getSerializedStateForHashChainExcludingTxOutputs(),
+                unspentTxOutputsHash.getDigest(),
+                spentInfosHash.getDigest());
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // ChainHeight
@@ -208,6 +269,7 @@ public class DaoStateService implements DaoSetupService {
     public void onNewBlockHeight(int blockHeight) {
         allowDaoStateChange = true;
         daoState.setChainHeight(blockHeight);
+        txIdsWithChangedTxOutputs.clear();
         daoStateListeners.forEach(listener -> listener.onNewBlockHeight(blockHeight));
     }
 
@@ -219,7 +281,11 @@ public class DaoStateService implements DaoSetupService {
                     "We ignore that block as the first block need to be the genesis block. " +
                     "That might happen in edge cases at reorgs. Received block={}", block);
         } else {
+            // We complete the index of the previous block before we add the new one
+            updateTxCache();
             daoState.getBlocks().add(block);
+            indexBlock(block);
+            indexTxs(block);
 
             if (parseBlockChainComplete)
                 log.info("New Block added at blockHeight {}", block.getHeight());
@@ -228,6 +294,8 @@ public class DaoStateService implements DaoSetupService {
 
     // Third we get the onParseBlockComplete called after all rawTxs of blocks have been parsed
     public void onParseBlockComplete(Block block) {
+        updateTxCache();
+
         if (parseBlockChainComplete)
             log.info("Parse block completed: Block height {}, {} BSQ transactions.", block.getHeight(), block.getTxs().size());
 
@@ -275,7 +343,7 @@ public class DaoStateService implements DaoSetupService {
      * {@code false}.
      */
     public boolean isBlockHashKnown(String blockHash) {
-        return getBlocks().stream().anyMatch(block -> block.getHash().equals(blockHash));
+        return blocksByHash.containsKey(blockHash);
     }
 
     public Optional<Block> getLastBlock() {
@@ -290,17 +358,20 @@ public class DaoStateService implements DaoSetupService {
     }
 
     public Optional<Block> getBlockAtHeight(int height) {
-        return getBlocks().stream()
-                .filter(block -> block.getHeight() == height)
-                .findAny();
+        int index = getBlockIndex(height);
+        if (index >= blocksByHeight.size())
+            return Optional.empty();
+
+        Block block = blocksByHeight.get(index);
+        return block.getHeight() == height ? Optional.of(block) : Optional.empty();
     }
 
     public boolean containsBlock(Block block) {
-        return getBlocks().contains(block);
+        return block.equals(blocksByHash.get(block.getHash()));
     }
 
     public boolean containsBlockHash(String blockHash) {
-        return getBlocks().stream().anyMatch(block -> block.getHash().equals(blockHash));
+        return blocksByHash.containsKey(blockHash);
     }
 
     public long getBlockTime(int height) {
@@ -310,11 +381,12 @@ public class DaoStateService implements DaoSetupService {
     public List<Block> getBlocksFromBlockHeight(int fromBlockHeight, int numMaxBlocks) {
         // We limit requests to numMaxBlocks blocks, to avoid performance issues and too
         // large network data in case a node requests too far back in history.
-        return getBlocks().stream()
-                .filter(block -> block.getHeight() >= fromBlockHeight)
-                .sorted(Comparator.comparing(Block::getHeight))
-                .limit(numMaxBlocks)
-                .collect(Collectors.toList());
+        int fromIndex = getBlockIndex(fromBlockHeight);
+        int toIndex = (int) Math.min(blocksByHeight.size(), (long) fromIndex + numMaxBlocks);
+        if (fromIndex >= toIndex)
+            return new ArrayList<>();
+
+        return new ArrayList<>(blocksByHeight.subList(fromIndex, toIndex));
     }
 
 
@@ -357,15 +429,16 @@ public class DaoStateService implements DaoSetupService {
     }
 
     public Optional<Tx> getTx(String txId) {
-        return getTxStream().filter(tx -> tx.getId().equals(txId)).findAny();
+        updateTxCache();
+        return Optional.ofNullable(txCache.get(txId));
     }
 
     public List<Tx> getInvalidTxs() {
-        return getTxStream().filter(tx -> tx.getTxType() == TxType.INVALID).collect(Collectors.toList());
+        return getTxsByTxType(TxType.INVALID);
     }
 
     public List<Tx> getIrregularTxs() {
-        return getTxStream().filter(tx -> tx.getTxType() == TxType.IRREGULAR).collect(Collectors.toList());
+        return getTxsByTxType(TxType.IRREGULAR);
     }
 
     public boolean containsTx(String txId) {
@@ -381,6 +454,11 @@ public class DaoStateService implements DaoSetupService {
         return getTx(txId).map(Tx::getTxType);
     }
 
+    public List<Tx> getTxsByTxType(TxType txType) {
+        updateTxCache();
+        return new ArrayList<>(txsByTxType.getOrDefault(txType, Collections.emptyList()));
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // BurntFee
@@ -395,13 +473,13 @@ public class DaoStateService implements DaoSetupService {
     }
 
     public long getTotalBurntFee() {
-        return getTxStream().mapToLong(Tx::getBurntFee).sum();
+        updateTxCache();
+        return totalBurntFee;
     }
 
     public Set<Tx> getBurntFeeTxs() {
-        return getTxStream()
-                .filter(tx -> tx.getBurntFee() > 0)
-                .collect(Collectors.toSet());
+        updateTxCache();
+        return new HashSet<>(burntFeeTxs);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -409,8 +487,7 @@ public class DaoStateService implements DaoSetupService {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public Optional<TxOutput> getConnectedTxOutput(TxInput txInput) {
-        return getTx(txInput.getConnectedTxOutputTxId())
-                .map(tx -> tx.getTxOutputs().get(txInput.getConnectedTxOutputIndex()));
+        return getTxOutput(txInput.getConnectedTxOutputKey());
     }
 
 
@@ -424,13 +501,16 @@ public class DaoStateService implements DaoSetupService {
     }
 
     public boolean existsTxOutput(TxOutputKey key) {
-        return getTxOutputStream().anyMatch(txOutput -> txOutput.getKey().equals(key));
+        return getTxOutput(key).isPresent();
     }
 
+    // The outputs of a tx are ordered by their index, so we get the output from the tx without an additional index.
     public Optional<TxOutput> getTxOutput(TxOutputKey txOutputKey) {
-        return getTxOutputStream()
-                .filter(txOutput -> txOutput.getKey().equals(txOutputKey))
-                .findAny();
+        int index = txOutputKey.getIndex();
+        return getTx(txOutputKey.getTxId())
+                .filter(tx -> index >= 0 && index < tx.getTxOutputs().size())
+                .map(tx -> tx.getTxOutputs().get(index))
+                .filter(txOutput -> txOutput.getIndex() == index);
     }
 
 
@@ -444,12 +524,27 @@ public class DaoStateService implements DaoSetupService {
 
     public void addUnspentTxOutput(TxOutput txOutput) {
         assertDaoStateChange();
-        getUnspentTxOutputMap().put(txOutput.getKey(), txOutput);
+        TxOutputKey key = txOutput.getKey();
+        TxOutput previous = getUnspentTxOutputMap().put(key, txOutput);
+        if (previous != null)
+            unspentTxOutputsHash.remove(getHashElement(key, previous.toProtoMessage()));
+        unspentTxOutputsHash.add(getHashElement(key, txOutput.toProtoMessage()));
+        txIdsWithChangedTxOutputs.add(key.getTxId());
     }
 
     public void removeUnspentTxOutput(TxOutput txOutput) {
         assertDaoStateChange();
-        getUnspentTxOutputMap().remove(txOutput.getKey());
+        TxOutputKey key = txOutput.getKey();
+        TxOutput removed = getUnspentTxOutputMap().remove(key);
+        if (removed != null)
+            unspentTxOutputsHash.remove(getHashElement(key, removed.toProtoMessage()));
+        txIdsWithChangedTxOutputs.add(key.getTxId());
+    }
+
+    // Txs of the current block and of earlier blocks which got outputs added to or removed from the UTXO set or got
+    // a bond confiscated at the current block
+    public Set<String> getTxIdsWithChangedTxOutputs() {
+        return new HashSet<>(txIdsWithChangedTxOutputs);
     }
 
     public boolean isUnspent(TxOutputKey key) {
@@ -514,9 +609,8 @@ public class DaoStateService implements DaoSetupService {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public Set<TxOutput> getTxOutputsByTxOutputType(TxOutputType txOutputType) {
-        return getTxOutputStream()
-                .filter(txOutput -> txOutput.getTxOutputType() == txOutputType)
-                .collect(Collectors.toSet());
+        updateTxCache();
+        return new HashSet<>(txOutputsByTxOutputType.getOrDefault(txOutputType, Collections.emptyList()));
     }
 
     public boolean isBsqTxOutputType(TxOutput txOutput) {
@@ -823,12 +917,14 @@ public class DaoStateService implements DaoSetupService {
     }
 
     public long getTotalAmountOfInvalidatedBsq() {
-        return getTxStream().mapToLong(Tx::getInvalidatedBsq).sum();
+        updateTxCache();
+        return totalInvalidatedBsq;
     }
 
     // Contains burnt fee and invalidated bsq due invalid txs
     public long getTotalAmountOfBurntBsq() {
-        return getTxStream().mapToLong(Tx::getBurntBsq).sum();
+        updateTxCache();
+        return totalBurntFee + totalInvalidatedBsq;
     }
 
     // Confiscate bond
@@ -865,6 +961,12 @@ public class DaoStateService implements DaoSetupService {
         assertDaoStateChange();
         log.warn("TxId {} added to confiscatedLockupTxIdList.", lockupTxId);
         daoState.getConfiscatedLockupTxList().add(lockupTxId);
+
+        // The confiscation applies to the lockup output and the output of the unlock tx if it got spent already
+        txIdsWithChangedTxOutputs.add(lockupTxId);
+        getLockupTxOutput(lockupTxId)
+                .flatMap(this::getSpentInfo)
+                .ifPresent(spentInfo -> txIdsWithChangedTxOutputs.add(spentInfo.getTxId()));
     }
 
     public boolean isConfiscatedOutput(TxOutputKey txOutputKey) {
@@ -950,7 +1052,10 @@ public class DaoStateService implements DaoSetupService {
 
     public void setSpentInfo(TxOutputKey txOutputKey, SpentInfo spentInfo) {
         assertDaoStateChange();
-        daoState.getSpentInfoMap().put(txOutputKey, spentInfo);
+        SpentInfo previous = daoState.getSpentInfoMap().put(txOutputKey, spentInfo);
+        if (previous != null)
+            spentInfosHash.remove(getHashElement(txOutputKey, previous.toProtoMessage()));
+        spentInfosHash.add(getHashElement(txOutputKey, spentInfo.toProtoMessage()));
     }
 
     public Optional<SpentInfo> getSpentInfo(TxOutput txOutput) {
@@ -1036,6 +1141,109 @@ public class DaoStateService implements DaoSetupService {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    private void rebuildBlockIndex() {
+        blocksByHeight.clear();
+        blocksByHash.clear();
+        getBlocks().forEach(this::indexBlock);
+    }
+
+    private void indexBlock(Block block) {
+        if (!blocksByHeight.isEmpty() && block.getHeight() <= blocksByHeight.get(blocksByHeight.size() - 1).getHeight())
+            log.warn("Block at height {} is not above the last block. We expect the blocks in ascending height.",
+                    block.getHeight());
+
+        blocksByHeight.add(block);
+        blocksByHash.put(block.getHash(), block);
+    }
+
+    // Position of the first block with a height not below the given height, or the number of blocks if there is none.
+    // As the heights have no gaps we get it from the height of the first block. We only need the binary search if
+    // that assumption would not hold.
+    private int getBlockIndex(int height) {
+        if (blocksByHeight.isEmpty())
+            return 0;
+
+        int index = height - blocksByHeight.get(0).getHeight();
+        if (index <= 0)
+            return 0;
+        if (index < blocksByHeight.size() && blocksByHeight.get(index).getHeight() == height)
+            return index;
+
+        int low = 0;
+        int high = blocksByHeight.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blocksByHeight.get(mid).getHeight() < height)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    private void rebuildTxCache() {
+        txCache.clear();
+        txsByTxType.clear();
+        txOutputsByTxOutputType.clear();
+        burntFeeTxs.clear();
+        totalBurntFee = 0;
+        totalInvalidatedBsq = 0;
+        lastIndexedBlock = null;
+        numIndexedTxsOfLastIndexedBlock = 0;
+        getBlocks().forEach(this::indexTxs);
+    }
+
+    private void updateTxCache() {
+        getLastBlock().ifPresent(this::indexTxs);
+    }
+
+    // Adds the txs of the block which are not indexed yet. Blocks are only appended, so we only need to track the
+    // txs of the last block.
+    private void indexTxs(Block block) {
+        if (block != lastIndexedBlock) {
+            lastIndexedBlock = block;
+            numIndexedTxsOfLastIndexedBlock = 0;
+        }
+        List<Tx> txs = block.getTxs();
+        for (int i = numIndexedTxsOfLastIndexedBlock; i < txs.size(); i++) {
+            indexTx(txs.get(i));
+        }
+        numIndexedTxsOfLastIndexedBlock = txs.size();
+    }
+
+    private void indexTx(Tx tx) {
+        txCache.put(tx.getId(), tx);
+
+        if (tx.getTxType() != null)
+            txsByTxType.computeIfAbsent(tx.getTxType(), txType -> new ArrayList<>()).add(tx);
+        tx.getTxOutputs().stream()
+                .filter(txOutput -> txOutput.getTxOutputType() != null)
+                .forEach(txOutput -> txOutputsByTxOutputType
+                        .computeIfAbsent(txOutput.getTxOutputType(), txOutputType -> new ArrayList<>())
+                        .add(txOutput));
+
+        if (tx.getBurntFee() > 0)
+            burntFeeTxs.add(tx);
+        totalBurntFee += tx.getBurntFee();
+        totalInvalidatedBsq += tx.getInvalidatedBsq();
+    }
+
+    private void rebuildStateHashes() {
+        unspentTxOutputsHash.clear();
+        getUnspentTxOutputMap().forEach((key, txOutput) ->
+                unspentTxOutputsHash.add(getHashElement(key, txOutput.toProtoMessage())));
+        spentInfosHash.clear();
+        daoState.getSpentInfoMap().forEach((key, spentInfo) ->
+                spentInfosHash.add(getHashElement(key, spentInfo.toProtoMessage())));
+    }
+
+    // The map entry as it is used in the serialized DaoState, with the key prefixed by its length to keep the
+    // encoding unambiguous.
+    private static byte[] getHashElement(TxOutputKey key, Message value) {
+        byte[] keyBytes = key.toString().getBytes(StandardCharsets.UTF_8);
+        return Bytes.concat(Ints.toByteArray(keyBytes.length), keyBytes, value.toByteArray());
+    }
+
     private void assertDaoStateChange() {
         if (!allowDaoStateChange)
             throw new RuntimeException("We got a call which would change the daoState outside of the allowed event phase");
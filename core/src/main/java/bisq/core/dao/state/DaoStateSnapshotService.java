@@ -37,6 +37,9 @@ import lombok.extern.slf4j.Slf4j;
  * At each trigger height we persist the latest snapshot candidate and set the current daoState as new candidate.
  * The trigger height is determined by the SNAPSHOT_GRID. The latest persisted snapshot is min. the height of
  * SNAPSHOT_GRID old not less than 2 times the SNAPSHOT_GRID old.
+ *
+ * The snapshot candidate shares the immutable blocks, txs and outputs with the daoState, only the collections get
+ * copied. As the snapshot candidate is never changed after creation we can persist it without another copy.
  */
 @Slf4j
 public class DaoStateSnapshotService {
@@ -92,22 +95,20 @@ public class DaoStateSnapshotService {
             // At trigger event we store the latest snapshotCandidate to disc
             long ts = System.currentTimeMillis();
             if (daoStateSnapshotCandidate != null) {
-                // We clone because storage is in a threaded context and we set the snapshotCandidate to our current
-                // state in the next step
-                DaoState clonedDaoState = daoStateService.getClone(daoStateSnapshotCandidate);
-                LinkedList<DaoStateHash> clonedDaoStateHashChain = new LinkedList<>(daoStateHashChainSnapshotCandidate);
-                daoStateStorageService.persist(clonedDaoState, clonedDaoStateHashChain);
+                // Storage is in a threaded context but the snapshotCandidate is not changed after creation. We only
+                // replace it with a new instance in the next step, so we do not need to copy it.
+                daoStateStorageService.persist(daoStateSnapshotCandidate, daoStateHashChainSnapshotCandidate);
 
                 log.debug("Saved snapshotCandidate with height {} to Disc at height {} took {} ms",
                         daoStateSnapshotCandidate.getChainHeight(), chainHeight, System.currentTimeMillis() - ts);
             }
 
             ts = System.currentTimeMillis();
-            // Now we clone and keep it in memory for the next trigger event
-            daoStateSnapshotCandidate = daoStateService.getClone();
+            // Now we create a snapshot of the current state and keep it in memory for the next trigger event
+            daoStateSnapshotCandidate = daoStateService.getSnapshot();
             daoStateHashChainSnapshotCandidate = new LinkedList<>(daoStateMonitoringService.getDaoStateHashChain());
 
-            log.debug("Cloned new snapshotCandidate at height {} took {} ms", chainHeight, System.currentTimeMillis() - ts);
+            log.debug("Created new snapshotCandidate at height {} took {} ms", chainHeight, System.currentTimeMillis() - ts);
         }
     }
 
@@ -121,7 +122,14 @@ public class DaoStateSnapshotService {
                 int heightOfLastBlock = blocks.getLast().getHeight();
                 log.debug("applySnapshot from persistedBsqState daoState with height of last block {}", heightOfLastBlock);
                 if (isValidHeight(heightOfLastBlock)) {
-                    if (chainHeightOfLastApplySnapshot != chainHeightOfPersisted) {
+                    if (!daoStateMonitoringService.isHashChainCompatible(persistedDaoStateHashChain)) {
+                        // The snapshot got persisted by a version which did not support the incremental hash. We
+                        // cannot create the incremental hashes of the past blocks, so we build the hash chain again.
+                        log.warn("The persisted daoStateHashChain contains legacy hashes above the activation " +
+                                "height of the incremental hash. We will reset the daoState and start over from " +
+                                "the genesis transaction again.");
+                        applyEmptySnapshot();
+                    } else if (chainHeightOfLastApplySnapshot != chainHeightOfPersisted) {
                         chainHeightOfLastApplySnapshot = chainHeightOfPersisted;
                         daoStateService.applySnapshot(persistedBsqState);
                         daoStateMonitoringService.applySnapshot(persistedDaoStateHashChain);
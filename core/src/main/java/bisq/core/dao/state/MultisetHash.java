@@ -0,0 +1,88 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.state;
+
+import bisq.common.crypto.Hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Order independent hash over a multiset of elements. We sum up the SHA256 hashes of the elements modulo 2^256, so
+ * adding or removing an element is a constant time operation and the result does not depend on the order in which
+ * elements have been added. We use it to maintain the hash of the UTXO set and the spent info map incrementally
+ * instead of serializing the full maps at each block.
+ * <p>
+ * Not thread safe. It is used from the user thread only, like the DaoState.
+ */
+public final class MultisetHash {
+    // Little endian words of the 256 bit sum
+    private final long[] words = new long[4];
+    private int size;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public void add(byte[] element) {
+        ByteBuffer buffer = ByteBuffer.wrap(Hash.getSha256Hash(element));
+        long carry = 0;
+        for (int i = 3; i >= 0; i--) {
+            long a = words[3 - i];
+            long b = buffer.getLong(i * 8);
+            long sum = a + b + carry;
+            carry = (Long.compareUnsigned(sum, a) < 0 || (carry == 1 && sum == a)) ? 1 : 0;
+            words[3 - i] = sum;
+        }
+        size++;
+    }
+
+    public void remove(byte[] element) {
+        ByteBuffer buffer = ByteBuffer.wrap(Hash.getSha256Hash(element));
+        long borrow = 0;
+        for (int i = 3; i >= 0; i--) {
+            long a = words[3 - i];
+            long b = buffer.getLong(i * 8);
+            long diff = a - b - borrow;
+            borrow = (Long.compareUnsigned(a, b) < 0 || (borrow == 1 && a == b)) ? 1 : 0;
+            words[3 - i] = diff;
+        }
+        size--;
+    }
+
+    public void clear() {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = 0;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Big endian 32 bytes of the sum followed by the number of elements
+    public byte[] getDigest() {
+        ByteBuffer buffer = ByteBuffer.allocate(36);
+        for (int i = 3; i >= 0; i--) {
+            buffer.putLong(words[i]);
+        }
+        buffer.putInt(size);
+        return buffer.array();
+    }
+}
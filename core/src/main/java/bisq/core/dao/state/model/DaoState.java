@@ -64,6 +64,24 @@ public class DaoState implements PersistablePayload {
         return DaoState.fromProto(daoState.getBsqStateBuilder().build());
     }
 
+    // Creates a copy which shares the elements with the given daoState but not the collections holding them. All
+    // elements are ImmutableDaoStateModel instances, so we do not need a deep copy as we do in getClone. The only
+    // exception is the txs list of the block which is currently parsed, so we must not call that during parsing.
+    // Copying the collections only costs a small fraction of the protobuf round-trip and it does not allocate new
+    // objects for the blocks, txs and outputs.
+    public static DaoState getSnapshot(DaoState daoState) {
+        return new DaoState(daoState.getChainHeight(),
+                new LinkedList<>(daoState.getBlocks()),
+                new LinkedList<>(daoState.getCycles()),
+                new TreeMap<>(daoState.getUnspentTxOutputMap()),
+                new TreeMap<>(daoState.getSpentInfoMap()),
+                new ArrayList<>(daoState.getConfiscatedLockupTxList()),
+                new TreeMap<>(daoState.getIssuanceMap()),
+                new ArrayList<>(daoState.getParamChangeList()),
+                new ArrayList<>(daoState.getEvaluatedProposalList()),
+                new ArrayList<>(daoState.getDecryptedBallotsWithMeritsList()));
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Fields
@@ -159,13 +177,17 @@ public class DaoState implements PersistablePayload {
     }
 
     private protobuf.DaoState.Builder getBsqStateBuilderExcludingBlocks() {
-        protobuf.DaoState.Builder builder = protobuf.DaoState.newBuilder();
-        builder.setChainHeight(chainHeight)
-                .addAllCycles(cycles.stream().map(Cycle::toProtoMessage).collect(Collectors.toList()))
+        return getBsqStateBuilderExcludingBlocksAndTxOutputs()
                 .putAllUnspentTxOutputMap(unspentTxOutputMap.entrySet().stream()
                         .collect(Collectors.toMap(e -> e.getKey().toString(), e -> e.getValue().toProtoMessage())))
                 .putAllSpentInfoMap(spentInfoMap.entrySet().stream()
-                        .collect(Collectors.toMap(e -> e.getKey().toString(), entry -> entry.getValue().toProtoMessage())))
+                        .collect(Collectors.toMap(e -> e.getKey().toString(), entry -> entry.getValue().toProtoMessage())));
+    }
+
+    private protobuf.DaoState.Builder getBsqStateBuilderExcludingBlocksAndTxOutputs() {
+        protobuf.DaoState.Builder builder = protobuf.DaoState.newBuilder();
+        builder.setChainHeight(chainHeight)
+                .addAllCycles(cycles.stream().map(Cycle::toProtoMessage).collect(Collectors.toList()))
                 .addAllConfiscatedLockupTxList(confiscatedLockupTxList)
                 .putAllIssuanceMap(issuanceMap.entrySet().stream()
                         .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().toProtoMessage())))
@@ -224,6 +246,12 @@ public class DaoState implements PersistablePayload {
         return getBsqStateBuilderExcludingBlocks().addBlocks(getBlocks().getLast().toProtoMessage()).build().toByteArray();
     }
 
+    // The unspentTxOutputMap and spentInfoMap are excluded as their hashes are maintained incrementally by the
+    // DaoStateService.
+    public byte[] getSerializedStateForHashChainExcludingTxOutputs() {
+        return getBsqStateBuilderExcludingBlocksAndTxOutputs().addBlocks(getBlocks().getLast().toProtoMessage()).build().toByteArray();
+    }
+
     @Override
     public String toString() {
         return "DaoState{" +
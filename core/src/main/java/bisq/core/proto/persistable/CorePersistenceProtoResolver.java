@@ -45,6 +45,7 @@ import bisq.core.user.UserPayload;
 import bisq.network.p2p.peers.peerexchange.PeerList;
 import bisq.network.p2p.storage.persistence.PersistableNetworkPayloadList;
 import bisq.network.p2p.storage.persistence.SequenceNumberMap;
+import bisq.network.p2p.storage.persistence.VerifiedSignatureStore;
 
 import bisq.common.proto.ProtobufferRuntimeException;
 import bisq.common.proto.network.NetworkProtoResolver;
@@ -150,6 +151,8 @@ public class CorePersistenceProtoResolver extends CoreProtoResolver implements P
                     return UnconfirmedBsqChangeOutputList.fromProto(proto.getUnconfirmedBsqChangeOutputList());
                 case SIGNED_WITNESS_STORE:
                     return SignedWitnessStore.fromProto(proto.getSignedWitnessStore());
+                case VERIFIED_SIGNATURE_STORE:
+                    return VerifiedSignatureStore.fromProto(proto.getVerifiedSignatureStore());
 
                 default:
                     throw new ProtobufferRuntimeException("Unknown proto message case(PB.PersistableEnvelope). " +
@@ -37,7 +37,10 @@ public class CoreNetworkCapabilities {
                 Capability.BLIND_VOTE,
                 Capability.DAO_STATE,
                 Capability.BUNDLE_OF_ENVELOPES,
-                Capability.MEDIATION
+                Capability.MEDIATION,
+                Capability.KEY_SET_SUMMARY,
+                Capability.DAO_STATE_HASH_V2,
+                Capability.CHUNKED_GET_DATA_RESPONSE
         );
 
         if (BisqEnvironment.isDaoActivated(bisqEnvironment)) {
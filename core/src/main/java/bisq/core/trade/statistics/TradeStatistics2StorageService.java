@@ -19,7 +19,7 @@ package bisq.core.trade.statistics;
 
 import bisq.network.p2p.storage.P2PDataStorage;
 import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
-import bisq.network.p2p.storage.persistence.MapStoreService;
+import bisq.network.p2p.storage.persistence.AppendOnlyLogStoreService;
 
 import bisq.common.storage.Storage;
 
@@ -36,7 +36,7 @@ import lombok.extern.slf4j.Slf4j;
 import static com.google.common.base.Preconditions.checkArgument;
 
 @Slf4j
-public class TradeStatistics2StorageService extends MapStoreService<TradeStatistics2Store, PersistableNetworkPayload> {
+public class TradeStatistics2StorageService extends AppendOnlyLogStoreService<TradeStatistics2Store> {
     private static final String FILE_NAME = "TradeStatistics2Store";
 
 
@@ -80,6 +80,11 @@ public class TradeStatistics2StorageService extends MapStoreService<TradeStatist
         return new TradeStatistics2Store();
     }
 
+    @Override
+    protected PersistableNetworkPayload fromProto(protobuf.PersistableNetworkPayload proto) {
+        return TradeStatistics2.fromProto(proto.getTradeStatistics2());
+    }
+
     @Override
     protected void readStore() {
         super.readStore();
@@ -0,0 +1,48 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.monitoring;
+
+import bisq.core.dao.monitoring.model.DaoStateHash;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DaoStateMonitoringServiceTest {
+    @Test
+    public void testIsHashChainCompatible() {
+        List<DaoStateHash> switchedChain = Arrays.asList(
+                new DaoStateHash(100, new byte[]{1}, new byte[0], DaoStateHash.LEGACY_VERSION),
+                new DaoStateHash(101, new byte[]{2}, new byte[]{1}, DaoStateHash.INCREMENTAL_VERSION));
+        assertTrue(DaoStateMonitoringService.isHashChainCompatible(switchedChain, 101));
+        assertTrue(DaoStateMonitoringService.isHashChainCompatible(Collections.emptyList(), 100));
+
+        // A chain persisted before we supported the incremental hash
+        List<DaoStateHash> legacyChain = Arrays.asList(
+                new DaoStateHash(100, new byte[]{1}, new byte[0], DaoStateHash.LEGACY_VERSION),
+                new DaoStateHash(101, new byte[]{2}, new byte[]{1}, DaoStateHash.LEGACY_VERSION));
+        assertTrue(DaoStateMonitoringService.isHashChainCompatible(legacyChain, 102));
+        assertFalse(DaoStateMonitoringService.isHashChainCompatible(legacyChain, 101));
+        assertFalse(DaoStateMonitoringService.isHashChainCompatible(legacyChain, 100));
+    }
+}
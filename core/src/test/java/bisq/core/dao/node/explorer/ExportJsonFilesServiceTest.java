@@ -0,0 +1,300 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.explorer;
+
+import bisq.core.dao.state.DaoStateService;
+import bisq.core.dao.state.GenesisTxInfo;
+import bisq.core.dao.state.model.DaoState;
+import bisq.core.dao.state.model.blockchain.Block;
+import bisq.core.dao.state.model.blockchain.SpentInfo;
+import bisq.core.dao.state.model.blockchain.Tx;
+import bisq.core.dao.state.model.blockchain.TxInput;
+import bisq.core.dao.state.model.blockchain.TxOutput;
+import bisq.core.dao.state.model.blockchain.TxOutputKey;
+import bisq.core.dao.state.model.blockchain.TxOutputType;
+import bisq.core.dao.state.model.blockchain.TxType;
+import bisq.core.dao.state.model.governance.Issuance;
+import bisq.core.dao.state.model.governance.IssuanceType;
+import bisq.core.util.BsqFormatter;
+
+import org.bitcoinj.core.Coin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExportJsonFilesServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<ExportJsonFilesService> exportServices = new ArrayList<>();
+    private File storageDir;
+    private DaoStateService daoStateService;
+
+    @Before
+    public void setup() {
+        storageDir = folder.getRoot();
+        daoStateService = getDaoStateService();
+    }
+
+    @After
+    public void tearDown() {
+        exportServices.forEach(ExportJsonFilesService::shutDown);
+    }
+
+    @Test
+    public void testExportOnlyNewBlocks() throws Exception {
+        ExportJsonFilesService exportService = getExportService();
+        addBlock(0, getTx("tx0", 0));
+        addBlock(1, getTx("tx1", 1, new TxOutputKey("tx0", 0)));
+        export(exportService);
+
+        assertFalse(isUnspent("tx0:0"));
+        assertTrue(isUnspent("tx0:1"));
+        assertTrue(isUnspent("tx1:0"));
+        assertEquals(1, getCheckpointHeight());
+
+        // Files of txs which did not change must not be written again
+        Files.delete(getTxFile("tx0").toPath());
+        addBlock(2, getTx("tx2", 2, new TxOutputKey("tx1", 0)));
+        export(exportService);
+
+        assertFalse(getTxFile("tx0").exists());
+        assertFalse(isUnspent("tx1:0"));
+        assertTrue(isUnspent("tx2:0"));
+        assertEquals(2, getCheckpointHeight());
+        assertNotExported(exportService);
+    }
+
+    @Test
+    public void testRewriteChangedTxsOfEarlierChunk() throws Exception {
+        ExportJsonFilesService exportService = getExportService();
+        addBlock(0, getTx("tx0", 0));
+        addBlock(1, getTx("compReqTx", 1));
+        addBlock(2, getTx("otherTx", 2));
+        // The issuance candidate output is not in the UTXO set until the compensation request gets accepted
+        daoStateService.onNewBlockHeight(3);
+        daoStateService.removeUnspentTxOutput(daoStateService.getTx("compReqTx").get().getTxOutputs().get(1));
+        for (int height = 3; height < ExportJsonFilesService.BLOCKS_PER_CHUNK; height++) {
+            addBlock(height);
+        }
+        export(exportService);
+        assertFalse(isUnspent("compReqTx:1"));
+        assertEquals(ExportJsonFilesService.BLOCKS_PER_CHUNK - 1, getChunkChainHeight(0));
+
+        Files.delete(getTxFile("otherTx").toPath());
+        int height = ExportJsonFilesService.BLOCKS_PER_CHUNK;
+        daoStateService.onNewBlockHeight(height);
+        Block block = new Block(height, 1534800000 + height, "fakeblockhash" + height, "fakeblockhash" + (height - 1));
+        daoStateService.onNewBlockWithEmptyTxs(block);
+        addTx(block, getTx("spendingTx", height, new TxOutputKey("tx0", 0)));
+        // Like the IssuanceService we add the issued output to the UTXO set without a tx of the block spending it
+        daoStateService.addUnspentTxOutput(daoStateService.getTx("compReqTx").get().getTxOutputs().get(1));
+        daoStateService.onParseBlockComplete(block);
+        export(exportService);
+
+        assertFalse(isUnspent("tx0:0"));
+        assertTrue(isUnspent("compReqTx:1"));
+        assertTrue(isUnspent("spendingTx:0"));
+        assertFalse("Unchanged txs of the rewritten chunk must not be written again", getTxFile("otherTx").exists());
+        assertEquals("The chunk of the changed txs must be written again", height, getChunkChainHeight(0));
+        assertEquals(height, getChunkChainHeight(height));
+    }
+
+    @Test
+    public void testResumeFromCheckpoint() throws Exception {
+        ExportJsonFilesService exportService = getExportService();
+        addBlock(0, getTx("tx0", 0));
+        addBlock(1, getTx("compReqTx", 1));
+        daoStateService.onNewBlockHeight(2);
+        daoStateService.removeUnspentTxOutput(daoStateService.getTx("compReqTx").get().getTxOutputs().get(1));
+        export(exportService);
+        exportService.shutDown();
+        assertFalse(isUnspent("compReqTx:1"));
+
+        // The next blocks get persisted with the DAO state but the export got interrupted
+        addBlock(2, getTx("tx2", 2, new TxOutputKey("tx0", 0)));
+        daoStateService.onNewBlockHeight(3);
+        Block block = new Block(3, 1534800003, "fakeblockhash3", "fakeblockhash2");
+        daoStateService.onNewBlockWithEmptyTxs(block);
+        daoStateService.addIssuance(new Issuance("compReqTx", 3, 100, null, IssuanceType.COMPENSATION));
+        daoStateService.addUnspentTxOutput(daoStateService.getTx("compReqTx").get().getTxOutputs().get(1));
+        daoStateService.onParseBlockComplete(block);
+
+        // At the restart we do not parse those blocks again
+        DaoStateService restartedDaoStateService = getDaoStateService();
+        restartedDaoStateService.applySnapshot(daoStateService.getSnapshot());
+        daoStateService = restartedDaoStateService;
+        Files.delete(getTxFile("tx0").toPath());
+        ExportJsonFilesService restartedExportService = getExportService();
+        assertTrue("Exported files must be kept at the restart", getTxFile("compReqTx").exists());
+        export(restartedExportService);
+
+        assertFalse(isUnspent("tx0:0"));
+        assertTrue(isUnspent("compReqTx:1"));
+        assertTrue(isUnspent("tx2:0"));
+        assertEquals(3, getCheckpointHeight());
+    }
+
+    @Test
+    public void testStartOverIfCheckpointIsNotInChain() throws Exception {
+        ExportJsonFilesService exportService = getExportService();
+        addBlock(0, getTx("tx0", 0));
+        addBlock(1, getTx("tx1", 1));
+        export(exportService);
+        exportService.shutDown();
+
+        DaoStateService otherChainDaoStateService = getDaoStateService();
+        daoStateService = otherChainDaoStateService;
+        addBlock(0, getTx("tx0", 0));
+        daoStateService.onNewBlockHeight(1);
+        Block block = new Block(1, 1534800001, "otherblockhash1", "fakeblockhash0");
+        daoStateService.onNewBlockWithEmptyTxs(block);
+        addTx(block, getTx("otherTx1", 1));
+        daoStateService.onParseBlockComplete(block);
+
+        export(getExportService());
+        assertFalse(getTxFile("tx1").exists());
+        assertTrue(getTxFile("tx0").exists());
+        assertTrue(getTxFile("otherTx1").exists());
+        assertEquals(1, getCheckpointHeight());
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Helpers
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static DaoStateService getDaoStateService() {
+        return new DaoStateService(new DaoState(),
+                new GenesisTxInfo("tx0", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+    }
+
+    private ExportJsonFilesService getExportService() {
+        ExportJsonFilesService exportService = new ExportJsonFilesService(daoStateService, storageDir, true, true);
+        exportService.addListeners();
+        exportService.start();
+        exportServices.add(exportService);
+        return exportService;
+    }
+
+    private static void export(ExportJsonFilesService exportService) throws Exception {
+        ListenableFuture<Void> future = exportService.exportIncrementally();
+        assertNotNull(future);
+        future.get();
+    }
+
+    private static void assertNotExported(ExportJsonFilesService exportService) {
+        assertNull(exportService.exportIncrementally());
+    }
+
+    // Adds a block like the parser: the outputs of the txs get added to the UTXO set and the connected outputs get
+    // spent.
+    private void addBlock(int height, Tx... txs) {
+        daoStateService.onNewBlockHeight(height);
+        Block block = new Block(height, 1534800000 + height, "fakeblockhash" + height,
+                height > 0 ? "fakeblockhash" + (height - 1) : null);
+        daoStateService.onNewBlockWithEmptyTxs(block);
+        for (Tx tx : txs) {
+            addTx(block, tx);
+        }
+        daoStateService.onParseBlockComplete(block);
+    }
+
+    private void addTx(Block block, Tx tx) {
+        for (int i = 0; i < tx.getTxInputs().size(); i++) {
+            TxInput txInput = tx.getTxInputs().get(i);
+            TxOutput connectedTxOutput = daoStateService.getConnectedTxOutput(txInput).get();
+            daoStateService.setSpentInfo(connectedTxOutput.getKey(), new SpentInfo(block.getHeight(), tx.getId(), i));
+            daoStateService.removeUnspentTxOutput(connectedTxOutput);
+        }
+        tx.getTxOutputs().forEach(daoStateService::addUnspentTxOutput);
+        block.getTxs().add(tx);
+    }
+
+    // Each tx has 2 BSQ outputs
+    private static Tx getTx(String txId, int height, TxOutputKey... spentTxOutputKeys) {
+        protobuf.Tx.Builder txBuilder = protobuf.Tx.newBuilder()
+                .setTxType(TxType.TRANSFER_BSQ.toProtoMessage());
+        for (int i = 0; i < 2; i++) {
+            txBuilder.addTxOutputs(protobuf.BaseTxOutput.newBuilder()
+                    .setIndex(i)
+                    .setValue(100)
+                    .setTxId(txId)
+                    .setBlockHeight(height)
+                    .setTxOutput(protobuf.TxOutput.newBuilder()
+                            .setTxOutputType(TxOutputType.BSQ_OUTPUT.toProtoMessage())));
+        }
+        protobuf.BaseTx.Builder builder = protobuf.BaseTx.newBuilder()
+                .setTxVersion("1")
+                .setId(txId)
+                .setBlockHeight(height)
+                .setBlockHash("fakeblockhash" + height)
+                .setTx(txBuilder);
+        for (TxOutputKey key : spentTxOutputKeys) {
+            builder.addTxInputs(protobuf.TxInput.newBuilder()
+                    .setConnectedTxOutputTxId(key.getTxId())
+                    .setConnectedTxOutputIndex(key.getIndex()));
+        }
+        return Tx.fromProto(builder.build());
+    }
+
+    private File getTxFile(String txId) {
+        return new File(storageDir, "json/tx/" + txId + ".json");
+    }
+
+    private boolean isUnspent(String txOutputId) throws IOException {
+        return readJson(new File(storageDir, "json/txo/" + txOutputId + ".json")).get("isUnspent").getAsBoolean();
+    }
+
+    private int getCheckpointHeight() throws IOException {
+        return readJson(new File(storageDir, "json/checkpoint.json")).get("height").getAsInt();
+    }
+
+    private int getChunkChainHeight(int startHeight) throws IOException {
+        return readJson(new File(storageDir, "json/blocks/" + startHeight + ".json")).get("chainHeight").getAsInt();
+    }
+
+    private static JsonObject readJson(File file) throws IOException {
+        String json = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        return new JsonParser().parse(json).getAsJsonObject();
+    }
+}
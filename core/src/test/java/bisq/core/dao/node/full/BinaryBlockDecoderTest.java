@@ -0,0 +1,195 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.core.dao.state.model.blockchain.TxOutputKey;
+
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Transaction;
+import org.bitcoinj.core.TransactionInput;
+import org.bitcoinj.core.TransactionOutPoint;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.core.VarInt;
+import org.bitcoinj.crypto.TransactionSignature;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.script.ScriptBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class BinaryBlockDecoderTest {
+    private static final NetworkParameters PARAMS = MainNetParams.get();
+    private static final String PREVIOUS_BLOCK_HASH = "00000000000000000011a4c8af0a6c0a1ab8ec5cd6f8b4a0f1b1d4e5c1f2a3b4";
+    private static final String BSQ_TX_ID = "aa00000000000000000000000000000000000000000000000000000000000001";
+    private static final long TIME = 1_550_000_000;
+
+    private final BinaryBlockDecoder binaryBlockDecoder = new BinaryBlockDecoder(PARAMS);
+    private final ECKey key = new ECKey();
+    private final Set<TxOutputKey> bsqTxOutputs = new HashSet<>();
+
+    @Test
+    public void testDecodeKeepsOnlyTxsWhichCanBeBsqTxs() throws IOException {
+        bsqTxOutputs.add(new TxOutputKey(BSQ_TX_ID, 1));
+
+        Transaction coinbase = new Transaction(PARAMS);
+        coinbase.addInput(new TransactionInput(PARAMS, coinbase, new byte[]{0x03, 0x01, 0x02, 0x03}));
+        coinbase.addOutput(Coin.COIN, key.toAddress(PARAMS));
+        Transaction btcTx = getTx(Sha256Hash.of(new byte[]{1}).toString(), 0);
+        // Spends a BSQ output which is not unspent anymore
+        Transaction spentBsqTx = getTx(BSQ_TX_ID, 0);
+        Transaction bsqTx = getTx(BSQ_TX_ID, 1);
+        // Spends the change of bsqTx in the same block
+        Transaction childOfBsqTx = getTx(bsqTx.getHashAsString(), 0);
+        Transaction opReturnTx = getTx(Sha256Hash.of(new byte[]{2}).toString(), 0);
+        opReturnTx.addOutput(Coin.ZERO, ScriptBuilder.createOpReturnScript(new byte[]{0x10, 0x01, 0x02, 0x03, 0x04}));
+
+        byte[] block = getBlock(coinbase, btcTx, spentBsqTx, bsqTx, childOfBsqTx, opReturnTx);
+        BinaryBlockDecoder.DecodedBlock decodedBlock = BinaryBlockDecoder.decode(600000, "blockHash", Utils.HEX.encode(block));
+        assertEquals(6, decodedBlock.getNumTxs());
+
+        RawBlock rawBlock = binaryBlockDecoder.toRawBlock(decodedBlock, getBsqTxFilter(false));
+        assertEquals(600000, rawBlock.getHeight());
+        assertEquals("blockHash", rawBlock.getHash());
+        assertEquals(PREVIOUS_BLOCK_HASH, rawBlock.getPreviousBlockHash());
+        assertEquals(TIME * 1000, rawBlock.getTime());
+        assertEquals(Arrays.asList(bsqTx.getHashAsString(), childOfBsqTx.getHashAsString(), opReturnTx.getHashAsString()),
+                getTxIds(rawBlock));
+
+        RawTx rawTx = rawBlock.getRawTxs().get(0);
+        assertEquals(600000, rawTx.getBlockHeight());
+        assertEquals(TIME * 1000, rawTx.getTime());
+        assertEquals(1, rawTx.getTxInputs().size());
+        assertEquals(new TxOutputKey(BSQ_TX_ID, 1), rawTx.getTxInputs().get(0).getConnectedTxOutputKey());
+        assertEquals(key.getPublicKeyAsHex(), rawTx.getTxInputs().get(0).getPubKey());
+        assertEquals(2, rawTx.getRawTxOutputs().size());
+        assertEquals(1, rawTx.getRawTxOutputs().get(1).getIndex());
+        assertEquals(Coin.CENT.value, rawTx.getRawTxOutputs().get(1).getValue());
+        assertEquals(key.toAddress(PARAMS).toString(), rawTx.getRawTxOutputs().get(1).getAddress());
+        assertNull(rawTx.getRawTxOutputs().get(1).getOpReturnData());
+
+        RawTxOutput opReturnOutput = rawBlock.getRawTxs().get(2).getRawTxOutputs().get(2);
+        assertEquals("1001020304", Utils.HEX.encode(opReturnOutput.getOpReturnData()));
+
+        // At the genesis block we keep all txs but we ignore the input of the coinbase tx
+        rawBlock = binaryBlockDecoder.toRawBlock(decodedBlock, getBsqTxFilter(true));
+        assertEquals(Arrays.asList(coinbase.getHashAsString(), btcTx.getHashAsString(), spentBsqTx.getHashAsString(),
+                bsqTx.getHashAsString(), childOfBsqTx.getHashAsString(), opReturnTx.getHashAsString()),
+                getTxIds(rawBlock));
+        assertEquals(0, rawBlock.getRawTxs().get(0).getTxInputs().size());
+    }
+
+    @Test
+    public void testSegwitTxIdExcludesWitness() throws IOException {
+        bsqTxOutputs.add(new TxOutputKey(BSQ_TX_ID, 1));
+        Transaction bsqTx = getTx(BSQ_TX_ID, 1);
+        byte[] legacy = bsqTx.bitcoinSerialize();
+
+        // Same tx with marker, flag and a witness with one item of 3 bytes for the single input
+        ByteArrayOutputStream segwit = new ByteArrayOutputStream();
+        segwit.write(legacy, 0, 4);
+        segwit.write(new byte[]{0x00, 0x01});
+        segwit.write(legacy, 4, legacy.length - 8);
+        segwit.write(new byte[]{0x01, 0x03, 0x0a, 0x0b, 0x0c});
+        segwit.write(legacy, legacy.length - 4, 4);
+
+        Transaction coinbase = new Transaction(PARAMS);
+        coinbase.addInput(new TransactionInput(PARAMS, coinbase, new byte[]{0x01, 0x01}));
+        coinbase.addOutput(Coin.COIN, key.toAddress(PARAMS));
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(getHeader());
+        block.write(new VarInt(2).encode());
+        block.write(coinbase.bitcoinSerialize());
+        block.write(segwit.toByteArray());
+
+        RawBlock rawBlock = binaryBlockDecoder.toRawBlock(
+                BinaryBlockDecoder.decode(600000, "blockHash", block.toByteArray()), getBsqTxFilter(false));
+        assertEquals(Arrays.asList(bsqTx.getHashAsString()), getTxIds(rawBlock));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedBlockFails() throws IOException {
+        byte[] block = getBlock(getTx(BSQ_TX_ID, 1));
+        BinaryBlockDecoder.decode(600000, "blockHash", Arrays.copyOf(block, block.length - 1));
+    }
+
+    private Transaction getTx(String connectedTxId, int connectedIndex) {
+        Transaction tx = new Transaction(PARAMS);
+        TransactionOutPoint outPoint = new TransactionOutPoint(PARAMS, connectedIndex, Sha256Hash.wrap(connectedTxId));
+        Sha256Hash sigHash = Sha256Hash.of(connectedTxId.getBytes());
+        byte[] scriptSig = ScriptBuilder.createInputScript(
+                new TransactionSignature(key.sign(sigHash), Transaction.SigHash.ALL, false),
+                key).getProgram();
+        tx.addInput(new TransactionInput(PARAMS, tx, scriptSig, outPoint));
+        tx.addOutput(Coin.COIN, key.toAddress(PARAMS));
+        tx.addOutput(Coin.CENT, key.toAddress(PARAMS));
+        return tx;
+    }
+
+    private byte[] getBlock(Transaction... txs) throws IOException {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        block.write(getHeader());
+        block.write(new VarInt(txs.length).encode());
+        for (Transaction tx : txs) {
+            block.write(tx.bitcoinSerialize());
+        }
+        return block.toByteArray();
+    }
+
+    private byte[] getHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        Utils.uint32ToByteStreamLE(0x20000000, header);
+        header.write(Sha256Hash.wrap(PREVIOUS_BLOCK_HASH).getReversedBytes());
+        header.write(new byte[32]); // merkle root
+        Utils.uint32ToByteStreamLE(TIME, header);
+        Utils.uint32ToByteStreamLE(0x17148edf, header); // bits
+        Utils.uint32ToByteStreamLE(1234, header); // nonce
+        return header.toByteArray();
+    }
+
+    private BinaryBlockDecoder.BsqTxFilter getBsqTxFilter(boolean isGenesisBlock) {
+        return new BinaryBlockDecoder.BsqTxFilter() {
+            @Override
+            public boolean keepAllTxs(int blockHeight) {
+                return isGenesisBlock;
+            }
+
+            @Override
+            public boolean isBsqTxOutput(TxOutputKey txOutputKey) {
+                return bsqTxOutputs.contains(txOutputKey);
+            }
+        };
+    }
+
+    private static List<String> getTxIds(RawBlock rawBlock) {
+        return rawBlock.getRawTxs().stream().map(RawTx::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.core.dao.governance.period.PeriodService;
+import bisq.core.dao.node.parser.BlockParser;
+import bisq.core.dao.node.parser.TxParser;
+import bisq.core.dao.state.DaoStateService;
+import bisq.core.dao.state.GenesisTxInfo;
+import bisq.core.dao.state.model.DaoState;
+import bisq.core.dao.state.model.blockchain.Tx;
+import bisq.core.dao.state.model.blockchain.TxInput;
+import bisq.core.dao.state.model.blockchain.TxOutputKey;
+import bisq.core.dao.state.model.blockchain.TxOutputType;
+import bisq.core.dao.state.model.blockchain.TxType;
+import bisq.core.util.BsqFormatter;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Parses a synthetic chain of 100k BSQ transactions and measures the lookups of txs and tx outputs in the
+ * DaoStateService, which are used by the parser (e.g. isConfiscatedOutput for each input), the bond and the
+ * governance code, and the queries by tx type and tx output type used for the balances and the UI.
+ * <p>
+ * We do not have JMH in our build, so that is an ignored test. Remove the @Ignore to run it from the IDE.
+ * Before txs and tx outputs got indexed by txId, each lookup iterated over all txs of all blocks, so a parse from
+ * genesis got slower with each block.
+ */
+@Ignore("Benchmark, run it manually")
+public class BlockParserBenchmark {
+    private static final String GENESIS_TX_ID = "genesisTxId";
+    private static final int GENESIS_BLOCK_HEIGHT = 1;
+    private static final long GENESIS_TOTAL_SUPPLY = 250_000_000;
+    private static final int NUM_TXS = 100_000;
+    private static final int TXS_PER_BLOCK = 10;
+    // Each tx of a block spends the output of the tx at the same position in the previous block
+    private static final int NUM_CHAINS = TXS_PER_BLOCK;
+    private static final int NUM_LEGACY_LOOKUPS = 100;
+
+    @Test
+    public void benchmark() throws Exception {
+        DaoStateService daoStateService = new DaoStateService(new DaoState(),
+                new GenesisTxInfo(GENESIS_TX_ID, GENESIS_BLOCK_HEIGHT, GENESIS_TOTAL_SUPPLY),
+                new BsqFormatter());
+        daoStateService.start();
+        BlockParser blockParser = new BlockParser(new TxParser(mock(PeriodService.class), daoStateService), daoStateService);
+
+        String previousBlockHash = "blockHash0";
+        RawBlock genesisBlock = getGenesisBlock(previousBlockHash);
+        blockParser.parseBlock(genesisBlock);
+        previousBlockHash = genesisBlock.getHash();
+
+        int numBlocks = NUM_TXS / TXS_PER_BLOCK;
+        long ts = System.nanoTime();
+        long chunkTs = ts;
+        for (int i = 1; i <= numBlocks; i++) {
+            RawBlock rawBlock = getBlock(GENESIS_BLOCK_HEIGHT + i, previousBlockHash);
+            blockParser.parseBlock(rawBlock);
+            previousBlockHash = rawBlock.getHash();
+            if (i % (numBlocks / 10) == 0) {
+                print("Parsed txs " + ((i - numBlocks / 10) * TXS_PER_BLOCK) + " - " + (i * TXS_PER_BLOCK),
+                        numBlocks / 10 * TXS_PER_BLOCK, System.nanoTime() - chunkTs);
+                chunkTs = System.nanoTime();
+            }
+        }
+        print("Parsed chain", NUM_TXS, System.nanoTime() - ts);
+        System.out.println("BSQ txs: " + daoStateService.getTxStream().count());
+
+        List<TxOutputKey> keys = new ArrayList<>();
+        for (int i = 0; i < NUM_TXS; i++) {
+            keys.add(new TxOutputKey(getTxId(GENESIS_BLOCK_HEIGHT + 1 + i / TXS_PER_BLOCK, i % TXS_PER_BLOCK), 0));
+        }
+
+        ts = System.nanoTime();
+        for (TxOutputKey key : keys) {
+            if (!daoStateService.getTxOutput(key).isPresent() || !daoStateService.getTx(key.getTxId()).isPresent())
+                throw new IllegalStateException("Missing tx " + key);
+        }
+        print("Indexed lookups of tx and txOutput", NUM_TXS, System.nanoTime() - ts);
+
+        ts = System.nanoTime();
+        for (int i = 0; i < NUM_LEGACY_LOOKUPS; i++) {
+            TxOutputKey key = keys.get(keys.size() - 1 - i);
+            if (!daoStateService.getTxOutputStream().anyMatch(txOutput -> txOutput.getKey().equals(key)))
+                throw new IllegalStateException("Missing tx " + key);
+        }
+        print("Lookups of txOutput by iterating all blocks (legacy)", NUM_LEGACY_LOOKUPS, System.nanoTime() - ts);
+
+        ts = System.nanoTime();
+        for (int i = 0; i < NUM_LEGACY_LOOKUPS; i++) {
+            daoStateService.getLockupTxOutputs();
+            daoStateService.getInvalidTxs();
+            daoStateService.getTotalBurntFee();
+        }
+        print("Indexed queries of lockup outputs, invalid txs and total burnt fee", NUM_LEGACY_LOOKUPS,
+                System.nanoTime() - ts);
+
+        ts = System.nanoTime();
+        for (int i = 0; i < NUM_LEGACY_LOOKUPS; i++) {
+            daoStateService.getTxOutputStream()
+                    .filter(txOutput -> txOutput.getTxOutputType() == TxOutputType.LOCKUP_OUTPUT)
+                    .collect(Collectors.toSet());
+            daoStateService.getTxStream().filter(tx -> tx.getTxType() == TxType.INVALID).collect(Collectors.toList());
+            daoStateService.getTxStream().mapToLong(Tx::getBurntFee).sum();
+        }
+        print("Same queries by iterating all blocks (legacy)", NUM_LEGACY_LOOKUPS, System.nanoTime() - ts);
+    }
+
+    private static RawBlock getGenesisBlock(String previousBlockHash) {
+        List<RawTxOutput> outputs = new ArrayList<>();
+        for (int i = 0; i < NUM_CHAINS; i++) {
+            outputs.add(new RawTxOutput(i, GENESIS_TOTAL_SUPPLY / NUM_CHAINS, GENESIS_TX_ID, null, null, null,
+                    GENESIS_BLOCK_HEIGHT));
+        }
+        String hash = getBlockHash(GENESIS_BLOCK_HEIGHT);
+        RawTx genesisTx = new RawTx(GENESIS_TX_ID, GENESIS_BLOCK_HEIGHT, hash, GENESIS_BLOCK_HEIGHT,
+                ImmutableList.of(new TxInput("someOldTxId", 0, null)),
+                ImmutableList.copyOf(outputs));
+        return new RawBlock(GENESIS_BLOCK_HEIGHT, GENESIS_BLOCK_HEIGHT, hash, previousBlockHash,
+                ImmutableList.of(genesisTx));
+    }
+
+    private static RawBlock getBlock(int height, String previousBlockHash) {
+        String hash = getBlockHash(height);
+        List<RawTx> rawTxs = new ArrayList<>();
+        for (int i = 0; i < TXS_PER_BLOCK; i++) {
+            String txId = getTxId(height, i);
+            TxInput txInput = height == GENESIS_BLOCK_HEIGHT + 1 ?
+                    new TxInput(GENESIS_TX_ID, i, null) :
+                    new TxInput(getTxId(height - 1, i), 0, null);
+            rawTxs.add(new RawTx(txId, height, hash, height,
+                    ImmutableList.of(txInput),
+                    ImmutableList.of(new RawTxOutput(0, GENESIS_TOTAL_SUPPLY / NUM_CHAINS, txId, null, null,
+                            null, height))));
+        }
+        return new RawBlock(height, height, hash, previousBlockHash, ImmutableList.copyOf(rawTxs));
+    }
+
+    private static String getBlockHash(int height) {
+        return "blockHash" + height;
+    }
+
+    private static String getTxId(int height, int index) {
+        return "tx" + height + "_" + index;
+    }
+
+    private static void print(String name, int numItems, long durationNanos) {
+        double durationMs = durationNanos / 1_000_000D;
+        System.out.println(String.format("%s: %d in %.1f ms (%.0f per sec)",
+                name, numItems, durationMs, numItems / (durationMs / 1000D)));
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.core.dao.state.model.blockchain.TxInput;
+
+import bisq.common.UserThread;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+
+import java.math.BigDecimal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * Measures the catch up of a full node with the BlockPrefetcher against a local stub of the Bitcoin Core RPC server.
+ * The stub replays recorded blocks: set the system property blocksDir to a directory with json files created with
+ * {@code bitcoin-cli getblock <hash> 2 > <height>.json}, otherwise we generate blocks in the same format.
+ * The stub adds a delay to each request for the time Bitcoin Core needs to read and serialize the block and handles
+ * 4 requests in parallel, like Bitcoin Core with its default rpcthreads.
+ * <p>
+ * We decode the responses with Gson into our RawBlock like RpcService does with the domain objects of btcd-cli4j,
+ * so the benchmark runs without a Bitcoin Core setup. One parallel request is what the FullNode did before we had the
+ * BlockPrefetcher.
+ * <p>
+ * We do not have JMH in our build, so that is an ignored test. Remove the @Ignore to run it from the IDE.
+ */
+@Ignore("Benchmark, run it manually")
+public class BlockPrefetcherBenchmark {
+    private static final int NUM_GENERATED_BLOCKS = 300;
+    private static final int TXS_PER_GENERATED_BLOCK = 300;
+    private static final int GET_BLOCK_HASH_DELAY_MS = 1;
+    private static final int GET_BLOCK_DELAY_MS = 15;
+    private static final int RPC_THREADS = 4;
+    private static final int[] NUM_PARALLEL_REQUESTS = {1, 2, 4, 8};
+
+    private static final List<String> blockHashes = new ArrayList<>();
+    private static final List<String> recordedBlocks = new ArrayList<>();
+
+    @Test
+    public void benchmark() throws Exception {
+        String blocksDir = System.getProperty("blocksDir");
+        if (blocksDir != null)
+            loadRecordedBlocks(Paths.get(blocksDir));
+        else
+            generateBlocks();
+        System.out.println(String.format("Replaying %d blocks with %.1f MB of json",
+                recordedBlocks.size(), recordedBlocks.stream().mapToLong(String::length).sum() / 1_000_000D));
+
+        HttpServer server = startStubServer();
+        URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort());
+        UserThread.setExecutor(Executors.newSingleThreadExecutor());
+
+        for (int numParallelRequests : NUM_PARALLEL_REQUESTS) {
+            // Warm up
+            catchUp(url, numParallelRequests);
+            long ts = System.nanoTime();
+            catchUp(url, numParallelRequests);
+            double durationMs = (System.nanoTime() - ts) / 1_000_000D;
+            System.out.println(String.format("%d parallel requests: %d blocks in %.0f ms (%.0f blocks per sec)",
+                    numParallelRequests, recordedBlocks.size(), durationMs,
+                    recordedBlocks.size() / (durationMs / 1000D)));
+        }
+
+        server.stop(0);
+    }
+
+    private static void catchUp(URL url, int numParallelRequests) throws Exception {
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(
+                Executors.newFixedThreadPool(numParallelRequests));
+        CountDownLatch completedLatch = new CountDownLatch(1);
+        AtomicInteger expectedHeight = new AtomicInteger(0);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        UserThread.execute(() -> new BlockPrefetcher<RawBlock>(executor,
+                blockHeight -> requestBlock(url, blockHeight),
+                2 * numParallelRequests,
+                0,
+                recordedBlocks.size() - 1,
+                rawBlock -> {
+                    if (rawBlock.getHeight() != expectedHeight.getAndIncrement())
+                        throw new IllegalStateException("Unexpected block height " + rawBlock.getHeight());
+                },
+                completedLatch::countDown,
+                throwable -> {
+                    error.set(throwable);
+                    completedLatch.countDown();
+                }).start());
+        completedLatch.await();
+        executor.shutdown();
+        if (error.get() != null)
+            throw new IllegalStateException(error.get());
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Client
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static RawBlock requestBlock(URL url, int blockHeight) throws IOException {
+        String blockHash = call(url, "getblockhash", blockHeight).getAsString();
+        return toRawBlock(call(url, "getblock", blockHash, 2).getAsJsonObject());
+    }
+
+    private static JsonElement call(URL url, String method, Object... params) throws IOException {
+        JsonObject request = new JsonObject();
+        request.addProperty("jsonrpc", "1.0");
+        request.addProperty("id", method);
+        request.addProperty("method", method);
+        request.add("params", new Gson().toJsonTree(params));
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream outputStream = connection.getOutputStream()) {
+            outputStream.write(request.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+            return new JsonParser().parse(reader).getAsJsonObject().get("result");
+        }
+    }
+
+    // Same mapping as RpcService.getTxFromRawTransaction
+    private static RawBlock toRawBlock(JsonObject block) {
+        int height = block.get("height").getAsInt();
+        String hash = block.get("hash").getAsString();
+        long time = block.get("time").getAsLong() * 1000;
+        List<RawTx> txs = new ArrayList<>();
+        for (JsonElement txElement : block.getAsJsonArray("tx")) {
+            JsonObject tx = txElement.getAsJsonObject();
+            String txId = tx.get("txid").getAsString();
+            List<TxInput> txInputs = new ArrayList<>();
+            for (JsonElement inputElement : tx.getAsJsonArray("vin")) {
+                JsonObject input = inputElement.getAsJsonObject();
+                if (!input.has("txid"))
+                    continue;
+                String[] split = input.getAsJsonObject("scriptSig").get("asm").getAsString().split("\\[ALL] ");
+                txInputs.add(new TxInput(input.get("txid").getAsString(), input.get("vout").getAsInt(),
+                        split.length == 2 ? split[1] : null));
+            }
+            List<RawTxOutput> txOutputs = new ArrayList<>();
+            for (JsonElement outputElement : tx.getAsJsonArray("vout")) {
+                JsonObject output = outputElement.getAsJsonObject();
+                JsonArray addresses = output.getAsJsonObject("scriptPubKey").getAsJsonArray("addresses");
+                String address = addresses != null && addresses.size() == 1 ? addresses.get(0).getAsString() : null;
+                txOutputs.add(new RawTxOutput(output.get("n").getAsInt(),
+                        output.get("value").getAsBigDecimal().movePointRight(8).longValue(),
+                        txId,
+                        null,
+                        address,
+                        null,
+                        height));
+            }
+            txs.add(new RawTx(txId, height, hash, time, ImmutableList.copyOf(txInputs), ImmutableList.copyOf(txOutputs)));
+        }
+        String previousBlockHash = block.has("previousblockhash") ? block.get("previousblockhash").getAsString() : null;
+        return new RawBlock(height, time, hash, previousBlockHash, ImmutableList.copyOf(txs));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Stub server
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static HttpServer startStubServer() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(RPC_THREADS));
+        server.createContext("/", BlockPrefetcherBenchmark::handleRequest);
+        server.start();
+        return server;
+    }
+
+    private static void handleRequest(HttpExchange exchange) throws IOException {
+        JsonObject request;
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            request = new JsonParser().parse(new InputStreamReader(inputStream, StandardCharsets.UTF_8))
+                    .getAsJsonObject();
+        }
+        String method = request.get("method").getAsString();
+        JsonArray params = request.getAsJsonArray("params");
+        String result;
+        switch (method) {
+            case "getblockhash":
+                sleep(GET_BLOCK_HASH_DELAY_MS);
+                result = "\"" + blockHashes.get(params.get(0).getAsInt()) + "\"";
+                break;
+            case "getblock":
+                sleep(GET_BLOCK_DELAY_MS);
+                result = recordedBlocks.get(blockHashes.indexOf(params.get(0).getAsString()));
+                break;
+            default:
+                throw new IOException("Unsupported method " + method);
+        }
+
+        byte[] response = ("{\"result\":" + result + ",\"error\":null,\"id\":\"" + method + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(response);
+        }
+    }
+
+    private static void sleep(int millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Blocks
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // We replay the recorded blocks from height 0, so we only need them to be in height order
+    private static void loadRecordedBlocks(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(path -> path.toString().endsWith(".json"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        List<JsonObject> blocks = new ArrayList<>();
+        for (Path file : files) {
+            blocks.add(new JsonParser().parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+                    .getAsJsonObject());
+        }
+        blocks.sort((o1, o2) -> Integer.compare(o1.get("height").getAsInt(), o2.get("height").getAsInt()));
+        for (int i = 0; i < blocks.size(); i++) {
+            JsonObject block = blocks.get(i);
+            block.addProperty("height", i);
+            addBlock(block);
+        }
+    }
+
+    private static void generateBlocks() {
+        Random random = new Random(1);
+        String previousBlockHash = null;
+        for (int height = 0; height < NUM_GENERATED_BLOCKS; height++) {
+            JsonObject block = new JsonObject();
+            String hash = getRandomHex(random, 32);
+            block.addProperty("hash", hash);
+            block.addProperty("height", height);
+            block.addProperty("time", 1_500_000_000 + height * 600);
+            if (previousBlockHash != null)
+                block.addProperty("previousblockhash", previousBlockHash);
+            JsonArray txs = new JsonArray();
+            for (int i = 0; i < TXS_PER_GENERATED_BLOCK; i++) {
+                JsonObject tx = new JsonObject();
+                tx.addProperty("txid", getRandomHex(random, 32));
+                JsonArray vin = new JsonArray();
+                for (int n = 0; n < 2; n++) {
+                    JsonObject input = new JsonObject();
+                    input.addProperty("txid", getRandomHex(random, 32));
+                    input.addProperty("vout", n);
+                    JsonObject scriptSig = new JsonObject();
+                    scriptSig.addProperty("asm", getRandomHex(random, 71) + "[ALL] " + getRandomHex(random, 33));
+                    scriptSig.addProperty("hex", getRandomHex(random, 106));
+                    input.add("scriptSig", scriptSig);
+                    vin.add(input);
+                }
+                tx.add("vin", vin);
+                JsonArray vout = new JsonArray();
+                for (int n = 0; n < 2; n++) {
+                    JsonObject output = new JsonObject();
+                    output.addProperty("value", BigDecimal.valueOf(random.nextInt(100_000_000), 8));
+                    output.addProperty("n", n);
+                    JsonObject scriptPubKey = new JsonObject();
+                    String pubKeyHash = getRandomHex(random, 20);
+                    scriptPubKey.addProperty("asm", "OP_DUP OP_HASH160 " + pubKeyHash + " OP_EQUALVERIFY OP_CHECKSIG");
+                    scriptPubKey.addProperty("hex", "76a914" + pubKeyHash + "88ac");
+                    scriptPubKey.addProperty("reqSigs", 1);
+                    scriptPubKey.addProperty("type", "pubkeyhash");
+                    JsonArray addresses = new JsonArray();
+                    addresses.add("1" + getRandomHex(random, 16));
+                    scriptPubKey.add("addresses", addresses);
+                    output.add("scriptPubKey", scriptPubKey);
+                    vout.add(output);
+                }
+                tx.add("vout", vout);
+                txs.add(tx);
+            }
+            block.add("tx", txs);
+            addBlock(block);
+            previousBlockHash = hash;
+        }
+    }
+
+    private static void addBlock(JsonObject block) {
+        blockHashes.add(block.get("hash").getAsString());
+        recordedBlocks.add(block.toString());
+    }
+
+    private static String getRandomHex(Random random, int numBytes) {
+        StringBuilder sb = new StringBuilder(numBytes * 2);
+        for (int i = 0; i < numBytes; i++) {
+            sb.append(String.format("%02x", random.nextInt(256)));
+        }
+        return sb.toString();
+    }
+}
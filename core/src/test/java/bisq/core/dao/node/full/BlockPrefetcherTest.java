@@ -0,0 +1,163 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.common.UserThread;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BlockPrefetcherTest {
+    private static final int START_HEIGHT = 100;
+    private static final int CHAIN_HEIGHT = 160;
+    private static final int MAX_PREFETCHED_BLOCKS = 8;
+
+    private ListeningExecutorService executor;
+    private final Random random = new Random();
+    private final List<Integer> deliveredHeights = new CopyOnWriteArrayList<>();
+    private final CountDownLatch completedLatch = new CountDownLatch(1);
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private BlockPrefetcher<RawBlock> blockPrefetcher;
+
+    @Before
+    public void setup() {
+        UserThread.setExecutor(Executors.newSingleThreadExecutor());
+        executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        UserThread.setExecutor(MoreExecutors.directExecutor());
+    }
+
+    @Test
+    public void testBlocksAreDeliveredInHeightOrder() throws InterruptedException {
+        AtomicBoolean requestedTooFarAhead = new AtomicBoolean();
+        start(blockHeight -> {
+            // The later blocks complete first quite often
+            Thread.sleep(random.nextInt(20));
+            int lastDeliveredHeight = deliveredHeights.isEmpty() ? START_HEIGHT - 1 :
+                    deliveredHeights.get(deliveredHeights.size() - 1);
+            if (blockHeight > lastDeliveredHeight + MAX_PREFETCHED_BLOCKS)
+                requestedTooFarAhead.set(true);
+            return getBlock(blockHeight);
+        }, rawBlock -> {
+        });
+
+        assertTrue(completedLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(IntStream.rangeClosed(START_HEIGHT, CHAIN_HEIGHT).boxed().collect(Collectors.toList()),
+                new ArrayList<>(deliveredHeights));
+        assertFalse(requestedTooFarAhead.get());
+        assertTrue(blockPrefetcher.isStopped());
+    }
+
+    @Test
+    public void testRequestsRunInParallel() throws InterruptedException {
+        AtomicInteger numRunningRequests = new AtomicInteger();
+        AtomicInteger maxRunningRequests = new AtomicInteger();
+        start(blockHeight -> {
+            maxRunningRequests.accumulateAndGet(numRunningRequests.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            numRunningRequests.decrementAndGet();
+            return getBlock(blockHeight);
+        }, rawBlock -> {
+        });
+
+        assertTrue(completedLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(CHAIN_HEIGHT - START_HEIGHT + 1, deliveredHeights.size());
+        // The executor has 4 threads
+        assertTrue(maxRunningRequests.get() > 1);
+        assertTrue(maxRunningRequests.get() <= 4);
+    }
+
+    @Test
+    public void testStopAtReorgDeliversNoMoreBlocks() throws InterruptedException {
+        start(this::getBlock, rawBlock -> {
+            if (rawBlock.getHeight() == START_HEIGHT + 5)
+                blockPrefetcher.stop();
+        });
+
+        assertFalse(completedLatch.await(500, TimeUnit.MILLISECONDS));
+        assertEquals(START_HEIGHT + 5, (int) deliveredHeights.get(deliveredHeights.size() - 1));
+        assertEquals(6, deliveredHeights.size());
+    }
+
+    @Test
+    public void testFailedRequestStopsDelivery() throws InterruptedException {
+        start(blockHeight -> {
+            if (blockHeight == START_HEIGHT + 3)
+                throw new RpcException("Block not found", null);
+            return getBlock(blockHeight);
+        }, rawBlock -> {
+        });
+
+        Thread.sleep(500);
+        assertNotNull(error.get());
+        assertTrue(error.get() instanceof RpcException);
+        assertEquals(3, deliveredHeights.size());
+        assertEquals(1, completedLatch.getCount());
+        assertTrue(blockPrefetcher.isStopped());
+    }
+
+    private void start(BlockPrefetcher.BlockSupplier<RawBlock> blockSupplier, Consumer<RawBlock> blockHandler) {
+        UserThread.execute(() -> {
+            blockPrefetcher = new BlockPrefetcher<>(executor,
+                    blockSupplier,
+                    MAX_PREFETCHED_BLOCKS,
+                    START_HEIGHT,
+                    CHAIN_HEIGHT,
+                    rawBlock -> {
+                        deliveredHeights.add(rawBlock.getHeight());
+                        blockHandler.accept(rawBlock);
+                    },
+                    completedLatch::countDown,
+                    error::set);
+            blockPrefetcher.start();
+        });
+    }
+
+    private RawBlock getBlock(int blockHeight) {
+        return new RawBlock(blockHeight, blockHeight, "blockHash" + blockHeight, "blockHash" + (blockHeight - 1),
+                ImmutableList.of());
+    }
+}
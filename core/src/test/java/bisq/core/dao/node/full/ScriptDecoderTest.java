@@ -0,0 +1,133 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full;
+
+import bisq.core.dao.state.model.blockchain.PubKeyScript;
+import bisq.core.dao.state.model.blockchain.ScriptType;
+
+import org.bitcoinj.core.Address;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.bitcoinj.core.Utils;
+import org.bitcoinj.params.MainNetParams;
+import org.bitcoinj.params.TestNet3Params;
+import org.bitcoinj.script.ScriptBuilder;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ScriptDecoderTest {
+    private final ScriptDecoder scriptDecoder = new ScriptDecoder(MainNetParams.get());
+
+    @Test
+    public void testPayToPubKeyHash() {
+        ECKey key = new ECKey();
+        Address address = key.toAddress(MainNetParams.get());
+        byte[] script = ScriptBuilder.createOutputScript(address).getProgram();
+        String hash160 = Utils.HEX.encode(key.getPubKeyHash());
+
+        PubKeyScript pubKeyScript = scriptDecoder.toPubKeyScript(script);
+        assertEquals(ScriptType.PUB_KEY_HASH, pubKeyScript.getScriptType());
+        assertEquals(1, pubKeyScript.getReqSigs());
+        assertEquals(ImmutableList.of(address.toString()), pubKeyScript.getAddresses());
+        assertEquals("OP_DUP OP_HASH160 " + hash160 + " OP_EQUALVERIFY OP_CHECKSIG", pubKeyScript.getAsm());
+        assertEquals(Utils.HEX.encode(script), pubKeyScript.getHex());
+    }
+
+    @Test
+    public void testMultisig() {
+        ECKey key1 = new ECKey();
+        ECKey key2 = new ECKey();
+        byte[] script = ScriptBuilder.createMultiSigOutputScript(1, ImmutableList.of(key1, key2)).getProgram();
+
+        PubKeyScript pubKeyScript = scriptDecoder.toPubKeyScript(script);
+        assertEquals(ScriptType.MULTISIG, pubKeyScript.getScriptType());
+        assertEquals(1, pubKeyScript.getReqSigs());
+        assertEquals(ImmutableList.of(key1.toAddress(MainNetParams.get()).toString(),
+                key2.toAddress(MainNetParams.get()).toString()), pubKeyScript.getAddresses());
+        assertEquals("1 " + key1.getPublicKeyAsHex() + " " + key2.getPublicKeyAsHex() + " 2 OP_CHECKMULTISIG",
+                pubKeyScript.getAsm());
+    }
+
+    // Test vectors of BIP173
+    @Test
+    public void testSegwitAddresses() {
+        PubKeyScript pubKeyScript = scriptDecoder.toPubKeyScript(
+                Utils.HEX.decode("0014751e76e8199196d454941c45d1b3a323f1433bd6"));
+        assertEquals(ScriptType.WITNESS_V0_KEYHASH, pubKeyScript.getScriptType());
+        assertEquals(ImmutableList.of("bc1qw508d6qejxtdg4y5r3zarvary0c5xw7kv8f3t4"), pubKeyScript.getAddresses());
+        assertEquals("0 751e76e8199196d454941c45d1b3a323f1433bd6", pubKeyScript.getAsm());
+
+        byte[] script = Utils.HEX.decode("00201863143c14c5166804bd19203356da136c985678cd4d27a1b8c6329604903262");
+        pubKeyScript = new ScriptDecoder(TestNet3Params.get()).toPubKeyScript(script);
+        assertEquals(ScriptType.WITNESS_V0_SCRIPTHASH, pubKeyScript.getScriptType());
+        assertEquals(ImmutableList.of("tb1qrp33g0q5c5txsp9arysrx4k6zdkfs4nce4xj0gdcccefvpysxf3q0sl5k7"),
+                pubKeyScript.getAddresses());
+    }
+
+    @Test
+    public void testOpReturn() {
+        byte[] data = Utils.HEX.decode("1701abcdef0123456789abcdef0123456789abcd");
+        PubKeyScript pubKeyScript = scriptDecoder.toPubKeyScript(ScriptBuilder.createOpReturnScript(data).getProgram());
+        assertEquals(ScriptType.NULL_DATA, pubKeyScript.getScriptType());
+        assertEquals(0, pubKeyScript.getReqSigs());
+        assertNull(pubKeyScript.getAddresses());
+        assertEquals("OP_RETURN 1701abcdef0123456789abcdef0123456789abcd", pubKeyScript.getAsm());
+        assertArrayEquals(data, ScriptDecoder.getOpReturnData(pubKeyScript.getScriptType(), pubKeyScript.getAsm()));
+
+        // Bitcoin Core shows pushes of up to 4 bytes as numbers
+        pubKeyScript = scriptDecoder.toPubKeyScript(Utils.HEX.decode("6a021234"));
+        assertEquals("OP_RETURN 13330", pubKeyScript.getAsm());
+        pubKeyScript = scriptDecoder.toPubKeyScript(Utils.HEX.decode("6a0181"));
+        assertEquals("OP_RETURN -1", pubKeyScript.getAsm());
+    }
+
+    @Test
+    public void testNonStandard() {
+        PubKeyScript pubKeyScript = scriptDecoder.toPubKeyScript(Utils.HEX.decode("51b1"));
+        assertEquals(ScriptType.NONSTANDARD, pubKeyScript.getScriptType());
+        assertEquals("1 OP_CHECKLOCKTIMEVERIFY", pubKeyScript.getAsm());
+        assertNull(pubKeyScript.getAddresses());
+
+        // Push of 5 bytes but only 2 are left
+        assertEquals("OP_DUP [error]", ScriptDecoder.toAsm(Utils.HEX.decode("76051234"), false));
+    }
+
+    @Test
+    public void testScriptSigAsm() {
+        ECKey key = new ECKey();
+        byte[] signature = key.sign(Sha256Hash.ZERO_HASH).encodeToDER();
+        byte[] signatureWithHashType = new byte[signature.length + 1];
+        System.arraycopy(signature, 0, signatureWithHashType, 0, signature.length);
+        signatureWithHashType[signature.length] = 0x01;
+        byte[] scriptSig = new ScriptBuilder().data(signatureWithHashType).data(key.getPubKey()).build().getProgram();
+
+        String asm = ScriptDecoder.toAsm(scriptSig, true);
+        assertEquals(Utils.HEX.encode(signature) + "[ALL] " + key.getPublicKeyAsHex(), asm);
+        assertEquals(key.getPublicKeyAsHex(), ScriptDecoder.getPubKeyFromScriptSigAsm("txId", asm));
+
+        // The sighash type is only decoded for inputs
+        assertEquals(Utils.HEX.encode(signatureWithHashType) + " " + key.getPublicKeyAsHex(),
+                ScriptDecoder.toAsm(scriptSig, false));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.node.full.network;
+
+import bisq.core.dao.node.full.RawBlock;
+import bisq.core.dao.node.messages.GetBlocksResponse;
+import bisq.core.dao.state.DaoStateService;
+import bisq.core.dao.state.GenesisTxInfo;
+import bisq.core.dao.state.model.DaoState;
+import bisq.core.dao.state.model.blockchain.Block;
+import bisq.core.util.BsqFormatter;
+
+import org.bitcoinj.core.Coin;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlocksResponseCacheTest {
+    private static final int GENESIS_HEIGHT = 100;
+    private static final int NUM_BLOCKS = 250;
+
+    private DaoStateService daoStateService;
+    private BlocksResponseCache blocksResponseCache;
+
+    @Before
+    public void setUp() {
+        daoStateService = getDaoStateService("fakeblockhash");
+        blocksResponseCache = new BlocksResponseCache(daoStateService);
+    }
+
+    @Test
+    public void testSameBlocksAsDaoState() {
+        assertBlocks(0, 6000);
+        assertBlocks(GENESIS_HEIGHT, 1);
+        assertBlocks(GENESIS_HEIGHT + 150, 6000);
+        assertBlocks(GENESIS_HEIGHT + 199, 2);
+        assertBlocks(GENESIS_HEIGHT + 99, 102);
+        assertTrue(blocksResponseCache.getBlocks(GENESIS_HEIGHT + NUM_BLOCKS, 6000).getRawBlocks().isEmpty());
+    }
+
+    @Test
+    public void testChunksAreReused() {
+        blocksResponseCache.getBlocks(GENESIS_HEIGHT + 50, 6000);
+        // The last 50 blocks are not in a full chunk
+        assertEquals(0, blocksResponseCache.getNumChunkHits());
+        assertEquals(2, blocksResponseCache.getNumChunkMisses());
+
+        blocksResponseCache.getBlocks(GENESIS_HEIGHT + 120, 6000);
+        assertEquals(1, blocksResponseCache.getNumChunkHits());
+        assertEquals(2, blocksResponseCache.getNumChunkMisses());
+    }
+
+    @Test
+    public void testChangedBlocksReplaceChunks() {
+        blocksResponseCache.getBlocks(0, 6000);
+        daoStateService.applySnapshot(getDaoStateService("otherblockhash").getSnapshot());
+
+        assertBlocks(0, 6000);
+        assertEquals(0, blocksResponseCache.getNumChunkHits());
+        assertEquals(4, blocksResponseCache.getNumChunkMisses());
+    }
+
+    private void assertBlocks(int fromBlockHeight, int numMaxBlocks) {
+        List<RawBlock> expected = daoStateService.getBlocksFromBlockHeight(fromBlockHeight, numMaxBlocks).stream()
+                .map(RawBlock::fromBlock)
+                .collect(Collectors.toList());
+        BlocksResponseCache.Blocks blocks = blocksResponseCache.getBlocks(fromBlockHeight, numMaxBlocks);
+        assertEquals(expected, blocks.getRawBlocks());
+        assertEquals(new GetBlocksResponse(expected, 1).toProtoNetworkEnvelope(),
+                new GetBlocksResponse(blocks.getRawBlocks(), blocks.getProtoBlocks(), 1).toProtoNetworkEnvelope());
+    }
+
+    private static DaoStateService getDaoStateService(String blockHashPrefix) {
+        DaoStateService daoStateService = new DaoStateService(new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", GENESIS_HEIGHT, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        for (int height = GENESIS_HEIGHT; height < GENESIS_HEIGHT + NUM_BLOCKS; height++) {
+            daoStateService.onNewBlockHeight(height);
+            daoStateService.onNewBlockWithEmptyTxs(new Block(height, 1534800000 + height, blockHashPrefix + height,
+                    blockHashPrefix + (height - 1)));
+        }
+        return daoStateService;
+    }
+}
@@ -19,10 +19,20 @@ package bisq.core.dao.state;
 
 import bisq.core.dao.state.model.DaoState;
 import bisq.core.dao.state.model.blockchain.Block;
+import bisq.core.dao.state.model.blockchain.SpentInfo;
+import bisq.core.dao.state.model.blockchain.Tx;
+import bisq.core.dao.state.model.blockchain.TxOutput;
+import bisq.core.dao.state.model.blockchain.TxOutputType;
+import bisq.core.dao.state.model.blockchain.TxType;
 import bisq.core.util.BsqFormatter;
 
 import org.bitcoinj.core.Coin;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -69,4 +79,252 @@ public class DaoStateServiceTest {
                 stateService.isBlockHashKnown("fakeblockhash4")
         );
     }
+
+    @Test
+    public void testGetSnapshot() {
+        DaoStateService stateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        stateService.onNewBlockHeight(0);
+        stateService.onNewBlockWithEmptyTxs(new Block(0, 1534800000, "fakeblockhash0", null));
+        stateService.onNewBlockHeight(1);
+        stateService.onNewBlockWithEmptyTxs(new Block(1, 1534800001, "fakeblockhash1", null));
+
+        DaoState snapshot = stateService.getSnapshot();
+        Assert.assertEquals("Snapshot must serialize like a deep clone.",
+                stateService.getClone().toProtoMessage(), snapshot.toProtoMessage());
+        Assert.assertSame("Snapshot must share the blocks.",
+                stateService.getBlocks().getLast(), snapshot.getBlocks().getLast());
+
+        stateService.onNewBlockHeight(2);
+        stateService.onNewBlockWithEmptyTxs(new Block(2, 1534800002, "fakeblockhash2", null));
+        Assert.assertEquals("Snapshot must not change with the daoState.", 2, snapshot.getBlocks().size());
+        Assert.assertEquals(3, stateService.getBlocks().size());
+    }
+
+    @Test
+    public void testGetBlocksByHeight() {
+        DaoStateService stateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 100, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        for (int height = 100; height < 110; height++) {
+            stateService.onNewBlockHeight(height);
+            stateService.onNewBlockWithEmptyTxs(new Block(height, 1534800000 + height, "fakeblockhash" + height,
+                    "fakeblockhash" + (height - 1)));
+        }
+
+        Assert.assertEquals("fakeblockhash105", stateService.getBlockAtHeight(105).get().getHash());
+        Assert.assertFalse(stateService.getBlockAtHeight(99).isPresent());
+        Assert.assertFalse(stateService.getBlockAtHeight(110).isPresent());
+        Assert.assertTrue(stateService.containsBlockHash("fakeblockhash109"));
+        Assert.assertTrue(stateService.containsBlock(stateService.getBlocks().getFirst()));
+        Assert.assertEquals(1534800103, stateService.getBlockTime(103));
+
+        Assert.assertEquals(Arrays.asList(104, 105, 106), getHeights(stateService.getBlocksFromBlockHeight(104, 3)));
+        Assert.assertEquals(Arrays.asList(100, 101), getHeights(stateService.getBlocksFromBlockHeight(0, 2)));
+        Assert.assertEquals(Arrays.asList(108, 109), getHeights(stateService.getBlocksFromBlockHeight(108, 6000)));
+        Assert.assertTrue(stateService.getBlocksFromBlockHeight(110, 6000).isEmpty());
+
+        DaoStateService snapshotStateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 100, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        snapshotStateService.applySnapshot(stateService.getSnapshot());
+        Assert.assertEquals("fakeblockhash107", snapshotStateService.getBlockAtHeight(107).get().getHash());
+        Assert.assertTrue(snapshotStateService.isBlockHashKnown("fakeblockhash100"));
+    }
+
+    private static List<Integer> getHeights(List<Block> blocks) {
+        return blocks.stream().map(Block::getHeight).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testTypeIndexes() {
+        DaoStateService stateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        stateService.onNewBlockHeight(0);
+        Block block0 = new Block(0, 1534800000, "fakeblockhash0", null);
+        stateService.onNewBlockWithEmptyTxs(block0);
+        block0.getTxs().add(getTx("lockupTx", 0, TxType.LOCKUP, 10, TxOutputType.LOCKUP_OUTPUT,
+                TxOutputType.LOCKUP_OP_RETURN_OUTPUT));
+        block0.getTxs().add(getTx("invalidTx", 0, TxType.INVALID, 30, TxOutputType.INVALID_OUTPUT));
+        stateService.onParseBlockComplete(block0);
+
+        stateService.onNewBlockHeight(1);
+        Block block1 = new Block(1, 1534800001, "fakeblockhash1", "fakeblockhash0");
+        stateService.onNewBlockWithEmptyTxs(block1);
+        // Txs the parser adds to the last block must be found before the block is complete
+        block1.getTxs().add(getTx("payTradeFeeTx", 1, TxType.PAY_TRADE_FEE, 5, TxOutputType.BSQ_OUTPUT));
+        assertTypeIndexes(stateService);
+
+        DaoStateService snapshotStateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        snapshotStateService.applySnapshot(stateService.getSnapshot());
+        assertTypeIndexes(snapshotStateService);
+    }
+
+    @Test
+    public void testGetTx() {
+        DaoStateService stateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        Assert.assertFalse(stateService.getTx("unknownTx").isPresent());
+
+        stateService.onNewBlockHeight(0);
+        Block block0 = new Block(0, 1534800000, "fakeblockhash0", null);
+        stateService.onNewBlockWithEmptyTxs(block0);
+        block0.getTxs().add(getTx("tx0", 0, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT));
+        // Txs the parser adds to the last block must be found before the block is complete, also if they got added
+        // after a previous lookup
+        Assert.assertEquals("tx0", stateService.getTx("tx0").get().getId());
+        block0.getTxs().add(getTx("tx1", 0, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT));
+        Assert.assertEquals("tx1", stateService.getTx("tx1").get().getId());
+        Assert.assertTrue(stateService.containsTx("tx0"));
+        stateService.onParseBlockComplete(block0);
+
+        stateService.onNewBlockHeight(1);
+        Block block1 = new Block(1, 1534800001, "fakeblockhash1", "fakeblockhash0");
+        stateService.onNewBlockWithEmptyTxs(block1);
+        block1.getTxs().add(getTx("tx2", 1, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT));
+        Assert.assertEquals(1, stateService.getTx("tx2").get().getBlockHeight());
+        Assert.assertEquals(0, stateService.getTx("tx1").get().getBlockHeight());
+        Assert.assertFalse(stateService.getTx("unknownTx").isPresent());
+        Assert.assertFalse(stateService.containsTx("unknownTx"));
+        stateService.onParseBlockComplete(block1);
+
+        // A snapshot replaces the txs of a state which had other txs
+        DaoStateService snapshotStateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        snapshotStateService.onNewBlockHeight(0);
+        Block otherBlock0 = new Block(0, 1534800000, "otherblockhash0", null);
+        snapshotStateService.onNewBlockWithEmptyTxs(otherBlock0);
+        otherBlock0.getTxs().add(getTx("otherTx", 0, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT));
+        Assert.assertTrue(snapshotStateService.containsTx("otherTx"));
+
+        snapshotStateService.applySnapshot(stateService.getSnapshot());
+        Assert.assertFalse(snapshotStateService.getTx("otherTx").isPresent());
+        for (String txId : Arrays.asList("tx0", "tx1", "tx2")) {
+            Assert.assertTrue(snapshotStateService.containsTx(txId));
+        }
+
+        snapshotStateService.onNewBlockHeight(2);
+        Block block2 = new Block(2, 1534800002, "fakeblockhash2", "fakeblockhash1");
+        snapshotStateService.onNewBlockWithEmptyTxs(block2);
+        block2.getTxs().add(getTx("tx3", 2, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT));
+        Assert.assertEquals(2, snapshotStateService.getTx("tx3").get().getBlockHeight());
+        Assert.assertEquals(4, snapshotStateService.getTxMap().size());
+    }
+
+    @Test
+    public void testIncrementalStateHashEqualsRebuiltHash() {
+        DaoStateService stateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        stateService.onNewBlockHeight(0);
+        Block block0 = new Block(0, 1534800000, "fakeblockhash0", null);
+        stateService.onNewBlockWithEmptyTxs(block0);
+        byte[] emptyStateHash = stateService.getSerializedStateForIncrementalHashChain();
+        Tx tx0 = getTx("tx0", 0, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT, TxOutputType.BSQ_OUTPUT,
+                TxOutputType.BSQ_OUTPUT);
+        block0.getTxs().add(tx0);
+        tx0.getTxOutputs().forEach(stateService::addUnspentTxOutput);
+        Assert.assertFalse(Arrays.equals(emptyStateHash, stateService.getSerializedStateForIncrementalHashChain()));
+        assertStateHashEqualsRebuiltHash(stateService);
+
+        Tx tx1 = getTx("tx1", 0, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT);
+        block0.getTxs().add(tx1);
+        stateService.setSpentInfo(tx0.getTxOutputs().get(0).getKey(), new SpentInfo(0, "tx1", 0));
+        stateService.removeUnspentTxOutput(tx0.getTxOutputs().get(0));
+        tx1.getTxOutputs().forEach(stateService::addUnspentTxOutput);
+        assertStateHashEqualsRebuiltHash(stateService);
+
+        // Adding an unspent output again replaces it, removing a spent output again has no effect and setting the
+        // spent info again replaces it
+        stateService.addUnspentTxOutput(tx0.getTxOutputs().get(1));
+        stateService.removeUnspentTxOutput(tx0.getTxOutputs().get(0));
+        stateService.setSpentInfo(tx0.getTxOutputs().get(0).getKey(), new SpentInfo(0, "tx1", 1));
+        stateService.onParseBlockComplete(block0);
+        assertStateHashEqualsRebuiltHash(stateService);
+
+        // A snapshot replaces the maps of a state which had other entries
+        DaoStateService snapshotStateService = new DaoStateService(
+                new DaoState(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        snapshotStateService.onNewBlockHeight(0);
+        Block otherBlock0 = new Block(0, 1534800000, "otherblockhash0", null);
+        snapshotStateService.onNewBlockWithEmptyTxs(otherBlock0);
+        Tx otherTx = getTx("otherTx", 0, TxType.TRANSFER_BSQ, 0, TxOutputType.BSQ_OUTPUT);
+        otherBlock0.getTxs().add(otherTx);
+        snapshotStateService.addUnspentTxOutput(otherTx.getTxOutputs().get(0));
+        snapshotStateService.setSpentInfo(tx0.getTxOutputs().get(2).getKey(), new SpentInfo(0, "otherTx", 0));
+        snapshotStateService.onParseBlockComplete(otherBlock0);
+
+        snapshotStateService.applySnapshot(stateService.getSnapshot());
+        Assert.assertArrayEquals(stateService.getSerializedStateForIncrementalHashChain(),
+                snapshotStateService.getSerializedStateForIncrementalHashChain());
+        assertStateHashEqualsRebuiltHash(snapshotStateService);
+    }
+
+    // The constructor creates the hashes from the full UTXO set and spent info map
+    private static void assertStateHashEqualsRebuiltHash(DaoStateService stateService) {
+        DaoStateService rebuiltStateService = new DaoStateService(
+                stateService.getClone(),
+                new GenesisTxInfo("fakegenesistxid", 0, Coin.parseCoin("2.5").value),
+                new BsqFormatter());
+        Assert.assertArrayEquals(rebuiltStateService.getSerializedStateForIncrementalHashChain(),
+                stateService.getSerializedStateForIncrementalHashChain());
+    }
+
+    private static void assertTypeIndexes(DaoStateService stateService) {
+        Assert.assertEquals(Arrays.asList("lockupTx"), getTxIds(stateService.getTxOutputsByTxOutputType(
+                TxOutputType.LOCKUP_OUTPUT).stream().map(TxOutput::getTxId)));
+        Assert.assertEquals(1, stateService.getLockupTxOutputs().size());
+        Assert.assertEquals(100, stateService.getTotalAmountOfLockupTxOutputs());
+        Assert.assertTrue(stateService.getUnlockTxOutputs().isEmpty());
+        Assert.assertEquals(Arrays.asList("invalidTx"), getTxIds(stateService.getInvalidTxs().stream().map(Tx::getId)));
+        Assert.assertTrue(stateService.getIrregularTxs().isEmpty());
+        Assert.assertEquals(Arrays.asList("lockupTx", "payTradeFeeTx"),
+                getTxIds(stateService.getBurntFeeTxs().stream().map(Tx::getId)));
+        Assert.assertEquals(15, stateService.getTotalBurntFee());
+        Assert.assertEquals(30, stateService.getTotalAmountOfInvalidatedBsq());
+        Assert.assertEquals(45, stateService.getTotalAmountOfBurntBsq());
+    }
+
+    private static List<String> getTxIds(Stream<String> txIds) {
+        return txIds.sorted().collect(Collectors.toList());
+    }
+
+    // Each output has a value of 100
+    private static Tx getTx(String txId, int height, TxType txType, long burntBsq, TxOutputType... txOutputTypes) {
+        protobuf.Tx.Builder txBuilder = protobuf.Tx.newBuilder()
+                .setTxType(txType.toProtoMessage())
+                .setBurntBsq(burntBsq);
+        for (int i = 0; i < txOutputTypes.length; i++) {
+            txBuilder.addTxOutputs(protobuf.BaseTxOutput.newBuilder()
+                    .setIndex(i)
+                    .setValue(100)
+                    .setTxId(txId)
+                    .setBlockHeight(height)
+                    .setTxOutput(protobuf.TxOutput.newBuilder()
+                            .setTxOutputType(txOutputTypes[i].toProtoMessage())));
+        }
+        return Tx.fromProto(protobuf.BaseTx.newBuilder()
+                .setTxVersion("1")
+                .setId(txId)
+                .setBlockHeight(height)
+                .setBlockHash("fakeblockhash" + height)
+                .setTx(txBuilder)
+                .build());
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.dao.state;
+
+import bisq.common.crypto.Hash;
+
+import java.math.BigInteger;
+
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MultisetHashTest {
+    @Test
+    public void testOrderIndependence() {
+        MultisetHash a = new MultisetHash();
+        a.add(new byte[]{1});
+        a.add(new byte[]{2});
+        a.add(new byte[]{3});
+
+        MultisetHash b = new MultisetHash();
+        b.add(new byte[]{3});
+        b.add(new byte[]{1});
+        b.add(new byte[]{2});
+
+        Assert.assertArrayEquals(a.getDigest(), b.getDigest());
+        Assert.assertEquals(3, a.size());
+    }
+
+    @Test
+    public void testRemove() {
+        MultisetHash empty = new MultisetHash();
+        MultisetHash hash = new MultisetHash();
+        hash.add(new byte[]{1});
+        hash.add(new byte[]{2});
+        Assert.assertFalse(Arrays.equals(empty.getDigest(), hash.getDigest()));
+
+        hash.remove(new byte[]{1});
+        MultisetHash expected = new MultisetHash();
+        expected.add(new byte[]{2});
+        Assert.assertArrayEquals(expected.getDigest(), hash.getDigest());
+
+        hash.remove(new byte[]{2});
+        Assert.assertArrayEquals(empty.getDigest(), hash.getDigest());
+    }
+
+    @Test
+    public void testDuplicatesAreCounted() {
+        MultisetHash once = new MultisetHash();
+        once.add(new byte[]{1});
+        MultisetHash twice = new MultisetHash();
+        twice.add(new byte[]{1});
+        twice.add(new byte[]{1});
+        Assert.assertFalse(Arrays.equals(once.getDigest(), twice.getDigest()));
+    }
+
+    @Test
+    public void testSumModulo() {
+        BigInteger modulus = BigInteger.ONE.shiftLeft(256);
+        BigInteger expected = BigInteger.ZERO;
+        MultisetHash hash = new MultisetHash();
+        for (int i = 0; i < 1000; i++) {
+            byte[] element = BigInteger.valueOf(i).toByteArray();
+            hash.add(element);
+            expected = expected.add(new BigInteger(1, Hash.getSha256Hash(element))).mod(modulus);
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            byte[] element = BigInteger.valueOf(i).toByteArray();
+            hash.remove(element);
+            expected = expected.subtract(new BigInteger(1, Hash.getSha256Hash(element))).mod(modulus);
+        }
+
+        byte[] sum = Arrays.copyOf(hash.getDigest(), 32);
+        Assert.assertEquals(expected, new BigInteger(1, sum));
+    }
+}
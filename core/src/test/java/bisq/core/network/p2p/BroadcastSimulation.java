@@ -0,0 +1,329 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.core.network.p2p;
+
+import bisq.core.account.witness.AccountAgeWitness;
+import bisq.core.proto.network.CoreNetworkProtoResolver;
+
+import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.network.Connection;
+import bisq.network.p2p.network.LocalhostNetworkNode;
+import bisq.network.p2p.network.SetupListener;
+import bisq.network.p2p.peers.Broadcaster;
+import bisq.network.p2p.peers.PeerManager;
+import bisq.network.p2p.peers.PeerScoring;
+import bisq.network.p2p.peers.peerexchange.messages.GetPeersRequest;
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.messages.AddPersistableNetworkPayloadMessage;
+
+import bisq.common.EventLoop;
+import bisq.common.Timer;
+import bisq.common.UserThread;
+import bisq.common.app.Log;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import ch.qos.logback.classic.Level;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Simulates the propagation of broadcasts through a network of LocalhostNetworkNodes and compares random broadcast
+ * targets with the targets picked by the PeerScoring.
+ * <p>
+ * That is an ignored test like our benchmarks. Remove the @Ignore to run it from the IDE.
+ * Each node connects to a few random other nodes. A part of the nodes is slow: they process received messages only
+ * after SLOW_LATENCY_MS. Their peers see that in the round trip time of their connections, like they would from the
+ * keep alive messages. Each node relays data it has not seen before to its peers like P2PDataStorage does and counts
+ * the duplicates it receives.
+ * <p>
+ * We report the time until the data has reached half and all of the nodes and the number of duplicates, which is the
+ * number of redundant messages sent over the network.
+ */
+@Ignore("Simulation, run it manually")
+public class BroadcastSimulation {
+    private static final int NUM_NODES = 40;
+    private static final int NUM_OUTBOUND_CONNECTIONS = 5;
+    private static final double SLOW_NODES_SHARE = 0.3;
+    private static final int FAST_LATENCY_MS = 10;
+    private static final int SLOW_LATENCY_MS = 400;
+    private static final int NUM_WARM_UP_BROADCASTS = 10;
+    private static final int NUM_BROADCASTS = 30;
+    private static final int BASE_PORT = 21000;
+
+    private static final Random random = new Random(1);
+    private static final List<SimulatedNode> nodes = new ArrayList<>();
+
+    @Test
+    public void simulate() throws InterruptedException {
+        Log.setCustomLogLevel("bisq.network.p2p", Level.WARN);
+        UserThread.setExecutor(new EventLoop("UserThread", 0));
+        UserThread.setTimerFactory(ScheduledTimer::new);
+        LocalhostNetworkNode.setSimulateTorDelayTorNode(0);
+        LocalhostNetworkNode.setSimulateTorDelayHiddenService(0);
+
+        startNodes();
+        connectNodes();
+
+        for (boolean usePeerScoring : new boolean[]{false, true}) {
+            nodes.forEach(node -> node.usePeerScoring = usePeerScoring);
+            String name = usePeerScoring ? "Peer scoring" : "Random targets";
+            run(NUM_WARM_UP_BROADCASTS, null);
+            run(NUM_BROADCASTS, name);
+        }
+
+        CountDownLatch shutDownLatch = new CountDownLatch(nodes.size());
+        nodes.forEach(node -> node.networkNode.shutDown(shutDownLatch::countDown));
+        shutDownLatch.await(10, TimeUnit.SECONDS);
+    }
+
+    private static void startNodes() throws InterruptedException {
+        CountDownLatch startedLatch = new CountDownLatch(NUM_NODES);
+        for (int i = 0; i < NUM_NODES; i++) {
+            int latency = i < NUM_NODES * SLOW_NODES_SHARE ? SLOW_LATENCY_MS : FAST_LATENCY_MS;
+            SimulatedNode node = new SimulatedNode(BASE_PORT + i, latency);
+            nodes.add(node);
+            node.networkNode.start(new SetupListener() {
+                @Override
+                public void onTorNodeReady() {
+                }
+
+                @Override
+                public void onHiddenServicePublished() {
+                    startedLatch.countDown();
+                }
+
+                @Override
+                public void onSetupFailed(Throwable throwable) {
+                    throwable.printStackTrace();
+                }
+
+                @Override
+                public void onRequestCustomBridges() {
+                }
+            });
+        }
+        startedLatch.await();
+    }
+
+    // The GetPeersRequest tells the peer our address, so both sides have a confirmed connection. We don't run a
+    // PeerExchangeManager, so it is not answered.
+    private static void connectNodes() throws InterruptedException {
+        for (SimulatedNode node : nodes) {
+            List<SimulatedNode> others = new ArrayList<>(nodes);
+            others.remove(node);
+            Collections.shuffle(others, random);
+            others.subList(0, NUM_OUTBOUND_CONNECTIONS).forEach(peer ->
+                    node.networkNode.sendMessage(peer.nodeAddress,
+                            new GetPeersRequest(node.nodeAddress, random.nextInt(), new HashSet<>())));
+        }
+        Thread.sleep(2000);
+
+        Map<NodeAddress, Integer> latencyByNodeAddress = new HashMap<>();
+        nodes.forEach(node -> latencyByNodeAddress.put(node.nodeAddress, node.latency));
+        int numConnections = 0;
+        for (SimulatedNode node : nodes) {
+            for (Connection connection : node.networkNode.getConfirmedConnections()) {
+                int peersLatency = latencyByNodeAddress.get(connection.getPeersNodeAddressOptional().get());
+                connection.getStatistic().setRoundTripTime(2 * (peersLatency + FAST_LATENCY_MS));
+                numConnections++;
+            }
+        }
+        System.out.println(String.format("%d nodes, %d of them slow, avg. %.1f connections per node",
+                NUM_NODES, (int) (NUM_NODES * SLOW_NODES_SHARE), numConnections / (double) NUM_NODES));
+    }
+
+    private static void run(int numBroadcasts, String name) throws InterruptedException {
+        List<Long> halfReachedTimes = new ArrayList<>();
+        List<Long> allReachedTimes = new ArrayList<>();
+        long numDuplicates = 0;
+        for (int i = 0; i < numBroadcasts; i++) {
+            AccountAgeWitness payload = new AccountAgeWitness(getRandomHash(), System.currentTimeMillis());
+            P2PDataStorage.ByteArray hash = new P2PDataStorage.ByteArray(payload.getHash());
+            nodes.forEach(node -> node.numDuplicates = 0);
+
+            // Data gets published by the fast nodes, like by a trader
+            SimulatedNode origin = nodes.get(NUM_NODES - 1 - random.nextInt((int) (NUM_NODES * (1 - SLOW_NODES_SHARE))));
+            long startTime = System.currentTimeMillis();
+            UserThread.execute(() -> origin.publish(hash, payload));
+
+            long deadline = startTime + 10_000;
+            while (getNumReached(hash) < NUM_NODES && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // Wait for the duplicates
+            Thread.sleep(1000);
+
+            List<Long> times = new ArrayList<>();
+            nodes.forEach(node -> {
+                Long receivedAt = node.receivedAt.get(hash);
+                times.add(receivedAt != null ? receivedAt - startTime : Long.MAX_VALUE);
+            });
+            Collections.sort(times);
+            halfReachedTimes.add(times.get(NUM_NODES / 2));
+            allReachedTimes.add(times.get(NUM_NODES - 1));
+            numDuplicates += nodes.stream().mapToLong(node -> node.numDuplicates).sum();
+        }
+
+        if (name != null) {
+            System.out.println(String.format("%s: half of the nodes reached after %d ms, all after %d ms (medians), " +
+                            "%.1f duplicates per broadcast",
+                    name, median(halfReachedTimes), median(allReachedTimes), numDuplicates / (double) numBroadcasts));
+        }
+    }
+
+    private static int getNumReached(P2PDataStorage.ByteArray hash) {
+        return (int) nodes.stream().filter(node -> node.receivedAt.containsKey(hash)).count();
+    }
+
+    private static long median(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static byte[] getRandomHash() {
+        byte[] hash = new byte[20];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // SimulatedNode
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static class SimulatedNode {
+        private final LocalhostNetworkNode networkNode;
+        private final NodeAddress nodeAddress;
+        private final int latency;
+        private final Broadcaster scoringBroadcaster;
+        private final Broadcaster randomBroadcaster;
+        private final Map<P2PDataStorage.ByteArray, Long> receivedAt = new ConcurrentHashMap<>();
+        private volatile boolean usePeerScoring;
+        private volatile int numDuplicates;
+
+        private SimulatedNode(int port, int latency) {
+            this.latency = latency;
+            nodeAddress = new NodeAddress("localhost", port);
+            networkNode = new LocalhostNetworkNode(port, new CoreNetworkProtoResolver());
+            scoringBroadcaster = new Broadcaster(networkNode, mock(PeerManager.class), new PeerScoring());
+            randomBroadcaster = new Broadcaster(networkNode, mock(PeerManager.class), new RandomTargets());
+            networkNode.addMessageListener((networkEnvelope, connection) -> {
+                if (networkEnvelope instanceof AddPersistableNetworkPayloadMessage) {
+                    AddPersistableNetworkPayloadMessage message = (AddPersistableNetworkPayloadMessage) networkEnvelope;
+                    NodeAddress sender = connection.getPeersNodeAddressOptional().get();
+                    // A slow node needs latency ms until it has the data
+                    UserThread.runAfter(() -> onReceived(message, sender), latency, TimeUnit.MILLISECONDS);
+                }
+            });
+        }
+
+        private void publish(P2PDataStorage.ByteArray hash, AccountAgeWitness payload) {
+            receivedAt.put(hash, System.currentTimeMillis());
+            getBroadcaster().broadcast(new AddPersistableNetworkPayloadMessage(payload), nodeAddress, null, true);
+        }
+
+        private void onReceived(AddPersistableNetworkPayloadMessage message, NodeAddress sender) {
+            P2PDataStorage.ByteArray hash = new P2PDataStorage.ByteArray(message.getPersistableNetworkPayload().getHash());
+            boolean isDuplicate = receivedAt.containsKey(hash);
+            getBroadcaster().onBroadcastMessageReceived(sender, isDuplicate);
+            if (isDuplicate) {
+                numDuplicates++;
+            } else {
+                receivedAt.put(hash, System.currentTimeMillis());
+                getBroadcaster().broadcast(message, sender, null, false);
+            }
+        }
+
+        private Broadcaster getBroadcaster() {
+            return usePeerScoring ? scoringBroadcaster : randomBroadcaster;
+        }
+    }
+
+    // The behaviour before we had the PeerScoring: shuffled peers, the first send after one delay and each further
+    // send one delay later
+    private static class RandomTargets extends PeerScoring {
+        @Override
+        public List<Connection> getBroadcastTargets(Collection<Connection> connections, boolean isDataOwner) {
+            List<Connection> targets = new ArrayList<>(connections);
+            Collections.shuffle(targets);
+            return isDataOwner ? targets : targets.subList(0, Math.min(7, targets.size()));
+        }
+
+        @Override
+        public List<Long> getMinSendDelays(List<Connection> targets, long spacing) {
+            List<Long> delays = new ArrayList<>();
+            for (int i = 0; i < targets.size(); i++) {
+                delays.add((i + 1) * spacing);
+            }
+            return delays;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // ScheduledTimer
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // The FrameRateTimer only fires every 100 ms which would hide the send delays
+    private static class ScheduledTimer implements Timer {
+        private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ScheduledTimer").setDaemon(true).build());
+        private ScheduledFuture<?> future;
+
+        @Override
+        public Timer runLater(Duration delay, Runnable runnable) {
+            future = scheduler.schedule(() -> UserThread.execute(runnable), delay.toMillis(), TimeUnit.MILLISECONDS);
+            return this;
+        }
+
+        @Override
+        public Timer runPeriodically(Duration interval, Runnable runnable) {
+            future = scheduler.scheduleAtFixedRate(() -> UserThread.execute(runnable),
+                    interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+            return this;
+        }
+
+        @Override
+        public void stop() {
+            if (future != null)
+                future.cancel(false);
+        }
+    }
+}
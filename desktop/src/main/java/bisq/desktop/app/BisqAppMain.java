@@ -72,7 +72,7 @@ public class BisqAppMain extends BisqExecutable {
     @Override
     protected void configUserThread() {
         UserThread.setExecutor(Platform::runLater);
-        UserThread.setTimerClass(UITimer.class);
+        UserThread.setTimerFactory(UITimer::new);
     }
 
     @Override
@@ -19,20 +19,24 @@ package bisq.network.p2p;
 
 import bisq.network.NetworkOptionKeys;
 import bisq.network.Socks5ProxyProvider;
+import bisq.network.p2p.metrics.NetworkMetricsService;
 import bisq.network.p2p.network.Connection;
 import bisq.network.p2p.network.ConnectionConfig;
 import bisq.network.p2p.network.NetworkNode;
 import bisq.network.p2p.peers.BanList;
 import bisq.network.p2p.peers.Broadcaster;
 import bisq.network.p2p.peers.PeerManager;
+import bisq.network.p2p.peers.PeerScoring;
 import bisq.network.p2p.peers.getdata.RequestDataManager;
 import bisq.network.p2p.peers.keepalive.KeepAliveManager;
 import bisq.network.p2p.peers.peerexchange.PeerExchangeManager;
 import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.SignatureVerifier;
 import bisq.network.p2p.storage.persistence.AppendOnlyDataStoreService;
 import bisq.network.p2p.storage.persistence.PersistableNetworkPayloadListService;
 import bisq.network.p2p.storage.persistence.ProtectedDataStoreService;
 import bisq.network.p2p.storage.persistence.ResourceDataStoreService;
+import bisq.network.p2p.storage.persistence.SequenceNumberLog;
 
 import bisq.common.app.AppModule;
 
@@ -60,6 +64,9 @@ public class P2PModule extends AppModule {
         bind(P2PService.class).in(Singleton.class);
         bind(PeerManager.class).in(Singleton.class);
         bind(P2PDataStorage.class).in(Singleton.class);
+        bind(SignatureVerifier.class).in(Singleton.class);
+        bind(SequenceNumberLog.class).in(Singleton.class);
+        bind(NetworkMetricsService.class).in(Singleton.class);
         bind(AppendOnlyDataStoreService.class).in(Singleton.class);
         bind(ProtectedDataStoreService.class).in(Singleton.class);
         bind(PersistableNetworkPayloadListService.class).in(Singleton.class);
@@ -68,6 +75,7 @@ public class P2PModule extends AppModule {
         bind(PeerExchangeManager.class).in(Singleton.class);
         bind(KeepAliveManager.class).in(Singleton.class);
         bind(Broadcaster.class).in(Singleton.class);
+        bind(PeerScoring.class).in(Singleton.class);
         bind(BanList.class).in(Singleton.class);
         bind(ConnectionConfig.class).in(Singleton.class);
         bind(NetworkNode.class).toProvider(NetworkNodeProvider.class).in(Singleton.class);
@@ -78,6 +86,18 @@ public class P2PModule extends AppModule {
         Boolean useLocalhostForP2P = environment.getProperty(NetworkOptionKeys.USE_LOCALHOST_FOR_P2P, boolean.class, false);
         bind(boolean.class).annotatedWith(Names.named(NetworkOptionKeys.USE_LOCALHOST_FOR_P2P)).toInstance(useLocalhostForP2P);
 
+        Boolean useNioTransport = environment.getProperty(NetworkOptionKeys.USE_NIO_TRANSPORT, boolean.class, false);
+        bind(boolean.class).annotatedWith(Names.named(NetworkOptionKeys.USE_NIO_TRANSPORT)).toInstance(useNioTransport);
+
+        Boolean persistVerifiedSignatures = environment.getProperty(NetworkOptionKeys.PERSIST_VERIFIED_SIGNATURES, boolean.class, true);
+        bind(boolean.class).annotatedWith(Names.named(NetworkOptionKeys.PERSIST_VERIFIED_SIGNATURES)).toInstance(persistVerifiedSignatures);
+
+        Boolean metricsEnabled = environment.getProperty(NetworkOptionKeys.METRICS_ENABLED, boolean.class, false);
+        bind(boolean.class).annotatedWith(Names.named(NetworkOptionKeys.METRICS_ENABLED)).toInstance(metricsEnabled);
+
+        Integer metricsPort = environment.getProperty(NetworkOptionKeys.METRICS_PORT, int.class, -1);
+        bind(int.class).annotatedWith(Names.named(NetworkOptionKeys.METRICS_PORT)).toInstance(metricsPort);
+
         File torDir = new File(environment.getRequiredProperty(NetworkOptionKeys.TOR_DIR));
         bind(File.class).annotatedWith(named(NetworkOptionKeys.TOR_DIR)).toInstance(torDir);
 
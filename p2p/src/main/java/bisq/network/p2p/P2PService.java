@@ -20,6 +20,7 @@ package bisq.network.p2p;
 import bisq.network.Socks5ProxyProvider;
 import bisq.network.crypto.EncryptionService;
 import bisq.network.p2p.messaging.DecryptedMailboxListener;
+import bisq.network.p2p.metrics.NetworkMetricsService;
 import bisq.network.p2p.network.CloseConnectionReason;
 import bisq.network.p2p.network.Connection;
 import bisq.network.p2p.network.ConnectionListener;
@@ -130,6 +131,7 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
     private boolean isBootstrapped;
     private final KeepAliveManager keepAliveManager;
     private final Socks5ProxyProvider socks5ProxyProvider;
+    private final NetworkMetricsService networkMetricsService;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -148,7 +150,8 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
                       SeedNodeRepository seedNodeRepository,
                       Socks5ProxyProvider socks5ProxyProvider,
                       EncryptionService encryptionService,
-                      KeyRing keyRing) {
+                      KeyRing keyRing,
+                      NetworkMetricsService networkMetricsService) {
         this.networkNode = networkNode;
         this.peerManager = peerManager;
         this.p2PDataStorage = p2PDataStorage;
@@ -160,6 +163,7 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
         this.socks5ProxyProvider = socks5ProxyProvider;
         this.encryptionService = encryptionService;
         this.keyRing = keyRing;
+        this.networkMetricsService = networkMetricsService;
 
         this.networkNode.addConnectionListener(this);
         this.networkNode.addMessageListener(this);
@@ -191,6 +195,7 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
         if (listener != null)
             addP2PServiceListener(listener);
 
+        networkMetricsService.start();
         networkNode.start(this);
     }
 
@@ -233,6 +238,8 @@ public class P2PService implements SetupListener, MessageListener, ConnectionLis
             if (networkReadySubscription != null)
                 networkReadySubscription.unsubscribe();
 
+            networkMetricsService.shutDown();
+
             if (networkNode != null) {
                 networkNode.shutDown(() -> {
                     shutDownResultHandlers.stream().forEach(Runnable::run);
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram with fixed bucket bounds. Observations only increment LongAdders so it can be used from any thread
+ * without locking.
+ */
+class Histogram {
+    private final long[] upperBounds;
+    // One more bucket than bounds for the values above the largest bound
+    private final LongAdder[] buckets;
+    private final LongAdder sum = new LongAdder();
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    Histogram(long[] upperBounds) {
+        this.upperBounds = upperBounds;
+        buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    void observe(long value) {
+        int index = 0;
+        while (index < upperBounds.length && value > upperBounds[index]) {
+            index++;
+        }
+        buckets[index].increment();
+        sum.add(value);
+    }
+
+    void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        sum.reset();
+    }
+
+    long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    // The bucket counts are cumulative as expected by Prometheus. As we read the adders one after another while they
+    // might get incremented the values are not an atomic snapshot, which is fine for monitoring.
+    void write(String name, String labels, MetricsWriter writer) {
+        long cumulativeCount = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            cumulativeCount += buckets[i].sum();
+            String le = i < upperBounds.length ? String.valueOf(upperBounds[i]) : "+Inf";
+            writer.sample(name + "_bucket", withLabel(labels, "le", le), cumulativeCount);
+        }
+        writer.sample(name + "_sum", labels, getSum());
+        writer.sample(name + "_count", labels, cumulativeCount);
+    }
+
+    private static String withLabel(String labels, String key, String value) {
+        String label = key + "=\"" + value + "\"";
+        return labels.isEmpty() ? label : labels + "," + label;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.metrics;
+
+import bisq.common.EventLoop;
+import bisq.common.UserThread;
+import bisq.common.proto.network.NetworkEnvelope;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the metrics of the P2P network layer. It is static like the totals in Statistic as the metrics get
+ * recorded deep inside of Connection and the handlers which are not created by Guice.
+ * <p>
+ * Recording only increments LongAdders, so it is lock free. If metrics are not enabled each record call returns
+ * after reading a volatile flag, so the overhead is negligible.
+ * <p>
+ * The number of messages per type is the _count of the byte histograms, so we don't keep separate counters. The size
+ * of the GetDataResponses is in the byte histograms of that type as well.
+ */
+public class NetworkMetrics {
+    private static final String PREFIX = "bisq_p2p_";
+
+    private static final long[] BYTES_BOUNDS = {100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final long[] MICROS_BOUNDS = {10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private static final long[] MILLIS_BOUNDS = {1, 10, 100, 500, 1_000, 5_000, 10_000, 60_000};
+    private static final long[] PEERS_BOUNDS = {0, 1, 2, 4, 8, 16, 32};
+    private static final long[] ENTRIES_BOUNDS = {10, 100, 1_000, 10_000, 100_000};
+
+    private static volatile boolean enabled;
+
+    private static final Map<String, MessageMetrics> messageMetricsByType = new ConcurrentHashMap<>();
+    private static final Histogram userThreadLag = new Histogram(MILLIS_BOUNDS);
+    private static final Histogram broadcastDuration = new Histogram(MILLIS_BOUNDS);
+    private static final Histogram broadcastPeers = new Histogram(PEERS_BOUNDS);
+    private static final Histogram getDataResponseEntries = new Histogram(ENTRIES_BOUNDS);
+
+    // Values which are kept by other components, read at export. Registered by NetworkMetricsService.
+    private static final Map<String, Gauge> gaugesByName = new ConcurrentHashMap<>();
+
+    private static class MessageMetrics {
+        private final Histogram receivedBytes = new Histogram(BYTES_BOUNDS);
+        private final Histogram sentBytes = new Histogram(BYTES_BOUNDS);
+        private final Histogram handlerDuration = new Histogram(MICROS_BOUNDS);
+    }
+
+    private static class Gauge {
+        private final String type;
+        private final String help;
+        private final LongSupplier valueSupplier;
+
+        private Gauge(String type, String help, LongSupplier valueSupplier) {
+            this.type = type;
+            this.help = help;
+            this.valueSupplier = valueSupplier;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Enable
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        NetworkMetrics.enabled = enabled;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Record
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public static void onMessageReceived(NetworkEnvelope networkEnvelope, int size) {
+        if (enabled)
+            getMessageMetrics(networkEnvelope).receivedBytes.observe(size);
+    }
+
+    public static void onMessageSent(NetworkEnvelope networkEnvelope, int size) {
+        if (enabled)
+            getMessageMetrics(networkEnvelope).sentBytes.observe(size);
+    }
+
+    // Time the message listeners took to process the message at the user thread
+    public static void onMessageHandled(NetworkEnvelope networkEnvelope, long durationNanos) {
+        if (enabled)
+            getMessageMetrics(networkEnvelope).handlerDuration.observe(durationNanos / 1000);
+    }
+
+    // Time a task waited in the queue of the user thread before it got executed
+    public static void onUserThreadLag(long lagNanos) {
+        if (enabled)
+            userThreadLag.observe(lagNanos / 1_000_000);
+    }
+
+    public static void onBroadcastCompleted(int numPeers, long durationMillis) {
+        if (enabled) {
+            broadcastPeers.observe(numPeers);
+            broadcastDuration.observe(durationMillis);
+        }
+    }
+
+    public static void onGetDataResponse(int numEntries) {
+        if (enabled)
+            getDataResponseEntries.observe(numEntries);
+    }
+
+
+    /**
+     * @param name          Name without the bisq_p2p_ prefix
+     * @param type          Prometheus type, gauge or counter
+     * @param help          Description of the value
+     * @param valueSupplier Called at each export, so it must be cheap and thread safe
+     */
+    public static void registerGauge(String name, String type, String help, LongSupplier valueSupplier) {
+        gaugesByName.put(name, new Gauge(type, help, valueSupplier));
+    }
+
+    public static void unregisterGauge(String name) {
+        gaugesByName.remove(name);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Export
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Samples by series name including the labels, e.g. bisq_p2p_message_sent_bytes_count{type="Ping"}
+    public static Map<String, Long> getSamples() {
+        Map<String, Long> samples = new TreeMap<>();
+        collect(new MetricsWriter() {
+            @Override
+            public void family(String name, String type, String help) {
+            }
+
+            @Override
+            public void sample(String name, String labels, long value) {
+                samples.put(labels.isEmpty() ? name : name + "{" + labels + "}", value);
+            }
+        });
+        return samples;
+    }
+
+    // Text exposition format of Prometheus
+    public static String getPrometheusText() {
+        StringBuilder sb = new StringBuilder();
+        collect(new MetricsWriter() {
+            @Override
+            public void family(String name, String type, String help) {
+                sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+                sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+            }
+
+            @Override
+            public void sample(String name, String labels, long value) {
+                sb.append(name);
+                if (!labels.isEmpty())
+                    sb.append('{').append(labels).append('}');
+                sb.append(' ').append(value).append('\n');
+            }
+        });
+        return sb.toString();
+    }
+
+    @VisibleForTesting
+    static void clear() {
+        messageMetricsByType.clear();
+        gaugesByName.clear();
+        userThreadLag.reset();
+        broadcastDuration.reset();
+        broadcastPeers.reset();
+        getDataResponseEntries.reset();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static MessageMetrics getMessageMetrics(NetworkEnvelope networkEnvelope) {
+        String type = networkEnvelope.getClass().getSimpleName();
+        // We avoid the locking of computeIfAbsent in the common case that the entry exists already
+        MessageMetrics messageMetrics = messageMetricsByType.get(type);
+        return messageMetrics != null ? messageMetrics : messageMetricsByType.computeIfAbsent(type, k -> new MessageMetrics());
+    }
+
+    private static void collect(MetricsWriter writer) {
+        Map<String, MessageMetrics> sortedMessageMetrics = new TreeMap<>(messageMetricsByType);
+
+        writeFamily(writer, "message_received_bytes", "Size of received messages by type",
+                sortedMessageMetrics, messageMetrics -> messageMetrics.receivedBytes);
+        writeFamily(writer, "message_sent_bytes", "Size of sent messages by type",
+                sortedMessageMetrics, messageMetrics -> messageMetrics.sentBytes);
+        writeFamily(writer, "message_handler_duration_micros", "Time the listeners took to handle a message by type",
+                sortedMessageMetrics, messageMetrics -> messageMetrics.handlerDuration);
+
+        write(writer, "user_thread_lag_millis", "Time a received message waited for the user thread", userThreadLag);
+        write(writer, "broadcast_duration_millis", "Time from the start of a broadcast until all peers got served",
+                broadcastDuration);
+        write(writer, "broadcast_peers", "Number of peers a message was broadcast to", broadcastPeers);
+        write(writer, "get_data_response_entries", "Number of entries in the sent GetDataResponses",
+                getDataResponseEntries);
+
+        new TreeMap<>(gaugesByName).forEach((name, gauge) ->
+                write(writer, name, gauge.type, gauge.help, gauge.valueSupplier.getAsLong()));
+
+        Executor executor = UserThread.getExecutor();
+        if (executor instanceof EventLoop) {
+            EventLoop eventLoop = (EventLoop) executor;
+            write(writer, "user_thread_queue_size", "gauge", "Number of tasks queued for the user thread",
+                    eventLoop.getQueueSize());
+            write(writer, "user_thread_max_queue_size", "gauge", "Max. number of tasks queued for the user thread",
+                    eventLoop.getMaxQueueSize());
+            write(writer, "user_thread_tasks_total", "counter", "Number of tasks executed at the user thread",
+                    eventLoop.getNumExecutedTasks());
+            write(writer, "user_thread_blocked_submissions_total", "counter",
+                    "Number of submissions which waited because the queue of the user thread was full",
+                    eventLoop.getNumBlockedSubmissions());
+            write(writer, "user_thread_blocked_millis_total", "counter",
+                    "Time threads waited because the queue of the user thread was full",
+                    eventLoop.getBlockedMillis());
+        }
+    }
+
+    private static void writeFamily(MetricsWriter writer,
+                                    String name,
+                                    String help,
+                                    Map<String, MessageMetrics> messageMetricsByType,
+                                    Function<MessageMetrics, Histogram> histogramGetter) {
+        writer.family(PREFIX + name, "histogram", help);
+        messageMetricsByType.forEach((type, messageMetrics) ->
+                histogramGetter.apply(messageMetrics).write(PREFIX + name, "type=\"" + type + "\"", writer));
+    }
+
+    private static void write(MetricsWriter writer, String name, String help, Histogram histogram) {
+        writer.family(PREFIX + name, "histogram", help);
+        histogram.write(PREFIX + name, "", writer);
+    }
+
+    private static void write(MetricsWriter writer, String name, String type, String help, long value) {
+        writer.family(PREFIX + name, type, help);
+        writer.sample(PREFIX + name, "", value);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.metrics;
+
+import bisq.network.NetworkOptionKeys;
+import bisq.network.p2p.storage.persistence.SequenceNumberLog;
+
+import com.sun.net.httpserver.HttpServer;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.nio.charset.StandardCharsets;
+
+import java.lang.management.ManagementFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.Map;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+
+/**
+ * Enables the NetworkMetrics and exports them over JMX. Seed nodes can also serve them in the Prometheus text format
+ * at http://127.0.0.1:{metricsPort}/metrics. We only listen on the loopback interface, operators who scrape from
+ * another host need to forward the port.
+ */
+@Slf4j
+public class NetworkMetricsService implements NetworkMetricsMXBean {
+    private static final String OBJECT_NAME = "bisq.network:type=NetworkMetrics";
+    private static final String SEQUENCE_NUMBER_LOG_BYTES_TOTAL = "sequence_number_log_written_bytes_total";
+    private static final String SEQUENCE_NUMBER_LOG_BYTES_LAST_HOUR = "sequence_number_log_written_bytes_last_hour";
+
+    private final SequenceNumberLog sequenceNumberLog;
+
+    private final boolean metricsEnabled;
+    private final int metricsPort;
+    @Nullable
+    private ObjectName objectName;
+    @Nullable
+    private HttpServer httpServer;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Inject
+    public NetworkMetricsService(SequenceNumberLog sequenceNumberLog,
+                                 @Named(NetworkOptionKeys.METRICS_ENABLED) boolean metricsEnabled,
+                                 @Named(NetworkOptionKeys.METRICS_PORT) int metricsPort) {
+        this.sequenceNumberLog = sequenceNumberLog;
+        this.metricsEnabled = metricsEnabled;
+        this.metricsPort = metricsPort;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public void start() {
+        if (!metricsEnabled || objectName != null)
+            return;
+
+        NetworkMetrics.setEnabled(true);
+        NetworkMetrics.registerGauge(SEQUENCE_NUMBER_LOG_BYTES_TOTAL, "counter",
+                "Bytes written for persisting the SequenceNumberMap", sequenceNumberLog::getTotalBytesWritten);
+        NetworkMetrics.registerGauge(SEQUENCE_NUMBER_LOG_BYTES_LAST_HOUR, "gauge",
+                "Bytes written for persisting the SequenceNumberMap in the last full hour",
+                sequenceNumberLog::getBytesWrittenPerHour);
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            objectName = new ObjectName(OBJECT_NAME);
+            mBeanServer.registerMBean(this, objectName);
+            log.info("Network metrics are enabled and registered at JMX as {}", OBJECT_NAME);
+        } catch (JMException e) {
+            log.error("Registering network metrics at JMX failed", e);
+            objectName = null;
+        }
+    }
+
+    // Only used by seed nodes. Does nothing if no metricsPort is set.
+    public void startPrometheusEndpoint() {
+        if (!metricsEnabled || metricsPort <= 0 || httpServer != null)
+            return;
+
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), metricsPort), 0);
+            httpServer.createContext("/metrics", exchange -> {
+                byte[] response = NetworkMetrics.getPrometheusText().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(response);
+                }
+            });
+            // Uses the thread which runs the server to serve the requests
+            httpServer.setExecutor(null);
+            httpServer.start();
+            log.info("Serving network metrics at http://127.0.0.1:{}/metrics", metricsPort);
+        } catch (IOException e) {
+            log.error("Starting the network metrics endpoint at port " + metricsPort + " failed", e);
+            httpServer = null;
+        }
+    }
+
+    public void shutDown() {
+        NetworkMetrics.unregisterGauge(SEQUENCE_NUMBER_LOG_BYTES_TOTAL);
+        NetworkMetrics.unregisterGauge(SEQUENCE_NUMBER_LOG_BYTES_LAST_HOUR);
+
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (JMException e) {
+                log.warn("Unregistering network metrics at JMX failed", e);
+            }
+            objectName = null;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // NetworkMetricsMXBean implementation
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean isEnabled() {
+        return NetworkMetrics.isEnabled();
+    }
+
+    @Override
+    public Map<String, Long> getSamples() {
+        return NetworkMetrics.getSamples();
+    }
+}
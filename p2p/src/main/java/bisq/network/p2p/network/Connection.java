@@ -24,6 +24,7 @@ import bisq.network.p2p.NodeAddress;
 import bisq.network.p2p.PrefixedSealedAndSignedMessage;
 import bisq.network.p2p.SendersNodeAddressMessage;
 import bisq.network.p2p.SupportedCapabilitiesMessage;
+import bisq.network.p2p.metrics.NetworkMetrics;
 import bisq.network.p2p.peers.BanList;
 import bisq.network.p2p.peers.getdata.messages.GetDataRequest;
 import bisq.network.p2p.peers.getdata.messages.GetDataResponse;
@@ -69,10 +70,8 @@ import java.io.StreamCorruptedException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -122,9 +121,9 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
 
     // Leaving some constants package-private for tests to know limits.
     private static final int PERMITTED_MESSAGE_SIZE = 200 * 1024;                       // 200 kb
-    private static final int MAX_PERMITTED_MESSAGE_SIZE = 10 * 1024 * 1024;             // 10 MB (425 offers resulted in about 660 kb, mailbox msg will add more to it) offer has usually 2 kb, mailbox 3kb.
+    static final int MAX_PERMITTED_MESSAGE_SIZE = 10 * 1024 * 1024;                     // 10 MB (425 offers resulted in about 660 kb, mailbox msg will add more to it) offer has usually 2 kb, mailbox 3kb.
     //TODO decrease limits again after testing
-    private static final int SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(120);
+    static final int SOCKET_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(120);
 
     public static int getPermittedMessageSize() {
         return PERMITTED_MESSAGE_SIZE;
@@ -150,7 +149,14 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
     private final int sendMsgThrottleSleep;
 
     // set in init
-    private SynchronizedProtoOutputStream protoOutputStream;
+    private ProtoOutputStream protoOutputStream;
+    private OutboundQueue outboundQueue;
+    private final ScheduledExecutorService bundleSender;
+    // Only set if we use the NioTransport
+    @Nullable
+    private final NioTransport nioTransport;
+    @Nullable
+    private NioTransport.Registration nioRegistration;
 
     // mutable data, set from other threads but not changed internally.
     @Getter
@@ -165,7 +171,6 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
     private final ObjectProperty<NodeAddress> peersNodeAddressProperty = new SimpleObjectProperty<>();
     private final List<Long> messageTimeStamps = new ArrayList<>();
     private final CopyOnWriteArraySet<MessageListener> messageListeners = new CopyOnWriteArraySet<>();
-    private volatile long lastSendTimeStamp = 0;
     private final CopyOnWriteArraySet<WeakReference<SupportedCapabilitiesListener>> capabilitiesListeners = new CopyOnWriteArraySet<>();
 
     @Getter
@@ -183,9 +188,16 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
                MessageListener messageListener,
                ConnectionListener connectionListener,
                @Nullable NodeAddress peersNodeAddress,
-               NetworkProtoResolver networkProtoResolver) {
+               NetworkProtoResolver networkProtoResolver,
+               @Nullable NioTransport nioTransport) {
         this.socket = socket;
         this.connectionListener = connectionListener;
+        // Only sockets created from a SocketChannel can use the NioTransport, others (e.g. Tor sockets) use the
+        // blocking streams.
+        this.nioTransport = socket.getChannel() != null ? nioTransport : null;
+        bundleSender = this.nioTransport != null ?
+                this.nioTransport.getScheduler() :
+                Executors.newSingleThreadScheduledExecutor();
         uid = UUID.randomUUID().toString();
         statistic = new Statistic();
 
@@ -210,10 +222,22 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
             // When you construct an ObjectInputStream, in the constructor the class attempts to read a header that
             // the associated ObjectOutputStream on the other end of the connection has written.
             // It will not return until that header has been read.
-            protoOutputStream = new SynchronizedProtoOutputStream(socket.getOutputStream(), statistic);
-            protoInputStream = socket.getInputStream();
-            // We create a thread for handling inputStream data
-            singleThreadExecutor.submit(this);
+            if (nioTransport != null) {
+                // The selector thread of the NioTransport reads our data, so we don't need our own thread
+                nioRegistration = nioTransport.register(socket.getChannel(), createFrameHandler());
+                protoOutputStream = new NonBlockingProtoOutputStream(nioRegistration.getOutputStream(), statistic);
+            } else {
+                protoOutputStream = new SynchronizedProtoOutputStream(socket.getOutputStream(), statistic);
+                protoInputStream = socket.getInputStream();
+                // We create a thread for handling inputStream data
+                singleThreadExecutor.submit(this);
+            }
+            outboundQueue = new OutboundQueue(protoOutputStream,
+                    bundleSender,
+                    () -> getCapabilities().containsAll(new Capabilities(Capability.BUNDLE_OF_ENVELOPES)),
+                    this::handleException,
+                    sendMsgThrottleTrigger,
+                    sendMsgThrottleSleep);
 
             if (peersNodeAddress != null)
                 setPeersNodeAddress(peersNodeAddress);
@@ -233,12 +257,15 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
         return capabilities;
     }
 
-    private final Object lock = new Object();
-    private final Queue<BundleOfEnvelopes> queueOfBundles = new ConcurrentLinkedQueue<>();
-    private final ScheduledExecutorService bundleSender = Executors.newSingleThreadScheduledExecutor();
-
     // Called from various threads
     public void sendMessage(NetworkEnvelope networkEnvelope) {
+        sendMessage(new EncodedEnvelope(networkEnvelope));
+    }
+
+    // Called from various threads. The encodedEnvelope might be shared with other connections (e.g. at broadcast),
+    // so it gets serialized only once.
+    public void sendMessage(EncodedEnvelope encodedEnvelope) {
+        NetworkEnvelope networkEnvelope = encodedEnvelope.getEnvelope();
         log.debug(">> Send networkEnvelope of type: " + networkEnvelope.getClass().getSimpleName());
 
         if (!stopped) {
@@ -246,7 +273,7 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
                 try {
                     String peersNodeAddress = peersNodeAddressOptional.map(NodeAddress::toString).orElse("null");
 
-                    protobuf.NetworkEnvelope proto = networkEnvelope.toProtoNetworkEnvelope();
+                    protobuf.NetworkEnvelope proto = encodedEnvelope.getProto();
                     log.trace("Sending message: {}", Utilities.toTruncatedString(proto.toString(), 10000));
 
                     if (networkEnvelope instanceof Ping | networkEnvelope instanceof RefreshOfferMessage) {
@@ -273,56 +300,9 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
                                 peersNodeAddress, uid, Utilities.toTruncatedString(networkEnvelope), proto.getSerializedSize());
                     }
 
-                    // Throttle outbound network_messages
-                    long now = System.currentTimeMillis();
-                    long elapsed = now - lastSendTimeStamp;
-                    if (elapsed < sendMsgThrottleTrigger) {
-                        log.debug("We got 2 sendMessage requests in less than {} ms. We set the thread to sleep " +
-                                        "for {} ms to avoid flooding our peer. lastSendTimeStamp={}, now={}, elapsed={}, networkEnvelope={}",
-                                sendMsgThrottleTrigger, sendMsgThrottleSleep, lastSendTimeStamp, now, elapsed,
-                                networkEnvelope.getClass().getSimpleName());
-
-                        // check if BundleOfEnvelopes is supported
-                        if (getCapabilities().containsAll(new Capabilities(Capability.BUNDLE_OF_ENVELOPES))) {
-                            synchronized (lock) {
-                                // check if current envelope fits size
-                                // - no? create new envelope
-                                if (queueOfBundles.isEmpty() || queueOfBundles.element().toProtoNetworkEnvelope().getSerializedSize() + networkEnvelope.toProtoNetworkEnvelope().getSerializedSize() > MAX_PERMITTED_MESSAGE_SIZE * 0.9) {
-                                    // - no? create a bucket
-                                    queueOfBundles.add(new BundleOfEnvelopes());
-
-                                    // - and schedule it for sending
-                                    lastSendTimeStamp += sendMsgThrottleSleep;
-
-                                    bundleSender.schedule(() -> {
-                                        if (!stopped) {
-                                            synchronized (lock) {
-                                                BundleOfEnvelopes current = queueOfBundles.poll();
-                                                if (current != null) {
-                                                    if (current.getEnvelopes().size() == 1) {
-                                                        protoOutputStream.writeEnvelope(current.getEnvelopes().get(0));
-                                                    } else {
-                                                        protoOutputStream.writeEnvelope(current);
-                                                    }
-                                                }
-                                            }
-                                        }
-                                    }, lastSendTimeStamp - now, TimeUnit.MILLISECONDS);
-                                }
-
-                                // - yes? add to bucket
-                                queueOfBundles.element().add(networkEnvelope);
-                            }
-                            return;
-                        }
-
-                        Thread.sleep(sendMsgThrottleSleep);
-                    }
-
-                    lastSendTimeStamp = now;
-
+                    // The outboundQueue throttles and bundles the envelopes if we send too fast
                     if (!stopped) {
-                        protoOutputStream.writeEnvelope(networkEnvelope);
+                        outboundQueue.send(encodedEnvelope);
                     }
                 } catch (Throwable t) {
                     handleException(t);
@@ -423,10 +403,25 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
 
         if (networkEnvelope instanceof BundleOfEnvelopes)
             for (NetworkEnvelope current : ((BundleOfEnvelopes) networkEnvelope).getEnvelopes()) {
-                UserThread.execute(() -> messageListeners.forEach(e -> e.onMessage(current, connection)));
+                dispatchToMessageListeners(current, connection);
             }
         else
-            UserThread.execute(() -> messageListeners.forEach(e -> e.onMessage(networkEnvelope, connection)));
+            dispatchToMessageListeners(networkEnvelope, connection);
+    }
+
+    // Called from the thread reading from the connection, so we let it wait if the user thread is overloaded
+    private void dispatchToMessageListeners(NetworkEnvelope networkEnvelope, Connection connection) {
+        if (NetworkMetrics.isEnabled()) {
+            long queuedAt = System.nanoTime();
+            UserThread.executeWithBackPressure(() -> {
+                long startTime = System.nanoTime();
+                NetworkMetrics.onUserThreadLag(startTime - queuedAt);
+                messageListeners.forEach(e -> e.onMessage(networkEnvelope, connection));
+                NetworkMetrics.onMessageHandled(networkEnvelope, System.nanoTime() - startTime);
+            });
+        } else {
+            UserThread.executeWithBackPressure(() -> messageListeners.forEach(e -> e.onMessage(networkEnvelope, connection)));
+        }
     }
 
 
@@ -528,13 +523,25 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
             log.error("Exception at shutdown. " + e.getMessage());
             e.printStackTrace();
         } finally {
+            if (outboundQueue != null)
+                outboundQueue.stop();
+
             protoOutputStream.onConnectionShutdown();
 
-            try {
-                protoInputStream.close();
-            } catch (IOException e) {
-                log.error(e.getMessage());
-                e.printStackTrace();
+            // The scheduler of the NioTransport is shared with other connections
+            if (nioTransport == null)
+                bundleSender.shutdownNow();
+
+            if (nioRegistration != null)
+                nioRegistration.close();
+
+            if (protoInputStream != null) {
+                try {
+                    protoInputStream.close();
+                } catch (IOException e) {
+                    log.error(e.getMessage());
+                    e.printStackTrace();
+                }
             }
 
             //noinspection UnstableApiUsage
@@ -676,6 +683,8 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
     // Runs in same thread as Connection, receives a message, performs several checks on it
     // (including throttling limits, validity and statistics)
     // and delivers it to the message listener given in the constructor.
+    // If we use the NioTransport the selector thread reads the messages and we only process them
+    // at the worker threads of the transport.
     private InputStream protoInputStream;
     private final NetworkProtoResolver networkProtoResolver;
 
@@ -721,173 +730,209 @@ public class Connection implements HasCapabilities, Runnable, MessageListener {
                         return;
                     }
 
-                    NetworkEnvelope networkEnvelope = networkProtoResolver.fromProto(proto);
                     lastReadTimeStamp = now;
-                    log.debug("<< Received networkEnvelope of type: {}", networkEnvelope.getClass().getSimpleName());
-                    int size = proto.getSerializedSize();
-                    // We comment out that part as only debug and trace log level is used. For debugging purposes
-                    // we leave the code though.
-                        /*if (networkEnvelope instanceof Pong || networkEnvelope instanceof RefreshOfferMessage) {
-                            // We only log Pong and RefreshOfferMsg when in dev environment (trace)
-                            log.trace("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
-                                            "New data arrived at inputHandler of connection {}.\n" +
-                                            "Received object (truncated)={} / size={}"
-                                            + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
-                                    connection,
-                                    Utilities.toTruncatedString(proto.toString()),
-                                    size);
-                        } else {
-                            // We want to log all incoming network_messages (except Pong and RefreshOfferMsg)
-                            // so we log before the data type checks
-                            //log.info("size={}; object={}", size, Utilities.toTruncatedString(rawInputObject.toString(), 100));
-                            log.debug("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
-                                            "New data arrived at inputHandler of connection {}.\n" +
-                                            "Received object (truncated)={} / size={}"
-                                            + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
-                                    connection,
-                                    Utilities.toTruncatedString(proto.toString()),
-                                    size);
-                        }*/
-
-                    // We want to track the size of each object even if it is invalid data
-                    statistic.addReceivedBytes(size);
-
-                    // We want to track the network_messages also before the checks, so do it early...
-                    statistic.addReceivedMessage(networkEnvelope);
-
-                    // First we check the size
-                    boolean exceeds;
-                    if (networkEnvelope instanceof ExtendedDataSizePermission) {
-                        exceeds = size > MAX_PERMITTED_MESSAGE_SIZE;
-                        if (log.isDebugEnabled()) {
-                            log.debug("size={}; object={}", size, Utilities.toTruncatedString(proto, 100));
-                        }
-                    } else {
-                        exceeds = size > PERMITTED_MESSAGE_SIZE;
-                    }
+                    if (!processProto(proto))
+                        return;
+                } catch (InvalidClassException e) {
+                    log.error(e.getMessage());
+                    e.printStackTrace();
+                    reportInvalidRequest(RuleViolation.INVALID_CLASS);
+                } catch (Throwable t) {
+                    handleException(t);
+                }
+            }
+        } catch (Throwable t) {
+            handleException(t);
+        }
+    }
 
-                    if (networkEnvelope instanceof AddPersistableNetworkPayloadMessage &&
-                            !((AddPersistableNetworkPayloadMessage) networkEnvelope).getPersistableNetworkPayload().verifyHashSize()) {
-                        log.warn("PersistableNetworkPayload.verifyHashSize failed. hashSize={}; object={}",
-                                ((AddPersistableNetworkPayloadMessage) networkEnvelope).getPersistableNetworkPayload().getHash().length,
-                                Utilities.toTruncatedString(proto));
-                        if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
-                            return;
-                    }
+    // Performs several checks on the received proto (including throttling limits, validity and statistics)
+    // and delivers it to the message listeners. Returns false if we must not read further messages from that
+    // connection.
+    private boolean processProto(protobuf.NetworkEnvelope proto) {
+        try {
+            NetworkEnvelope networkEnvelope = networkProtoResolver.fromProto(proto);
+            log.debug("<< Received networkEnvelope of type: {}", networkEnvelope.getClass().getSimpleName());
+            int size = proto.getSerializedSize();
+            // We comment out that part as only debug and trace log level is used. For debugging purposes
+            // we leave the code though.
+                /*if (networkEnvelope instanceof Pong || networkEnvelope instanceof RefreshOfferMessage) {
+                    // We only log Pong and RefreshOfferMsg when in dev environment (trace)
+                    log.trace("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
+                                    "New data arrived at inputHandler of connection {}.\n" +
+                                    "Received object (truncated)={} / size={}"
+                                    + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
+                            connection,
+                            Utilities.toTruncatedString(proto.toString()),
+                            size);
+                } else {
+                    // We want to log all incoming network_messages (except Pong and RefreshOfferMsg)
+                    // so we log before the data type checks
+                    //log.info("size={}; object={}", size, Utilities.toTruncatedString(rawInputObject.toString(), 100));
+                    log.debug("\n\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n" +
+                                    "New data arrived at inputHandler of connection {}.\n" +
+                                    "Received object (truncated)={} / size={}"
+                                    + "\n<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<<\n",
+                            connection,
+                            Utilities.toTruncatedString(proto.toString()),
+                            size);
+                }*/
+
+            // We want to track the size of each object even if it is invalid data
+            statistic.addReceivedBytes(size);
+
+            // We want to track the network_messages also before the checks, so do it early...
+            statistic.addReceivedMessage(networkEnvelope);
+            NetworkMetrics.onMessageReceived(networkEnvelope, size);
+
+            // First we check the size
+            boolean exceeds;
+            if (networkEnvelope instanceof ExtendedDataSizePermission) {
+                exceeds = size > MAX_PERMITTED_MESSAGE_SIZE;
+                if (log.isDebugEnabled()) {
+                    log.debug("size={}; object={}", size, Utilities.toTruncatedString(proto, 100));
+                }
+            } else {
+                exceeds = size > PERMITTED_MESSAGE_SIZE;
+            }
 
-                    if (exceeds) {
-                        log.warn("size > MAX_MSG_SIZE. size={}; object={}", size, Utilities.toTruncatedString(proto));
+            if (networkEnvelope instanceof AddPersistableNetworkPayloadMessage &&
+                    !((AddPersistableNetworkPayloadMessage) networkEnvelope).getPersistableNetworkPayload().verifyHashSize()) {
+                log.warn("PersistableNetworkPayload.verifyHashSize failed. hashSize={}; object={}",
+                        ((AddPersistableNetworkPayloadMessage) networkEnvelope).getPersistableNetworkPayload().getHash().length,
+                        Utilities.toTruncatedString(proto));
+                if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
+                    return false;
+            }
 
-                        if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
-                            return;
-                    }
+            if (exceeds) {
+                log.warn("size > MAX_MSG_SIZE. size={}; object={}", size, Utilities.toTruncatedString(proto));
 
-                    if (violatesThrottleLimit() && reportInvalidRequest(RuleViolation.THROTTLE_LIMIT_EXCEEDED))
-                        return;
+                if (reportInvalidRequest(RuleViolation.MAX_MSG_SIZE_EXCEEDED))
+                    return false;
+            }
 
-                    // Check P2P network ID
-                    if (proto.getMessageVersion() != Version.getP2PMessageVersion()
-                            && reportInvalidRequest(RuleViolation.WRONG_NETWORK_ID)) {
-                        log.warn("RuleViolation.WRONG_NETWORK_ID. version of message={}, app version={}, " +
-                                        "proto.toTruncatedString={}", proto.getMessageVersion(),
-                                Version.getP2PMessageVersion(),
-                                Utilities.toTruncatedString(proto.toString()));
-                        return;
-                    }
+            if (violatesThrottleLimit() && reportInvalidRequest(RuleViolation.THROTTLE_LIMIT_EXCEEDED))
+                return false;
+
+            // Check P2P network ID
+            if (proto.getMessageVersion() != Version.getP2PMessageVersion()
+                    && reportInvalidRequest(RuleViolation.WRONG_NETWORK_ID)) {
+                log.warn("RuleViolation.WRONG_NETWORK_ID. version of message={}, app version={}, " +
+                                "proto.toTruncatedString={}", proto.getMessageVersion(),
+                        Version.getP2PMessageVersion(),
+                        Utilities.toTruncatedString(proto.toString()));
+                return false;
+            }
 
-                    if (networkEnvelope instanceof SupportedCapabilitiesMessage) {
-                        Capabilities supportedCapabilities = ((SupportedCapabilitiesMessage) networkEnvelope).getSupportedCapabilities();
-                        if (supportedCapabilities != null) {
-                            if (!capabilities.equals(supportedCapabilities)) {
-                                capabilities.set(supportedCapabilities);
-
-                                // Capabilities can be empty. We only check for mandatory if we get some capabilities.
-                                if (!capabilities.isEmpty() && !Capabilities.hasMandatoryCapability(capabilities)) {
-                                    shutDown(CloseConnectionReason.MANDATORY_CAPABILITIES_NOT_SUPPORTED);
-                                    return;
-                                }
-
-                                capabilitiesListeners.forEach(weakListener -> {
-                                    SupportedCapabilitiesListener supportedCapabilitiesListener = weakListener.get();
-                                    if (supportedCapabilitiesListener != null) {
-                                        UserThread.execute(() -> supportedCapabilitiesListener.onChanged(supportedCapabilities));
-                                    }
-                                });
-                            }
+            if (networkEnvelope instanceof SupportedCapabilitiesMessage) {
+                Capabilities supportedCapabilities = ((SupportedCapabilitiesMessage) networkEnvelope).getSupportedCapabilities();
+                if (supportedCapabilities != null) {
+                    if (!capabilities.equals(supportedCapabilities)) {
+                        capabilities.set(supportedCapabilities);
+
+                        // Capabilities can be empty. We only check for mandatory if we get some capabilities.
+                        if (!capabilities.isEmpty() && !Capabilities.hasMandatoryCapability(capabilities)) {
+                            shutDown(CloseConnectionReason.MANDATORY_CAPABILITIES_NOT_SUPPORTED);
+                            return false;
                         }
+
+                        capabilitiesListeners.forEach(weakListener -> {
+                            SupportedCapabilitiesListener supportedCapabilitiesListener = weakListener.get();
+                            if (supportedCapabilitiesListener != null) {
+                                UserThread.execute(() -> supportedCapabilitiesListener.onChanged(supportedCapabilities));
+                            }
+                        });
                     }
+                }
+            }
 
-                    if (networkEnvelope instanceof CloseConnectionMessage) {
-                        // If we get a CloseConnectionMessage we shut down
-                        if (log.isDebugEnabled()) {
-                            log.debug("CloseConnectionMessage received. Reason={}\n\t" +
-                                    "connection={}", proto.getCloseConnectionMessage().getReason(), this);
-                        }
-                        if (CloseConnectionReason.PEER_BANNED.name().equals(proto.getCloseConnectionMessage().getReason())) {
-                            log.warn("We got shut down because we are banned by the other peer. (InputHandler.run CloseConnectionMessage)");
-                            shutDown(CloseConnectionReason.PEER_BANNED);
+            if (networkEnvelope instanceof CloseConnectionMessage) {
+                // If we get a CloseConnectionMessage we shut down
+                if (log.isDebugEnabled()) {
+                    log.debug("CloseConnectionMessage received. Reason={}\n\t" +
+                            "connection={}", proto.getCloseConnectionMessage().getReason(), this);
+                }
+                if (CloseConnectionReason.PEER_BANNED.name().equals(proto.getCloseConnectionMessage().getReason())) {
+                    log.warn("We got shut down because we are banned by the other peer. (InputHandler.run CloseConnectionMessage)");
+                    shutDown(CloseConnectionReason.PEER_BANNED);
+                } else {
+                    shutDown(CloseConnectionReason.CLOSE_REQUESTED_BY_PEER);
+                }
+                return false;
+            } else if (!stopped) {
+                // We don't want to get the activity ts updated by ping/pong msg
+                if (!(networkEnvelope instanceof KeepAliveMessage))
+                    statistic.updateLastActivityTimestamp();
+
+                if (networkEnvelope instanceof GetDataRequest)
+                    setPeerType(PeerType.INITIAL_DATA_REQUEST);
+
+                // First a seed node gets a message from a peer (PreliminaryDataRequest using
+                // AnonymousMessage interface) which does not have its hidden service
+                // published, so it does not know its address. As the IncomingConnection does not have the
+                // peersNodeAddress set that connection cannot be used for outgoing network_messages until we
+                // get the address set.
+                // At the data update message (DataRequest using SendersNodeAddressMessage interface)
+                // after the HS is published we get the peer's address set.
+
+                // There are only those network_messages used for new connections to a peer:
+                // 1. PreliminaryDataRequest
+                // 2. DataRequest (implements SendersNodeAddressMessage)
+                // 3. GetPeersRequest (implements SendersNodeAddressMessage)
+                // 4. DirectMessage (implements SendersNodeAddressMessage)
+                if (networkEnvelope instanceof SendersNodeAddressMessage) {
+                    NodeAddress senderNodeAddress = ((SendersNodeAddressMessage) networkEnvelope).getSenderNodeAddress();
+                    if (senderNodeAddress != null) {
+                        Optional<NodeAddress> peersNodeAddressOptional = getPeersNodeAddressOptional();
+                        if (peersNodeAddressOptional.isPresent()) {
+                            // If we have already the peers address we check again if it matches our stored one
+                            checkArgument(peersNodeAddressOptional.get().equals(senderNodeAddress),
+                                    "senderNodeAddress not matching connections peer address.\n\t" +
+                                            "message=" + networkEnvelope);
                         } else {
-                            shutDown(CloseConnectionReason.CLOSE_REQUESTED_BY_PEER);
-                        }
-                        return;
-                    } else if (!stopped) {
-                        // We don't want to get the activity ts updated by ping/pong msg
-                        if (!(networkEnvelope instanceof KeepAliveMessage))
-                            statistic.updateLastActivityTimestamp();
-
-                        if (networkEnvelope instanceof GetDataRequest)
-                            setPeerType(PeerType.INITIAL_DATA_REQUEST);
-
-                        // First a seed node gets a message from a peer (PreliminaryDataRequest using
-                        // AnonymousMessage interface) which does not have its hidden service
-                        // published, so it does not know its address. As the IncomingConnection does not have the
-                        // peersNodeAddress set that connection cannot be used for outgoing network_messages until we
-                        // get the address set.
-                        // At the data update message (DataRequest using SendersNodeAddressMessage interface)
-                        // after the HS is published we get the peer's address set.
-
-                        // There are only those network_messages used for new connections to a peer:
-                        // 1. PreliminaryDataRequest
-                        // 2. DataRequest (implements SendersNodeAddressMessage)
-                        // 3. GetPeersRequest (implements SendersNodeAddressMessage)
-                        // 4. DirectMessage (implements SendersNodeAddressMessage)
-                        if (networkEnvelope instanceof SendersNodeAddressMessage) {
-                            NodeAddress senderNodeAddress = ((SendersNodeAddressMessage) networkEnvelope).getSenderNodeAddress();
-                            if (senderNodeAddress != null) {
-                                Optional<NodeAddress> peersNodeAddressOptional = getPeersNodeAddressOptional();
-                                if (peersNodeAddressOptional.isPresent()) {
-                                    // If we have already the peers address we check again if it matches our stored one
-                                    checkArgument(peersNodeAddressOptional.get().equals(senderNodeAddress),
-                                            "senderNodeAddress not matching connections peer address.\n\t" +
-                                                    "message=" + networkEnvelope);
-                                } else {
-                                    // We must not shut down a banned peer at that moment as it would trigger a connection termination
-                                    // and we could not send the CloseConnectionMessage.
-                                    // We check for a banned peer inside setPeersNodeAddress() and shut down if banned.
-                                    setPeersNodeAddress(senderNodeAddress);
-                                }
-                            }
+                            // We must not shut down a banned peer at that moment as it would trigger a connection termination
+                            // and we could not send the CloseConnectionMessage.
+                            // We check for a banned peer inside setPeersNodeAddress() and shut down if banned.
+                            setPeersNodeAddress(senderNodeAddress);
                         }
-
-                        if (networkEnvelope instanceof PrefixedSealedAndSignedMessage)
-                            setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
-
-                        onMessage(networkEnvelope, this);
                     }
-                } catch (InvalidClassException e) {
-                    log.error(e.getMessage());
-                    e.printStackTrace();
-                    reportInvalidRequest(RuleViolation.INVALID_CLASS);
-                } catch (ProtobufferException | NoClassDefFoundError e) {
-                    log.error(e.getMessage());
-                    e.printStackTrace();
-                    reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
-                } catch (Throwable t) {
-                    handleException(t);
                 }
+
+                if (networkEnvelope instanceof PrefixedSealedAndSignedMessage)
+                    setPeerType(Connection.PeerType.DIRECT_MSG_PEER);
+
+                onMessage(networkEnvelope, this);
             }
+        } catch (ProtobufferException | NoClassDefFoundError e) {
+            log.error(e.getMessage());
+            e.printStackTrace();
+            reportInvalidRequest(RuleViolation.INVALID_DATA_TYPE);
         } catch (Throwable t) {
             handleException(t);
         }
+        return true;
+    }
+
+    private NioTransport.FrameHandler createFrameHandler() {
+        return new NioTransport.FrameHandler() {
+            @Override
+            public boolean onFrame(protobuf.NetworkEnvelope proto) {
+                return processProto(proto) && !stopped;
+            }
+
+            @Override
+            public void onEndOfStream() {
+                log.debug("We got the end of the stream. That is expected if client got stopped without proper shutdown.");
+                if (!stopped)
+                    shutDown(CloseConnectionReason.NO_PROTO_BUFFER_ENV);
+            }
+
+            @Override
+            public void onFailure(Throwable throwable) {
+                if (!stopped)
+                    handleException(throwable);
+            }
+        };
     }
 }
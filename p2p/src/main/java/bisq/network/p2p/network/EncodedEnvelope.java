@@ -0,0 +1,140 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import bisq.common.proto.network.NetworkEnvelope;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+
+/**
+ * Holds a NetworkEnvelope together with its proto message and its length delimited wire bytes.
+ * <p>
+ * At a broadcast we send the same message to many peers. We create the proto message and the wire bytes only once
+ * and write them to the stream of each peer instead of serializing the message again for each connection.
+ * Both are created lazily, so wrapping an envelope which never gets written is cheap.
+ */
+public final class EncodedEnvelope {
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Static
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final AtomicLong totalSavedSerializations = new AtomicLong();
+    private static final AtomicLong totalSavedBytes = new AtomicLong();
+
+    // Number of serializations we avoided by writing already encoded bytes
+    public static long getTotalSavedSerializations() {
+        return totalSavedSerializations.get();
+    }
+
+    // Number of bytes we did not need to serialize again
+    public static long getTotalSavedBytes() {
+        return totalSavedBytes.get();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Instance fields
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Getter
+    private final NetworkEnvelope envelope;
+    // We don't mind if concurrent callers create them twice, the result is the same
+    private volatile protobuf.NetworkEnvelope proto;
+    private volatile byte[] delimitedBytes;
+    private final AtomicInteger numWrites = new AtomicInteger();
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public EncodedEnvelope(NetworkEnvelope envelope) {
+        this.envelope = envelope;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public protobuf.NetworkEnvelope getProto() {
+        protobuf.NetworkEnvelope proto = this.proto;
+        if (proto == null) {
+            proto = envelope.toProtoNetworkEnvelope();
+            this.proto = proto;
+        }
+        return proto;
+    }
+
+    // Size of the proto message without the length prefix
+    public int getSerializedSize() {
+        return getProto().getSerializedSize();
+    }
+
+    public int getNumWrites() {
+        return numWrites.get();
+    }
+
+    public int getSavedSerializations() {
+        return Math.max(0, numWrites.get() - 1);
+    }
+
+    public long getSavedBytes() {
+        byte[] delimitedBytes = this.delimitedBytes;
+        return delimitedBytes != null ? (long) getSavedSerializations() * delimitedBytes.length : 0;
+    }
+
+    // Same bytes as proto.writeDelimitedTo would write
+    void writeTo(OutputStream outputStream) throws IOException {
+        byte[] delimitedBytes = getDelimitedBytes();
+        outputStream.write(delimitedBytes);
+        if (numWrites.incrementAndGet() > 1) {
+            totalSavedSerializations.incrementAndGet();
+            totalSavedBytes.addAndGet(delimitedBytes.length);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private byte[] getDelimitedBytes() throws IOException {
+        byte[] delimitedBytes = this.delimitedBytes;
+        if (delimitedBytes == null) {
+            protobuf.NetworkEnvelope proto = getProto();
+            int serializedSize = proto.getSerializedSize();
+            delimitedBytes = new byte[CodedOutputStream.computeUInt32SizeNoTag(serializedSize) + serializedSize];
+            CodedOutputStream codedOutputStream = CodedOutputStream.newInstance(delimitedBytes);
+            codedOutputStream.writeUInt32NoTag(serializedSize);
+            proto.writeTo(codedOutputStream);
+            codedOutputStream.checkNoSpaceLeft();
+            this.delimitedBytes = delimitedBytes;
+        }
+        return delimitedBytes;
+    }
+}
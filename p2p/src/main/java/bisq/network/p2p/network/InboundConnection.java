@@ -21,11 +21,14 @@ import bisq.common.proto.network.NetworkProtoResolver;
 
 import java.net.Socket;
 
+import org.jetbrains.annotations.Nullable;
+
 public class InboundConnection extends Connection {
     public InboundConnection(Socket socket,
                              MessageListener messageListener,
                              ConnectionListener connectionListener,
-                             NetworkProtoResolver networkProtoResolver) {
-        super(socket, messageListener, connectionListener, null, networkProtoResolver);
+                             NetworkProtoResolver networkProtoResolver,
+                             @Nullable NioTransport nioTransport) {
+        super(socket, messageListener, connectionListener, null, networkProtoResolver, nioTransport);
     }
 }
@@ -22,9 +22,13 @@ import bisq.network.p2p.NodeAddress;
 import bisq.common.UserThread;
 import bisq.common.proto.network.NetworkProtoResolver;
 
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
 import java.io.IOException;
 
 import java.util.concurrent.TimeUnit;
@@ -49,13 +53,22 @@ public class LocalhostNetworkNode extends NetworkNode {
         LocalhostNetworkNode.simulateTorDelayHiddenService = simulateTorDelayHiddenService;
     }
 
+    private final boolean useNioTransport;
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public LocalhostNetworkNode(int port, NetworkProtoResolver networkProtoResolver) {
+        this(port, networkProtoResolver, false);
+    }
+
+    // If useNioTransport is set all connections are served by the NioTransport instead of using a thread per
+    // connection. That allows to load test the transport without Tor.
+    public LocalhostNetworkNode(int port, NetworkProtoResolver networkProtoResolver, boolean useNioTransport) {
         super(port, networkProtoResolver);
+        this.useNioTransport = useNioTransport;
     }
 
     @Override
@@ -64,6 +77,15 @@ public class LocalhostNetworkNode extends NetworkNode {
             addSetupListener(setupListener);
 
         createExecutorService();
+        if (useNioTransport) {
+            try {
+                createNioTransport();
+            } catch (IOException e) {
+                log.error("Exception at createNioTransport: " + e.getMessage());
+                setupListeners.forEach(listener -> listener.onSetupFailed(e));
+                return;
+            }
+        }
 
         // simulate tor connection delay
         UserThread.runAfter(() -> {
@@ -74,7 +96,7 @@ public class LocalhostNetworkNode extends NetworkNode {
             // simulate tor HS publishing delay
             UserThread.runAfter(() -> {
                 try {
-                    startServer(new ServerSocket(servicePort));
+                    startServer(createServerSocket());
                 } catch (IOException e) {
                     e.printStackTrace();
                     log.error("Exception at startServer: " + e.getMessage());
@@ -87,6 +109,18 @@ public class LocalhostNetworkNode extends NetworkNode {
     // Called from NetworkNode thread
     @Override
     protected Socket createSocket(NodeAddress peerNodeAddress) throws IOException {
-        return new Socket(peerNodeAddress.getHostName(), peerNodeAddress.getPort());
+        if (useNioTransport)
+            return SocketChannel.open(new InetSocketAddress(peerNodeAddress.getHostName(), peerNodeAddress.getPort())).socket();
+        else
+            return new Socket(peerNodeAddress.getHostName(), peerNodeAddress.getPort());
+    }
+
+    // Sockets accepted by a server socket of a channel are backed by a channel as well, so the Server can keep
+    // using the blocking accept.
+    private ServerSocket createServerSocket() throws IOException {
+        if (useNioTransport)
+            return ServerSocketChannel.open().bind(new InetSocketAddress(servicePort)).socket();
+        else
+            return new ServerSocket(servicePort);
     }
 }
@@ -71,6 +71,9 @@ public abstract class NetworkNode implements MessageListener {
     private final CopyOnWriteArraySet<ConnectionListener> connectionListeners = new CopyOnWriteArraySet<>();
     final CopyOnWriteArraySet<SetupListener> setupListeners = new CopyOnWriteArraySet<>();
     ListeningExecutorService executorService;
+    // Only set if the sockets are created from channels, see LocalhostNetworkNode
+    @Nullable
+    NioTransport nioTransport;
     private Server server;
 
     private volatile boolean shutDownInProgress;
@@ -191,7 +194,8 @@ public abstract class NetworkNode implements MessageListener {
                                 NetworkNode.this,
                                 connectionListener,
                                 peersNodeAddress,
-                                networkProtoResolver);
+                                networkProtoResolver,
+                                nioTransport);
 
                         if (log.isDebugEnabled()) {
                             log.debug("\n\n%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%\n" +
@@ -274,11 +278,16 @@ public abstract class NetworkNode implements MessageListener {
 
 
     public SettableFuture<Connection> sendMessage(Connection connection, NetworkEnvelope networkEnvelope) {
+        return sendMessage(connection, new EncodedEnvelope(networkEnvelope));
+    }
+
+    // Used if we send the same envelope to multiple connections, so it gets serialized only once
+    public SettableFuture<Connection> sendMessage(Connection connection, EncodedEnvelope encodedEnvelope) {
         // connection.sendMessage might take a bit (compression, write to stream), so we use a thread to not block
         ListenableFuture<Connection> future = executorService.submit(() -> {
             String id = connection.getPeersNodeAddressOptional().isPresent() ? connection.getPeersNodeAddressOptional().get().getFullAddress() : connection.getUid();
             Thread.currentThread().setName("NetworkNode:SendMessage-to-" + id);
-            connection.sendMessage(networkEnvelope);
+            connection.sendMessage(encodedEnvelope);
             return connection;
         });
         final SettableFuture<Connection> resultFuture = SettableFuture.create();
@@ -331,6 +340,13 @@ public abstract class NetworkNode implements MessageListener {
             }
 
             getAllConnections().stream().forEach(c -> c.shutDown(CloseConnectionReason.APP_SHUT_DOWN));
+
+            if (nioTransport != null) {
+                // We give the connections time to send the CloseConnectionMessage before we stop the transport
+                NioTransport transport = nioTransport;
+                nioTransport = null;
+                UserThread.runAfter(transport::shutDown, 1);
+            }
             log.debug("NetworkNode shutdown complete");
         }
         if (shutDownCompleteHandler != null) shutDownCompleteHandler.run();
@@ -399,6 +415,13 @@ public abstract class NetworkNode implements MessageListener {
             executorService = Utilities.getListeningExecutorService("NetworkNode-" + servicePort, 15, 30, 60);
     }
 
+    void createNioTransport() throws IOException {
+        if (nioTransport == null)
+            nioTransport = new NioTransport("NioTransport-" + servicePort,
+                    Math.max(2, Runtime.getRuntime().availableProcessors()),
+                    Connection.SOCKET_TIMEOUT);
+    }
+
     void startServer(ServerSocket serverSocket) {
         final ConnectionListener connectionListener = new ConnectionListener() {
             @Override
@@ -428,7 +451,8 @@ public abstract class NetworkNode implements MessageListener {
         server = new Server(serverSocket,
                 NetworkNode.this,
                 connectionListener,
-                networkProtoResolver);
+                networkProtoResolver,
+                nioTransport);
         executorService.submit(server);
     }
 
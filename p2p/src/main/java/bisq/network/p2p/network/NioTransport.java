@@ -0,0 +1,540 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import bisq.common.util.Utilities;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Non-blocking transport for connections which are backed by a SocketChannel.
+ * <p>
+ * A single selector thread reads and writes all registered channels. Received frames are parsed and delivered on a
+ * fixed size worker pool, frames of one channel are delivered one after another in the order we received them.
+ * The number of threads does not grow with the number of connections, which is the case if every connection
+ * runs its own blocking read loop.
+ * <p>
+ * Frames use the same varint length prefix as protobuf's writeDelimitedTo, so a peer using the blocking streams
+ * can talk to a peer using that transport.
+ */
+@Slf4j
+class NioTransport {
+    // Frames are checked against the permitted message sizes in Connection after parsing. Here we only reject
+    // frames which would never be accepted to avoid that a peer lets us allocate huge buffers.
+    private static final int MAX_FRAME_SIZE = 2 * Connection.MAX_PERMITTED_MESSAGE_SIZE;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // If that many frames of a channel are waiting for the worker pool we stop reading from that channel until
+    // half of them are processed.
+    private static final int MAX_PENDING_FRAMES = 100;
+    private static final int RESUME_READ_PENDING_FRAMES = MAX_PENDING_FRAMES / 2;
+    // We process at most that many frames of a channel before we give other channels a chance to use the worker.
+    private static final int MAX_FRAMES_PER_RUN = 16;
+    // If a peer does not read our data we fail instead of buffering an unlimited amount of data.
+    private static final long MAX_PENDING_WRITE_BYTES = 4L * MAX_FRAME_SIZE;
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    /**
+     * Receives the frames and the termination of a registered channel. All methods are called from the worker pool
+     * but never concurrently for the same channel.
+     */
+    interface FrameHandler {
+        // Returns false if we should not read any further frames from that channel
+        boolean onFrame(protobuf.NetworkEnvelope proto);
+
+        void onEndOfStream();
+
+        void onFailure(Throwable throwable);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Class fields
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private final long idleTimeout;
+    private final Selector selector;
+    private final ExecutorService workerPool;
+    @Getter
+    private final ScheduledExecutorService scheduler;
+    private final BufferPool bufferPool = new BufferPool();
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private final Set<Registration> registrations = ConcurrentHashMap.newKeySet();
+    // Only used by the selector thread
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private long lastIdleCheck;
+    private volatile boolean stopped;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    NioTransport(String name, int numWorkerThreads, long idleTimeout) throws IOException {
+        this.idleTimeout = idleTimeout;
+        selector = Selector.open();
+        workerPool = Executors.newFixedThreadPool(numWorkerThreads, new ThreadFactoryBuilder()
+                .setNameFormat(name + "-worker-%d")
+                .setDaemon(true)
+                .build());
+        scheduler = Utilities.getScheduledThreadPoolExecutor(name + "-scheduler", 1, 1, 60);
+
+        Thread selectorThread = new Thread(this::runSelectLoop, name + "-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    Registration register(SocketChannel channel, FrameHandler frameHandler) throws IOException {
+        if (stopped)
+            throw new ClosedChannelException();
+
+        channel.configureBlocking(false);
+        Registration registration = new Registration(channel, frameHandler);
+        registrations.add(registration);
+        runOnSelector(registration::onRegister);
+        return registration;
+    }
+
+    void shutDown() {
+        if (!stopped) {
+            stopped = true;
+            selector.wakeup();
+            workerPool.shutdownNow();
+            scheduler.shutdownNow();
+            log.debug("NioTransport shutdown complete");
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Selector thread
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void runOnSelector(Runnable task) {
+        selectorTasks.add(task);
+        selector.wakeup();
+    }
+
+    private void runSelectLoop() {
+        while (!stopped) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+
+                Runnable task;
+                while ((task = selectorTasks.poll()) != null)
+                    task.run();
+
+                Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    SelectionKey key = iterator.next();
+                    iterator.remove();
+                    Registration registration = (Registration) key.attachment();
+                    if (key.isValid() && key.isReadable())
+                        registration.read();
+                    if (key.isValid() && key.isWritable())
+                        registration.write();
+                }
+
+                checkIdleRegistrations();
+            } catch (Throwable t) {
+                if (!stopped)
+                    log.error("Exception at select loop", t);
+            }
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Exception at closing selector. " + e.getMessage());
+        }
+    }
+
+    // Replaces the socket timeout of the blocking streams which does not apply to channels.
+    private void checkIdleRegistrations() {
+        long now = System.currentTimeMillis();
+        if (now - lastIdleCheck < SELECT_TIMEOUT_MS)
+            return;
+
+        lastIdleCheck = now;
+        registrations.stream()
+                .filter(registration -> !registration.readClosed && !registration.readPaused)
+                .filter(registration -> now - registration.lastReadTimeStamp > idleTimeout)
+                .forEach(registration -> registration.closeRead(new SocketTimeoutException("Read timed out")));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Registration
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    class Registration {
+        private final SocketChannel channel;
+        private final FrameHandler frameHandler;
+        @Getter
+        private final OutputStream outputStream = new FrameOutputStream();
+
+        // Read state, only accessed by the selector thread
+        private SelectionKey key;
+        private int frameLength;
+        private int frameLengthShift;
+        private ByteBuffer frame;
+        private volatile long lastReadTimeStamp = System.currentTimeMillis();
+
+        // Frames waiting for the worker pool
+        private final Queue<ByteBuffer> frames = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger numPendingFrames = new AtomicInteger();
+        private final AtomicBoolean processing = new AtomicBoolean();
+        private final AtomicBoolean terminationDelivered = new AtomicBoolean();
+        private volatile boolean readPaused;
+        private volatile boolean readClosed;
+        private volatile Throwable failure;
+        private volatile boolean closed;
+        // Only set by the worker processing the frames
+        private volatile boolean stopReading;
+
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicLong numPendingWriteBytes = new AtomicLong();
+
+        private Registration(SocketChannel channel, FrameHandler frameHandler) {
+            this.channel = channel;
+            this.frameHandler = frameHandler;
+        }
+
+        void close() {
+            if (!closed) {
+                closed = true;
+                registrations.remove(this);
+                writeQueue.clear();
+                runOnSelector(() -> {
+                    if (key != null)
+                        key.cancel();
+                });
+            }
+        }
+
+        private void onRegister() {
+            try {
+                int interestOps = SelectionKey.OP_READ;
+                if (!writeQueue.isEmpty())
+                    interestOps |= SelectionKey.OP_WRITE;
+                key = channel.register(selector, interestOps, this);
+            } catch (ClosedChannelException e) {
+                closeRead(e);
+            }
+        }
+
+        private void read() {
+            try {
+                readBuffer.clear();
+                int numBytes = channel.read(readBuffer);
+                if (numBytes == -1) {
+                    closeRead(null);
+                    return;
+                }
+
+                lastReadTimeStamp = System.currentTimeMillis();
+                readBuffer.flip();
+                readFrames(readBuffer);
+            } catch (StreamCorruptedException e) {
+                closeRead(e);
+            } catch (IOException e) {
+                closeRead(asSocketException(e));
+            }
+        }
+
+        private void readFrames(ByteBuffer buffer) throws StreamCorruptedException {
+            while (buffer.hasRemaining()) {
+                if (frame == null) {
+                    // Varint32 length prefix as written by writeDelimitedTo
+                    byte b = buffer.get();
+                    frameLength |= (b & 0x7F) << frameLengthShift;
+                    if ((b & 0x80) != 0) {
+                        frameLengthShift += 7;
+                        if (frameLengthShift > 28)
+                            throw new StreamCorruptedException("Malformed frame length");
+                        continue;
+                    }
+
+                    int length = frameLength;
+                    frameLength = 0;
+                    frameLengthShift = 0;
+                    if (length < 0 || length > MAX_FRAME_SIZE)
+                        throw new StreamCorruptedException("Frame exceeds max. frame size. length=" + length);
+
+                    frame = bufferPool.acquire(length);
+                } else {
+                    int numBytes = Math.min(frame.remaining(), buffer.remaining());
+                    ByteBuffer slice = buffer.duplicate();
+                    slice.limit(slice.position() + numBytes);
+                    frame.put(slice);
+                    buffer.position(buffer.position() + numBytes);
+                }
+
+                if (frame != null && !frame.hasRemaining()) {
+                    frame.flip();
+                    frames.add(frame);
+                    frame = null;
+                    if (numPendingFrames.incrementAndGet() >= MAX_PENDING_FRAMES)
+                        pauseRead();
+                    scheduleProcessing();
+                }
+            }
+        }
+
+        private void write() {
+            try {
+                ByteBuffer buffer;
+                while ((buffer = writeQueue.peek()) != null) {
+                    int numBytes = channel.write(buffer);
+                    numPendingWriteBytes.addAndGet(-numBytes);
+                    if (buffer.hasRemaining())
+                        return;
+                    writeQueue.poll();
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            } catch (IOException e) {
+                closeRead(asSocketException(e));
+            }
+        }
+
+        private void enqueueWrite(ByteBuffer buffer) throws IOException {
+            if (closed || stopped)
+                throw new SocketException("Socket is closed");
+
+            long numBytes = numPendingWriteBytes.addAndGet(buffer.remaining());
+            if (numBytes > MAX_PENDING_WRITE_BYTES)
+                throw new SocketException("Peer does not read our data. numPendingWriteBytes=" + numBytes);
+
+            writeQueue.add(buffer);
+            runOnSelector(() -> {
+                if (key != null && key.isValid())
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            });
+        }
+
+        private void pauseRead() {
+            readPaused = true;
+            if (key.isValid())
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        }
+
+        private void resumeRead() {
+            runOnSelector(() -> {
+                if (readPaused && !readClosed && key.isValid()) {
+                    readPaused = false;
+                    lastReadTimeStamp = System.currentTimeMillis();
+                    key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+                }
+            });
+        }
+
+        // Called by the selector thread. We deliver the end of stream or the failure after the frames we have
+        // received before.
+        private void closeRead(Throwable throwable) {
+            if (!readClosed) {
+                failure = throwable;
+                readClosed = true;
+                if (key != null && key.isValid())
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                scheduleProcessing();
+            }
+        }
+
+        private void scheduleProcessing() {
+            if (processing.compareAndSet(false, true)) {
+                try {
+                    workerPool.execute(this::processFrames);
+                } catch (RejectedExecutionException e) {
+                    // Only expected after shutDown
+                    processing.set(false);
+                }
+            }
+        }
+
+        private void processFrames() {
+            try {
+                ByteBuffer buffer;
+                int numProcessed = 0;
+                while (numProcessed < MAX_FRAMES_PER_RUN && (buffer = frames.poll()) != null) {
+                    numProcessed++;
+                    if (numPendingFrames.decrementAndGet() <= RESUME_READ_PENDING_FRAMES && readPaused)
+                        resumeRead();
+
+                    try {
+                        if (!stopReading && !closed) {
+                            protobuf.NetworkEnvelope proto = protobuf.NetworkEnvelope.parseFrom(buffer);
+                            stopReading = !frameHandler.onFrame(proto);
+                        }
+                    } catch (Throwable t) {
+                        stopReading = true;
+                        frameHandler.onFailure(t);
+                    } finally {
+                        bufferPool.release(buffer);
+                    }
+                }
+
+                if (stopReading && !readClosed)
+                    runOnSelector(() -> closeRead(null));
+
+                if (readClosed && frames.isEmpty() && !stopReading && !closed &&
+                        terminationDelivered.compareAndSet(false, true)) {
+                    if (failure != null)
+                        frameHandler.onFailure(failure);
+                    else
+                        frameHandler.onEndOfStream();
+                }
+            } catch (Throwable t) {
+                log.error("Exception at processing frames", t);
+            } finally {
+                processing.set(false);
+                if (!frames.isEmpty() || (readClosed && !terminationDelivered.get() && !stopReading && !closed))
+                    scheduleProcessing();
+            }
+        }
+
+        // The blocking streams report IO errors as SocketException which gets mapped to the close reason in
+        // Connection, so we do the same.
+        private IOException asSocketException(IOException e) {
+            if (e instanceof SocketException)
+                return e;
+
+            SocketException socketException = new SocketException(e.getMessage());
+            socketException.initCause(e);
+            return socketException;
+        }
+
+        // Collects the bytes of one frame and enqueues them for the selector at flush. Not thread safe, writes of
+        // a frame and the flush must not be interleaved with other writes.
+        private class FrameOutputStream extends OutputStream {
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+            @Override
+            public void write(int b) {
+                buffer.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                buffer.write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (buffer.size() > 0) {
+                    byte[] bytes = buffer.toByteArray();
+                    // We don't keep the capacity of large messages
+                    if (bytes.length > READ_BUFFER_SIZE)
+                        buffer = new ByteArrayOutputStream();
+                    else
+                        buffer.reset();
+
+                    enqueueWrite(ByteBuffer.wrap(bytes));
+                }
+            }
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // BufferPool
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Pool of frame buffers in power of 2 size classes. Larger frames get a buffer which is not pooled.
+    private static class BufferPool {
+        private static final int MIN_SIZE_CLASS = 10;                                   // 1 kb
+        private static final int MAX_SIZE_CLASS = 20;                                   // 1 MB
+        private static final int MAX_BUFFERS_PER_SIZE_CLASS = 32;
+
+        @SuppressWarnings("unchecked")
+        private final Queue<ByteBuffer>[] buffers = new Queue[MAX_SIZE_CLASS - MIN_SIZE_CLASS + 1];
+        private final AtomicIntegerArray numBuffers = new AtomicIntegerArray(buffers.length);
+
+        BufferPool() {
+            for (int i = 0; i < buffers.length; i++)
+                buffers[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        ByteBuffer acquire(int size) {
+            int sizeClass = Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+            if (sizeClass > MAX_SIZE_CLASS)
+                return ByteBuffer.allocate(size);
+
+            int index = sizeClass - MIN_SIZE_CLASS;
+            ByteBuffer buffer = buffers[index].poll();
+            if (buffer != null)
+                numBuffers.decrementAndGet(index);
+            else
+                buffer = ByteBuffer.allocate(1 << sizeClass);
+
+            buffer.clear();
+            buffer.limit(size);
+            return buffer;
+        }
+
+        void release(ByteBuffer buffer) {
+            int capacity = buffer.capacity();
+            if (Integer.bitCount(capacity) != 1)
+                return;
+
+            int sizeClass = Integer.numberOfTrailingZeros(capacity);
+            if (sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS)
+                return;
+
+            int index = sizeClass - MIN_SIZE_CLASS;
+            if (numBuffers.incrementAndGet(index) <= MAX_BUFFERS_PER_SIZE_CLASS)
+                buffers[index].add(buffer);
+            else
+                numBuffers.decrementAndGet(index);
+        }
+    }
+}
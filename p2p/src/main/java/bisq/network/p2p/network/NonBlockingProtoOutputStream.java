@@ -0,0 +1,39 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import java.io.OutputStream;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Used with the NioTransport. Writing only enqueues the frame at the transport, so unlike
+ * SynchronizedProtoOutputStream we don't need a dedicated thread for writing and we only synchronize to not
+ * interleave the bytes of concurrently written envelopes.
+ */
+@ThreadSafe
+class NonBlockingProtoOutputStream extends ProtoOutputStream {
+    NonBlockingProtoOutputStream(OutputStream delegate, Statistic statistic) {
+        super(delegate, statistic);
+    }
+
+    @Override
+    synchronized void writeEnvelope(EncodedEnvelope envelope) {
+        super.writeEnvelope(envelope);
+    }
+}
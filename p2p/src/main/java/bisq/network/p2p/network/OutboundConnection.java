@@ -23,12 +23,15 @@ import bisq.common.proto.network.NetworkProtoResolver;
 
 import java.net.Socket;
 
+import org.jetbrains.annotations.Nullable;
+
 public class OutboundConnection extends Connection {
     public OutboundConnection(Socket socket,
                               MessageListener messageListener,
                               ConnectionListener connectionListener,
                               NodeAddress peersNodeAddress,
-                              NetworkProtoResolver networkProtoResolver) {
-        super(socket, messageListener, connectionListener, peersNodeAddress, networkProtoResolver);
+                              NetworkProtoResolver networkProtoResolver,
+                              @Nullable NioTransport nioTransport) {
+        super(socket, messageListener, connectionListener, peersNodeAddress, networkProtoResolver, nioTransport);
     }
 }
@@ -0,0 +1,190 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import bisq.network.p2p.BundleOfEnvelopes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Coalesces and rate limits the envelopes we send to one peer.
+ * <p>
+ * If we send again within sendMsgThrottleTrigger ms after the last write we don't write directly but queue the
+ * envelope. The queued envelopes get written by a single drain task with a pause of sendMsgThrottleSleep ms
+ * between the writes, so the caller's thread does not get blocked and the order of the envelopes is kept.
+ * If the peer supports BundleOfEnvelopes the queued envelopes are bundled up to MAX_BUNDLE_SIZE. We keep a running
+ * byte count of the already encoded envelopes for that, so we never serialize a growing bundle to get its size.
+ */
+@ThreadSafe
+@Slf4j
+class OutboundQueue {
+    // We leave room for the bundle envelope itself and the length prefixes of the bundled envelopes
+    static final int MAX_BUNDLE_SIZE = (int) (Connection.MAX_PERMITTED_MESSAGE_SIZE * 0.9);
+
+    private final ProtoOutputStream protoOutputStream;
+    private final ScheduledExecutorService executor;
+    private final BooleanSupplier isBundlingSupported;
+    private final Consumer<Throwable> exceptionHandler;
+    private final int sendMsgThrottleTrigger;
+    private final int sendMsgThrottleSleep;
+
+    private final Deque<Batch> batches = new ArrayDeque<>();
+    private long lastWriteTimeStamp;
+    private boolean drainScheduled;
+    private boolean stopped;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    OutboundQueue(ProtoOutputStream protoOutputStream,
+                  ScheduledExecutorService executor,
+                  BooleanSupplier isBundlingSupported,
+                  Consumer<Throwable> exceptionHandler,
+                  int sendMsgThrottleTrigger,
+                  int sendMsgThrottleSleep) {
+        this.protoOutputStream = protoOutputStream;
+        this.executor = executor;
+        this.isBundlingSupported = isBundlingSupported;
+        this.exceptionHandler = exceptionHandler;
+        this.sendMsgThrottleTrigger = sendMsgThrottleTrigger;
+        this.sendMsgThrottleSleep = sendMsgThrottleSleep;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Writes on the caller's thread if we are not throttled, otherwise the envelope gets queued
+    void send(EncodedEnvelope encodedEnvelope) {
+        synchronized (this) {
+            if (stopped)
+                return;
+
+            long now = System.currentTimeMillis();
+            if (!batches.isEmpty() || drainScheduled || now - lastWriteTimeStamp < sendMsgThrottleTrigger) {
+                log.debug("We got 2 sendMessage requests in less than {} ms. We queue {} and send it with a delay " +
+                                "of {} ms to avoid flooding our peer.",
+                        sendMsgThrottleTrigger, encodedEnvelope.getEnvelope().getClass().getSimpleName(),
+                        sendMsgThrottleSleep);
+                enqueue(encodedEnvelope);
+                scheduleDrain(now);
+                return;
+            }
+
+            lastWriteTimeStamp = now;
+        }
+
+        protoOutputStream.writeEnvelope(encodedEnvelope);
+    }
+
+    synchronized void stop() {
+        stopped = true;
+        batches.clear();
+    }
+
+    synchronized int getNumQueuedEnvelopes() {
+        return batches.stream().mapToInt(batch -> batch.envelopes.size()).sum();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private void enqueue(EncodedEnvelope encodedEnvelope) {
+        int size = encodedEnvelope.getSerializedSize();
+        Batch batch = batches.peekLast();
+        if (batch == null || !isBundlingSupported.getAsBoolean() || batch.size + size > MAX_BUNDLE_SIZE) {
+            batch = new Batch();
+            batches.add(batch);
+        }
+        batch.add(encodedEnvelope, size);
+    }
+
+    private void scheduleDrain(long now) {
+        if (!drainScheduled && !batches.isEmpty()) {
+            drainScheduled = true;
+            long delay = Math.max(0, lastWriteTimeStamp + sendMsgThrottleSleep - now);
+            executor.schedule(this::drain, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Only one drain task is scheduled at a time, so it is the only writer of the queued envelopes
+    private void drain() {
+        Batch batch;
+        synchronized (this) {
+            batch = batches.poll();
+            if (stopped || batch == null) {
+                drainScheduled = false;
+                return;
+            }
+            lastWriteTimeStamp = System.currentTimeMillis();
+        }
+
+        try {
+            write(batch);
+        } catch (Throwable t) {
+            exceptionHandler.accept(t);
+        } finally {
+            synchronized (this) {
+                drainScheduled = false;
+                scheduleDrain(System.currentTimeMillis());
+            }
+        }
+    }
+
+    private void write(Batch batch) {
+        if (batch.envelopes.size() == 1) {
+            protoOutputStream.writeEnvelope(batch.envelopes.get(0));
+        } else {
+            BundleOfEnvelopes bundleOfEnvelopes = new BundleOfEnvelopes();
+            batch.envelopes.forEach(encodedEnvelope -> bundleOfEnvelopes.add(encodedEnvelope.getEnvelope()));
+            protoOutputStream.writeEnvelope(bundleOfEnvelopes);
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Batch
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static class Batch {
+        private final List<EncodedEnvelope> envelopes = new ArrayList<>();
+        // Running sum of the serialized sizes of the envelopes
+        private int size;
+
+        void add(EncodedEnvelope encodedEnvelope, int size) {
+            envelopes.add(encodedEnvelope);
+            this.size += size;
+        }
+    }
+}
@@ -17,6 +17,7 @@
 
 package bisq.network.p2p.network;
 
+import bisq.network.p2p.metrics.NetworkMetrics;
 import bisq.network.p2p.peers.keepalive.messages.KeepAliveMessage;
 
 import bisq.common.proto.network.NetworkEnvelope;
@@ -42,6 +43,10 @@ class ProtoOutputStream {
     }
 
     void writeEnvelope(NetworkEnvelope envelope) {
+        writeEnvelope(new EncodedEnvelope(envelope));
+    }
+
+    void writeEnvelope(EncodedEnvelope envelope) {
         try {
             writeEnvelopeOrThrow(envelope);
         } catch (IOException e) {
@@ -58,13 +63,14 @@ class ProtoOutputStream {
         }
     }
 
-    private void writeEnvelopeOrThrow(NetworkEnvelope envelope) throws IOException {
-        protobuf.NetworkEnvelope proto = envelope.toProtoNetworkEnvelope();
-        proto.writeDelimitedTo(delegate);
+    private void writeEnvelopeOrThrow(EncodedEnvelope encodedEnvelope) throws IOException {
+        encodedEnvelope.writeTo(delegate);
         delegate.flush();
 
-        statistic.addSentBytes(proto.getSerializedSize());
+        NetworkEnvelope envelope = encodedEnvelope.getEnvelope();
+        statistic.addSentBytes(encodedEnvelope.getSerializedSize());
         statistic.addSentMessage(envelope);
+        NetworkMetrics.onMessageSent(envelope, encodedEnvelope.getSerializedSize());
 
         if (!(envelope instanceof KeepAliveMessage)) {
             statistic.updateLastActivityTimestamp();
@@ -31,6 +31,8 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.jetbrains.annotations.Nullable;
+
 // Runs in UserThread
 class Server implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(Server.class);
@@ -43,13 +45,17 @@ class Server implements Runnable {
     private final Set<Connection> connections = new CopyOnWriteArraySet<>();
     private volatile boolean stopped;
     private final NetworkProtoResolver networkProtoResolver;
+    @Nullable
+    private final NioTransport nioTransport;
 
 
     public Server(ServerSocket serverSocket,
                   MessageListener messageListener,
                   ConnectionListener connectionListener,
-                  NetworkProtoResolver networkProtoResolver) {
+                  NetworkProtoResolver networkProtoResolver,
+                  @Nullable NioTransport nioTransport) {
         this.networkProtoResolver = networkProtoResolver;
+        this.nioTransport = nioTransport;
         this.serverSocket = serverSocket;
         this.messageListener = messageListener;
         this.connectionListener = connectionListener;
@@ -69,7 +75,8 @@ class Server implements Runnable {
                         InboundConnection connection = new InboundConnection(socket,
                                 messageListener,
                                 connectionListener,
-                                networkProtoResolver);
+                                networkProtoResolver,
+                                nioTransport);
 
                         log.debug("\n\n%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%%\n" +
                                 "Server created new inbound connection:"
@@ -153,6 +153,10 @@ public class Statistic {
         return creationDate;
     }
 
+    public int getRoundTripTime() {
+        return roundTripTime.get();
+    }
+
     public IntegerProperty roundTripTimeProperty() {
         return roundTripTime;
     }
@@ -18,7 +18,9 @@
 package bisq.network.p2p.peers;
 
 import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.metrics.NetworkMetrics;
 import bisq.network.p2p.network.Connection;
+import bisq.network.p2p.network.EncodedEnvelope;
 import bisq.network.p2p.network.NetworkNode;
 import bisq.network.p2p.storage.messages.BroadcastMessage;
 
@@ -30,8 +32,6 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
@@ -78,14 +78,18 @@ public class BroadcastHandler implements PeerManager.Listener {
     private final NetworkNode networkNode;
     public final String uid;
     private final PeerManager peerManager;
+    private final PeerScoring peerScoring;
     private boolean stopped = false;
     private int numOfCompletedBroadcasts = 0;
     private int numOfFailedBroadcasts = 0;
     private BroadcastMessage message;
+    // We serialize the message only once and write the same bytes to all peers
+    private EncodedEnvelope encodedEnvelope;
     private ResultHandler resultHandler;
     @Nullable
     private Listener listener;
     private int numPeers;
+    private long startTime;
     private Timer timeoutTimer;
 
 
@@ -93,9 +97,10 @@ public class BroadcastHandler implements PeerManager.Listener {
     // Constructor
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    public BroadcastHandler(NetworkNode networkNode, PeerManager peerManager) {
+    public BroadcastHandler(NetworkNode networkNode, PeerManager peerManager, PeerScoring peerScoring) {
         this.networkNode = networkNode;
         this.peerManager = peerManager;
+        this.peerScoring = peerScoring;
         peerManager.addListener(this);
         uid = UUID.randomUUID().toString();
     }
@@ -113,8 +118,10 @@ public class BroadcastHandler implements PeerManager.Listener {
     public void broadcast(BroadcastMessage message, @Nullable NodeAddress sender, ResultHandler resultHandler,
                           @Nullable Listener listener, boolean isDataOwner) {
         this.message = message;
+        this.encodedEnvelope = new EncodedEnvelope(message);
         this.resultHandler = resultHandler;
         this.listener = listener;
+        startTime = System.currentTimeMillis();
 
         Set<Connection> connectedPeersSet = networkNode.getConfirmedConnections()
                 .stream()
@@ -123,15 +130,12 @@ public class BroadcastHandler implements PeerManager.Listener {
         if (!connectedPeersSet.isEmpty()) {
             numOfCompletedBroadcasts = 0;
 
-            List<Connection> connectedPeersList = new ArrayList<>(connectedPeersSet);
-            Collections.shuffle(connectedPeersList);
+            // For not data owner (relay nodes) we send to max. 7 nodes and use a longer delay. We send to the peers
+            // with the best score first and delay the others by how much worse their score is.
+            List<Connection> connectedPeersList = peerScoring.getBroadcastTargets(connectedPeersSet, isDataOwner);
             numPeers = connectedPeersList.size();
-            int delay = 50;
-            if (!isDataOwner) {
-                // for not data owner (relay nodes) we send to max. 7 nodes and use a longer delay
-                numPeers = Math.min(7, connectedPeersList.size());
-                delay = 100;
-            }
+            int delay = isDataOwner ? 50 : 100;
+            List<Long> minDelays = peerScoring.getMinSendDelays(connectedPeersList, delay);
 
             long timeoutDelay = TIMEOUT + delay * numPeers;
             timeoutTimer = UserThread.runAfter(() -> {  // setup before sending to avoid race conditions
@@ -149,10 +153,13 @@ public class BroadcastHandler implements PeerManager.Listener {
                 if (stopped)
                     break;  // do not continue sending after a timeout or a cancellation
 
-                final long minDelay = (i + 1) * delay;
-                final long maxDelay = (i + 2) * delay;
+                final long minDelay = minDelays.get(i);
+                final long maxDelay = minDelay + delay;
                 final Connection connection = connectedPeersList.get(i);
-                UserThread.runAfterRandomDelay(() -> sendToPeer(connection, message), minDelay, maxDelay, TimeUnit.MILLISECONDS);
+                if (minDelay == 0)
+                    UserThread.execute(() -> sendToPeer(connection, message));
+                else
+                    UserThread.runAfterRandomDelay(() -> sendToPeer(connection, message), minDelay, maxDelay, TimeUnit.MILLISECONDS);
             }
         } else {
             onFault("Message not broadcasted because we have no available peers yet.\n\t" +
@@ -167,10 +174,11 @@ public class BroadcastHandler implements PeerManager.Listener {
             if (!connection.isStopped()) {
                 if (connection.noCapabilityRequiredOrCapabilityIsSupported(message)) {
                     NodeAddress nodeAddress = connection.getPeersNodeAddressOptional().get();
-                    SettableFuture<Connection> future = networkNode.sendMessage(connection, message);
+                    SettableFuture<Connection> future = networkNode.sendMessage(connection, encodedEnvelope);
                     Futures.addCallback(future, new FutureCallback<Connection>() {
                         @Override
                         public void onSuccess(Connection connection) {
+                            peerScoring.onSendSucceeded(nodeAddress);
                             numOfCompletedBroadcasts++;
                             if (!stopped) {
                                 if (listener != null)
@@ -194,6 +202,7 @@ public class BroadcastHandler implements PeerManager.Listener {
 
                         @Override
                         public void onFailure(@NotNull Throwable throwable) {
+                            peerScoring.onSendFailed(nodeAddress);
                             numOfFailedBroadcasts++;
                             if (!stopped) {
                                 log.info("Broadcast to " + nodeAddress + " failed.\n\t" +
@@ -238,6 +247,17 @@ public class BroadcastHandler implements PeerManager.Listener {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private void cleanup() {
+        if (!stopped && encodedEnvelope != null && encodedEnvelope.getNumWrites() > 0) {
+            log.debug("Broadcast of {} serialized the message once for {} peers. We saved {} serializations " +
+                            "and {} bytes. Total saved serializations={}, total saved bytes={}",
+                    message.getClass().getSimpleName(), encodedEnvelope.getNumWrites(),
+                    encodedEnvelope.getSavedSerializations(), encodedEnvelope.getSavedBytes(),
+                    EncodedEnvelope.getTotalSavedSerializations(), EncodedEnvelope.getTotalSavedBytes());
+        }
+
+        if (!stopped)
+            NetworkMetrics.onBroadcastCompleted(numOfCompletedBroadcasts, System.currentTimeMillis() - startTime);
+
         stopped = true;
         peerManager.removeListener(this);
         if (timeoutTimer != null) {
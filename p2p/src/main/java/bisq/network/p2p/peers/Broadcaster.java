@@ -31,6 +31,7 @@ import org.jetbrains.annotations.Nullable;
 public class Broadcaster implements BroadcastHandler.ResultHandler {
     private final NetworkNode networkNode;
     private final PeerManager peerManager;
+    private final PeerScoring peerScoring;
 
     private final Set<BroadcastHandler> broadcastHandlers = new CopyOnWriteArraySet<>();
 
@@ -40,9 +41,10 @@ public class Broadcaster implements BroadcastHandler.ResultHandler {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     @Inject
-    public Broadcaster(NetworkNode networkNode, PeerManager peerManager) {
+    public Broadcaster(NetworkNode networkNode, PeerManager peerManager, PeerScoring peerScoring) {
         this.networkNode = networkNode;
         this.peerManager = peerManager;
+        this.peerScoring = peerScoring;
     }
 
     public void shutDown() {
@@ -57,11 +59,16 @@ public class Broadcaster implements BroadcastHandler.ResultHandler {
 
     public void broadcast(BroadcastMessage message, @Nullable NodeAddress sender,
                           @Nullable BroadcastHandler.Listener listener, boolean isDataOwner) {
-        BroadcastHandler broadcastHandler = new BroadcastHandler(networkNode, peerManager);
+        BroadcastHandler broadcastHandler = new BroadcastHandler(networkNode, peerManager, peerScoring);
         broadcastHandler.broadcast(message, sender, this, listener, isDataOwner);
         broadcastHandlers.add(broadcastHandler);
     }
 
+    // Called when a peer relayed a broadcast message to us. isDuplicate is true if we had the data already.
+    public void onBroadcastMessageReceived(NodeAddress sender, boolean isDuplicate) {
+        peerScoring.onBroadcastMessageReceived(sender, isDuplicate);
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // BroadcastHandler.ResultHandler implementation
@@ -597,6 +597,26 @@ public class PeerManager implements ConnectionListener, PersistedDataHost {
         return networkNode.getNodeAddressesOfConfirmedConnections().contains(nodeAddress);
     }
 
+    // We look up the capabilities at our connections first and if not found at the persisted and reported peers.
+    public Optional<Capabilities> findPeersCapabilities(NodeAddress nodeAddress) {
+        Optional<Capabilities> fromConnection = networkNode.getConfirmedConnections().stream()
+                .filter(connection -> connection.getPeersNodeAddressOptional().isPresent() &&
+                        connection.getPeersNodeAddressOptional().get().equals(nodeAddress))
+                .map(Connection::getCapabilities)
+                .filter(capabilities -> !capabilities.isEmpty())
+                .findAny();
+        if (fromConnection.isPresent())
+            return fromConnection;
+
+        Set<Peer> allPeers = new HashSet<>(getPersistedPeers());
+        allPeers.addAll(getReportedPeers());
+        return allPeers.stream()
+                .filter(peer -> peer.getNodeAddress().equals(nodeAddress))
+                .map(Peer::getCapabilities)
+                .filter(capabilities -> !capabilities.isEmpty())
+                .findAny();
+    }
+
     public void handleConnectionFault(Connection connection) {
         connection.getPeersNodeAddressOptional().ifPresent(nodeAddress -> handleConnectionFault(nodeAddress, connection));
     }
@@ -0,0 +1,169 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.peers;
+
+import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.network.Connection;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Scores our peers by how fast and reliably they get our broadcasts, so we send to the best peers first and relay
+ * nodes do not waste their few broadcast slots on slow or redundant peers.
+ * <p>
+ * The score is an estimate in ms how long it takes until a peer has the message. We start with the round trip time
+ * measured by the keep alive messages and scale it up by the rate of failed sends to that peer. Peers which often
+ * relay data to us we have already get a penalty, as they are likely to get our broadcasts from others as well.
+ * A lower score is better.
+ */
+public class PeerScoring {
+    // Relay nodes send to max. 7 peers
+    static final int MAX_RELAY_TARGETS = 7;
+    // We pick some of the relay targets by chance, so peers with a bad score get a chance to improve it and we don't
+    // always use the same paths through the network.
+    static final int NUM_RANDOM_RELAY_TARGETS = 2;
+    // Used as long as we have not got a Pong from the peer
+    private static final int UNKNOWN_ROUND_TRIP_TIME = 1000;
+    private static final double FAILURE_PENALTY = 4;
+    private static final double REDUNDANCY_PENALTY_MS = 500;
+    // Weight of the latest event at the moving averages of the failure and duplicate rates
+    private static final double WEIGHT = 0.1;
+    private static final int MAX_PEERS = 1000;
+
+    private final Cache<NodeAddress, PeerStats> peerStatsByNodeAddress = CacheBuilder.newBuilder()
+            .maximumSize(MAX_PEERS)
+            .build();
+
+    private static class PeerStats {
+        private double failureRate;
+        private double duplicateRate;
+
+        private synchronized void onSent(boolean failed) {
+            failureRate = failureRate * (1 - WEIGHT) + (failed ? WEIGHT : 0);
+        }
+
+        private synchronized void onReceived(boolean isDuplicate) {
+            duplicateRate = duplicateRate * (1 - WEIGHT) + (isDuplicate ? WEIGHT : 0);
+        }
+
+        private synchronized double getScore(int roundTripTime) {
+            return roundTripTime * (1 + FAILURE_PENALTY * failureRate) + REDUNDANCY_PENALTY_MS * duplicateRate;
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Update
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public void onSendSucceeded(NodeAddress nodeAddress) {
+        getPeerStats(nodeAddress).onSent(false);
+    }
+
+    public void onSendFailed(NodeAddress nodeAddress) {
+        getPeerStats(nodeAddress).onSent(true);
+    }
+
+    // Called when a peer relayed a broadcast message to us. isDuplicate is true if we had the data already.
+    public void onBroadcastMessageReceived(NodeAddress nodeAddress, boolean isDuplicate) {
+        getPeerStats(nodeAddress).onReceived(isDuplicate);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Broadcast targets
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return The peers to broadcast to, the best one first. A data owner sends to all peers, relay nodes to max.
+     * MAX_RELAY_TARGETS peers of which NUM_RANDOM_RELAY_TARGETS are picked by chance.
+     */
+    public List<Connection> getBroadcastTargets(Collection<Connection> connections, boolean isDataOwner) {
+        List<Connection> candidates = new ArrayList<>(connections);
+        // Peers with the same score get sent to in random order
+        Collections.shuffle(candidates);
+        Map<Connection, Double> scores = new HashMap<>();
+        candidates.forEach(connection -> scores.put(connection, getScore(connection)));
+        candidates.sort(Comparator.comparingDouble(scores::get));
+        if (isDataOwner || candidates.size() <= MAX_RELAY_TARGETS)
+            return candidates;
+
+        int numBest = MAX_RELAY_TARGETS - NUM_RANDOM_RELAY_TARGETS;
+        List<Connection> targets = new ArrayList<>(candidates.subList(0, numBest));
+        List<Connection> others = new ArrayList<>(candidates.subList(numBest, candidates.size()));
+        Collections.shuffle(others);
+        targets.addAll(others.subList(0, NUM_RANDOM_RELAY_TARGETS));
+        return targets;
+    }
+
+    /**
+     * Each peer gets the message as much later than the best peer as its score is worse, so peers with about the same
+     * score get it at once and we don't hold back bandwidth for fast peers on slow ones. The delay is capped at index *
+     * spacing, so no peer gets the message later than with a fixed spacing.
+     *
+     * @param targets The broadcast targets, the best one first
+     * @param spacing Max. delay between the sends in ms
+     * @return Min. delay in ms to send to each of the targets
+     */
+    public List<Long> getMinSendDelays(List<Connection> targets, long spacing) {
+        List<Long> delays = new ArrayList<>();
+        if (targets.isEmpty())
+            return delays;
+
+        double bestScore = getScore(targets.get(0));
+        for (int i = 0; i < targets.size(); i++) {
+            // The scores might have changed since we sorted the targets
+            long scoreDifference = Math.max(0, Math.round(getScore(targets.get(i)) - bestScore));
+            delays.add(Math.min(scoreDifference, i * spacing));
+        }
+        return delays;
+    }
+
+    @VisibleForTesting
+    double getScore(Connection connection) {
+        int roundTripTime = connection.getStatistic().getRoundTripTime();
+        if (roundTripTime <= 0)
+            roundTripTime = UNKNOWN_ROUND_TRIP_TIME;
+
+        Optional<NodeAddress> peersNodeAddressOptional = connection.getPeersNodeAddressOptional();
+        PeerStats peerStats = peersNodeAddressOptional.isPresent() ?
+                peerStatsByNodeAddress.getIfPresent(peersNodeAddressOptional.get()) :
+                null;
+        return peerStats != null ? peerStats.getScore(roundTripTime) : roundTripTime;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private PeerStats getPeerStats(NodeAddress nodeAddress) {
+        return peerStatsByNodeAddress.asMap().computeIfAbsent(nodeAddress, k -> new PeerStats());
+    }
+}
@@ -17,6 +17,7 @@
 
 package bisq.network.p2p.peers.getdata;
 
+import bisq.network.p2p.metrics.NetworkMetrics;
 import bisq.network.p2p.network.CloseConnectionReason;
 import bisq.network.p2p.network.Connection;
 import bisq.network.p2p.network.NetworkNode;
@@ -28,29 +29,73 @@ import bisq.network.p2p.storage.payload.CapabilityRequiringPayload;
 import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
 import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
 import bisq.network.p2p.storage.payload.ProtectedStoragePayload;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
 
 import bisq.common.Timer;
 import bisq.common.UserThread;
+import bisq.common.app.Capabilities;
+import bisq.common.app.Capability;
 import bisq.common.util.Utilities;
 
+import com.google.protobuf.Message;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.UnsignedBytes;
+
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
 
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import lombok.extern.slf4j.Slf4j;
 
 import org.jetbrains.annotations.NotNull;
 
+import javax.annotation.Nullable;
+
 @Slf4j
 public class GetDataRequestHandler {
     private static final long TIMEOUT = 90;
 
+    // Limits of a chunk if the peer supports Capability.CHUNKED_GET_DATA_RESPONSE. Most entries are small, so usually
+    // the size limit ends the chunk. The size does not include the envelope overhead.
+    @VisibleForTesting
+    static final int MAX_ENTRIES_PER_CHUNK = 10_000;
+    @VisibleForTesting
+    static final int MAX_CHUNK_SIZE = 1_000_000;
+
+    // Chunks are sorted by key, so a chunk can be resumed with the key of the last entry the peer has received
+    private static final Comparator<P2PDataStorage.ByteArray> KEY_COMPARATOR =
+            Comparator.comparing(key -> key.bytes, UnsignedBytes.lexicographicalComparator());
+
+
+    // Keys of the entries of a chunked response in the order of the chunks. We sort the keys once at the first request
+    // of a connection and page through them with the requests for the following chunks.
+    static class SortedKeys {
+        private final List<P2PDataStorage.ByteArray> keys;
+        // Index of the first key we have not sent yet
+        private int nextIndex;
+
+        SortedKeys(List<P2PDataStorage.ByteArray> keys) {
+            this.keys = keys;
+        }
+
+        // Whether the peer requests the chunk after the last one we have sent
+        boolean isResumedAfter(@Nullable P2PDataStorage.ByteArray resumeAfterKey) {
+            return resumeAfterKey != null && nextIndex > 0 && keys.get(nextIndex - 1).equals(resumeAfterKey);
+        }
+    }
+
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Listener
@@ -69,6 +114,8 @@ public class GetDataRequestHandler {
 
     private final NetworkNode networkNode;
     private final P2PDataStorage dataStorage;
+    // Shared by the handlers of all connections. Only accessed from the user thread.
+    private final Map<String, SortedKeys> sortedKeysByConnectionUid;
     private final Listener listener;
     private Timer timeoutTimer;
     private boolean stopped;
@@ -78,9 +125,13 @@ public class GetDataRequestHandler {
     // Constructor
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    public GetDataRequestHandler(NetworkNode networkNode, P2PDataStorage dataStorage, Listener listener) {
+    public GetDataRequestHandler(NetworkNode networkNode,
+                                 P2PDataStorage dataStorage,
+                                 Map<String, SortedKeys> sortedKeysByConnectionUid,
+                                 Listener listener) {
         this.networkNode = networkNode;
         this.dataStorage = dataStorage;
+        this.sortedKeysByConnectionUid = sortedKeysByConnectionUid;
         this.listener = listener;
     }
 
@@ -90,10 +141,18 @@ public class GetDataRequestHandler {
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     public void handle(GetDataRequest getDataRequest, final Connection connection) {
-        GetDataResponse getDataResponse = new GetDataResponse(getFilteredProtectedStorageEntries(getDataRequest, connection),
-                getFilteredPersistableNetworkPayload(getDataRequest, connection),
-                getDataRequest.getNonce(),
-                getDataRequest instanceof GetUpdatedDataRequest);
+        GetDataResponse getDataResponse;
+        if (connection.getCapabilities().containsAll(new Capabilities(Capability.CHUNKED_GET_DATA_RESPONSE))) {
+            getDataResponse = getChunk(getDataRequest, connection);
+        } else {
+            getDataResponse = new GetDataResponse(getFilteredProtectedStorageEntries(getDataRequest, connection),
+                    getFilteredPersistableNetworkPayload(getDataRequest, connection),
+                    getDataRequest.getNonce(),
+                    getDataRequest instanceof GetUpdatedDataRequest);
+        }
+        Set<PersistableNetworkPayload> persistableNetworkPayloadSet = getDataResponse.getPersistableNetworkPayloadSet();
+        NetworkMetrics.onGetDataResponse(getDataResponse.getDataSet().size() +
+                (persistableNetworkPayloadSet != null ? persistableNetworkPayloadSet.size() : 0));
 
         if (timeoutTimer == null) {
             timeoutTimer = UserThread.runAfter(() -> {  // setup before sending to avoid race conditions
@@ -134,45 +193,153 @@ public class GetDataRequestHandler {
 
     private Set<PersistableNetworkPayload> getFilteredPersistableNetworkPayload(GetDataRequest getDataRequest, Connection connection) {
         final Set<P2PDataStorage.ByteArray> tempLookupSet = new HashSet<>();
-        Set<P2PDataStorage.ByteArray> excludedKeysAsByteArray = P2PDataStorage.ByteArray.convertBytesSetToByteArraySet(getDataRequest.getExcludedKeys());
-
-        return dataStorage.getAppendOnlyDataStoreMap().entrySet().stream()
-                .filter(e -> !excludedKeysAsByteArray.contains(e.getKey()))
+        return getFilteredPersistableNetworkPayloadEntries(getDataRequest, connection)
                 .map(Map.Entry::getValue)
-                .filter(payload -> (connection.noCapabilityRequiredOrCapabilityIsSupported(payload)))
                 .filter(payload -> tempLookupSet.add(new P2PDataStorage.ByteArray(payload.getHash())))
                 .collect(Collectors.toSet());
     }
 
+    private Stream<Map.Entry<P2PDataStorage.ByteArray, PersistableNetworkPayload>> getFilteredPersistableNetworkPayloadEntries(
+            GetDataRequest getDataRequest, Connection connection) {
+        Stream<Map.Entry<P2PDataStorage.ByteArray, PersistableNetworkPayload>> entries;
+        Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map = dataStorage.getAppendOnlyDataStoreMap();
+        KeySetSummary appendOnlyDataSummary = getDataRequest.getAppendOnlyDataSummary();
+        if (appendOnlyDataSummary != null) {
+            // We only look up the entries of the buckets which differ from our summary, so we don't need to iterate
+            // over all entries.
+            entries = dataStorage.getAppendOnlyDataKeysMissingAt(appendOnlyDataSummary).stream()
+                    .filter(map::containsKey)
+                    .map(key -> new AbstractMap.SimpleImmutableEntry<>(key, map.get(key)));
+        } else {
+            Set<P2PDataStorage.ByteArray> excludedKeysAsByteArray = P2PDataStorage.ByteArray.convertBytesSetToByteArraySet(getDataRequest.getExcludedKeys());
+            entries = map.entrySet().stream()
+                    .filter(e -> !excludedKeysAsByteArray.contains(e.getKey()));
+        }
+
+        return entries.filter(e -> e.getValue() != null && connection.noCapabilityRequiredOrCapabilityIsSupported(e.getValue()));
+    }
+
     private Set<ProtectedStorageEntry> getFilteredProtectedStorageEntries(GetDataRequest getDataRequest, Connection connection) {
-        final Set<ProtectedStorageEntry> filteredDataSet = new HashSet<>();
         final Set<Integer> lookupSet = new HashSet<>();
+        return getFilteredProtectedStorageEntryEntries(getDataRequest, connection)
+                .map(Map.Entry::getValue)
+                .filter(protectedStorageEntry -> lookupSet.add(protectedStorageEntry.getProtectedStoragePayload().hashCode()))
+                .collect(Collectors.toSet());
+    }
 
+    private Stream<Map.Entry<P2PDataStorage.ByteArray, ProtectedStorageEntry>> getFilteredProtectedStorageEntryEntries(
+            GetDataRequest getDataRequest, Connection connection) {
         Set<P2PDataStorage.ByteArray> excludedKeysAsByteArray = P2PDataStorage.ByteArray.convertBytesSetToByteArraySet(getDataRequest.getExcludedKeys());
-        Set<ProtectedStorageEntry> filteredSet = dataStorage.getMap().entrySet().stream()
+        return dataStorage.getMap().entrySet().stream()
                 .filter(e -> !excludedKeysAsByteArray.contains(e.getKey()))
-                .map(Map.Entry::getValue)
-                .collect(Collectors.toSet());
+                .filter(e -> isCapabilitySupported(e.getValue().getProtectedStoragePayload(), connection));
+    }
 
-        for (ProtectedStorageEntry protectedStorageEntry : filteredSet) {
-            final ProtectedStoragePayload protectedStoragePayload = protectedStorageEntry.getProtectedStoragePayload();
-            boolean doAdd = false;
-            if (protectedStoragePayload instanceof CapabilityRequiringPayload) {
-                if (connection.getCapabilities().containsAll(((CapabilityRequiringPayload) protectedStoragePayload).getRequiredCapabilities()))
-                    doAdd = true;
-                else
-                    log.debug("We do not send the message to the peer because they do not support the required capability for that message type.\n" +
-                            "storagePayload is: " + Utilities.toTruncatedString(protectedStoragePayload));
-            } else {
-                doAdd = true;
-            }
-            if (doAdd) {
-                if (lookupSet.add(protectedStoragePayload.hashCode()))
-                    filteredDataSet.add(protectedStorageEntry);
+    private boolean isCapabilitySupported(ProtectedStoragePayload protectedStoragePayload, Connection connection) {
+        if (!(protectedStoragePayload instanceof CapabilityRequiringPayload))
+            return true;
+
+        if (connection.getCapabilities().containsAll(((CapabilityRequiringPayload) protectedStoragePayload).getRequiredCapabilities()))
+            return true;
+
+        log.debug("We do not send the message to the peer because they do not support the required capability for that message type.\n" +
+                "storagePayload is: " + Utilities.toTruncatedString(protectedStoragePayload));
+        return false;
+    }
+
+    // We page through both stores in the order of the keys. The first request of a connection sorts the keys of the
+    // entries to send once and the requests for the following chunks continue at the position of the last chunk, so
+    // we do not iterate over both stores again for each chunk. The peer can continue after the last entry it has
+    // received also at another node after a connection loss, which sorts the remaining keys then.
+    // Entries which got added after the first chunk are not part of the response. The peer gets them with the
+    // broadcasts or at the next update request. Entries which got removed in between are skipped.
+    @VisibleForTesting
+    GetDataResponse getChunk(GetDataRequest getDataRequest, Connection connection) {
+        P2PDataStorage.ByteArray resumeAfterKey = getDataRequest.getResumeAfterKey() != null ?
+                new P2PDataStorage.ByteArray(getDataRequest.getResumeAfterKey()) :
+                null;
+        String uid = connection.getUid();
+        SortedKeys sortedKeys = sortedKeysByConnectionUid.get(uid);
+        if (sortedKeys == null || !sortedKeys.isResumedAfter(resumeAfterKey))
+            sortedKeys = new SortedKeys(getSortedKeys(getDataRequest, connection, resumeAfterKey));
+
+        Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> protectedStorageEntries = dataStorage.getMap();
+        Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> persistableNetworkPayloads = dataStorage.getAppendOnlyDataStoreMap();
+        Set<ProtectedStorageEntry> dataSet = new HashSet<>();
+        Set<PersistableNetworkPayload> persistableNetworkPayloadSet = new HashSet<>();
+        // We keep the proto messages we need for the size, so the response does not serialize the entries again
+        List<protobuf.StorageEntryWrapper> protoDataSet = new ArrayList<>();
+        List<protobuf.PersistableNetworkPayload> protoPersistableNetworkPayloadItems = new ArrayList<>();
+        List<P2PDataStorage.ByteArray> keys = sortedKeys.keys;
+        int index = sortedKeys.nextIndex;
+        int numEntries = 0;
+        int size = 0;
+        for (; index < keys.size() && numEntries < MAX_ENTRIES_PER_CHUNK; index++) {
+            P2PDataStorage.ByteArray key = keys.get(index);
+            ProtectedStorageEntry protectedStorageEntry = protectedStorageEntries.get(key);
+            PersistableNetworkPayload persistableNetworkPayload = protectedStorageEntry == null ?
+                    persistableNetworkPayloads.get(key) :
+                    null;
+            Message protoMessage;
+            if (protectedStorageEntry != null)
+                protoMessage = GetDataResponse.toStorageEntryWrapper(protectedStorageEntry);
+            else if (persistableNetworkPayload != null)
+                protoMessage = persistableNetworkPayload.toProtoMessage();
+            else
+                continue;
+
+            // The size gets memoized by the proto message, so it is not computed again at sending
+            int payloadSize = protoMessage.getSerializedSize();
+            if (size + payloadSize > MAX_CHUNK_SIZE && numEntries > 0)
+                break;
+
+            size += payloadSize;
+            numEntries++;
+            if (protectedStorageEntry != null) {
+                if (dataSet.add(protectedStorageEntry))
+                    protoDataSet.add((protobuf.StorageEntryWrapper) protoMessage);
+            } else if (persistableNetworkPayloadSet.add(persistableNetworkPayload)) {
+                protoPersistableNetworkPayloadItems.add((protobuf.PersistableNetworkPayload) protoMessage);
             }
         }
+        boolean hasMoreChunks = index < keys.size();
+        byte[] lastKey = index > sortedKeys.nextIndex ? keys.get(index - 1).bytes : getDataRequest.getResumeAfterKey();
+        sortedKeys.nextIndex = index;
+        if (hasMoreChunks)
+            sortedKeysByConnectionUid.put(uid, sortedKeys);
+        else
+            sortedKeysByConnectionUid.remove(uid);
+
+        log.info("We send a chunk with {} protectedStorageEntries and {} persistableNetworkPayloads of about {} bytes. " +
+                        "hasMoreChunks={}", dataSet.size(), persistableNetworkPayloadSet.size(), size,
+                hasMoreChunks);
+        return new GetDataResponse(dataSet,
+                persistableNetworkPayloadSet,
+                protoDataSet,
+                protoPersistableNetworkPayloadItems,
+                getDataRequest.getNonce(),
+                getDataRequest instanceof GetUpdatedDataRequest,
+                hasMoreChunks,
+                lastKey);
+    }
 
-        return filteredDataSet;
+    // Same filters and deduplication as for the unchunked response, applied to the entries after the resumeAfterKey
+    private List<P2PDataStorage.ByteArray> getSortedKeys(GetDataRequest getDataRequest,
+                                                         Connection connection,
+                                                         @Nullable P2PDataStorage.ByteArray resumeAfterKey) {
+        List<P2PDataStorage.ByteArray> keys = new ArrayList<>();
+        Set<Integer> lookupSet = new HashSet<>();
+        getFilteredProtectedStorageEntryEntries(getDataRequest, connection)
+                .filter(e -> resumeAfterKey == null || KEY_COMPARATOR.compare(e.getKey(), resumeAfterKey) > 0)
+                .filter(e -> lookupSet.add(e.getValue().getProtectedStoragePayload().hashCode()))
+                .forEach(e -> keys.add(e.getKey()));
+        Set<P2PDataStorage.ByteArray> tempLookupSet = new HashSet<>();
+        getFilteredPersistableNetworkPayloadEntries(getDataRequest, connection)
+                .filter(e -> resumeAfterKey == null || KEY_COMPARATOR.compare(e.getKey(), resumeAfterKey) > 0)
+                .filter(e -> tempLookupSet.add(new P2PDataStorage.ByteArray(e.getValue().getHash())))
+                .forEach(e -> keys.add(e.getKey()));
+        keys.sort(KEY_COMPARATOR);
+        return keys;
     }
 
     public void stop() {
@@ -32,6 +32,7 @@ import bisq.network.p2p.storage.payload.LazyProcessedPayload;
 import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
 import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
 import bisq.network.p2p.storage.payload.ProtectedStoragePayload;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
 
 import bisq.common.Timer;
 import bisq.common.UserThread;
@@ -40,6 +41,9 @@ import bisq.common.app.Capability;
 import bisq.common.proto.network.NetworkEnvelope;
 import bisq.common.proto.network.NetworkPayload;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.primitives.UnsignedBytes;
+
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.SettableFuture;
@@ -47,11 +51,13 @@ import com.google.common.util.concurrent.SettableFuture;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import org.jetbrains.annotations.NotNull;
@@ -60,6 +66,11 @@ import org.jetbrains.annotations.Nullable;
 @Slf4j
 class RequestDataHandler implements MessageListener {
     private static final long TIMEOUT = 90;
+    // Max. number of chunks we request from one peer. With the max. chunk size of 1 MB that is far more than all the
+    // data we have. A peer sending more chunks, or chunks which do not advance in the key order, would keep us
+    // requesting forever, so we continue at the next peer instead.
+    @VisibleForTesting
+    static final int MAX_CHUNKS = 100;
     private NodeAddress peersNodeAddress;
 
     /**
@@ -92,6 +103,13 @@ class RequestDataHandler implements MessageListener {
     private Timer timeoutTimer;
     private final int nonce = new Random().nextInt();
     private boolean stopped;
+    private boolean isPreliminaryDataRequest;
+    // Key of the last entry of the last chunk we have applied. Used to resume a chunked response at another peer if
+    // that request fails.
+    @Getter
+    @Nullable
+    private byte[] resumeAfterKey;
+    private int numChunks;
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
@@ -117,8 +135,10 @@ class RequestDataHandler implements MessageListener {
     // API
     ///////////////////////////////////////////////////////////////////////////////////////////
 
-    void requestData(NodeAddress nodeAddress, boolean isPreliminaryDataRequest) {
+    void requestData(NodeAddress nodeAddress, boolean isPreliminaryDataRequest, @Nullable byte[] resumeAfterKey) {
         peersNodeAddress = nodeAddress;
+        this.isPreliminaryDataRequest = isPreliminaryDataRequest;
+        this.resumeAfterKey = resumeAfterKey;
         if (!stopped) {
             GetDataRequest getDataRequest;
 
@@ -126,9 +146,18 @@ class RequestDataHandler implements MessageListener {
             // PersistedStoragePayload items don't get removed, so we don't have an issue with the case that
             // an object gets removed in between PreliminaryGetDataRequest and the GetUpdatedDataRequest and we would
             // miss that event if we do not load the full set or use some delta handling.
-            Set<byte[]> excludedKeys = dataStorage.getAppendOnlyDataStoreMap().keySet().stream()
-                    .map(e -> e.bytes)
-                    .collect(Collectors.toSet());
+            // If the peer supports it we send a compact summary of the PersistableNetworkPayload keys instead of all
+            // keys, which would be several MB with the current data.
+            KeySetSummary appendOnlyDataSummary = null;
+            Set<byte[]> excludedKeys;
+            if (supportsKeySetSummary(nodeAddress)) {
+                appendOnlyDataSummary = dataStorage.getAppendOnlyDataSummary();
+                excludedKeys = new HashSet<>();
+            } else {
+                excludedKeys = dataStorage.getAppendOnlyDataStoreMap().keySet().stream()
+                        .map(e -> e.bytes)
+                        .collect(Collectors.toSet());
+            }
 
             Set<byte[]> excludedKeysFromPersistedEntryMap = dataStorage.getProtectedDataStoreMap().keySet()
                     .stream()
@@ -138,9 +167,11 @@ class RequestDataHandler implements MessageListener {
             excludedKeys.addAll(excludedKeysFromPersistedEntryMap);
 
             if (isPreliminaryDataRequest)
-                getDataRequest = new PreliminaryGetDataRequest(nonce, excludedKeys);
+                getDataRequest = new PreliminaryGetDataRequest(nonce, excludedKeys, appendOnlyDataSummary,
+                        resumeAfterKey);
             else
-                getDataRequest = new GetUpdatedDataRequest(networkNode.getNodeAddress(), nonce, excludedKeys);
+                getDataRequest = new GetUpdatedDataRequest(networkNode.getNodeAddress(), nonce, excludedKeys,
+                        appendOnlyDataSummary, resumeAfterKey);
 
             if (timeoutTimer == null) {
                 timeoutTimer = UserThread.runAfter(() -> {  // setup before sending to avoid race conditions
@@ -217,43 +248,14 @@ class RequestDataHandler implements MessageListener {
 
                         final NodeAddress sender = connection.getPeersNodeAddressOptional().get();
 
-                        long ts = System.currentTimeMillis();
-                        AtomicInteger counter = new AtomicInteger();
-                        dataSet.forEach(e -> {
-                            // We don't broadcast here (last param) as we are only connected to the seed node and would be pointless
-                            dataStorage.addProtectedStorageEntry(e, sender, null, false, false);
-                            counter.getAndIncrement();
-
+                        // We verify the signatures in parallel before we add the entries one by one. The user thread
+                        // keeps on running meanwhile, so we might have been stopped when we get called back.
+                        dataStorage.verifySignatures(dataSet, () -> {
+                            if (!stopped)
+                                processGetDataResponse(getDataResponse, sender);
+                            else
+                                log.trace("We have stopped already. We ignore the verified getDataResponse.");
                         });
-                        log.info("Processing {} protectedStorageEntries took {} ms.", counter.get(), System.currentTimeMillis() - ts);
-
-                        // engage the firstRequest logic only if we are a seed node. Normal clients get here twice at most.
-                        if (!Capabilities.app.containsAll(Capability.SEED_NODE))
-                            firstRequest = true;
-
-                        if (persistableNetworkPayloadSet != null && firstRequest) {
-                            ts = System.currentTimeMillis();
-                            persistableNetworkPayloadSet.forEach(e -> {
-                                if (e instanceof LazyProcessedPayload) {
-                                    // We use an optimized method as many checks are not required in that case to avoid
-                                    // performance issues.
-                                    // Processing 82645 items took now 61 ms compared to earlier version where it took ages (> 2min).
-                                    // Usually we only get about a few hundred or max. a few 1000 items. 82645 is all
-                                    // trade stats stats and all account age witness data.
-                                    dataStorage.addPersistableNetworkPayloadFromInitialRequest(e);
-                                } else {
-                                    // We don't broadcast here as we are only connected to the seed node and would be pointless
-                                    dataStorage.addPersistableNetworkPayload(e, sender, false,
-                                            false, false, false);
-                                }
-                            });
-                            log.info("Processing {} persistableNetworkPayloads took {} ms.",
-                                    persistableNetworkPayloadSet.size(), System.currentTimeMillis() - ts);
-                        }
-
-                        cleanup();
-                        listener.onComplete();
-                        firstRequest = false;
                     } else {
                         log.warn("Nonce not matching. That can happen rarely if we get a response after a canceled " +
                                         "handshake (timeout causes connection close but peer might have sent a msg before " +
@@ -278,6 +280,89 @@ class RequestDataHandler implements MessageListener {
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    private boolean supportsKeySetSummary(NodeAddress nodeAddress) {
+        Optional<Capabilities> capabilities = peerManager.findPeersCapabilities(nodeAddress);
+        if (capabilities.isPresent())
+            return capabilities.get().containsAll(new Capabilities(Capability.KEY_SET_SUMMARY));
+
+        // At the initial requests we have no connection to the seed node yet, so we don't know its capabilities.
+        // Seed nodes are running the latest version, so we expect them to support it.
+        return peerManager.isSeedNode(nodeAddress);
+    }
+
+    private void processGetDataResponse(GetDataResponse getDataResponse, NodeAddress sender) {
+        Set<ProtectedStorageEntry> dataSet = getDataResponse.getDataSet();
+        Set<PersistableNetworkPayload> persistableNetworkPayloadSet = getDataResponse.getPersistableNetworkPayloadSet();
+
+        long ts = System.currentTimeMillis();
+        AtomicInteger counter = new AtomicInteger();
+        dataSet.forEach(e -> {
+            // We don't broadcast here (last param) as we are only connected to the seed node and would be pointless
+            dataStorage.addProtectedStorageEntry(e, sender, null, false, false);
+            counter.getAndIncrement();
+
+        });
+        log.info("Processing {} protectedStorageEntries took {} ms.", counter.get(), System.currentTimeMillis() - ts);
+
+        // engage the firstRequest logic only if we are a seed node. Normal clients get here twice at most.
+        if (!Capabilities.app.containsAll(Capability.SEED_NODE))
+            firstRequest = true;
+
+        if (persistableNetworkPayloadSet != null && firstRequest) {
+            ts = System.currentTimeMillis();
+            persistableNetworkPayloadSet.forEach(e -> {
+                if (e instanceof LazyProcessedPayload) {
+                    // We use an optimized method as many checks are not required in that case to avoid
+                    // performance issues.
+                    // Processing 82645 items took now 61 ms compared to earlier version where it took ages (> 2min).
+                    // Usually we only get about a few hundred or max. a few 1000 items. 82645 is all
+                    // trade stats stats and all account age witness data.
+                    dataStorage.addPersistableNetworkPayloadFromInitialRequest(e);
+                } else {
+                    // We don't broadcast here as we are only connected to the seed node and would be pointless
+                    dataStorage.addPersistableNetworkPayload(e, sender, false,
+                            false, false, false);
+                }
+            });
+            log.info("Processing {} persistableNetworkPayloads took {} ms.",
+                    persistableNetworkPayloadSet.size(), System.currentTimeMillis() - ts);
+        }
+
+        if (getDataResponse.isHasMoreChunks()) {
+            // The chunks are sorted by key, so the key of the last entry must be above the one of the previous chunk
+            byte[] nextResumeAfterKey = getDataResponse.getResumeAfterKey();
+            if (nextResumeAfterKey == null || (resumeAfterKey != null &&
+                    UnsignedBytes.lexicographicalComparator().compare(nextResumeAfterKey, resumeAfterKey) <= 0)) {
+                handleFault("We got a chunk of the GetDataResponse from peer " + peersNodeAddress +
+                                " with a resumeAfterKey which is not above the previous one. " +
+                                "We request the remaining data from another peer.",
+                        peersNodeAddress, CloseConnectionReason.RULE_VIOLATION);
+                return;
+            }
+
+            // The entries of the chunk are applied, so another peer can continue after them
+            resumeAfterKey = nextResumeAfterKey;
+            numChunks++;
+            if (numChunks >= MAX_CHUNKS) {
+                handleFault("We got " + numChunks + " chunks of the GetDataResponse from peer " + peersNodeAddress +
+                                ". We request the remaining data from another peer.",
+                        peersNodeAddress, CloseConnectionReason.RULE_VIOLATION);
+                return;
+            }
+
+            // We request the next chunk from the same peer. Requests for the following chunks are
+            // built from our updated data, so entries we got meanwhile are excluded as well.
+            log.info("We got a chunk of the GetDataResponse and request the next one from peer {}.",
+                    peersNodeAddress);
+            requestData(peersNodeAddress, isPreliminaryDataRequest, nextResumeAfterKey);
+            return;
+        }
+
+        cleanup();
+        listener.onComplete();
+        firstRequest = false;
+    }
+
     private void logContents(NetworkEnvelope networkEnvelope,
                              Set<ProtectedStorageEntry> dataSet,
                              Set<PersistableNetworkPayload> persistableNetworkPayloadSet) {
@@ -90,6 +90,8 @@ public class RequestDataManager implements MessageListener, ConnectionListener,
 
     private final Map<NodeAddress, RequestDataHandler> handlerMap = new HashMap<>();
     private final Map<String, GetDataRequestHandler> getDataRequestHandlers = new HashMap<>();
+    // Position of the chunked responses we send, by connection uid
+    private final Map<String, GetDataRequestHandler.SortedKeys> sortedKeysByConnectionUid = new HashMap<>();
     private Optional<NodeAddress> nodeAddressOfPreliminaryDataRequest = Optional.empty();
     private Timer retryTimer;
     private boolean dataUpdateRequested;
@@ -209,6 +211,7 @@ public class RequestDataManager implements MessageListener, ConnectionListener,
     @Override
     public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
         closeHandler(connection);
+        sortedKeysByConnectionUid.remove(connection.getUid());
 
         if (peerManager.isNodeBanned(closeConnectionReason, connection) && connection.getPeersNodeAddressOptional().isPresent()) {
             final NodeAddress nodeAddress = connection.getPeersNodeAddressOptional().get();
@@ -264,7 +267,7 @@ public class RequestDataManager implements MessageListener, ConnectionListener,
                 final String uid = connection.getUid();
                 if (!getDataRequestHandlers.containsKey(uid)) {
                     GetDataRequestHandler getDataRequestHandler = new GetDataRequestHandler(networkNode, dataStorage,
-                            new GetDataRequestHandler.Listener() {
+                            sortedKeysByConnectionUid, new GetDataRequestHandler.Listener() {
                                 @Override
                                 public void onComplete() {
                                     getDataRequestHandlers.remove(uid);
@@ -308,6 +311,14 @@ public class RequestDataManager implements MessageListener, ConnectionListener,
     ///////////////////////////////////////////////////////////////////////////////////////////
 
     private void requestData(NodeAddress nodeAddress, List<NodeAddress> remainingNodeAddresses) {
+        requestData(nodeAddress, remainingNodeAddresses, null);
+    }
+
+    // If the request to the previous candidate failed while receiving a chunked response we continue at the next
+    // candidate after the last chunk we got.
+    private void requestData(NodeAddress nodeAddress,
+                             List<NodeAddress> remainingNodeAddresses,
+                             @Nullable byte[] resumeAfterKey) {
         if (!stopped) {
             if (!handlerMap.containsKey(nodeAddress)) {
                 RequestDataHandler requestDataHandler = new RequestDataHandler(networkNode, dataStorage, peerManager,
@@ -345,14 +356,15 @@ public class RequestDataManager implements MessageListener, ConnectionListener,
                                         "ErrorMessage={}", nodeAddress, errorMessage);
 
                                 peerManager.handleConnectionFault(nodeAddress);
-                                handlerMap.remove(nodeAddress);
+                                RequestDataHandler failedHandler = handlerMap.remove(nodeAddress);
 
                                 if (!remainingNodeAddresses.isEmpty()) {
                                     log.debug("There are remaining nodes available for requesting data. " +
                                             "We will try requestDataFromPeers again.");
                                     NodeAddress nextCandidate = remainingNodeAddresses.get(0);
                                     remainingNodeAddresses.remove(nextCandidate);
-                                    requestData(nextCandidate, remainingNodeAddresses);
+                                    requestData(nextCandidate, remainingNodeAddresses,
+                                            failedHandler != null ? failedHandler.getResumeAfterKey() : null);
                                 } else if (handlerMap.isEmpty()) {
                                     // If not other connection attempts are in the handlerMap we assume that no seed
                                     // nodes are available.
@@ -376,7 +388,7 @@ public class RequestDataManager implements MessageListener, ConnectionListener,
                             }
                         });
                 handlerMap.put(nodeAddress, requestDataHandler);
-                requestDataHandler.requestData(nodeAddress, isPreliminaryDataRequest);
+                requestDataHandler.requestData(nodeAddress, isPreliminaryDataRequest, resumeAfterKey);
             } else {
                 log.warn("We have started already a requestDataHandshake to peer. nodeAddress=" + nodeAddress + "\n" +
                         "We start a cleanup timer if the handler has not closed by itself in between 2 minutes.");
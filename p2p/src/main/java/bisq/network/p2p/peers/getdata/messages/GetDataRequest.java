@@ -18,6 +18,7 @@
 package bisq.network.p2p.peers.getdata.messages;
 
 import bisq.network.p2p.ExtendedDataSizePermission;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
 
 import bisq.common.proto.network.NetworkEnvelope;
 
@@ -27,6 +28,8 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
+import javax.annotation.Nullable;
+
 @EqualsAndHashCode(callSuper = true)
 @Getter
 @ToString
@@ -34,12 +37,24 @@ public abstract class GetDataRequest extends NetworkEnvelope implements Extended
     protected final int nonce;
     // Keys for ProtectedStorageEntry items to be excluded from the request because the peer has them already
     protected final Set<byte[]> excludedKeys;
+    // Summary of the keys of the PersistableNetworkPayload items the peer has already. If set the PersistableNetworkPayload
+    // keys are not part of excludedKeys. Only set if the receiver supports Capability.KEY_SET_SUMMARY.
+    @Nullable
+    protected final KeySetSummary appendOnlyDataSummary;
+    // Key of the last entry we have received in a chunked response. The responder continues after that key. Only
+    // used if the receiver supports Capability.CHUNKED_GET_DATA_RESPONSE.
+    @Nullable
+    protected final byte[] resumeAfterKey;
 
     public GetDataRequest(int messageVersion,
                           int nonce,
-                          Set<byte[]> excludedKeys) {
+                          Set<byte[]> excludedKeys,
+                          @Nullable KeySetSummary appendOnlyDataSummary,
+                          @Nullable byte[] resumeAfterKey) {
         super(messageVersion);
         this.nonce = nonce;
         this.excludedKeys = excludedKeys;
+        this.appendOnlyDataSummary = appendOnlyDataSummary;
+        this.resumeAfterKey = resumeAfterKey;
     }
 }
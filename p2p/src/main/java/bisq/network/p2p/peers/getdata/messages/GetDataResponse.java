@@ -25,15 +25,22 @@ import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
 
 import bisq.common.app.Capabilities;
 import bisq.common.app.Version;
+import bisq.common.proto.ProtoUtil;
 import bisq.common.proto.network.NetworkEnvelope;
 import bisq.common.proto.network.NetworkProtoResolver;
 
+import com.google.protobuf.ByteString;
+
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
@@ -56,6 +63,25 @@ public final class GetDataResponse extends NetworkEnvelope implements SupportedC
     @Nullable
     private final Capabilities supportedCapabilities;
 
+    // Only used for chunked responses (Capability.CHUNKED_GET_DATA_RESPONSE). If there are more chunks the receiver
+    // requests the next one with the resumeAfterKey, which is the key of the last entry in that chunk.
+    private final boolean hasMoreChunks;
+    @Nullable
+    private final byte[] resumeAfterKey;
+
+    // Proto messages of the entries if the chunked response has them already from sizing the chunk. Same content as
+    // dataSet and persistableNetworkPayloadSet, so they are not part of equals.
+    @Nullable
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final List<protobuf.StorageEntryWrapper> protoDataSet;
+    @Nullable
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    @Getter(AccessLevel.NONE)
+    private final List<protobuf.PersistableNetworkPayload> protoPersistableNetworkPayloadItems;
+
     public GetDataResponse(Set<ProtectedStorageEntry> dataSet,
                            @Nullable Set<PersistableNetworkPayload> persistableNetworkPayloadSet,
                            int requestNonce,
@@ -64,6 +90,44 @@ public final class GetDataResponse extends NetworkEnvelope implements SupportedC
                 persistableNetworkPayloadSet,
                 requestNonce,
                 isGetUpdatedDataResponse,
+                false,
+                null);
+    }
+
+    public GetDataResponse(Set<ProtectedStorageEntry> dataSet,
+                           @Nullable Set<PersistableNetworkPayload> persistableNetworkPayloadSet,
+                           int requestNonce,
+                           boolean isGetUpdatedDataResponse,
+                           boolean hasMoreChunks,
+                           @Nullable byte[] resumeAfterKey) {
+        this(dataSet,
+                persistableNetworkPayloadSet,
+                null,
+                null,
+                requestNonce,
+                isGetUpdatedDataResponse,
+                hasMoreChunks,
+                resumeAfterKey,
+                Capabilities.app,
+                Version.getP2PMessageVersion());
+    }
+
+    public GetDataResponse(Set<ProtectedStorageEntry> dataSet,
+                           Set<PersistableNetworkPayload> persistableNetworkPayloadSet,
+                           List<protobuf.StorageEntryWrapper> protoDataSet,
+                           List<protobuf.PersistableNetworkPayload> protoPersistableNetworkPayloadItems,
+                           int requestNonce,
+                           boolean isGetUpdatedDataResponse,
+                           boolean hasMoreChunks,
+                           @Nullable byte[] resumeAfterKey) {
+        this(dataSet,
+                persistableNetworkPayloadSet,
+                protoDataSet,
+                protoPersistableNetworkPayloadItems,
+                requestNonce,
+                isGetUpdatedDataResponse,
+                hasMoreChunks,
+                resumeAfterKey,
                 Capabilities.app,
                 Version.getP2PMessageVersion());
     }
@@ -74,45 +138,64 @@ public final class GetDataResponse extends NetworkEnvelope implements SupportedC
 
     private GetDataResponse(Set<ProtectedStorageEntry> dataSet,
                             @Nullable Set<PersistableNetworkPayload> persistableNetworkPayloadSet,
+                            @Nullable List<protobuf.StorageEntryWrapper> protoDataSet,
+                            @Nullable List<protobuf.PersistableNetworkPayload> protoPersistableNetworkPayloadItems,
                             int requestNonce,
                             boolean isGetUpdatedDataResponse,
+                            boolean hasMoreChunks,
+                            @Nullable byte[] resumeAfterKey,
                             @Nullable Capabilities supportedCapabilities,
                             int messageVersion) {
         super(messageVersion);
 
         this.dataSet = dataSet;
         this.persistableNetworkPayloadSet = persistableNetworkPayloadSet;
+        this.protoDataSet = protoDataSet;
+        this.protoPersistableNetworkPayloadItems = protoPersistableNetworkPayloadItems;
         this.requestNonce = requestNonce;
         this.isGetUpdatedDataResponse = isGetUpdatedDataResponse;
+        this.hasMoreChunks = hasMoreChunks;
+        this.resumeAfterKey = resumeAfterKey;
         this.supportedCapabilities = supportedCapabilities;
     }
 
     @Override
     public protobuf.NetworkEnvelope toProtoNetworkEnvelope() {
         final protobuf.GetDataResponse.Builder builder = protobuf.GetDataResponse.newBuilder()
-                .addAllDataSet(dataSet.stream()
-                        .map(protectedStorageEntry -> protectedStorageEntry instanceof ProtectedMailboxStorageEntry ?
-                                protobuf.StorageEntryWrapper.newBuilder()
-                                        .setProtectedMailboxStorageEntry((protobuf.ProtectedMailboxStorageEntry) protectedStorageEntry.toProtoMessage())
-                                        .build()
-                                :
-                                protobuf.StorageEntryWrapper.newBuilder()
-                                        .setProtectedStorageEntry((protobuf.ProtectedStorageEntry) protectedStorageEntry.toProtoMessage())
-                                        .build())
-                        .collect(Collectors.toList()))
+                .addAllDataSet(protoDataSet != null ?
+                        protoDataSet :
+                        dataSet.stream()
+                                .map(GetDataResponse::toStorageEntryWrapper)
+                                .collect(Collectors.toList()))
                 .setRequestNonce(requestNonce)
-                .setIsGetUpdatedDataResponse(isGetUpdatedDataResponse);
+                .setIsGetUpdatedDataResponse(isGetUpdatedDataResponse)
+                .setHasMoreChunks(hasMoreChunks);
 
         Optional.ofNullable(supportedCapabilities).ifPresent(e -> builder.addAllSupportedCapabilities(Capabilities.toIntList(supportedCapabilities)));
-        Optional.ofNullable(persistableNetworkPayloadSet).ifPresent(set -> builder.addAllPersistableNetworkPayloadItems(set.stream()
-                .map(PersistableNetworkPayload::toProtoMessage)
-                .collect(Collectors.toList())));
+        if (protoPersistableNetworkPayloadItems != null)
+            builder.addAllPersistableNetworkPayloadItems(protoPersistableNetworkPayloadItems);
+        else
+            Optional.ofNullable(persistableNetworkPayloadSet).ifPresent(set -> builder.addAllPersistableNetworkPayloadItems(set.stream()
+                    .map(PersistableNetworkPayload::toProtoMessage)
+                    .collect(Collectors.toList())));
+        Optional.ofNullable(resumeAfterKey).ifPresent(e -> builder.setResumeAfterKey(ByteString.copyFrom(resumeAfterKey)));
 
         return getNetworkEnvelopeBuilder()
                 .setGetDataResponse(builder)
                 .build();
     }
 
+    public static protobuf.StorageEntryWrapper toStorageEntryWrapper(ProtectedStorageEntry protectedStorageEntry) {
+        return protectedStorageEntry instanceof ProtectedMailboxStorageEntry ?
+                protobuf.StorageEntryWrapper.newBuilder()
+                        .setProtectedMailboxStorageEntry((protobuf.ProtectedMailboxStorageEntry) protectedStorageEntry.toProtoMessage())
+                        .build()
+                :
+                protobuf.StorageEntryWrapper.newBuilder()
+                        .setProtectedStorageEntry((protobuf.ProtectedStorageEntry) protectedStorageEntry.toProtoMessage())
+                        .build();
+    }
+
     public static GetDataResponse fromProto(protobuf.GetDataResponse proto, NetworkProtoResolver resolver, int messageVersion) {
         Set<ProtectedStorageEntry> dataSet = new HashSet<>(
                 proto.getDataSetList().stream()
@@ -129,8 +212,12 @@ public final class GetDataResponse extends NetworkEnvelope implements SupportedC
         //PersistableNetworkPayload
         return new GetDataResponse(dataSet,
                 persistableNetworkPayloadSet,
+                null,
+                null,
                 proto.getRequestNonce(),
                 proto.getIsGetUpdatedDataResponse(),
+                proto.getHasMoreChunks(),
+                ProtoUtil.byteArrayOrNullFromProto(proto.getResumeAfterKey()),
                 Capabilities.fromIntList(proto.getSupportedCapabilitiesList()),
                 messageVersion);
     }
@@ -19,18 +19,22 @@ package bisq.network.p2p.peers.getdata.messages;
 
 import bisq.network.p2p.NodeAddress;
 import bisq.network.p2p.SendersNodeAddressMessage;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
 
 import bisq.common.app.Version;
 import bisq.common.proto.ProtoUtil;
 
 import com.google.protobuf.ByteString;
 
+import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 
+import javax.annotation.Nullable;
+
 import static com.google.common.base.Preconditions.checkNotNull;
 
 @EqualsAndHashCode(callSuper = true)
@@ -44,6 +48,30 @@ public final class GetUpdatedDataRequest extends GetDataRequest implements Sende
         this(senderNodeAddress,
                 nonce,
                 excludedKeys,
+                null);
+    }
+
+    public GetUpdatedDataRequest(NodeAddress senderNodeAddress,
+                                 int nonce,
+                                 Set<byte[]> excludedKeys,
+                                 @Nullable KeySetSummary appendOnlyDataSummary) {
+        this(senderNodeAddress,
+                nonce,
+                excludedKeys,
+                appendOnlyDataSummary,
+                null);
+    }
+
+    public GetUpdatedDataRequest(NodeAddress senderNodeAddress,
+                                 int nonce,
+                                 Set<byte[]> excludedKeys,
+                                 @Nullable KeySetSummary appendOnlyDataSummary,
+                                 @Nullable byte[] resumeAfterKey) {
+        this(senderNodeAddress,
+                nonce,
+                excludedKeys,
+                appendOnlyDataSummary,
+                resumeAfterKey,
                 Version.getP2PMessageVersion());
     }
 
@@ -55,10 +83,14 @@ public final class GetUpdatedDataRequest extends GetDataRequest implements Sende
     private GetUpdatedDataRequest(NodeAddress senderNodeAddress,
                                   int nonce,
                                   Set<byte[]> excludedKeys,
+                                  @Nullable KeySetSummary appendOnlyDataSummary,
+                                  @Nullable byte[] resumeAfterKey,
                                   int messageVersion) {
         super(messageVersion,
                 nonce,
-                excludedKeys);
+                excludedKeys,
+                appendOnlyDataSummary,
+                resumeAfterKey);
         checkNotNull(senderNodeAddress, "senderNodeAddress must not be null at GetUpdatedDataRequest");
         this.senderNodeAddress = senderNodeAddress;
     }
@@ -72,6 +104,9 @@ public final class GetUpdatedDataRequest extends GetDataRequest implements Sende
                         .map(ByteString::copyFrom)
                         .collect(Collectors.toList()));
 
+        Optional.ofNullable(appendOnlyDataSummary).ifPresent(e -> builder.setAppendOnlyDataSummary(appendOnlyDataSummary.toProtoMessage()));
+        Optional.ofNullable(resumeAfterKey).ifPresent(e -> builder.setResumeAfterKey(ByteString.copyFrom(resumeAfterKey)));
+
         return getNetworkEnvelopeBuilder()
                 .setGetUpdatedDataRequest(builder)
                 .build();
@@ -81,6 +116,8 @@ public final class GetUpdatedDataRequest extends GetDataRequest implements Sende
         return new GetUpdatedDataRequest(NodeAddress.fromProto(proto.getSenderNodeAddress()),
                 proto.getNonce(),
                 ProtoUtil.byteSetFromProtoByteStringList(proto.getExcludedKeysList()),
+                proto.hasAppendOnlyDataSummary() ? KeySetSummary.fromProto(proto.getAppendOnlyDataSummary()) : null,
+                ProtoUtil.byteArrayOrNullFromProto(proto.getResumeAfterKey()),
                 messageVersion);
     }
 }
@@ -19,6 +19,7 @@ package bisq.network.p2p.peers.getdata.messages;
 
 import bisq.network.p2p.AnonymousMessage;
 import bisq.network.p2p.SupportedCapabilitiesMessage;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
 
 import bisq.common.app.Capabilities;
 import bisq.common.app.Version;
@@ -45,7 +46,20 @@ public final class PreliminaryGetDataRequest extends GetDataRequest implements A
 
     public PreliminaryGetDataRequest(int nonce,
                                      Set<byte[]> excludedKeys) {
-        this(nonce, excludedKeys, Capabilities.app, Version.getP2PMessageVersion());
+        this(nonce, excludedKeys, null);
+    }
+
+    public PreliminaryGetDataRequest(int nonce,
+                                     Set<byte[]> excludedKeys,
+                                     @Nullable KeySetSummary appendOnlyDataSummary) {
+        this(nonce, excludedKeys, appendOnlyDataSummary, null);
+    }
+
+    public PreliminaryGetDataRequest(int nonce,
+                                     Set<byte[]> excludedKeys,
+                                     @Nullable KeySetSummary appendOnlyDataSummary,
+                                     @Nullable byte[] resumeAfterKey) {
+        this(nonce, excludedKeys, appendOnlyDataSummary, resumeAfterKey, Capabilities.app, Version.getP2PMessageVersion());
     }
 
 
@@ -55,9 +69,11 @@ public final class PreliminaryGetDataRequest extends GetDataRequest implements A
 
     private PreliminaryGetDataRequest(int nonce,
                                       Set<byte[]> excludedKeys,
+                                      @Nullable KeySetSummary appendOnlyDataSummary,
+                                      @Nullable byte[] resumeAfterKey,
                                       @Nullable Capabilities supportedCapabilities,
                                       int messageVersion) {
-        super(messageVersion, nonce, excludedKeys);
+        super(messageVersion, nonce, excludedKeys, appendOnlyDataSummary, resumeAfterKey);
 
         this.supportedCapabilities = supportedCapabilities;
     }
@@ -71,6 +87,8 @@ public final class PreliminaryGetDataRequest extends GetDataRequest implements A
                         .collect(Collectors.toList()));
 
         Optional.ofNullable(supportedCapabilities).ifPresent(e -> builder.addAllSupportedCapabilities(Capabilities.toIntList(supportedCapabilities)));
+        Optional.ofNullable(appendOnlyDataSummary).ifPresent(e -> builder.setAppendOnlyDataSummary(appendOnlyDataSummary.toProtoMessage()));
+        Optional.ofNullable(resumeAfterKey).ifPresent(e -> builder.setResumeAfterKey(ByteString.copyFrom(resumeAfterKey)));
 
         return getNetworkEnvelopeBuilder()
                 .setPreliminaryGetDataRequest(builder)
@@ -84,6 +102,8 @@ public final class PreliminaryGetDataRequest extends GetDataRequest implements A
 
         return new PreliminaryGetDataRequest(proto.getNonce(),
                 ProtoUtil.byteSetFromProtoByteStringList(proto.getExcludedKeysList()),
+                proto.hasAppendOnlyDataSummary() ? KeySetSummary.fromProto(proto.getAppendOnlyDataSummary()) : null,
+                ProtoUtil.byteArrayOrNullFromProto(proto.getResumeAfterKey()),
                 supportedCapabilities,
                 messageVersion);
     }
@@ -0,0 +1,81 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage;
+
+import bisq.network.p2p.storage.payload.ExpirablePayload;
+import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
+import bisq.network.p2p.storage.payload.ProtectedStoragePayload;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Orders the hashes of the ProtectedStorageEntries with an ExpirablePayload by the time they expire, so at a check for
+ * expired entries we only look at the entries which are due.
+ * <p>
+ * We don't remove the items of entries which got removed, replaced or refreshed, as that is expensive with a priority
+ * queue. When such an item is due the caller finds the entry gone or not expired and drops it. Each change which
+ * postpones the expiry of an entry adds a new item, so the entry gets checked again at its new expiry time.
+ */
+class ExpiryQueue {
+    private final PriorityQueue<Item> queue = new PriorityQueue<>(Comparator.comparingLong(item -> item.expiryTime));
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Call at add, refresh and back dating of an entry
+    synchronized void add(P2PDataStorage.ByteArray hashOfPayload, ProtectedStorageEntry protectedStorageEntry) {
+        ProtectedStoragePayload protectedStoragePayload = protectedStorageEntry.getProtectedStoragePayload();
+        if (protectedStoragePayload instanceof ExpirablePayload) {
+            long ttl = ((ExpirablePayload) protectedStoragePayload).getTTL();
+            queue.add(new Item(hashOfPayload, protectedStorageEntry.getCreationTimeStamp() + ttl));
+        }
+    }
+
+    // Removes the items which expired before the given time and returns their hashes
+    synchronized Set<P2PDataStorage.ByteArray> pollDue(long now) {
+        Set<P2PDataStorage.ByteArray> result = new HashSet<>();
+        while (!queue.isEmpty() && queue.peek().expiryTime < now) {
+            result.add(queue.poll().hashOfPayload);
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return queue.size();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Item
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private static final class Item {
+        private final P2PDataStorage.ByteArray hashOfPayload;
+        private final long expiryTime;
+
+        private Item(P2PDataStorage.ByteArray hashOfPayload, long expiryTime) {
+            this.hashOfPayload = hashOfPayload;
+            this.expiryTime = expiryTime;
+        }
+    }
+}
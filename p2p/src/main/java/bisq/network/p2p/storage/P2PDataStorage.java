@@ -35,6 +35,7 @@ import bisq.network.p2p.storage.messages.RemoveMailboxDataMessage;
 import bisq.network.p2p.storage.payload.DateTolerantPayload;
 import bisq.network.p2p.storage.payload.ExpirablePayload;
 import bisq.network.p2p.storage.payload.MailboxStoragePayload;
+import bisq.network.p2p.storage.payload.PayloadHashCache;
 import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
 import bisq.network.p2p.storage.payload.ProtectedMailboxStorageEntry;
 import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
@@ -42,9 +43,11 @@ import bisq.network.p2p.storage.payload.ProtectedStoragePayload;
 import bisq.network.p2p.storage.payload.RequiresOwnerIsOnlinePayload;
 import bisq.network.p2p.storage.persistence.AppendOnlyDataStoreListener;
 import bisq.network.p2p.storage.persistence.AppendOnlyDataStoreService;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
 import bisq.network.p2p.storage.persistence.ProtectedDataStoreListener;
 import bisq.network.p2p.storage.persistence.ProtectedDataStoreService;
 import bisq.network.p2p.storage.persistence.ResourceDataStoreService;
+import bisq.network.p2p.storage.persistence.SequenceNumberLog;
 import bisq.network.p2p.storage.persistence.SequenceNumberMap;
 
 import bisq.common.Timer;
@@ -56,7 +59,6 @@ import bisq.common.proto.network.NetworkEnvelope;
 import bisq.common.proto.network.NetworkPayload;
 import bisq.common.proto.persistable.PersistablePayload;
 import bisq.common.proto.persistable.PersistedDataHost;
-import bisq.common.storage.Storage;
 import bisq.common.util.Hex;
 import bisq.common.util.Tuple2;
 import bisq.common.util.Utilities;
@@ -74,6 +76,7 @@ import java.security.PublicKey;
 
 import java.time.Clock;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
@@ -110,16 +113,21 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
 
     @Getter
     private final Map<ByteArray, ProtectedStorageEntry> map = new ConcurrentHashMap<>();
+    // Hashes of the entries in map which require the owner to be online, indexed by the owner's node address.
+    // Allows us to look up the entries of a disconnected peer without iterating the whole map.
+    private final Map<NodeAddress, Set<ByteArray>> ownerIsOnlineEntriesByOwner = new ConcurrentHashMap<>();
+    private final ExpiryQueue expiryQueue = new ExpiryQueue();
     private final Set<ByteArray> removedAddOncePayloads = new HashSet<>();
     private final Set<HashMapChangedListener> hashMapChangedListeners = new CopyOnWriteArraySet<>();
     private Timer removeExpiredEntriesTimer;
 
-    private final Storage<SequenceNumberMap> sequenceNumberMapStorage;
+    private final SequenceNumberLog sequenceNumberLog;
     private final SequenceNumberMap sequenceNumberMap = new SequenceNumberMap();
 
     private final Set<AppendOnlyDataStoreListener> appendOnlyDataStoreListeners = new CopyOnWriteArraySet<>();
     private final Set<ProtectedDataStoreListener> protectedDataStoreListeners = new CopyOnWriteArraySet<>();
     private final Clock clock;
+    private final SignatureVerifier signatureVerifier;
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     // Constructor
@@ -131,27 +139,31 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
                           AppendOnlyDataStoreService appendOnlyDataStoreService,
                           ProtectedDataStoreService protectedDataStoreService,
                           ResourceDataStoreService resourceDataStoreService,
-                          Storage<SequenceNumberMap> sequenceNumberMapStorage,
-                          Clock clock) {
+                          SequenceNumberLog sequenceNumberLog,
+                          Clock clock,
+                          SignatureVerifier signatureVerifier) {
         this.broadcaster = broadcaster;
         this.appendOnlyDataStoreService = appendOnlyDataStoreService;
         this.protectedDataStoreService = protectedDataStoreService;
         this.resourceDataStoreService = resourceDataStoreService;
         this.clock = clock;
-
+        this.signatureVerifier = signatureVerifier;
 
         networkNode.addMessageListener(this);
         networkNode.addConnectionListener(this);
 
-        this.sequenceNumberMapStorage = sequenceNumberMapStorage;
-        sequenceNumberMapStorage.setNumMaxBackupFiles(5);
+        this.sequenceNumberLog = sequenceNumberLog;
     }
 
     @Override
     public void readPersisted() {
-        SequenceNumberMap persistedSequenceNumberMap = sequenceNumberMapStorage.initAndGetPersisted(sequenceNumberMap, 300);
-        if (persistedSequenceNumberMap != null)
-            sequenceNumberMap.setMap(getPurgedSequenceNumberMap(persistedSequenceNumberMap.getMap()));
+        Map<ByteArray, MapValue> persistedSequenceNumbers = sequenceNumberLog.readPersisted(sequenceNumberMap);
+        if (persistedSequenceNumbers != null) {
+            sequenceNumberMap.setMap(getPurgedSequenceNumberMap(persistedSequenceNumbers));
+            sequenceNumberLog.writeSnapshot();
+        }
+
+        signatureVerifier.readPersisted();
     }
 
     // This method is called at startup in a non-user thread.
@@ -162,7 +174,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         protectedDataStoreService.readFromResources(postFix);
         resourceDataStoreService.readFromResources(postFix);
 
-        map.putAll(protectedDataStoreService.getMap());
+        protectedDataStoreService.getMap().forEach(this::putToMap);
     }
 
 
@@ -173,48 +185,67 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
     public void shutDown() {
         if (removeExpiredEntriesTimer != null)
             removeExpiredEntriesTimer.stop();
+
+        signatureVerifier.shutDown();
+        sequenceNumberLog.shutDown();
     }
 
     public void onBootstrapComplete() {
-        removeExpiredEntriesTimer = UserThread.runPeriodically(() -> {
-            log.trace("removeExpiredEntries");
-            // The moment when an object becomes expired will not be synchronous in the network and we could
-            // get add network_messages after the object has expired. To avoid repeated additions of already expired
-            // object when we get it sent from new peers, we don’t remove the sequence number from the map.
-            // That way an ADD message for an already expired data will fail because the sequence number
-            // is equal and not larger as expected.
-            Map<ByteArray, ProtectedStorageEntry> temp = new HashMap<>(map);
-            Set<ProtectedStorageEntry> toRemoveSet = new HashSet<>();
-            temp.entrySet().stream()
-                    .filter(entry -> entry.getValue().isExpired())
-                    .forEach(entry -> {
-                        ByteArray hashOfPayload = entry.getKey();
-                        ProtectedStorageEntry protectedStorageEntry = map.get(hashOfPayload);
-                        if (!(protectedStorageEntry.getProtectedStoragePayload() instanceof PersistableNetworkPayload)) {
-                            toRemoveSet.add(protectedStorageEntry);
-                            log.debug("We found an expired data entry. We remove the protectedData:\n\t" + Utilities.toTruncatedString(protectedStorageEntry));
-                            map.remove(hashOfPayload);
-                        }
-                    });
-
-            // Batch processing can cause performance issues, so we give listeners a chance to deal with it by notifying
-            // about start and end of iteration.
-            hashMapChangedListeners.forEach(HashMapChangedListener::onBatchRemoveExpiredDataStarted);
-            toRemoveSet.forEach(protectedStorageEntry -> {
-                hashMapChangedListeners.forEach(l -> l.onRemoved(protectedStorageEntry));
-                removeFromProtectedDataStore(protectedStorageEntry);
-            });
-            hashMapChangedListeners.forEach(HashMapChangedListener::onBatchRemoveExpiredDataCompleted);
+        removeExpiredEntriesTimer = UserThread.runPeriodically(this::removeExpiredEntries, CHECK_TTL_INTERVAL_SEC);
+    }
+
+    @VisibleForTesting
+    void removeExpiredEntries() {
+        log.trace("removeExpiredEntries");
+        // The moment when an object becomes expired will not be synchronous in the network and we could
+        // get add network_messages after the object has expired. To avoid repeated additions of already expired
+        // object when we get it sent from new peers, we don’t remove the sequence number from the map.
+        // That way an ADD message for an already expired data will fail because the sequence number
+        // is equal and not larger as expected.
+        // We only look at the entries which are due in the expiryQueue. Entries which got removed or refreshed in
+        // the meantime are not expired.
+        Set<ProtectedStorageEntry> toRemoveSet = new HashSet<>();
+        expiryQueue.pollDue(System.currentTimeMillis()).forEach(hashOfPayload -> {
+            ProtectedStorageEntry protectedStorageEntry = map.get(hashOfPayload);
+            if (protectedStorageEntry != null && protectedStorageEntry.isExpired() &&
+                    !(protectedStorageEntry.getProtectedStoragePayload() instanceof PersistableNetworkPayload)) {
+                toRemoveSet.add(protectedStorageEntry);
+                log.debug("We found an expired data entry. We remove the protectedData:\n\t" + Utilities.toTruncatedString(protectedStorageEntry));
+                removeFromMap(hashOfPayload);
+            }
+        });
 
-            if (sequenceNumberMap.size() > 1000)
-                sequenceNumberMap.setMap(getPurgedSequenceNumberMap(sequenceNumberMap.getMap()));
-        }, CHECK_TTL_INTERVAL_SEC);
+        // Batch processing can cause performance issues, so we give listeners a chance to deal with it by notifying
+        // about start and end of iteration.
+        hashMapChangedListeners.forEach(HashMapChangedListener::onBatchRemoveExpiredDataStarted);
+        toRemoveSet.forEach(protectedStorageEntry -> {
+            hashMapChangedListeners.forEach(l -> l.onRemoved(protectedStorageEntry));
+            removeFromProtectedDataStore(protectedStorageEntry);
+        });
+        hashMapChangedListeners.forEach(HashMapChangedListener::onBatchRemoveExpiredDataCompleted);
+
+        if (sequenceNumberMap.size() > 1000) {
+            Map<ByteArray, MapValue> purged = getPurgedSequenceNumberMap(sequenceNumberMap.getMap());
+            // We only write a snapshot if entries got purged, otherwise the log has all the updates already
+            if (purged.size() < sequenceNumberMap.size()) {
+                sequenceNumberMap.setMap(purged);
+                sequenceNumberLog.writeSnapshot();
+            }
+        }
     }
 
     public Map<ByteArray, PersistableNetworkPayload> getAppendOnlyDataStoreMap() {
         return appendOnlyDataStoreService.getMap();
     }
 
+    public KeySetSummary getAppendOnlyDataSummary() {
+        return appendOnlyDataStoreService.getKeySetSummary();
+    }
+
+    public Set<ByteArray> getAppendOnlyDataKeysMissingAt(KeySetSummary summary) {
+        return appendOnlyDataStoreService.getKeysMissingAt(summary);
+    }
+
     public Map<P2PDataStorage.ByteArray, ProtectedStorageEntry> getProtectedDataStoreMap() {
         return protectedDataStoreService.getMap();
     }
@@ -224,18 +255,28 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
     // MessageListener implementation
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    // We verify the signatures of the messages on the workers of the signatureVerifier and apply the messages on the
+    // user thread afterwards.
     @Override
     public void onMessage(NetworkEnvelope networkEnvelope, Connection connection) {
         if (networkEnvelope instanceof BroadcastMessage) {
             connection.getPeersNodeAddressOptional().ifPresent(peersNodeAddress -> {
                 if (networkEnvelope instanceof AddDataMessage) {
-                    addProtectedStorageEntry(((AddDataMessage) networkEnvelope).getProtectedStorageEntry(), peersNodeAddress, null, false);
+                    ProtectedStorageEntry protectedStorageEntry = ((AddDataMessage) networkEnvelope).getProtectedStorageEntry();
+                    verifySignatureAndThen(protectedStorageEntry, false,
+                            () -> addProtectedStorageEntry(protectedStorageEntry, peersNodeAddress, null, false));
                 } else if (networkEnvelope instanceof RemoveDataMessage) {
-                    remove(((RemoveDataMessage) networkEnvelope).getProtectedStorageEntry(), peersNodeAddress, false);
+                    ProtectedStorageEntry protectedStorageEntry = ((RemoveDataMessage) networkEnvelope).getProtectedStorageEntry();
+                    verifySignatureAndThen(protectedStorageEntry, true,
+                            () -> remove(protectedStorageEntry, peersNodeAddress, false));
                 } else if (networkEnvelope instanceof RemoveMailboxDataMessage) {
-                    removeMailboxData(((RemoveMailboxDataMessage) networkEnvelope).getProtectedMailboxStorageEntry(), peersNodeAddress, false);
+                    ProtectedMailboxStorageEntry protectedMailboxStorageEntry = ((RemoveMailboxDataMessage) networkEnvelope).getProtectedMailboxStorageEntry();
+                    verifySignatureAndThen(protectedMailboxStorageEntry, true,
+                            () -> removeMailboxData(protectedMailboxStorageEntry, peersNodeAddress, false));
                 } else if (networkEnvelope instanceof RefreshOfferMessage) {
-                    refreshTTL((RefreshOfferMessage) networkEnvelope, peersNodeAddress, false);
+                    RefreshOfferMessage refreshOfferMessage = (RefreshOfferMessage) networkEnvelope;
+                    verifySignatureAndThen(refreshOfferMessage,
+                            () -> refreshTTL(refreshOfferMessage, peersNodeAddress, false));
                 } else if (networkEnvelope instanceof AddPersistableNetworkPayloadMessage) {
                     addPersistableNetworkPayload(((AddPersistableNetworkPayloadMessage) networkEnvelope).getPersistableNetworkPayload(),
                             peersNodeAddress, false, true, false, true);
@@ -256,44 +297,42 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
     @Override
     public void onDisconnect(CloseConnectionReason closeConnectionReason, Connection connection) {
         if (connection.hasPeersNodeAddress() && !closeConnectionReason.isIntended) {
-            map.values()
-                    .forEach(protectedStorageEntry -> {
-                        NetworkPayload networkPayload = protectedStorageEntry.getProtectedStoragePayload();
-                        if (networkPayload instanceof ExpirablePayload && networkPayload instanceof RequiresOwnerIsOnlinePayload) {
-                            NodeAddress ownerNodeAddress = ((RequiresOwnerIsOnlinePayload) networkPayload).getOwnerNodeAddress();
-                            if (connection.getPeersNodeAddressOptional().isPresent() &&
-                                    ownerNodeAddress.equals(connection.getPeersNodeAddressOptional().get())) {
-                                // We have a RequiresLiveOwnerData data object with the node address of the
-                                // disconnected peer. We remove that data from our map.
-
-                                // Check if we have the data (e.g. OfferPayload)
-                                ByteArray hashOfPayload = get32ByteHashAsByteArray(networkPayload);
-                                boolean containsKey = map.containsKey(hashOfPayload);
-                                if (containsKey) {
-                                    log.debug("We remove the data as the data owner got disconnected with " +
-                                            "closeConnectionReason=" + closeConnectionReason);
-
-                                    // We only set the data back by half of the TTL and remove the data only if is has
-                                    // expired after that back dating.
-                                    // We might get connection drops which are not caused by the node going offline, so
-                                    // we give more tolerance with that approach, giving the node the change to
-                                    // refresh the TTL with a refresh message.
-                                    // We observed those issues during stress tests, but it might have been caused by the
-                                    // test set up (many nodes/connections over 1 router)
-                                    // TODO investigate what causes the disconnections.
-                                    // Usually the are: SOCKET_TIMEOUT ,TERMINATED (EOFException)
-                                    protectedStorageEntry.backDate();
-                                    if (protectedStorageEntry.isExpired()) {
-                                        log.info("We found an expired data entry which we have already back dated. " +
-                                                "We remove the protectedStoragePayload:\n\t" + Utilities.toTruncatedString(protectedStorageEntry.getProtectedStoragePayload(), 100));
-                                        doRemoveProtectedExpirableData(protectedStorageEntry, hashOfPayload);
-                                    }
-                                } else {
-                                    log.debug("Remove data ignored as we don't have an entry for that data.");
-                                }
-                            }
-                        }
-                    });
+            NodeAddress peersNodeAddress = connection.getPeersNodeAddressOptional().get();
+            Set<ByteArray> hashesOfPayload = ownerIsOnlineEntriesByOwner.get(peersNodeAddress);
+            if (hashesOfPayload == null)
+                return;
+
+            // We copy the set as we might remove entries while iterating
+            new HashSet<>(hashesOfPayload).forEach(hashOfPayload -> {
+                // We have a RequiresLiveOwnerData data object with the node address of the
+                // disconnected peer. We remove that data from our map.
+
+                // Check if we have the data (e.g. OfferPayload)
+                ProtectedStorageEntry protectedStorageEntry = map.get(hashOfPayload);
+                if (protectedStorageEntry != null) {
+                    log.debug("We remove the data as the data owner got disconnected with " +
+                            "closeConnectionReason=" + closeConnectionReason);
+
+                    // We only set the data back by half of the TTL and remove the data only if is has
+                    // expired after that back dating.
+                    // We might get connection drops which are not caused by the node going offline, so
+                    // we give more tolerance with that approach, giving the node the change to
+                    // refresh the TTL with a refresh message.
+                    // We observed those issues during stress tests, but it might have been caused by the
+                    // test set up (many nodes/connections over 1 router)
+                    // TODO investigate what causes the disconnections.
+                    // Usually the are: SOCKET_TIMEOUT ,TERMINATED (EOFException)
+                    protectedStorageEntry.backDate();
+                    expiryQueue.add(hashOfPayload, protectedStorageEntry);
+                    if (protectedStorageEntry.isExpired()) {
+                        log.info("We found an expired data entry which we have already back dated. " +
+                                "We remove the protectedStoragePayload:\n\t" + Utilities.toTruncatedString(protectedStorageEntry.getProtectedStoragePayload(), 100));
+                        doRemoveProtectedExpirableData(protectedStorageEntry, hashOfPayload);
+                    }
+                } else {
+                    log.debug("Remove data ignored as we don't have an entry for that data.");
+                }
+            });
         }
     }
 
@@ -317,7 +356,10 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         byte[] hash = payload.getHash();
         if (payload.verifyHashSize()) {
             ByteArray hashAsByteArray = new ByteArray(hash);
-            boolean containsKey = getAppendOnlyDataStoreMap().containsKey(hashAsByteArray);
+            boolean containsKey = appendOnlyDataStoreService.containsKey(hashAsByteArray);
+            if (allowBroadcast)
+                onBroadcastMessageReceived(sender, isDataOwner, containsKey);
+
             if (!containsKey || reBroadcast) {
                 if (!(payload instanceof DateTolerantPayload) || !checkDate || ((DateTolerantPayload) payload).isDateInTolerance(clock)) {
                     if (!containsKey) {
@@ -361,6 +403,18 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         }
     }
 
+    /**
+     * Verifies the signatures of the entries in parallel and calls the resultHandler on the user thread afterwards,
+     * so adding them in the resultHandler does not need to verify them one by one. Used for the batches of entries we
+     * get at a GetDataResponse.
+     */
+    public void verifySignatures(Collection<ProtectedStorageEntry> protectedStorageEntries, Runnable resultHandler) {
+        List<ProtectedStorageEntry> toVerify = protectedStorageEntries.stream()
+                .filter(e -> isSignatureCheckExpected(e.getSequenceNumber(), get32ByteHashAsByteArray(e.getProtectedStoragePayload())))
+                .collect(Collectors.toList());
+        signatureVerifier.verifyAll(toVerify, resultHandler);
+    }
+
     public boolean addProtectedStorageEntry(ProtectedStorageEntry protectedStorageEntry, @Nullable NodeAddress sender,
                                             @Nullable BroadcastHandler.Listener listener, boolean isDataOwner) {
         return addProtectedStorageEntry(protectedStorageEntry, sender, listener, isDataOwner, true);
@@ -394,10 +448,12 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         // printData("before add");
         if (result) {
             boolean hasSequenceNrIncreased = hasSequenceNrIncreased(protectedStorageEntry.getSequenceNumber(), hashOfPayload);
+            if (allowBroadcast)
+                onBroadcastMessageReceived(sender, isDataOwner, !hasSequenceNrIncreased);
 
             if (!containsKey || hasSequenceNrIncreased) {
                 // At startup we don't have the item so we store it. At updates of the seq nr we store as well.
-                map.put(hashOfPayload, protectedStorageEntry);
+                putToMap(hashOfPayload, protectedStorageEntry);
                 hashMapChangedListeners.forEach(e -> e.onAdded(protectedStorageEntry));
                 // printData("after add");
             } else {
@@ -405,9 +461,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
             }
 
             if (hasSequenceNrIncreased) {
-                sequenceNumberMap.put(hashOfPayload, new MapValue(protectedStorageEntry.getSequenceNumber(), System.currentTimeMillis()));
-                // We set the delay higher as we might receive a batch of items
-                sequenceNumberMapStorage.queueUpForSave(SequenceNumberMap.clone(sequenceNumberMap), 2000);
+                putSequenceNumber(hashOfPayload, protectedStorageEntry.getSequenceNumber());
 
                 if (allowBroadcast)
                     broadcastProtectedStorageEntry(protectedStorageEntry, sender, listener, isDataOwner);
@@ -444,6 +498,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
 
             if (sequenceNumberMap.containsKey(hashOfPayload) && sequenceNumberMap.get(hashOfPayload).sequenceNr == sequenceNumber) {
                 log.trace("We got that message with that seq nr already from another peer. We ignore that message.");
+                onBroadcastMessageReceived(sender, isDataOwner, true);
                 return true;
             } else {
                 PublicKey ownerPubKey = storedData.getProtectedStoragePayload().getOwnerPubKey();
@@ -455,11 +510,12 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
                         checkSignature(ownerPubKey, hashOfDataAndSeqNr, signature)) {
                     log.debug("refreshDate called for storedData:\n\t" + StringUtils.abbreviate(storedData.toString(), 100));
                     storedData.refreshTTL();
+                    expiryQueue.add(hashOfPayload, storedData);
                     storedData.updateSequenceNumber(sequenceNumber);
                     storedData.updateSignature(signature);
                     printData("after refreshTTL");
-                    sequenceNumberMap.put(hashOfPayload, new MapValue(sequenceNumber, System.currentTimeMillis()));
-                    sequenceNumberMapStorage.queueUpForSave(SequenceNumberMap.clone(sequenceNumberMap), 1000);
+                    putSequenceNumber(hashOfPayload, sequenceNumber);
+                    onBroadcastMessageReceived(sender, isDataOwner, false);
 
                     broadcast(refreshTTLMessage, sender, null, isDataOwner);
                     return true;
@@ -491,8 +547,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         if (result) {
             doRemoveProtectedExpirableData(protectedStorageEntry, hashOfPayload);
             printData("after remove");
-            sequenceNumberMap.put(hashOfPayload, new MapValue(protectedStorageEntry.getSequenceNumber(), System.currentTimeMillis()));
-            sequenceNumberMapStorage.queueUpForSave(SequenceNumberMap.clone(sequenceNumberMap), 300);
+            putSequenceNumber(hashOfPayload, protectedStorageEntry.getSequenceNumber());
 
             maybeAddToRemoveAddOncePayloads(protectedStoragePayload, hashOfPayload);
 
@@ -541,8 +596,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         if (result) {
             doRemoveProtectedExpirableData(protectedMailboxStorageEntry, hashOfPayload);
             printData("after removeMailboxData");
-            sequenceNumberMap.put(hashOfPayload, new MapValue(sequenceNumber, System.currentTimeMillis()));
-            sequenceNumberMapStorage.queueUpForSave(SequenceNumberMap.clone(sequenceNumberMap), 300);
+            putSequenceNumber(hashOfPayload, sequenceNumber);
 
             maybeAddToRemoveAddOncePayloads(protectedStoragePayload, hashOfPayload);
 
@@ -639,8 +693,47 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
     // Private
     ///////////////////////////////////////////////////////////////////////////////////////////
 
+    // All changes of map have to go through putToMap and removeFromMap to keep ownerIsOnlineEntriesByOwner and
+    // expiryQueue in sync.
+    private void putToMap(ByteArray hashOfPayload, ProtectedStorageEntry protectedStorageEntry) {
+        map.put(hashOfPayload, protectedStorageEntry);
+        expiryQueue.add(hashOfPayload, protectedStorageEntry);
+
+        NodeAddress ownerNodeAddress = getOwnerNodeAddressIfRequiresOwnerIsOnline(protectedStorageEntry);
+        if (ownerNodeAddress != null) {
+            ownerIsOnlineEntriesByOwner.compute(ownerNodeAddress, (nodeAddress, hashesOfPayload) -> {
+                Set<ByteArray> result = hashesOfPayload != null ? hashesOfPayload : ConcurrentHashMap.newKeySet();
+                result.add(hashOfPayload);
+                return result;
+            });
+        }
+    }
+
+    private void removeFromMap(ByteArray hashOfPayload) {
+        ProtectedStorageEntry protectedStorageEntry = map.remove(hashOfPayload);
+        if (protectedStorageEntry == null)
+            return;
+
+        NodeAddress ownerNodeAddress = getOwnerNodeAddressIfRequiresOwnerIsOnline(protectedStorageEntry);
+        if (ownerNodeAddress != null) {
+            ownerIsOnlineEntriesByOwner.computeIfPresent(ownerNodeAddress, (nodeAddress, hashesOfPayload) -> {
+                hashesOfPayload.remove(hashOfPayload);
+                return hashesOfPayload.isEmpty() ? null : hashesOfPayload;
+            });
+        }
+    }
+
+    @Nullable
+    private NodeAddress getOwnerNodeAddressIfRequiresOwnerIsOnline(ProtectedStorageEntry protectedStorageEntry) {
+        ProtectedStoragePayload protectedStoragePayload = protectedStorageEntry.getProtectedStoragePayload();
+        if (protectedStoragePayload instanceof ExpirablePayload && protectedStoragePayload instanceof RequiresOwnerIsOnlinePayload)
+            return ((RequiresOwnerIsOnlinePayload) protectedStoragePayload).getOwnerNodeAddress();
+        else
+            return null;
+    }
+
     private void doRemoveProtectedExpirableData(ProtectedStorageEntry protectedStorageEntry, ByteArray hashOfPayload) {
-        map.remove(hashOfPayload);
+        removeFromMap(hashOfPayload);
         log.trace("Data removed from our map. We broadcast the message to our peers.");
         hashMapChangedListeners.forEach(e -> e.onRemoved(protectedStorageEntry));
     }
@@ -663,6 +756,12 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         }
     }
 
+    // Lets the peer scoring of the broadcaster know whether a peer relayed data to us we had already
+    private void onBroadcastMessageReceived(@Nullable NodeAddress sender, boolean isDataOwner, boolean isDuplicate) {
+        if (sender != null && !isDataOwner)
+            broadcaster.onBroadcastMessageReceived(sender, isDuplicate);
+    }
+
     private boolean hasSequenceNrIncreased(int newSequenceNumber, ByteArray hashOfData) {
         if (sequenceNumberMap.containsKey(hashOfData)) {
             int storedSequenceNumber = sequenceNumberMap.get(hashOfData).sequenceNr;
@@ -694,7 +793,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
 
     private boolean checkSignature(PublicKey ownerPubKey, byte[] hashOfDataAndSeqNr, byte[] signature) {
         try {
-            boolean result = Sig.verify(ownerPubKey, hashOfDataAndSeqNr, signature);
+            boolean result = signatureVerifier.verify(ownerPubKey, hashOfDataAndSeqNr, signature);
             if (!result)
                 log.warn("Signature verification failed at checkSignature. " +
                         "That should not happen.");
@@ -711,6 +810,41 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         return checkSignature(protectedStorageEntry.getOwnerPubKey(), hashOfDataAndSeqNr, protectedStorageEntry.getSignature());
     }
 
+    // We only verify signatures in advance if the message would get to the signature check. Otherwise we only keep
+    // the order with the other messages of the payload.
+    private void verifySignatureAndThen(ProtectedStorageEntry protectedStorageEntry,
+                                        boolean requiresStoredEntry,
+                                        Runnable resultHandler) {
+        ProtectedStoragePayload protectedStoragePayload = protectedStorageEntry.getProtectedStoragePayload();
+        ByteArray hashOfPayload = get32ByteHashAsByteArray(protectedStoragePayload);
+        boolean isSignatureCheckExpected = (!requiresStoredEntry || map.containsKey(hashOfPayload)) &&
+                isSignatureCheckExpected(protectedStorageEntry.getSequenceNumber(), hashOfPayload);
+        signatureVerifier.verifyAndThen(hashOfPayload,
+                isSignatureCheckExpected ? protectedStorageEntry.getOwnerPubKey() : null,
+                () -> P2PDataStorage.get32ByteHash(new DataAndSeqNrPair(protectedStoragePayload, protectedStorageEntry.getSequenceNumber())),
+                protectedStorageEntry.getSignature(),
+                resultHandler);
+    }
+
+    private void verifySignatureAndThen(RefreshOfferMessage refreshOfferMessage, Runnable resultHandler) {
+        ByteArray hashOfPayload = new ByteArray(refreshOfferMessage.getHashOfPayload());
+        ProtectedStorageEntry storedData = map.get(hashOfPayload);
+        MapValue mapValue = sequenceNumberMap.get(hashOfPayload);
+        boolean isSignatureCheckExpected = storedData != null &&
+                (mapValue == null || refreshOfferMessage.getSequenceNumber() > mapValue.sequenceNr);
+        signatureVerifier.verifyAndThen(hashOfPayload,
+                isSignatureCheckExpected ? storedData.getProtectedStoragePayload().getOwnerPubKey() : null,
+                refreshOfferMessage::getHashOfDataAndSeqNr,
+                refreshOfferMessage.getSignature(),
+                resultHandler);
+    }
+
+    // Same as isSequenceNrValid but without logging
+    private boolean isSignatureCheckExpected(int sequenceNumber, ByteArray hashOfPayload) {
+        MapValue mapValue = sequenceNumberMap.get(hashOfPayload);
+        return mapValue == null || sequenceNumber >= mapValue.sequenceNr;
+    }
+
     // Check that the pubkey of the storage entry matches the allowed pubkey for the addition or removal operation
     // in the contained mailbox message, or the pubKey of other kinds of network_messages.
     private boolean checkPublicKeys(ProtectedStorageEntry protectedStorageEntry, boolean isAddOperation) {
@@ -786,7 +920,13 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
     }
 
     private static byte[] getCompactHash(ProtectedStoragePayload protectedStoragePayload) {
-        return Hash.getSha256Ripemd160hash(protectedStoragePayload.toProtoMessage().toByteArray());
+        return PayloadHashCache.getCompactHash(protectedStoragePayload);
+    }
+
+    private void putSequenceNumber(ByteArray hashOfPayload, int sequenceNumber) {
+        MapValue mapValue = new MapValue(sequenceNumber, System.currentTimeMillis());
+        sequenceNumberMap.put(hashOfPayload, mapValue);
+        sequenceNumberLog.append(hashOfPayload, mapValue);
     }
 
     // Get a new map with entries older than PURGE_AGE_DAYS purged from the given map.
@@ -840,6 +980,10 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
      * @return Hash of data
      */
     public static byte[] get32ByteHash(NetworkPayload data) {
+        // Payloads don't change once they are in the network, so we compute their hash only once
+        if (data instanceof ProtectedStoragePayload)
+            return PayloadHashCache.get32ByteHash((ProtectedStoragePayload) data);
+
         return Hash.getSha256Hash(data.toProtoMessage().toByteArray());
     }
 
@@ -867,7 +1011,7 @@ public class P2PDataStorage implements MessageListener, ConnectionListener, Pers
         @Override
         public com.google.protobuf.Message toProtoMessage() {
             return protobuf.DataAndSeqNrPair.newBuilder()
-                    .setPayload((protobuf.StoragePayload) protectedStoragePayload.toProtoMessage())
+                    .setPayload((protobuf.StoragePayload) PayloadHashCache.getProtoMessage(protectedStoragePayload))
                     .setSequenceNumber(sequenceNumber)
                     .build();
         }
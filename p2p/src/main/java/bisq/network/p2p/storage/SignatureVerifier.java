@@ -0,0 +1,277 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage;
+
+import bisq.network.NetworkOptionKeys;
+import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
+import bisq.network.p2p.storage.persistence.VerifiedSignatureStore;
+
+import bisq.common.UserThread;
+import bisq.common.crypto.CryptoException;
+import bisq.common.crypto.Hash;
+import bisq.common.crypto.Sig;
+import bisq.common.storage.Storage;
+import bisq.common.util.Utilities;
+
+import com.google.inject.name.Named;
+
+import javax.inject.Inject;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.security.PublicKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+
+/**
+ * Verifies the signatures of ProtectedStorageEntries and storage messages on a bounded pool of worker threads.
+ * <p>
+ * The hashing and DSA verification is the expensive part of processing a storage message. We do it on a worker and
+ * remember the verified signature, so that the following checkSignature call on the user thread does not need to
+ * verify it again. Each payload is assigned to one worker by its hash and the workers post the result handlers in
+ * the order they got the tasks, so messages for the same payload are applied in the order we have received them.
+ * <p>
+ * The verified signatures are kept in a bounded LRU cache. The same entries reach us again and again from different
+ * peers, at each GetDataResponse and with each rebroadcast, so a signature we have verified once does not need to be
+ * verified again. If persistence is enabled the cache is stored next to the SequenceNumberMap and read at startup,
+ * so the initial data requests after a restart mostly hit the cache.
+ */
+@Slf4j
+public class SignatureVerifier {
+    public static final int DEFAULT_NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    // Each key takes about 100 bytes in memory and 34 bytes on disk
+    public static final int MAX_CACHE_SIZE = 50_000;
+    private static final long SAVE_DELAY_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final List<ListeningExecutorService> workers = new ArrayList<>();
+    // Only the lookups at the check on the user thread are recorded in the stats
+    private final Cache<P2PDataStorage.ByteArray, Boolean> verifiedSignatures = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHE_SIZE)
+            .recordStats()
+            .build();
+    private final VerifiedSignatureStore verifiedSignatureStore = new VerifiedSignatureStore(verifiedSignatures.asMap().keySet());
+    @Nullable
+    private final Storage<VerifiedSignatureStore> storage;
+    // We can only save after the storage got initialized at readPersisted
+    private volatile boolean storageInitialized;
+    private final AtomicLong numSignatureVerifications = new AtomicLong();
+    @Getter
+    private final int numThreads;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Inject
+    public SignatureVerifier(Storage<VerifiedSignatureStore> storage,
+                             @Named(NetworkOptionKeys.PERSIST_VERIFIED_SIGNATURES) boolean persistVerifiedSignatures) {
+        this(DEFAULT_NUM_THREADS, persistVerifiedSignatures ? storage : null);
+    }
+
+    public SignatureVerifier(int numThreads) {
+        this(numThreads, null);
+    }
+
+    @VisibleForTesting
+    SignatureVerifier(int numThreads, @Nullable Storage<VerifiedSignatureStore> storage) {
+        this.numThreads = numThreads;
+        this.storage = storage;
+        for (int i = 0; i < numThreads; i++) {
+            workers.add(Utilities.getSingleThreadExecutor("SignatureVerifier-" + i));
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public void readPersisted() {
+        if (storage == null)
+            return;
+
+        VerifiedSignatureStore persisted = storage.initAndGetPersisted(verifiedSignatureStore, 300);
+        if (persisted != null && persisted != verifiedSignatureStore) {
+            persisted.getKeys().stream()
+                    .limit(MAX_CACHE_SIZE)
+                    .forEach(key -> verifiedSignatures.put(key, Boolean.TRUE));
+            log.info("We have read {} verified signatures from disk", verifiedSignatures.size());
+        }
+        storageInitialized = true;
+    }
+
+    /**
+     * Verifies the signature on the worker of the payload and calls the resultHandler on the user thread
+     * afterwards. The resultHandler is expected to check the signature again with {@link #verify}.
+     *
+     * @param hashOfPayload              Hash of the payload the message is about
+     * @param ownerPubKey                Key to verify the signature with. If null we don't verify anything but
+     *                                   keep the order with other messages of the payload.
+     * @param hashOfDataAndSeqNrSupplier Supplies the signed data. Called on the worker as hashing is not cheap.
+     * @param signature                  Signature to verify
+     * @param resultHandler              Applies the message on the user thread
+     */
+    public void verifyAndThen(P2PDataStorage.ByteArray hashOfPayload,
+                              @Nullable PublicKey ownerPubKey,
+                              Supplier<byte[]> hashOfDataAndSeqNrSupplier,
+                              byte[] signature,
+                              Runnable resultHandler) {
+        try {
+            getWorker(hashOfPayload).execute(() -> {
+                if (ownerPubKey != null)
+                    preVerify(ownerPubKey, hashOfDataAndSeqNrSupplier.get(), signature);
+
+                UserThread.execute(resultHandler);
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("We got a message after shut down. We ignore it.");
+        }
+    }
+
+    /**
+     * Verifies the signatures of the entries on all workers and calls the resultHandler on the user thread once all
+     * are done. Used for the batches of entries we get at a GetDataResponse, so adding them in the resultHandler does
+     * not need to verify their signatures. We don't wait for the workers on the user thread, as the user thread must
+     * keep on processing its tasks.
+     */
+    public void verifyAll(Collection<ProtectedStorageEntry> protectedStorageEntries, Runnable resultHandler) {
+        List<ListenableFuture<?>> futures = new ArrayList<>();
+        try {
+            for (ProtectedStorageEntry protectedStorageEntry : protectedStorageEntries) {
+                P2PDataStorage.ByteArray hashOfPayload = new P2PDataStorage.ByteArray(
+                        P2PDataStorage.get32ByteHash(protectedStorageEntry.getProtectedStoragePayload()));
+                futures.add(getWorker(hashOfPayload).submit(() -> preVerify(protectedStorageEntry.getOwnerPubKey(),
+                        getHashOfDataAndSeqNr(protectedStorageEntry),
+                        protectedStorageEntry.getSignature())));
+            }
+        } catch (RejectedExecutionException e) {
+            // The entries which did not get verified get verified at the check on the user thread
+            log.debug("We got entries after shut down. We don't verify them in advance.");
+        }
+        // successfulAsList does not fail, so the resultHandler gets called in any case
+        Futures.successfulAsList(futures).addListener(() -> UserThread.execute(resultHandler),
+                MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Returns true if the signature was verified already, otherwise it gets verified now.
+     */
+    public boolean verify(PublicKey ownerPubKey, byte[] hashOfDataAndSeqNr, byte[] signature) throws CryptoException {
+        P2PDataStorage.ByteArray key = getKey(ownerPubKey, hashOfDataAndSeqNr, signature);
+        if (verifiedSignatures.getIfPresent(key) != null)
+            return true;
+
+        numSignatureVerifications.incrementAndGet();
+        boolean result = Sig.verify(ownerPubKey, hashOfDataAndSeqNr, signature);
+        if (result)
+            addVerifiedSignature(key);
+        return result;
+    }
+
+    /**
+     * Hits and misses of the checks on the user thread. A hit of a message which got verified on a worker just
+     * before is counted as hit as well, so numSignatureVerifications tells the actual work we have done.
+     */
+    public CacheStats getCacheStats() {
+        return verifiedSignatures.stats();
+    }
+
+    public long getNumSignatureVerifications() {
+        return numSignatureVerifications.get();
+    }
+
+    @VisibleForTesting
+    long getNumVerifiedSignatures() {
+        return verifiedSignatures.size();
+    }
+
+    public void shutDown() {
+        workers.forEach(worker -> MoreExecutors.shutdownAndAwaitTermination(worker, 500, TimeUnit.MILLISECONDS));
+        CacheStats stats = getCacheStats();
+        log.info("Verified signature cache: size={}, hits={}, misses={}, hitRate={}, signatureVerifications={}",
+                verifiedSignatures.size(), stats.hitCount(), stats.missCount(), stats.hitRate(),
+                numSignatureVerifications.get());
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private ListeningExecutorService getWorker(P2PDataStorage.ByteArray hashOfPayload) {
+        return workers.get(Math.floorMod(hashOfPayload.hashCode(), workers.size()));
+    }
+
+    private void preVerify(PublicKey ownerPubKey, byte[] hashOfDataAndSeqNr, byte[] signature) {
+        try {
+            P2PDataStorage.ByteArray key = getKey(ownerPubKey, hashOfDataAndSeqNr, signature);
+            // The lookup over the map view does not count in the stats
+            if (verifiedSignatures.asMap().containsKey(key))
+                return;
+
+            numSignatureVerifications.incrementAndGet();
+            if (Sig.verify(ownerPubKey, hashOfDataAndSeqNr, signature))
+                addVerifiedSignature(key);
+        } catch (Throwable t) {
+            // An invalid signature gets verified and reported again at the check on the user thread
+            log.debug("Verification of signature failed. {}", t.toString());
+        }
+    }
+
+    private void addVerifiedSignature(P2PDataStorage.ByteArray key) {
+        verifiedSignatures.put(key, Boolean.TRUE);
+        // Storage coalesces the saves within the delay
+        if (storage != null && storageInitialized)
+            storage.queueUpForSave(verifiedSignatureStore, SAVE_DELAY_MS);
+    }
+
+    private static byte[] getHashOfDataAndSeqNr(ProtectedStorageEntry protectedStorageEntry) {
+        return P2PDataStorage.get32ByteHash(new P2PDataStorage.DataAndSeqNrPair(protectedStorageEntry.getProtectedStoragePayload(),
+                protectedStorageEntry.getSequenceNumber()));
+    }
+
+    // The hash of the key, the signed data and the signature identifies a verified signature
+    private static P2PDataStorage.ByteArray getKey(PublicKey ownerPubKey, byte[] hashOfDataAndSeqNr, byte[] signature) {
+        byte[] pubKeyBytes = Sig.getPublicKeyBytes(ownerPubKey);
+        byte[] data = new byte[pubKeyBytes.length + hashOfDataAndSeqNr.length + signature.length];
+        System.arraycopy(pubKeyBytes, 0, data, 0, pubKeyBytes.length);
+        System.arraycopy(hashOfDataAndSeqNr, 0, data, pubKeyBytes.length, hashOfDataAndSeqNr.length);
+        System.arraycopy(signature, 0, data, pubKeyBytes.length + hashOfDataAndSeqNr.length, signature.length);
+        return new P2PDataStorage.ByteArray(Hash.getSha256Hash(data));
+    }
+}
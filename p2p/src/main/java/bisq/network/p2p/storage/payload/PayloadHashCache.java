@@ -0,0 +1,101 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.payload;
+
+import bisq.common.crypto.Hash;
+
+import com.google.protobuf.Message;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Memoizes the proto message and the hashes of ProtectedStoragePayloads.
+ * <p>
+ * A payload must not change once it is added to the P2P network as that would change its hash (see
+ * OfferPayload.offerFeePaymentTxId). So we can build the proto message and compute the hashes once per instance
+ * and reuse them at add, remove, refresh, broadcast and getData instead of serializing and hashing the payload at
+ * each of them.
+ * <p>
+ * Entries use weak keys which are compared by identity, so an entry is dropped together with its payload and two
+ * equal instances received from different peers get separate entries.
+ * The returned byte arrays are shared and must not be modified.
+ */
+public class PayloadHashCache {
+    private static final Cache<ProtectedStoragePayload, Entry> cache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+
+    public static Message getProtoMessage(ProtectedStoragePayload payload) {
+        return getEntry(payload).protoMessage;
+    }
+
+    // SHA256 hash of the serialized payload
+    public static byte[] get32ByteHash(ProtectedStoragePayload payload) {
+        Entry entry = getEntry(payload);
+        byte[] hash = entry.hash;
+        if (hash == null) {
+            hash = Hash.getSha256Hash(entry.getSerialized());
+            entry.hash = hash;
+        }
+        return hash;
+    }
+
+    // SHA256 and RIPEMD160 hash of the serialized payload
+    public static byte[] getCompactHash(ProtectedStoragePayload payload) {
+        Entry entry = getEntry(payload);
+        byte[] compactHash = entry.compactHash;
+        if (compactHash == null) {
+            compactHash = Hash.getSha256Ripemd160hash(entry.getSerialized());
+            entry.compactHash = compactHash;
+        }
+        return compactHash;
+    }
+
+    private static Entry getEntry(ProtectedStoragePayload payload) {
+        try {
+            return cache.get(payload, () -> new Entry(payload.toProtoMessage()));
+        } catch (ExecutionException e) {
+            // toProtoMessage does not throw checked exceptions
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Entry
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Hashes are computed lazily. Concurrent callers might compute them twice, but always with the same result.
+    private static class Entry {
+        private final Message protoMessage;
+        private volatile byte[] hash;
+        private volatile byte[] compactHash;
+
+        Entry(Message protoMessage) {
+            this.protoMessage = protoMessage;
+        }
+
+        // We don't keep the serialized bytes as we usually need them only once per hash
+        private byte[] getSerialized() {
+            return protoMessage.toByteArray();
+        }
+    }
+}
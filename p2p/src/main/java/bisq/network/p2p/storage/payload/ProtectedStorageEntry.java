@@ -78,7 +78,7 @@ public class ProtectedStorageEntry implements NetworkPayload, PersistablePayload
 
     public Message toProtoMessage() {
         return protobuf.ProtectedStorageEntry.newBuilder()
-                .setStoragePayload((protobuf.StoragePayload) protectedStoragePayload.toProtoMessage())
+                .setStoragePayload((protobuf.StoragePayload) PayloadHashCache.getProtoMessage(protectedStoragePayload))
                 .setOwnerPubKeyBytes(ByteString.copyFrom(ownerPubKeyBytes))
                 .setSequenceNumber(sequenceNumber)
                 .setSignature(ByteString.copyFrom(signature))
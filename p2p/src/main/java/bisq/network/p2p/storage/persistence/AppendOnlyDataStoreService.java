@@ -25,9 +25,10 @@ import bisq.common.proto.persistable.PersistableEnvelope;
 import javax.inject.Inject;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,6 +38,12 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class AppendOnlyDataStoreService {
     private List<MapStoreService<? extends PersistableEnvelope, PersistableNetworkPayload>> services = new ArrayList<>();
+    // Read-only view over the maps of all services. The stores can contain hundreds of thousands of entries, so we
+    // must not merge them into a new map at each access.
+    private final Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map =
+            Collections.unmodifiableMap(new MapStoreServicesView<>(services));
+    // Summary of the keys of all services used for the initial data requests.
+    private final KeySetSummaryIndex keySetSummaryIndex = new KeySetSummaryIndex();
 
     // We do not add PersistableNetworkPayloadListService to the services list as it it deprecated and used only to
     // transfer old persisted data to the new data structure.
@@ -60,6 +67,7 @@ public class AppendOnlyDataStoreService {
 
     public void readFromResources(String postFix) {
         services.forEach(service -> service.readFromResources(postFix));
+        keySetSummaryIndex.reset(map.keySet());
 
         // transferDeprecatedDataStructure();
     }
@@ -75,15 +83,72 @@ public class AppendOnlyDataStoreService {
         persistableNetworkPayloadListService.removeFile();
     }
 
+    /**
+     * @return Read-only live view over the data of all services. Changes in the services are reflected in the view.
+     */
     public Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> getMap() {
-        return services.stream()
-                .flatMap(service -> service.getMap().entrySet().stream())
-                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return map;
+    }
+
+    public boolean containsKey(P2PDataStorage.ByteArray hash) {
+        return map.containsKey(hash);
+    }
+
+    public PersistableNetworkPayload get(P2PDataStorage.ByteArray hash) {
+        return map.get(hash);
     }
 
     public void put(P2PDataStorage.ByteArray hashAsByteArray, PersistableNetworkPayload payload) {
         services.stream()
                 .filter(service -> service.canHandle(payload))
-                .forEach(service -> service.putIfAbsent(hashAsByteArray, payload));
+                .forEach(service -> {
+                    if (service.putIfAbsent(hashAsByteArray, payload) == null)
+                        keySetSummaryIndex.add(hashAsByteArray);
+                });
+    }
+
+    // Append-only data is not expected to get removed, but if it does it must go through here to keep the
+    // keySetSummaryIndex in sync.
+    public PersistableNetworkPayload remove(P2PDataStorage.ByteArray hashAsByteArray) {
+        PersistableNetworkPayload result = null;
+        for (MapStoreService<? extends PersistableEnvelope, PersistableNetworkPayload> service : services) {
+            if (service.containsKey(hashAsByteArray)) {
+                result = service.remove(hashAsByteArray);
+                keySetSummaryIndex.remove(hashAsByteArray);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Summary of the keys of all services to be sent at the initial data requests instead of all keys.
+     */
+    public KeySetSummary getKeySetSummary() {
+        syncKeySetSummaryIndex();
+        return keySetSummaryIndex.getSummary();
+    }
+
+    /**
+     * @param summary Summary of the keys of the peer
+     * @return The keys of the entries the peer is probably missing. It can contain entries the peer already has if
+     * a bucket of the summary differs by more than one key.
+     */
+    public Set<P2PDataStorage.ByteArray> getKeysMissingAt(KeySetSummary summary) {
+        syncKeySetSummaryIndex();
+        return keySetSummaryIndex.getKeysMissingAt(summary);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Services can be added or modify their store outside of put and remove (e.g. when they read the store from disk),
+    // in which case we rebuild the index. That happens only at startup.
+    private void syncKeySetSummaryIndex() {
+        if (keySetSummaryIndex.size() != map.size()) {
+            log.info("Rebuilding keySetSummaryIndex as it is out of sync with the stores.");
+            keySetSummaryIndex.reset(map.keySet());
+        }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
+
+import bisq.common.proto.persistable.PersistableEnvelope;
+import bisq.common.storage.FileUtil;
+import bisq.common.storage.SegmentedLog;
+import bisq.common.storage.Storage;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * MapStoreService for PersistableNetworkPayload data which persists the entries in a SegmentedLog instead of
+ * writing the whole store to one file at each change. As the data is append-only, adding an entry costs only one
+ * small sequential write.
+ * <p>
+ * If we do not have a log yet we read the store file (or the resource file) the old way and migrate the data to the
+ * log. After that the store file is not used anymore and we rename it with the postfix .bak, so it is still available
+ * if a user needs to downgrade. The store itself is only used as in-memory container.
+ * <p>
+ * Records which do not add an entry to the map (duplicates after an interrupted compaction or invalid records) are
+ * obsolete. If their number exceeds MAX_OBSOLETE_RECORDS we compact the log, at startup as well as at runtime.
+ *
+ * @param <T>
+ */
+@Slf4j
+public abstract class AppendOnlyLogStoreService<T extends PersistableEnvelope> extends MapStoreService<T, PersistableNetworkPayload> {
+    private static final String LOG_DIR_POSTFIX = "_log";
+    private static final long MAX_SEGMENT_SIZE = 4 * 1024 * 1024;
+    @VisibleForTesting
+    static final int MAX_OBSOLETE_RECORDS = 1000;
+    @VisibleForTesting
+    static final String BACKUP_POSTFIX = ".bak";
+
+    private SegmentedLog segmentedLog;
+    // Number of records in the log, including obsolete ones
+    private int numRecords;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public AppendOnlyLogStoreService(File storageDir, Storage<T> storage) {
+        super(storageDir, storage);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    PersistableNetworkPayload putIfAbsent(P2PDataStorage.ByteArray hash, PersistableNetworkPayload payload) {
+        PersistableNetworkPayload previous = getMap().putIfAbsent(hash, payload);
+        if (previous == null) {
+            try {
+                getSegmentedLog().append(payload.toProtoMessage().toByteArray());
+                numRecords++;
+                maybeCompact();
+            } catch (IOException e) {
+                // The record might be written partly, in which case all records appended after it would be cut off at
+                // the next read. So we rewrite the log.
+                log.error("Could not append payload to log of {}. We compact the log.", getFileName(), e);
+                compact();
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    PersistableNetworkPayload remove(P2PDataStorage.ByteArray hash) {
+        PersistableNetworkPayload result = getMap().remove(hash);
+        // Not expected for append-only data, so it's ok to rewrite the whole log.
+        if (result != null)
+            compact();
+        return result;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Protected
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    protected abstract PersistableNetworkPayload fromProto(protobuf.PersistableNetworkPayload proto);
+
+    @Override
+    protected void makeFileFromResourceFile(String postFix) {
+        // Once we have the log we don't need the resource file anymore
+        if (!getSegmentedLog().exists())
+            super.makeFileFromResourceFile(postFix);
+    }
+
+    @Override
+    protected void readStore() {
+        if (getSegmentedLog().exists())
+            readLog();
+        else
+            migrateStoreToLog();
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private SegmentedLog getSegmentedLog() {
+        if (segmentedLog == null)
+            segmentedLog = new SegmentedLog(new File(absolutePathOfStorageDir, getFileName() + LOG_DIR_POSTFIX), MAX_SEGMENT_SIZE);
+        return segmentedLog;
+    }
+
+    private void readLog() {
+        long ts = System.currentTimeMillis();
+        store = createStore();
+        Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map = getMap();
+        numRecords = 0;
+        boolean requiresCompaction = false;
+        try {
+            List<byte[]> records = getSegmentedLog().read();
+            numRecords = records.size();
+            for (byte[] record : records) {
+                try {
+                    PersistableNetworkPayload payload = fromProto(protobuf.PersistableNetworkPayload.parseFrom(record));
+                    map.putIfAbsent(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+                } catch (InvalidProtocolBufferException | RuntimeException e) {
+                    log.warn("Could not parse record of log of {}. We skip it.", getFileName(), e);
+                }
+            }
+            // Cut off data is only expected after a crash
+            requiresCompaction = getSegmentedLog().isRecovered();
+        } catch (IOException e) {
+            log.error("Could not read log of {}. We start with the entries we could read.", getFileName(), e);
+            requiresCompaction = true;
+        }
+        log.info("{}: Read {} entries from {} records in {} segments in {} ms", this.getClass().getSimpleName(),
+                map.size(), numRecords, getSegmentedLog().getNumSegments(), System.currentTimeMillis() - ts);
+
+        if (requiresCompaction)
+            compact();
+        else
+            maybeCompact();
+    }
+
+    private void migrateStoreToLog() {
+        super.readStore();
+        log.info("{}: Migrate {} entries of {} to log", this.getClass().getSimpleName(), getMap().size(), getFileName());
+        if (compact()) {
+            File storeFile = new File(absolutePathOfStorageDir, getFileName());
+            File backupFile = new File(absolutePathOfStorageDir, getFileName() + BACKUP_POSTFIX);
+            if (storeFile.exists() && !storeFile.renameTo(backupFile))
+                log.warn("Could not rename migrated store file {} to {}", storeFile, backupFile);
+        } else {
+            // We keep the store file and try again at next startup
+            getSegmentedLog().close();
+            try {
+                FileUtil.deleteDirectory(new File(absolutePathOfStorageDir, getFileName() + LOG_DIR_POSTFIX));
+            } catch (IOException e) {
+                log.error("Could not delete log of {} after failed migration", getFileName(), e);
+            }
+        }
+    }
+
+    private void maybeCompact() {
+        if (numRecords - getMap().size() > MAX_OBSOLETE_RECORDS) {
+            log.info("{}: Log contains {} obsolete records. We compact it.", this.getClass().getSimpleName(),
+                    numRecords - getMap().size());
+            compact();
+        }
+    }
+
+    private boolean compact() {
+        try {
+            List<byte[]> records = getMap().values().stream()
+                    .map(payload -> payload.toProtoMessage().toByteArray())
+                    .collect(Collectors.toList());
+            getSegmentedLog().compact(records);
+            numRecords = records.size();
+            return true;
+        } catch (IOException e) {
+            log.error("Could not compact log of {}", getFileName(), e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.common.proto.network.NetworkPayload;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Compact summary of a set of hash keys used for set reconciliation at the initial data requests.
+ * <p>
+ * The key space is split into a power of two number of buckets by the leading bits of the key. For each bucket we
+ * keep the number of keys and the XOR of a 64 bit digest of the keys. The receiver compares it with the summary of
+ * its own keys and only needs to look at the buckets which differ. If a bucket differs by exactly one key, the XOR of
+ * both digests is the digest of the missing key, so we can deliver exactly that entry.
+ * <p>
+ * The keys are cryptographic hashes, so they are evenly distributed over the buckets.
+ */
+@EqualsAndHashCode
+@Getter
+public final class KeySetSummary implements NetworkPayload {
+    // 64k buckets cost 576 kB at most at the request, compared to about 20 bytes per key for the excluded keys.
+    public static final int MAX_NUM_BUCKETS = 1 << 16;
+    // Target number of keys per bucket at the requester. Lower values reduce the redundant data we receive for
+    // buckets which differ by more than one key but increase the request size.
+    private static final int KEYS_PER_BUCKET = 8;
+
+    private final long[] digests;
+    private final int[] counts;
+
+    KeySetSummary(long[] digests, int[] counts) {
+        checkArgument(digests.length == counts.length, "digests and counts must have the same length");
+        checkArgument(digests.length > 0 && digests.length <= MAX_NUM_BUCKETS && Integer.bitCount(digests.length) == 1,
+                "Number of buckets must be a power of two and not larger than " + MAX_NUM_BUCKETS);
+        this.digests = digests;
+        this.counts = counts;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // PROTO BUFFER
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public protobuf.KeySetSummary toProtoMessage() {
+        return protobuf.KeySetSummary.newBuilder()
+                .addAllDigests(Longs.asList(digests))
+                .addAllCounts(Ints.asList(counts))
+                .build();
+    }
+
+    public static KeySetSummary fromProto(protobuf.KeySetSummary proto) {
+        return new KeySetSummary(Longs.toArray(proto.getDigestsList()), Ints.toArray(proto.getCountsList()));
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    public int getNumBuckets() {
+        return digests.length;
+    }
+
+    // Number of buckets we use for a set of the given size.
+    static int getNumBuckets(int numKeys) {
+        int target = Math.max(1, numKeys / KEYS_PER_BUCKET);
+        int numBuckets = Integer.highestOneBit(target);
+        if (numBuckets < target)
+            numBuckets <<= 1;
+        return Math.min(MAX_NUM_BUCKETS, numBuckets);
+    }
+
+    // The bucket is defined by the leading bits of the key.
+    static int getBucket(byte[] key, int numBuckets) {
+        if (numBuckets == 1)
+            return 0;
+
+        int prefix = 0;
+        for (int i = 0; i < 4; i++) {
+            prefix = (prefix << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix >>> (32 - Integer.numberOfTrailingZeros(numBuckets));
+    }
+
+    // We don't use the leading bytes for the digest as those are the same for all keys in a bucket.
+    static long getDigest(byte[] key) {
+        long digest = 0;
+        for (int i = 4; i < 12; i++) {
+            digest = (digest << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return digest;
+    }
+
+    @Override
+    public String toString() {
+        return "KeySetSummary{" +
+                "\n     numBuckets=" + digests.length +
+                "\n}";
+    }
+}
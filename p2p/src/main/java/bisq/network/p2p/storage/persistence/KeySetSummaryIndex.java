@@ -0,0 +1,154 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the KeySetSummary of a set of keys at the highest resolution up to date, so we can create the summary for a
+ * request and find the keys missing at a peer without iterating over all keys.
+ */
+@Slf4j
+class KeySetSummaryIndex {
+    private static final int NUM_BUCKETS = KeySetSummary.MAX_NUM_BUCKETS;
+
+    private final long[] digests = new long[NUM_BUCKETS];
+    private final int[] counts = new int[NUM_BUCKETS];
+    @SuppressWarnings("unchecked")
+    private final List<P2PDataStorage.ByteArray>[] keys = new List[NUM_BUCKETS];
+    private int size;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    synchronized void add(P2PDataStorage.ByteArray key) {
+        int bucket = KeySetSummary.getBucket(key.bytes, NUM_BUCKETS);
+        if (keys[bucket] == null)
+            keys[bucket] = new ArrayList<>(1);
+        keys[bucket].add(key);
+        digests[bucket] ^= KeySetSummary.getDigest(key.bytes);
+        counts[bucket]++;
+        size++;
+    }
+
+    synchronized void remove(P2PDataStorage.ByteArray key) {
+        int bucket = KeySetSummary.getBucket(key.bytes, NUM_BUCKETS);
+        if (keys[bucket] != null && keys[bucket].remove(key)) {
+            digests[bucket] ^= KeySetSummary.getDigest(key.bytes);
+            counts[bucket]--;
+            size--;
+        }
+    }
+
+    synchronized void reset(Collection<P2PDataStorage.ByteArray> allKeys) {
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            digests[i] = 0;
+            counts[i] = 0;
+            keys[i] = null;
+        }
+        size = 0;
+        allKeys.forEach(this::add);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized KeySetSummary getSummary() {
+        return getSummary(KeySetSummary.getNumBuckets(size));
+    }
+
+    synchronized KeySetSummary getSummary(int numBuckets) {
+        int bucketsPerSummaryBucket = NUM_BUCKETS / numBuckets;
+        long[] summaryDigests = new long[numBuckets];
+        int[] summaryCounts = new int[numBuckets];
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            int summaryBucket = i / bucketsPerSummaryBucket;
+            summaryDigests[summaryBucket] ^= digests[i];
+            summaryCounts[summaryBucket] += counts[i];
+        }
+        return new KeySetSummary(summaryDigests, summaryCounts);
+    }
+
+    /**
+     * @param summary Summary of the keys of the peer
+     * @return The keys we have which are probably missing at the peer. If a bucket differs by a single key we return
+     * only that key, otherwise all our keys of that bucket. Keys the peer has and we don't have are not relevant.
+     */
+    synchronized Set<P2PDataStorage.ByteArray> getKeysMissingAt(KeySetSummary summary) {
+        int numBuckets = summary.getNumBuckets();
+        int bucketsPerSummaryBucket = NUM_BUCKETS / numBuckets;
+        long[] peersDigests = summary.getDigests();
+        int[] peersCounts = summary.getCounts();
+        Set<P2PDataStorage.ByteArray> result = new HashSet<>();
+        for (int summaryBucket = 0; summaryBucket < numBuckets; summaryBucket++) {
+            int from = summaryBucket * bucketsPerSummaryBucket;
+            int to = from + bucketsPerSummaryBucket;
+            long digest = 0;
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                digest ^= digests[i];
+                count += counts[i];
+            }
+
+            if (count == 0 || (count == peersCounts[summaryBucket] && digest == peersDigests[summaryBucket]))
+                continue;
+
+            if (count == peersCounts[summaryBucket] + 1) {
+                P2PDataStorage.ByteArray missingKey = findKey(from, to, digest ^ peersDigests[summaryBucket]);
+                if (missingKey != null) {
+                    result.add(missingKey);
+                    continue;
+                }
+            }
+
+            for (int i = from; i < to; i++) {
+                if (keys[i] != null)
+                    result.addAll(keys[i]);
+            }
+        }
+        return result;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private P2PDataStorage.ByteArray findKey(int from, int to, long digest) {
+        for (int i = from; i < to; i++) {
+            if (keys[i] != null) {
+                for (P2PDataStorage.ByteArray key : keys[i]) {
+                    if (KeySetSummary.getDigest(key.bytes) == digest)
+                        return key;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import bisq.common.proto.persistable.PersistableEnvelope;
+import bisq.common.proto.persistable.PersistablePayload;
+
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Live view over the maps of several MapStoreServices. Lookups are routed to the maps of the services and iteration
+ * walks them one after another, so we never create a merged copy of the data.
+ * <p>
+ * We look up the map of each service at every access as a service replaces its store when it reads it from disk.
+ * The view is not thread safe on its own, it relies on the maps of the stores being concurrent maps.
+ * Instances are wrapped with Collections.unmodifiableMap before they leave the owning service.
+ *
+ * @param <R>
+ */
+class MapStoreServicesView<R extends PersistablePayload> extends AbstractMap<P2PDataStorage.ByteArray, R> {
+    private final List<MapStoreService<? extends PersistableEnvelope, R>> services;
+    private final Set<Entry<P2PDataStorage.ByteArray, R>> entrySet = new EntrySet();
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    MapStoreServicesView(List<MapStoreService<? extends PersistableEnvelope, R>> services) {
+        this.services = services;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Map implementation
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public boolean containsKey(Object key) {
+        for (MapStoreService<? extends PersistableEnvelope, R> service : services) {
+            if (service.getMap().containsKey(key))
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public R get(Object key) {
+        for (MapStoreService<? extends PersistableEnvelope, R> service : services) {
+            R value = service.getMap().get(key);
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    // As the services handle distinct payload types we do not expect the same key in multiple maps.
+    @Override
+    public int size() {
+        int size = 0;
+        for (MapStoreService<? extends PersistableEnvelope, R> service : services) {
+            size += service.getMap().size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (MapStoreService<? extends PersistableEnvelope, R> service : services) {
+            if (!service.getMap().isEmpty())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Set<Entry<P2PDataStorage.ByteArray, R>> entrySet() {
+        return entrySet;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    private class EntrySet extends AbstractSet<Entry<P2PDataStorage.ByteArray, R>> {
+        @Override
+        public Iterator<Entry<P2PDataStorage.ByteArray, R>> iterator() {
+            return Iterators.unmodifiableIterator(Iterators.concat(
+                    Iterators.transform(services.iterator(), service -> service.getMap().entrySet().iterator())));
+        }
+
+        @Override
+        public int size() {
+            return MapStoreServicesView.this.size();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import bisq.common.UserThread;
+import bisq.common.storage.Storage;
+import bisq.common.util.Utilities;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import com.google.inject.name.Named;
+
+import javax.inject.Inject;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+
+/**
+ * Persists the SequenceNumberMap as a snapshot plus a log of the updates since that snapshot.
+ * <p>
+ * Before, each accepted update cloned the whole map and wrote it to disk again. With offers being refreshed every few
+ * minutes by every maker that was a constant source of garbage and disk writes. Now an update only gets appended to
+ * the log. Updates within the flush delay are coalesced per key and written on our own thread. Once the log has more
+ * entries than the map we write a new snapshot and clear the log, so the log never gets larger than the snapshot.
+ * <p>
+ * At startup we read the snapshot and apply the logged updates in the order they got written. A log entry which got
+ * truncated by a crash ends the replay.
+ * <p>
+ * The map is only changed on the user thread, so we take the copy for a snapshot there and write it on our thread.
+ * While a snapshot is in progress we do not write to the log, as the log gets deleted once the snapshot is saved.
+ */
+@Slf4j
+public class SequenceNumberLog {
+    public static final String LOG_FILE_NAME = "SequenceNumberMapLog";
+    private static final long FLUSH_DELAY_MS = 1000;
+    // We do not write a snapshot for small logs as it would not save much
+    private static final int MIN_ENTRIES_FOR_SNAPSHOT = 1000;
+
+    private final Storage<SequenceNumberMap> storage;
+    private final File logFile;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    private final AtomicBoolean snapshotInProgress = new AtomicBoolean();
+    @Nullable
+    private SequenceNumberMap sequenceNumberMap;
+    // Only accessed from the executor
+    @Nullable
+    private FileOutputStream logOutputStream;
+    private int numLogEntries;
+
+    private final AtomicLong totalBytesWritten = new AtomicLong();
+    private final AtomicLong bytesWrittenInCurrentHour = new AtomicLong();
+    // Bytes written in the last full hour, for monitoring the disk usage
+    @Getter
+    private volatile long bytesWrittenPerHour;
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Constructor
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Inject
+    public SequenceNumberLog(Storage<SequenceNumberMap> storage, @Named(Storage.STORAGE_DIR) File storageDir) {
+        this.storage = storage;
+        this.logFile = new File(storageDir, LOG_FILE_NAME);
+        storage.setNumMaxBackupFiles(5);
+
+        executor = Utilities.getScheduledThreadPoolExecutor("SequenceNumberLog", 1, 1, 5);
+        executor.scheduleAtFixedRate(() -> {
+            bytesWrittenPerHour = bytesWrittenInCurrentHour.getAndSet(0);
+            log.info("Persisting the SequenceNumberMap wrote {} bytes in the last hour", bytesWrittenPerHour);
+        }, 1, 1, TimeUnit.HOURS);
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // API
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Reads the snapshot and applies the logged updates.
+     *
+     * @param sequenceNumberMap The map of the caller. Snapshots are taken from it.
+     * @return The persisted entries or null if we have nothing persisted
+     */
+    @Nullable
+    public Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> readPersisted(SequenceNumberMap sequenceNumberMap) {
+        this.sequenceNumberMap = sequenceNumberMap;
+        SequenceNumberMap snapshot = storage.initAndGetPersisted(sequenceNumberMap, 300);
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> map = snapshot != null ? new HashMap<>(snapshot.getMap()) : null;
+        if (!logFile.exists())
+            return map;
+
+        if (map == null)
+            map = new HashMap<>();
+        int numEntries = 0;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            int firstByte;
+            while ((firstByte = inputStream.read()) != -1) {
+                // We read the whole entry first, as parseDelimitedFrom would accept an entry cut off at a field border
+                byte[] bytes = new byte[CodedInputStream.readRawVarint32(firstByte, inputStream)];
+                inputStream.readFully(bytes);
+                protobuf.SequenceNumberEntry entry = protobuf.SequenceNumberEntry.parseFrom(bytes);
+                map.put(P2PDataStorage.ByteArray.fromProto(entry.getBytes()), P2PDataStorage.MapValue.fromProto(entry.getMapValue()));
+                numEntries++;
+            }
+        } catch (EOFException | InvalidProtocolBufferException e) {
+            log.warn("The last entry of the SequenceNumberMap log is incomplete. That is expected after a crash. {}", e.toString());
+        } catch (IOException e) {
+            log.error("Could not read the SequenceNumberMap log", e);
+        }
+        log.info("We applied {} entries of the SequenceNumberMap log", numEntries);
+
+        int finalNumEntries = numEntries;
+        executor.execute(() -> numLogEntries += finalNumEntries);
+        return map;
+    }
+
+    public void append(P2PDataStorage.ByteArray hashOfPayload, P2PDataStorage.MapValue mapValue) {
+        pending.put(hashOfPayload, mapValue);
+        if (!flushPending.getAndSet(true))
+            executor.schedule(this::flush, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a snapshot of the map and clears the log. Used after the map got purged, as the purged entries would
+     * come back with the log. Must be called from the user thread.
+     */
+    public void writeSnapshot() {
+        if (sequenceNumberMap == null) {
+            log.warn("We cannot write a snapshot before the SequenceNumberMap got read");
+            return;
+        }
+        if (executor.isShutdown())
+            return;
+
+        snapshotInProgress.set(true);
+        SequenceNumberMap snapshot = SequenceNumberMap.clone(sequenceNumberMap);
+        // The pending updates are in the map already, so they are part of the snapshot
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> pendingInSnapshot = new HashMap<>(pending);
+        executor.execute(() -> writeSnapshotNow(snapshot, pendingInSnapshot));
+    }
+
+    public void shutDown() {
+        // A snapshot which got requested but not taken yet at the user thread would not be written anymore, so we
+        // write the pending updates to the log
+        executor.execute(() -> {
+            snapshotInProgress.set(false);
+            flush();
+        });
+        executor.execute(this::closeLogOutputStream);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getTotalBytesWritten() {
+        return totalBytesWritten.get();
+    }
+
+    @VisibleForTesting
+    int getNumLogEntries() {
+        return numLogEntries;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // Private
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    // Runs on the executor
+    private void flush() {
+        flushPending.set(false);
+        // The pending updates get written after the snapshot
+        if (snapshotInProgress.get() || pending.isEmpty())
+            return;
+
+        try {
+            if (logOutputStream == null)
+                logOutputStream = new FileOutputStream(logFile, true);
+
+            BufferedOutputStream outputStream = new BufferedOutputStream(logOutputStream);
+            long numBytes = 0;
+            for (P2PDataStorage.ByteArray key : pending.keySet()) {
+                P2PDataStorage.MapValue mapValue = pending.remove(key);
+                if (mapValue == null)
+                    continue;
+
+                protobuf.SequenceNumberEntry entry = protobuf.SequenceNumberEntry.newBuilder()
+                        .setBytes(key.toProtoMessage())
+                        .setMapValue(mapValue.toProtoMessage())
+                        .build();
+                entry.writeDelimitedTo(outputStream);
+                int size = entry.getSerializedSize();
+                numBytes += CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+                numLogEntries++;
+            }
+            outputStream.flush();
+            logOutputStream.getFD().sync();
+            addBytesWritten(numBytes);
+        } catch (IOException e) {
+            log.error("Could not write to the SequenceNumberMap log", e);
+            closeLogOutputStream();
+        }
+
+        // We read the size of the map from another thread, but we only use it as a hint
+        if (numLogEntries > MIN_ENTRIES_FOR_SNAPSHOT && sequenceNumberMap != null && numLogEntries > sequenceNumberMap.size() &&
+                snapshotInProgress.compareAndSet(false, true))
+            UserThread.execute(this::writeSnapshot);
+    }
+
+    // Runs on the executor
+    private void writeSnapshotNow(SequenceNumberMap snapshot,
+                                  Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> pendingInSnapshot) {
+        try {
+            storage.saveNow(snapshot);
+        } catch (Throwable t) {
+            // We keep the log and the pending updates, so no update gets lost
+            log.error("Could not write a snapshot of the SequenceNumberMap", t);
+            snapshotInProgress.set(false);
+            flush();
+            return;
+        }
+        addBytesWritten(new File(logFile.getParentFile(), SequenceNumberMap.class.getSimpleName()).length());
+
+        closeLogOutputStream();
+        if (logFile.exists() && !logFile.delete())
+            log.warn("Could not delete the SequenceNumberMap log");
+        log.info("We wrote a snapshot of the SequenceNumberMap with {} entries and cleared {} log entries",
+                snapshot.size(), numLogEntries);
+        numLogEntries = 0;
+
+        // Updates which came in after we took the copy are not part of the snapshot. We log them now.
+        pendingInSnapshot.forEach((key, mapValue) -> pending.remove(key, mapValue));
+        snapshotInProgress.set(false);
+        flush();
+    }
+
+    private void closeLogOutputStream() {
+        if (logOutputStream == null)
+            return;
+
+        try {
+            logOutputStream.close();
+        } catch (IOException e) {
+            log.warn("Could not close the SequenceNumberMap log. {}", e.toString());
+        }
+        logOutputStream = null;
+    }
+
+    private void addBytesWritten(long numBytes) {
+        totalBytesWritten.addAndGet(numBytes);
+        bytesWrittenInCurrentHour.addAndGet(numBytes);
+    }
+}
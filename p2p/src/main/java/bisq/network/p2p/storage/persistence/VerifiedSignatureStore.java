@@ -0,0 +1,67 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import bisq.common.proto.persistable.PersistableEnvelope;
+
+import com.google.protobuf.ByteString;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.Getter;
+
+/**
+ * Persists the keys of the signatures the SignatureVerifier has verified already, so we don't need to verify them
+ * again after a restart. The keys are hashes of the public key, the signed data and the signature.
+ * <p>
+ * The SignatureVerifier passes a live view of its cache, so we don't need to copy the keys at each change.
+ */
+public class VerifiedSignatureStore implements PersistableEnvelope {
+    @Getter
+    private final Collection<P2PDataStorage.ByteArray> keys;
+
+    public VerifiedSignatureStore(Collection<P2PDataStorage.ByteArray> keys) {
+        this.keys = keys;
+    }
+
+
+    ///////////////////////////////////////////////////////////////////////////////////////////
+    // PROTO BUFFER
+    ///////////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public protobuf.PersistableEnvelope toProtoMessage() {
+        return protobuf.PersistableEnvelope.newBuilder()
+                .setVerifiedSignatureStore(protobuf.VerifiedSignatureStore.newBuilder()
+                        .addAllKeys(keys.stream()
+                                .map(key -> ByteString.copyFrom(key.bytes))
+                                .collect(Collectors.toList())))
+                .build();
+    }
+
+    public static VerifiedSignatureStore fromProto(protobuf.VerifiedSignatureStore proto) {
+        List<P2PDataStorage.ByteArray> keys = proto.getKeysList().stream()
+                .map(bytes -> new P2PDataStorage.ByteArray(bytes.toByteArray()))
+                .collect(Collectors.toList());
+        return new VerifiedSignatureStore(keys);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.metrics;
+
+import bisq.network.p2p.peers.keepalive.messages.Ping;
+import bisq.network.p2p.storage.persistence.SequenceNumberLog;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NetworkMetricsTest {
+    @After
+    public void tearDown() {
+        NetworkMetrics.setEnabled(false);
+        NetworkMetrics.clear();
+    }
+
+    @Test
+    public void testNothingIsRecordedIfDisabled() {
+        NetworkMetrics.onMessageReceived(new Ping(1, 0), 10);
+
+        assertFalse(NetworkMetrics.getSamples().keySet().stream().anyMatch(name -> name.contains("Ping")));
+    }
+
+    @Test
+    public void testMessageSizes() {
+        NetworkMetrics.setEnabled(true);
+        NetworkMetrics.onMessageReceived(new Ping(1, 0), 50);
+        NetworkMetrics.onMessageReceived(new Ping(2, 0), 500);
+        NetworkMetrics.onMessageReceived(new Ping(3, 0), 50_000_000);
+
+        Map<String, Long> samples = NetworkMetrics.getSamples();
+        assertEquals(3, (long) samples.get("bisq_p2p_message_received_bytes_count{type=\"Ping\"}"));
+        assertEquals(50_000_550, (long) samples.get("bisq_p2p_message_received_bytes_sum{type=\"Ping\"}"));
+        // Buckets are cumulative
+        assertEquals(1, (long) samples.get("bisq_p2p_message_received_bytes_bucket{type=\"Ping\",le=\"100\"}"));
+        assertEquals(2, (long) samples.get("bisq_p2p_message_received_bytes_bucket{type=\"Ping\",le=\"1000\"}"));
+        assertEquals(2, (long) samples.get("bisq_p2p_message_received_bytes_bucket{type=\"Ping\",le=\"10000000\"}"));
+        assertEquals(3, (long) samples.get("bisq_p2p_message_received_bytes_bucket{type=\"Ping\",le=\"+Inf\"}"));
+        assertEquals(0, (long) samples.get("bisq_p2p_message_sent_bytes_count{type=\"Ping\"}"));
+    }
+
+    @Test
+    public void testClearResetsAllMetrics() {
+        NetworkMetrics.setEnabled(true);
+        NetworkMetrics.onMessageReceived(new Ping(1, 0), 50);
+        NetworkMetrics.onUserThreadLag(5_000_000);
+        NetworkMetrics.onBroadcastCompleted(4, 300);
+        NetworkMetrics.onGetDataResponse(20);
+
+        NetworkMetrics.clear();
+
+        Map<String, Long> samples = NetworkMetrics.getSamples();
+        assertFalse(samples.keySet().stream().anyMatch(name -> name.contains("Ping")));
+        assertEquals(0, (long) samples.get("bisq_p2p_user_thread_lag_millis_count"));
+        assertEquals(0, (long) samples.get("bisq_p2p_user_thread_lag_millis_sum"));
+        assertEquals(0, (long) samples.get("bisq_p2p_broadcast_duration_millis_count"));
+        assertEquals(0, (long) samples.get("bisq_p2p_broadcast_peers_count"));
+        assertEquals(0, (long) samples.get("bisq_p2p_get_data_response_entries_bucket{le=\"+Inf\"}"));
+    }
+
+    @Test
+    public void testSequenceNumberLogBytesWritten() {
+        SequenceNumberLog sequenceNumberLog = mock(SequenceNumberLog.class);
+        when(sequenceNumberLog.getTotalBytesWritten()).thenReturn(12_000L);
+        when(sequenceNumberLog.getBytesWrittenPerHour()).thenReturn(3_000L);
+        NetworkMetricsService networkMetricsService = new NetworkMetricsService(sequenceNumberLog, true, 0);
+        networkMetricsService.start();
+        try {
+            Map<String, Long> samples = networkMetricsService.getSamples();
+            assertEquals(12_000, (long) samples.get("bisq_p2p_sequence_number_log_written_bytes_total"));
+            assertEquals(3_000, (long) samples.get("bisq_p2p_sequence_number_log_written_bytes_last_hour"));
+            assertTrue(NetworkMetrics.getPrometheusText()
+                    .contains("# TYPE bisq_p2p_sequence_number_log_written_bytes_total counter\n"));
+        } finally {
+            networkMetricsService.shutDown();
+        }
+
+        assertFalse(NetworkMetrics.getSamples().containsKey("bisq_p2p_sequence_number_log_written_bytes_total"));
+    }
+
+    @Test
+    public void testPrometheusText() {
+        NetworkMetrics.setEnabled(true);
+        NetworkMetrics.onMessageSent(new Ping(1, 0), 50);
+
+        String text = NetworkMetrics.getPrometheusText();
+        assertTrue(text.contains("# TYPE bisq_p2p_message_sent_bytes histogram\n"));
+        assertTrue(text.contains("\nbisq_p2p_message_sent_bytes_count{type=\"Ping\"} 1\n"));
+        assertTrue(text.contains("\nbisq_p2p_user_thread_lag_millis_bucket{le=\"+Inf\"} "));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.mocks;
+
+import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+import java.util.Arrays;
+
+public final class MockPersistableNetworkPayload implements PersistableNetworkPayload {
+    private final byte[] hash;
+
+    public MockPersistableNetworkPayload(byte[] hash) {
+        this.hash = hash;
+    }
+
+    @Override
+    public protobuf.PersistableNetworkPayload toProtoMessage() {
+        throw new NotImplementedException("toProtoMessage not impl.");
+    }
+
+    @Override
+    public byte[] getHash() {
+        return hash;
+    }
+
+    @Override
+    public boolean verifyHashSize() {
+        return hash.length == 20;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MockPersistableNetworkPayload)) return false;
+
+        MockPersistableNetworkPayload that = (MockPersistableNetworkPayload) o;
+
+        return Arrays.equals(hash, that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(hash);
+    }
+}
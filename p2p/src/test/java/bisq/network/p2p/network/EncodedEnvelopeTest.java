@@ -0,0 +1,65 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import bisq.network.p2p.peers.keepalive.messages.Ping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EncodedEnvelopeTest {
+    @Test
+    public void testWriteToWritesDelimitedProto() throws IOException {
+        Ping ping = new Ping(42, 100);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ping.toProtoNetworkEnvelope().writeDelimitedTo(expected);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        new EncodedEnvelope(ping).writeTo(outputStream);
+
+        assertArrayEquals(expected.toByteArray(), outputStream.toByteArray());
+        protobuf.NetworkEnvelope proto = protobuf.NetworkEnvelope.parseDelimitedFrom(new ByteArrayInputStream(outputStream.toByteArray()));
+        assertEquals(42, proto.getPing().getNonce());
+    }
+
+    @Test
+    public void testSavedSerializationsAreCounted() throws IOException {
+        EncodedEnvelope encodedEnvelope = new EncodedEnvelope(new Ping(42, 100));
+        long totalSavedSerializations = EncodedEnvelope.getTotalSavedSerializations();
+        long totalSavedBytes = EncodedEnvelope.getTotalSavedBytes();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        encodedEnvelope.writeTo(outputStream);
+        assertEquals(0, encodedEnvelope.getSavedSerializations());
+        int size = outputStream.size();
+
+        encodedEnvelope.writeTo(outputStream);
+        encodedEnvelope.writeTo(outputStream);
+        assertEquals(3, encodedEnvelope.getNumWrites());
+        assertEquals(2, encodedEnvelope.getSavedSerializations());
+        assertEquals(2 * size, encodedEnvelope.getSavedBytes());
+        assertEquals(totalSavedSerializations + 2, EncodedEnvelope.getTotalSavedSerializations());
+        assertEquals(totalSavedBytes + 2 * size, EncodedEnvelope.getTotalSavedBytes());
+    }
+}
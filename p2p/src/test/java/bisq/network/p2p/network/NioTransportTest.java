@@ -0,0 +1,155 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import com.google.protobuf.ByteString;
+
+import java.net.InetSocketAddress;
+
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NioTransportTest {
+    private NioTransport nioTransport;
+    private ServerSocketChannel serverSocketChannel;
+    private SocketChannel clientChannel;
+    private SocketChannel serverChannel;
+
+    @Before
+    public void setUp() throws IOException {
+        nioTransport = new NioTransport("NioTransportTest", 2, 10_000);
+        serverSocketChannel = ServerSocketChannel.open().bind(new InetSocketAddress("localhost", 0));
+        clientChannel = SocketChannel.open(serverSocketChannel.getLocalAddress());
+        serverChannel = serverSocketChannel.accept();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        clientChannel.close();
+        serverChannel.close();
+        serverSocketChannel.close();
+        nioTransport.shutDown();
+    }
+
+    @Test
+    public void testFramesAreDeliveredInOrder() throws Exception {
+        RecordingFrameHandler handler = new RecordingFrameHandler(3);
+        nioTransport.register(serverChannel, handler);
+        OutputStream outputStream = nioTransport.register(clientChannel, new RecordingFrameHandler(0)).getOutputStream();
+
+        // The large frame does not fit into the read buffer and gets assembled from several reads
+        byte[] largePayload = new byte[300 * 1024];
+        for (int i = 0; i < largePayload.length; i++)
+            largePayload[i] = (byte) i;
+
+        List<protobuf.NetworkEnvelope> sent = List.of(
+                getEnvelope(1, new byte[0]),
+                getEnvelope(2, largePayload),
+                getEnvelope(3, new byte[]{1, 2, 3}));
+        for (protobuf.NetworkEnvelope envelope : sent) {
+            envelope.writeDelimitedTo(outputStream);
+            outputStream.flush();
+        }
+
+        assertTrue(handler.framesLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(sent, handler.frames);
+        assertArrayEquals(largePayload, handler.frames.get(1).getPrefixedSealedAndSignedMessage()
+                .getAddressPrefixHash().toByteArray());
+    }
+
+    @Test
+    public void testEndOfStreamAfterFrames() throws Exception {
+        RecordingFrameHandler handler = new RecordingFrameHandler(1);
+        nioTransport.register(serverChannel, handler);
+
+        protobuf.NetworkEnvelope envelope = getEnvelope(1, new byte[]{1});
+        envelope.writeDelimitedTo(clientChannel.socket().getOutputStream());
+        clientChannel.close();
+
+        assertTrue(handler.terminationLatch.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(envelope), handler.frames);
+        assertEquals(null, handler.failure.get());
+    }
+
+    @Test
+    public void testFrameExceedingMaxSizeFails() throws Exception {
+        RecordingFrameHandler handler = new RecordingFrameHandler(0);
+        nioTransport.register(serverChannel, handler);
+
+        // Varint of 1 GB
+        clientChannel.socket().getOutputStream().write(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x04});
+
+        assertTrue(handler.terminationLatch.await(10, TimeUnit.SECONDS));
+        assertTrue(handler.failure.get() instanceof StreamCorruptedException);
+    }
+
+    private static protobuf.NetworkEnvelope getEnvelope(int messageVersion, byte[] payload) {
+        return protobuf.NetworkEnvelope.newBuilder()
+                .setMessageVersion(messageVersion)
+                .setPrefixedSealedAndSignedMessage(protobuf.PrefixedSealedAndSignedMessage.newBuilder()
+                        .setAddressPrefixHash(ByteString.copyFrom(payload)))
+                .build();
+    }
+
+    private static class RecordingFrameHandler implements NioTransport.FrameHandler {
+        private final List<protobuf.NetworkEnvelope> frames = new CopyOnWriteArrayList<>();
+        private final CountDownLatch framesLatch;
+        private final CountDownLatch terminationLatch = new CountDownLatch(1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        RecordingFrameHandler(int numExpectedFrames) {
+            framesLatch = new CountDownLatch(numExpectedFrames);
+        }
+
+        @Override
+        public boolean onFrame(protobuf.NetworkEnvelope proto) {
+            frames.add(proto);
+            framesLatch.countDown();
+            return true;
+        }
+
+        @Override
+        public void onEndOfStream() {
+            terminationLatch.countDown();
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            failure.set(throwable);
+            terminationLatch.countDown();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.network;
+
+import bisq.network.p2p.peers.keepalive.messages.Ping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutboundQueueTest {
+    // We use a large trigger so that a slow first write does not affect the tests
+    private static final int THROTTLE_TRIGGER = 1000;
+    private static final int THROTTLE_SLEEP = 50;
+
+    private ScheduledExecutorService executor;
+    private ByteArrayOutputStream outputStream;
+    private AtomicReference<Throwable> exception;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        outputStream = new ByteArrayOutputStream();
+        exception = new AtomicReference<>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testQueuedEnvelopesGetBundled() throws Exception {
+        OutboundQueue outboundQueue = createOutboundQueue(true);
+        for (int i = 0; i < 5; i++)
+            outboundQueue.send(new EncodedEnvelope(new Ping(i, 0)));
+
+        // The first one is written directly, the others get queued as we send too fast
+        assertEquals(List.of(List.of(0)), readWrites());
+        assertEquals(4, outboundQueue.getNumQueuedEnvelopes());
+
+        Thread.sleep(THROTTLE_SLEEP * 3);
+        assertEquals(List.of(List.of(0), List.of(1, 2, 3, 4)), readWrites());
+        assertEquals(0, outboundQueue.getNumQueuedEnvelopes());
+        assertNull(exception.get());
+    }
+
+    @Test
+    public void testQueuedEnvelopesGetRateLimitedIfBundlingIsNotSupported() throws Exception {
+        OutboundQueue outboundQueue = createOutboundQueue(false);
+        outboundQueue.send(new EncodedEnvelope(new Ping(0, 0)));
+        long ts = System.currentTimeMillis();
+        for (int i = 1; i < 4; i++)
+            outboundQueue.send(new EncodedEnvelope(new Ping(i, 0)));
+
+        // Queueing must not block the caller
+        assertTrue(System.currentTimeMillis() - ts < THROTTLE_SLEEP);
+
+        Thread.sleep(THROTTLE_SLEEP * 6);
+        assertEquals(List.of(List.of(0), List.of(1), List.of(2), List.of(3)), readWrites());
+        assertNull(exception.get());
+    }
+
+    @Test
+    public void testStopDropsQueuedEnvelopes() throws Exception {
+        OutboundQueue outboundQueue = createOutboundQueue(true);
+        outboundQueue.send(new EncodedEnvelope(new Ping(0, 0)));
+        outboundQueue.send(new EncodedEnvelope(new Ping(1, 0)));
+        outboundQueue.stop();
+        outboundQueue.send(new EncodedEnvelope(new Ping(2, 0)));
+
+        Thread.sleep(THROTTLE_SLEEP * 2);
+        assertEquals(List.of(List.of(0)), readWrites());
+        assertEquals(0, outboundQueue.getNumQueuedEnvelopes());
+    }
+
+    private OutboundQueue createOutboundQueue(boolean isBundlingSupported) {
+        return new OutboundQueue(new SynchronizedProtoOutputStream(outputStream, new Statistic()),
+                executor,
+                () -> isBundlingSupported,
+                exception::set,
+                THROTTLE_TRIGGER,
+                THROTTLE_SLEEP);
+    }
+
+    // Returns the nonces of the pings of each write
+    private List<List<Integer>> readWrites() throws IOException {
+        List<List<Integer>> writes = new ArrayList<>();
+        InputStream inputStream = new ByteArrayInputStream(outputStream.toByteArray());
+        protobuf.NetworkEnvelope proto;
+        while ((proto = protobuf.NetworkEnvelope.parseDelimitedFrom(inputStream)) != null) {
+            List<Integer> nonces = new ArrayList<>();
+            if (proto.hasBundleOfEnvelopes())
+                proto.getBundleOfEnvelopes().getEnvelopesList().forEach(envelope -> nonces.add(envelope.getPing().getNonce()));
+            else
+                nonces.add(proto.getPing().getNonce());
+            writes.add(nonces);
+        }
+        return writes;
+    }
+}
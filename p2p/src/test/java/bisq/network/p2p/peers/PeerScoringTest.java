@@ -0,0 +1,109 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.peers;
+
+import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.network.Connection;
+import bisq.network.p2p.network.Statistic;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PeerScoringTest {
+    @Test
+    public void testDataOwnerSendsToAllPeersFastestFirst() {
+        PeerScoring peerScoring = new PeerScoring();
+        Connection slow = getConnection("slow", 800);
+        Connection fast = getConnection("fast", 50);
+        Connection unknown = getConnection("unknown", 0);
+        Connection medium = getConnection("medium", 200);
+
+        List<Connection> targets = peerScoring.getBroadcastTargets(List.of(slow, fast, unknown, medium), true);
+
+        assertEquals(List.of(fast, medium, slow, unknown), targets);
+    }
+
+    @Test
+    public void testFailuresAndDuplicatesLowerTheScore() {
+        PeerScoring peerScoring = new PeerScoring();
+        Connection failing = getConnection("failing", 50);
+        Connection redundant = getConnection("redundant", 50);
+        Connection good = getConnection("good", 100);
+        for (int i = 0; i < 5; i++) {
+            peerScoring.onSendFailed(failing.getPeersNodeAddressOptional().get());
+            peerScoring.onBroadcastMessageReceived(redundant.getPeersNodeAddressOptional().get(), true);
+            peerScoring.onSendSucceeded(good.getPeersNodeAddressOptional().get());
+        }
+
+        List<Connection> targets = peerScoring.getBroadcastTargets(List.of(failing, redundant, good), true);
+
+        assertEquals(good, targets.get(0));
+        assertTrue(peerScoring.getScore(failing) > peerScoring.getScore(getConnection("other", 50)));
+    }
+
+    @Test
+    public void testRelayTargets() {
+        PeerScoring peerScoring = new PeerScoring();
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            connections.add(getConnection("peer" + i, 10 + i * 10));
+        }
+
+        List<Connection> targets = peerScoring.getBroadcastTargets(connections, false);
+
+        assertEquals(PeerScoring.MAX_RELAY_TARGETS, targets.size());
+        assertEquals(PeerScoring.MAX_RELAY_TARGETS, new HashSet<>(targets).size());
+        int numBest = PeerScoring.MAX_RELAY_TARGETS - PeerScoring.NUM_RANDOM_RELAY_TARGETS;
+        assertEquals(connections.subList(0, numBest), targets.subList(0, numBest));
+        assertTrue(targets.subList(numBest, targets.size()).stream()
+                .noneMatch(connection -> connections.subList(0, numBest).contains(connection)));
+    }
+
+    @Test
+    public void testSendDelaysFollowScores() {
+        PeerScoring peerScoring = new PeerScoring();
+        Connection fast = getConnection("fast", 50);
+        Connection alsoFast = getConnection("alsoFast", 50);
+        Connection almostFast = getConnection("almostFast", 60);
+        Connection medium = getConnection("medium", 200);
+        Connection slow = getConnection("slow", 800);
+
+        List<Long> delays = peerScoring.getMinSendDelays(List.of(fast, alsoFast, almostFast, medium, slow), 100);
+
+        assertEquals(List.of(0L, 0L, 10L, 150L, 400L), delays);
+        assertTrue(peerScoring.getMinSendDelays(List.of(), 100).isEmpty());
+    }
+
+    private static Connection getConnection(String hostName, int roundTripTime) {
+        Statistic statistic = new Statistic();
+        statistic.setRoundTripTime(roundTripTime);
+        Connection connection = mock(Connection.class);
+        when(connection.getStatistic()).thenReturn(statistic);
+        when(connection.getPeersNodeAddressOptional()).thenReturn(Optional.of(new NodeAddress(hostName, 9999)));
+        return connection;
+    }
+}
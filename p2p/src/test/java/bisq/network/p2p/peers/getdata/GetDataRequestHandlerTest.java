@@ -0,0 +1,199 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.peers.getdata;
+
+import bisq.network.p2p.network.Connection;
+import bisq.network.p2p.network.NetworkNode;
+import bisq.network.p2p.peers.getdata.messages.GetDataResponse;
+import bisq.network.p2p.peers.getdata.messages.PreliminaryGetDataRequest;
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
+
+import bisq.common.app.Capabilities;
+import bisq.common.app.Capability;
+import bisq.common.crypto.Hash;
+
+import com.google.protobuf.ByteString;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GetDataRequestHandlerTest {
+    private final AtomicInteger numIterations = new AtomicInteger();
+    private final Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> appendOnlyDataStoreMap = new HashMap<>() {
+        @Override
+        public Set<Entry<P2PDataStorage.ByteArray, PersistableNetworkPayload>> entrySet() {
+            numIterations.incrementAndGet();
+            return super.entrySet();
+        }
+    };
+    private final Map<String, GetDataRequestHandler.SortedKeys> sortedKeysByConnectionUid = new HashMap<>();
+    private GetDataRequestHandler handler;
+    private Connection connection;
+
+    @Before
+    public void setUp() {
+        P2PDataStorage dataStorage = mock(P2PDataStorage.class);
+        when(dataStorage.getMap()).thenReturn(new HashMap<>());
+        when(dataStorage.getAppendOnlyDataStoreMap()).thenReturn(appendOnlyDataStoreMap);
+        connection = mock(Connection.class);
+        when(connection.getUid()).thenReturn("uid");
+        when(connection.getCapabilities()).thenReturn(new Capabilities(Capability.CHUNKED_GET_DATA_RESPONSE));
+        when(connection.noCapabilityRequiredOrCapabilityIsSupported(any())).thenReturn(true);
+        handler = new GetDataRequestHandler(mock(NetworkNode.class), dataStorage, sortedKeysByConnectionUid,
+                mock(GetDataRequestHandler.Listener.class));
+    }
+
+    @Test
+    public void testChunksAreLimitedBySize() {
+        // About 9 payloads fit into a chunk
+        for (int i = 0; i < 25; i++)
+            addPayload(i, 100_000);
+
+        Set<PersistableNetworkPayload> received = new HashSet<>();
+        int numChunks = 0;
+        GetDataResponse response = null;
+        do {
+            response = getChunk(response != null ? response.getResumeAfterKey() : null);
+            assertTrue(response.getPersistableNetworkPayloadSet().size() <= 10);
+            // No payload is sent twice
+            response.getPersistableNetworkPayloadSet().forEach(payload -> assertTrue(received.add(payload)));
+            numChunks++;
+        } while (response.isHasMoreChunks());
+
+        assertEquals(3, numChunks);
+        assertEquals(new HashSet<>(appendOnlyDataStoreMap.values()), received);
+        // The stores got iterated only for the first chunk
+        assertEquals(1, numIterations.get());
+        assertTrue(sortedKeysByConnectionUid.isEmpty());
+    }
+
+    @Test
+    public void testResumeAtOtherNode() {
+        for (int i = 0; i < 25; i++)
+            addPayload(i, 100_000);
+
+        GetDataResponse first = getChunk(null);
+        assertTrue(first.isHasMoreChunks());
+        // Another node has not sent the first chunk, so it sorts the remaining keys
+        sortedKeysByConnectionUid.clear();
+        Set<PersistableNetworkPayload> received = new HashSet<>(first.getPersistableNetworkPayloadSet());
+        GetDataResponse response = first;
+        do {
+            response = getChunk(response.getResumeAfterKey());
+            response.getPersistableNetworkPayloadSet().forEach(payload -> assertTrue(received.add(payload)));
+        } while (response.isHasMoreChunks());
+
+        assertEquals(new HashSet<>(appendOnlyDataStoreMap.values()), received);
+        assertEquals(2, numIterations.get());
+    }
+
+    @Test
+    public void testDuplicatePayloadsAreSentOnce() {
+        // Different instances with the same hash
+        TestPayload payload = new TestPayload(1, 10);
+        appendOnlyDataStoreMap.put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+        appendOnlyDataStoreMap.put(new P2PDataStorage.ByteArray(new byte[]{1}), new TestPayload(1, 10));
+        addPayload(2, 10);
+
+        GetDataResponse response = getChunk(null);
+        assertFalse(response.isHasMoreChunks());
+        assertEquals(2, response.getPersistableNetworkPayloadSet().size());
+    }
+
+    @Test
+    public void testChunksAreLimitedByNumEntries() {
+        for (int i = 0; i <= GetDataRequestHandler.MAX_ENTRIES_PER_CHUNK; i++)
+            addPayload(i, 0);
+
+        GetDataResponse first = getChunk(null);
+        assertTrue(first.isHasMoreChunks());
+        assertEquals(GetDataRequestHandler.MAX_ENTRIES_PER_CHUNK, first.getPersistableNetworkPayloadSet().size());
+
+        GetDataResponse second = getChunk(first.getResumeAfterKey());
+        assertFalse(second.isHasMoreChunks());
+        assertEquals(1, second.getPersistableNetworkPayloadSet().size());
+        assertFalse(first.getPersistableNetworkPayloadSet().containsAll(second.getPersistableNetworkPayloadSet()));
+    }
+
+    @Test
+    public void testEntriesAreSerializedOnce() {
+        for (int i = 0; i < 5; i++)
+            addPayload(i, 1000);
+
+        GetDataResponse response = getChunk(null);
+        protobuf.NetworkEnvelope proto = response.toProtoNetworkEnvelope();
+
+        assertEquals(5, proto.getGetDataResponse().getPersistableNetworkPayloadItemsCount());
+        appendOnlyDataStoreMap.values().forEach(payload -> assertEquals(1, ((TestPayload) payload).numSerializations));
+    }
+
+    private GetDataResponse getChunk(@Nullable byte[] resumeAfterKey) {
+        return handler.getChunk(new PreliminaryGetDataRequest(1, new HashSet<>(), null, resumeAfterKey), connection);
+    }
+
+    private void addPayload(int id, int size) {
+        TestPayload payload = new TestPayload(id, size);
+        appendOnlyDataStoreMap.put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+    }
+
+    private static class TestPayload implements PersistableNetworkPayload {
+        private final byte[] hash;
+        private final int size;
+        private int numSerializations;
+
+        TestPayload(int id, int size) {
+            this.hash = Hash.getSha256Hash(new byte[]{(byte) id, (byte) (id >> 8)});
+            this.size = size;
+        }
+
+        @Override
+        public protobuf.PersistableNetworkPayload toProtoMessage() {
+            numSerializations++;
+            return protobuf.PersistableNetworkPayload.newBuilder()
+                    .setAccountAgeWitness(protobuf.AccountAgeWitness.newBuilder()
+                            .setHash(ByteString.copyFrom(new byte[size])))
+                    .build();
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public boolean verifyHashSize() {
+            return true;
+        }
+    }
+}
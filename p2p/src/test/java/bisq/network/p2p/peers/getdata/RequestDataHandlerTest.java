@@ -0,0 +1,192 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.peers.getdata;
+
+import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.network.Connection;
+import bisq.network.p2p.network.NetworkNode;
+import bisq.network.p2p.peers.PeerManager;
+import bisq.network.p2p.peers.getdata.messages.GetDataRequest;
+import bisq.network.p2p.peers.getdata.messages.GetDataResponse;
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.persistence.KeySetSummary;
+
+import bisq.common.app.Capabilities;
+import bisq.common.app.Capability;
+import bisq.common.proto.network.NetworkEnvelope;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.ArgumentCaptor;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RequestDataHandlerTest {
+    private final NodeAddress peersNodeAddress = new NodeAddress("peer.onion:8000");
+    private NetworkNode networkNode;
+    private P2PDataStorage dataStorage;
+    private PeerManager peerManager;
+    private Connection connection;
+    private RequestDataHandler.Listener listener;
+    private RequestDataHandler handler;
+
+    @Before
+    public void setUp() {
+        networkNode = mock(NetworkNode.class);
+        when(networkNode.sendMessage(any(NodeAddress.class), any())).thenAnswer(invocation -> SettableFuture.create());
+        dataStorage = mock(P2PDataStorage.class);
+        when(dataStorage.getAppendOnlyDataSummary()).thenReturn(KeySetSummary.fromProto(protobuf.KeySetSummary.newBuilder()
+                .addDigests(0)
+                .addCounts(0)
+                .build()));
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArgument(1)).run();
+            return null;
+        }).when(dataStorage).verifySignatures(anyCollection(), any());
+        connection = mock(Connection.class);
+        when(connection.getPeersNodeAddressOptional()).thenReturn(Optional.of(peersNodeAddress));
+        listener = mock(RequestDataHandler.Listener.class);
+        peerManager = mock(PeerManager.class);
+        handler = new RequestDataHandler(networkNode, dataStorage, peerManager, listener);
+    }
+
+    @Test
+    public void testRequestNextChunkWithAdvancingKey() {
+        handler.requestData(peersNodeAddress, true, null);
+        respond(true, new byte[]{1});
+        respond(true, new byte[]{2});
+        respond(false, new byte[]{3});
+
+        List<GetDataRequest> requests = getSentRequests();
+        assertEquals(3, requests.size());
+        assertNull(requests.get(0).getResumeAfterKey());
+        assertArrayEquals(new byte[]{1}, requests.get(1).getResumeAfterKey());
+        assertArrayEquals(new byte[]{2}, requests.get(2).getResumeAfterKey());
+        verify(listener).onComplete();
+        verify(listener, never()).onFault(any(), any());
+    }
+
+    @Test
+    public void testFaultAtNotAdvancingKey() {
+        handler.requestData(peersNodeAddress, true, null);
+        respond(true, new byte[]{2});
+        respond(true, new byte[]{2});
+
+        assertEquals(2, getSentRequests().size());
+        verify(listener).onFault(any(), any());
+        verify(listener, never()).onComplete();
+        // The next peer continues after the last valid chunk
+        assertArrayEquals(new byte[]{2}, handler.getResumeAfterKey());
+    }
+
+    @Test
+    public void testFaultAtMissingKey() {
+        handler.requestData(peersNodeAddress, true, new byte[]{5});
+        respond(true, null);
+
+        assertEquals(1, getSentRequests().size());
+        verify(listener).onFault(any(), any());
+        assertArrayEquals(new byte[]{5}, handler.getResumeAfterKey());
+    }
+
+    @Test
+    public void testFaultAtMaxChunks() {
+        handler.requestData(peersNodeAddress, true, null);
+        for (int i = 1; i <= RequestDataHandler.MAX_CHUNKS; i++)
+            respond(true, new byte[]{(byte) (i >> 8), (byte) i});
+
+        assertEquals(RequestDataHandler.MAX_CHUNKS, getSentRequests().size());
+        verify(listener).onFault(any(), any());
+        byte[] lastKey = {(byte) (RequestDataHandler.MAX_CHUNKS >> 8), (byte) RequestDataHandler.MAX_CHUNKS};
+        assertArrayEquals(lastKey, handler.getResumeAfterKey());
+    }
+
+    @Test
+    public void testSummaryAtInitialRequestToSeedNode() {
+        // We don't know the capabilities of the seed node before the first request
+        when(peerManager.findPeersCapabilities(peersNodeAddress)).thenReturn(Optional.empty());
+        when(peerManager.isSeedNode(peersNodeAddress)).thenReturn(true);
+        handler.requestData(peersNodeAddress, true, null);
+
+        assertNotNull(getSentRequests().get(0).getAppendOnlyDataSummary());
+        verify(dataStorage, never()).getAppendOnlyDataStoreMap();
+    }
+
+    @Test
+    public void testSummaryIfPeerSupportsIt() {
+        when(peerManager.findPeersCapabilities(peersNodeAddress))
+                .thenReturn(Optional.of(new Capabilities(Capability.KEY_SET_SUMMARY)));
+        handler.requestData(peersNodeAddress, true, null);
+
+        assertNotNull(getSentRequests().get(0).getAppendOnlyDataSummary());
+    }
+
+    @Test
+    public void testAllKeysIfPeerDoesNotSupportSummary() {
+        when(peerManager.findPeersCapabilities(peersNodeAddress))
+                .thenReturn(Optional.of(new Capabilities(Capability.SEED_NODE, Capability.MEDIATION)));
+        when(peerManager.isSeedNode(peersNodeAddress)).thenReturn(true);
+        handler.requestData(peersNodeAddress, true, null);
+
+        assertNull(getSentRequests().get(0).getAppendOnlyDataSummary());
+        verify(dataStorage).getAppendOnlyDataStoreMap();
+    }
+
+    @Test
+    public void testAllKeysIfCapabilitiesOfPeerAreUnknown() {
+        when(peerManager.findPeersCapabilities(peersNodeAddress)).thenReturn(Optional.empty());
+        handler.requestData(peersNodeAddress, true, null);
+
+        assertNull(getSentRequests().get(0).getAppendOnlyDataSummary());
+    }
+
+    // Responds to the last request
+    private void respond(boolean hasMoreChunks, @Nullable byte[] resumeAfterKey) {
+        List<GetDataRequest> requests = getSentRequests();
+        int nonce = requests.get(requests.size() - 1).getNonce();
+        handler.onMessage(new GetDataResponse(new HashSet<>(), new HashSet<>(), nonce, false, hasMoreChunks,
+                resumeAfterKey), connection);
+    }
+
+    private List<GetDataRequest> getSentRequests() {
+        ArgumentCaptor<NetworkEnvelope> captor = ArgumentCaptor.forClass(NetworkEnvelope.class);
+        verify(networkNode, atLeastOnce()).sendMessage(any(NodeAddress.class), captor.capture());
+        //noinspection unchecked
+        return (List<GetDataRequest>) (List<?>) captor.getAllValues();
+    }
+}
@@ -1,28 +1,203 @@
 package bisq.network.p2p.storage;
 
+import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.network.CloseConnectionReason;
+import bisq.network.p2p.network.Connection;
 import bisq.network.p2p.network.NetworkNode;
 import bisq.network.p2p.peers.Broadcaster;
+import bisq.network.p2p.storage.payload.ExpirablePayload;
+import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
+import bisq.network.p2p.storage.payload.ProtectedStoragePayload;
+import bisq.network.p2p.storage.payload.RequiresOwnerIsOnlinePayload;
 import bisq.network.p2p.storage.persistence.AppendOnlyDataStoreService;
 import bisq.network.p2p.storage.persistence.ProtectedDataStoreService;
 import bisq.network.p2p.storage.persistence.ResourceDataStoreService;
+import bisq.network.p2p.storage.persistence.SequenceNumberLog;
 
-import bisq.common.storage.Storage;
+import bisq.common.crypto.CryptoException;
+import bisq.common.crypto.Sig;
+
+import com.google.common.primitives.Ints;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
 
 import java.time.Clock;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.InOrder;
+
 import org.junit.Test;
 
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class P2PDataStorageTest {
     @Test
     public void canStart1Instance() {
-        P2PDataStorage storage = new P2PDataStorage(mock(NetworkNode.class),
+        P2PDataStorage storage = getP2PDataStorage(mock(SequenceNumberLog.class));
+
+    }
+
+    @Test
+    public void testOnDisconnectRemovesOnlyEntriesOfDisconnectedOwner() throws CryptoException {
+        P2PDataStorage storage = getP2PDataStorage(mock(SequenceNumberLog.class));
+        KeyPair keyPair = Sig.generateKeyPair();
+        NodeAddress owner1 = new NodeAddress("owner1", 9999);
+        NodeAddress owner2 = new NodeAddress("owner2", 9999);
+        addEntry(storage, new OwnerIsOnlinePayload("1", owner1, keyPair.getPublic()), keyPair);
+        addEntry(storage, new OwnerIsOnlinePayload("2", owner1, keyPair.getPublic()), keyPair);
+        addEntry(storage, new OwnerIsOnlinePayload("3", owner2, keyPair.getPublic()), keyPair);
+        assertEquals(3, storage.getMap().size());
+
+        Connection connection = mock(Connection.class);
+        when(connection.hasPeersNodeAddress()).thenReturn(true);
+        when(connection.getPeersNodeAddressOptional()).thenReturn(Optional.of(owner1));
+
+        // An intended disconnect does not back date the entries
+        storage.onDisconnect(CloseConnectionReason.APP_SHUT_DOWN, connection);
+        storage.onDisconnect(CloseConnectionReason.APP_SHUT_DOWN, connection);
+        assertEquals(3, storage.getMap().size());
+
+        // Each disconnect back dates the entries by half of the TTL, so they expire after the next ones
+        storage.onDisconnect(CloseConnectionReason.SOCKET_TIMEOUT, connection);
+        assertEquals(3, storage.getMap().size());
+        storage.onDisconnect(CloseConnectionReason.SOCKET_TIMEOUT, connection);
+        storage.onDisconnect(CloseConnectionReason.SOCKET_TIMEOUT, connection);
+        assertEquals(1, storage.getMap().size());
+        assertTrue(storage.getMap().values().stream()
+                .allMatch(entry -> ((OwnerIsOnlinePayload) entry.getProtectedStoragePayload()).getOwnerNodeAddress().equals(owner2)));
+    }
+
+    @Test
+    public void testRemoveExpiredEntriesRemovesOnlyDueEntries() throws CryptoException, InterruptedException {
+        P2PDataStorage storage = getP2PDataStorage(mock(SequenceNumberLog.class));
+        HashMapChangedListener listener = mock(HashMapChangedListener.class);
+        storage.addHashMapChangedListener(listener);
+        KeyPair keyPair = Sig.generateKeyPair();
+        NodeAddress owner = new NodeAddress("owner", 9999);
+        OwnerIsOnlinePayload payload1 = new OwnerIsOnlinePayload("1", owner, keyPair.getPublic(), 1000);
+        OwnerIsOnlinePayload payload2 = new OwnerIsOnlinePayload("2", owner, keyPair.getPublic(), 1000);
+        OwnerIsOnlinePayload payload3 = new OwnerIsOnlinePayload("3", owner, keyPair.getPublic(), 60_000);
+        addEntry(storage, payload1, keyPair);
+        addEntry(storage, payload2, keyPair);
+        addEntry(storage, payload3, keyPair);
+        P2PDataStorage.ByteArray hash1 = new P2PDataStorage.ByteArray(P2PDataStorage.get32ByteHash(payload1));
+        ProtectedStorageEntry entry1 = storage.getMap().get(hash1);
+
+        Thread.sleep(600);
+        storage.removeExpiredEntries();
+        assertEquals(3, storage.getMap().size());
+
+        // A refresh postpones the expiry of the second entry
+        assertTrue(storage.refreshTTL(storage.getRefreshTTLMessage(payload2, keyPair), null, false));
+        Thread.sleep(600);
+        storage.removeExpiredEntries();
+        assertEquals(2, storage.getMap().size());
+        assertFalse(storage.getMap().containsKey(hash1));
+        InOrder inOrder = inOrder(listener);
+        inOrder.verify(listener).onBatchRemoveExpiredDataStarted();
+        inOrder.verify(listener).onRemoved(entry1);
+        inOrder.verify(listener).onBatchRemoveExpiredDataCompleted();
+
+        Thread.sleep(600);
+        storage.removeExpiredEntries();
+        assertEquals(1, storage.getMap().size());
+        assertTrue(storage.getMap().containsKey(new P2PDataStorage.ByteArray(P2PDataStorage.get32ByteHash(payload3))));
+    }
+
+    @Test
+    public void testPurgeWritesSnapshotOnlyIfEntriesGotPurged() {
+        SequenceNumberLog sequenceNumberLog = mock(SequenceNumberLog.class);
+        P2PDataStorage storage = getP2PDataStorage(sequenceNumberLog);
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> persisted = new HashMap<>();
+        for (int i = 0; i < 1100; i++) {
+            persisted.put(new P2PDataStorage.ByteArray(Ints.toByteArray(i)),
+                    new P2PDataStorage.MapValue(1, System.currentTimeMillis()));
+        }
+        persisted.put(new P2PDataStorage.ByteArray(Ints.toByteArray(-1)),
+                new P2PDataStorage.MapValue(1, System.currentTimeMillis() - TimeUnit.DAYS.toMillis(11)));
+        when(sequenceNumberLog.readPersisted(any())).thenReturn(persisted);
+        storage.readPersisted();
+        verify(sequenceNumberLog).writeSnapshot();
+
+        // Nothing to purge, so the updates stay in the log
+        storage.removeExpiredEntries();
+        storage.removeExpiredEntries();
+        verify(sequenceNumberLog).writeSnapshot();
+    }
+
+    private static P2PDataStorage getP2PDataStorage(SequenceNumberLog sequenceNumberLog) {
+        return new P2PDataStorage(mock(NetworkNode.class),
                 mock(Broadcaster.class),
                 mock(AppendOnlyDataStoreService.class),
-                mock(ProtectedDataStoreService.class), mock(ResourceDataStoreService.class),
-                mock(Storage.class), Clock.systemUTC());
+                mock(ProtectedDataStoreService.class),
+                mock(ResourceDataStoreService.class),
+                sequenceNumberLog,
+                Clock.systemUTC(),
+                new SignatureVerifier(1));
+    }
 
+    private static void addEntry(P2PDataStorage storage, ProtectedStoragePayload payload, KeyPair keyPair)
+            throws CryptoException {
+        assertTrue(storage.addProtectedStorageEntry(storage.getProtectedStorageEntry(payload, keyPair), null, null, false));
     }
 
+    private static class OwnerIsOnlinePayload implements ProtectedStoragePayload, ExpirablePayload, RequiresOwnerIsOnlinePayload {
+        private final String id;
+        private final NodeAddress ownerNodeAddress;
+        private final PublicKey ownerPubKey;
+        private final long ttl;
+
+        OwnerIsOnlinePayload(String id, NodeAddress ownerNodeAddress, PublicKey ownerPubKey) {
+            this(id, ownerNodeAddress, ownerPubKey, 60_000);
+        }
+
+        OwnerIsOnlinePayload(String id, NodeAddress ownerNodeAddress, PublicKey ownerPubKey, long ttl) {
+            this.id = id;
+            this.ownerNodeAddress = ownerNodeAddress;
+            this.ownerPubKey = ownerPubKey;
+            this.ttl = ttl;
+        }
+
+        @Override
+        public PublicKey getOwnerPubKey() {
+            return ownerPubKey;
+        }
+
+        @Nullable
+        @Override
+        public Map<String, String> getExtraDataMap() {
+            return null;
+        }
+
+        @Override
+        public long getTTL() {
+            return ttl;
+        }
+
+        @Override
+        public NodeAddress getOwnerNodeAddress() {
+            return ownerNodeAddress;
+        }
+
+        @Override
+        public protobuf.StoragePayload toProtoMessage() {
+            return protobuf.StoragePayload.newBuilder()
+                    .setOfferPayload(protobuf.OfferPayload.newBuilder().setId(id))
+                    .build();
+        }
+    }
 }
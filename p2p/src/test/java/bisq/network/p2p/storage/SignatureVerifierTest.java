@@ -0,0 +1,255 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage;
+
+import bisq.network.p2p.storage.payload.ProtectedStorageEntry;
+import bisq.network.p2p.storage.payload.ProtectedStoragePayload;
+import bisq.network.p2p.storage.persistence.VerifiedSignatureStore;
+
+import bisq.common.EventLoop;
+import bisq.common.UserThread;
+import bisq.common.crypto.CryptoException;
+import bisq.common.crypto.Sig;
+import bisq.common.storage.Storage;
+
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.security.KeyPair;
+import java.security.PublicKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.mockito.ArgumentCaptor;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SignatureVerifierTest {
+    private SignatureVerifier signatureVerifier;
+    private KeyPair keyPair;
+
+    @Before
+    public void setUp() {
+        signatureVerifier = new SignatureVerifier(4);
+        keyPair = Sig.generateKeyPair();
+    }
+
+    @After
+    public void tearDown() {
+        signatureVerifier.shutDown();
+    }
+
+    @Test
+    public void testVerifyAll() throws Exception {
+        List<ProtectedStorageEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            entries.add(getEntry(new TestPayload("id" + i, keyPair.getPublic()), 1, keyPair));
+        ProtectedStorageEntry invalidEntry = new ProtectedStorageEntry(new TestPayload("invalid", keyPair.getPublic()),
+                keyPair.getPublic(), 1, entries.get(0).getSignature());
+        entries.add(invalidEntry);
+
+        verifyAll(entries);
+        assertEquals(10, signatureVerifier.getNumVerifiedSignatures());
+
+        assertEquals(11, signatureVerifier.getNumSignatureVerifications());
+
+        // Verified signatures stay in the cache, the invalid one gets verified again
+        assertTrue(verifyEntry(entries.get(0)));
+        assertTrue(verifyEntry(entries.get(0)));
+        assertFalse(verifyEntry(invalidEntry));
+        assertEquals(10, signatureVerifier.getNumVerifiedSignatures());
+        assertEquals(12, signatureVerifier.getNumSignatureVerifications());
+        assertEquals(2, signatureVerifier.getCacheStats().hitCount());
+        assertEquals(1, signatureVerifier.getCacheStats().missCount());
+
+        // Known signatures do not get verified again on the workers
+        verifyAll(entries);
+        assertEquals(13, signatureVerifier.getNumSignatureVerifications());
+    }
+
+    @Test
+    public void testPersistedSignaturesAreVerified() throws CryptoException {
+        @SuppressWarnings("unchecked")
+        Storage<VerifiedSignatureStore> storage = mock(Storage.class);
+        SignatureVerifier persistingVerifier = new SignatureVerifier(1, storage);
+        persistingVerifier.readPersisted();
+        ProtectedStorageEntry entry = getEntry(new TestPayload("id", keyPair.getPublic()), 1, keyPair);
+        assertTrue(persistingVerifier.verify(entry.getOwnerPubKey(), getHashOfDataAndSeqNr(entry), entry.getSignature()));
+        ArgumentCaptor<VerifiedSignatureStore> captor = ArgumentCaptor.forClass(VerifiedSignatureStore.class);
+        verify(storage).queueUpForSave(captor.capture(), anyLong());
+        persistingVerifier.shutDown();
+
+        // After a restart we read the store from disk and don't need to verify the signature again
+        VerifiedSignatureStore persisted = VerifiedSignatureStore.fromProto(captor.getValue().toProtoMessage().getVerifiedSignatureStore());
+        when(storage.initAndGetPersisted(any(), anyLong())).thenReturn(persisted);
+        SignatureVerifier restartedVerifier = new SignatureVerifier(1, storage);
+        restartedVerifier.readPersisted();
+        assertTrue(restartedVerifier.verify(entry.getOwnerPubKey(), getHashOfDataAndSeqNr(entry), entry.getSignature()));
+        assertEquals(0, restartedVerifier.getNumSignatureVerifications());
+        assertEquals(1, restartedVerifier.getCacheStats().hitCount());
+        restartedVerifier.shutDown();
+    }
+
+    @Test
+    public void testResultHandlersOfPayloadKeepOrder() throws Exception {
+        TestPayload payload = new TestPayload("id", keyPair.getPublic());
+        P2PDataStorage.ByteArray hashOfPayload = new P2PDataStorage.ByteArray(P2PDataStorage.get32ByteHash(payload));
+        List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(20);
+        for (int i = 1; i <= 20; i++) {
+            ProtectedStorageEntry entry = getEntry(payload, i, keyPair);
+            int sequenceNumber = i;
+            // We verify only some of them, the others must keep their order anyway
+            signatureVerifier.verifyAndThen(hashOfPayload,
+                    i % 2 == 0 ? entry.getOwnerPubKey() : null,
+                    () -> getHashOfDataAndSeqNr(entry),
+                    entry.getSignature(),
+                    () -> {
+                        results.add(sequenceNumber);
+                        latch.countDown();
+                    });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 20; i++)
+            assertEquals(i + 1, (int) results.get(i));
+        assertEquals(10, signatureVerifier.getNumVerifiedSignatures());
+    }
+
+    // The user thread is busy while a verifyAll is in flight and a connection fills up its queue. The workers must
+    // still be able to post their results, otherwise they never get to the tasks of the verifyAll.
+    @Test
+    public void testVerifyAllWhileUserThreadQueueIsFull() throws Exception {
+        EventLoop eventLoop = new EventLoop("UserThread", 2);
+        UserThread.setExecutor(eventLoop);
+        try {
+            List<ProtectedStorageEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 20; i++)
+                entries.add(getEntry(new TestPayload("id" + i, keyPair.getPublic()), 1, keyPair));
+
+            CountDownLatch releaseUserThread = new CountDownLatch(1);
+            CountDownLatch verifyAllDone = new CountDownLatch(1);
+            eventLoop.execute(() -> {
+                signatureVerifier.verifyAll(entries, verifyAllDone::countDown);
+                awaitUninterruptibly(releaseUserThread);
+            });
+
+            Thread reader = new Thread(() -> {
+                for (int i = 0; i < 10; i++)
+                    UserThread.executeWithBackPressure(() -> {
+                    });
+            });
+            reader.start();
+            while (eventLoop.getQueueSize() < 2)
+                Thread.sleep(1);
+
+            for (ProtectedStorageEntry entry : entries) {
+                signatureVerifier.verifyAndThen(
+                        new P2PDataStorage.ByteArray(P2PDataStorage.get32ByteHash(entry.getProtectedStoragePayload())),
+                        entry.getOwnerPubKey(),
+                        () -> getHashOfDataAndSeqNr(entry),
+                        entry.getSignature(),
+                        () -> {
+                        });
+            }
+            releaseUserThread.countDown();
+
+            assertTrue(verifyAllDone.await(10, TimeUnit.SECONDS));
+            reader.join(10_000);
+            assertFalse(reader.isAlive());
+        } finally {
+            UserThread.setExecutor(MoreExecutors.directExecutor());
+            eventLoop.shutDown();
+        }
+    }
+
+    private void verifyAll(List<ProtectedStorageEntry> entries) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        signatureVerifier.verifyAll(entries, latch::countDown);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ignore) {
+        }
+    }
+
+    private boolean verifyEntry(ProtectedStorageEntry entry) throws CryptoException {
+        return signatureVerifier.verify(entry.getOwnerPubKey(), getHashOfDataAndSeqNr(entry), entry.getSignature());
+    }
+
+    private static byte[] getHashOfDataAndSeqNr(ProtectedStorageEntry entry) {
+        return P2PDataStorage.get32ByteHash(new P2PDataStorage.DataAndSeqNrPair(entry.getProtectedStoragePayload(), entry.getSequenceNumber()));
+    }
+
+    static ProtectedStorageEntry getEntry(ProtectedStoragePayload payload, int sequenceNumber, KeyPair keyPair)
+            throws CryptoException {
+        byte[] hashOfDataAndSeqNr = P2PDataStorage.get32ByteHash(new P2PDataStorage.DataAndSeqNrPair(payload, sequenceNumber));
+        return new ProtectedStorageEntry(payload, keyPair.getPublic(), sequenceNumber, Sig.sign(keyPair.getPrivate(), hashOfDataAndSeqNr));
+    }
+
+    static class TestPayload implements ProtectedStoragePayload {
+        private final String id;
+        private final PublicKey ownerPubKey;
+
+        TestPayload(String id, PublicKey ownerPubKey) {
+            this.id = id;
+            this.ownerPubKey = ownerPubKey;
+        }
+
+        @Override
+        public PublicKey getOwnerPubKey() {
+            return ownerPubKey;
+        }
+
+        @Nullable
+        @Override
+        public Map<String, String> getExtraDataMap() {
+            return null;
+        }
+
+        @Override
+        public protobuf.StoragePayload toProtoMessage() {
+            return protobuf.StoragePayload.newBuilder()
+                    .setOfferPayload(protobuf.OfferPayload.newBuilder()
+                            .setId(id)
+                            .setPubKeyRing(protobuf.PubKeyRing.newBuilder()
+                                    .setSignaturePubKeyBytes(com.google.protobuf.ByteString.copyFrom(Sig.getPublicKeyBytes(ownerPubKey)))))
+                    .build();
+        }
+    }
+}
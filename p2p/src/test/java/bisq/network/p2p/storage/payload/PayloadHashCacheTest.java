@@ -0,0 +1,110 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.payload;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import bisq.common.crypto.Hash;
+
+import java.security.PublicKey;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class PayloadHashCacheTest {
+    @Test
+    public void testHashesMatchSerializedPayload() {
+        TestPayload payload = new TestPayload("id");
+        byte[] serialized = payload.toProtoMessage().toByteArray();
+
+        assertArrayEquals(Hash.getSha256Hash(serialized), PayloadHashCache.get32ByteHash(payload));
+        assertArrayEquals(Hash.getSha256Ripemd160hash(serialized), PayloadHashCache.getCompactHash(payload));
+        assertArrayEquals(serialized, PayloadHashCache.getProtoMessage(payload).toByteArray());
+    }
+
+    @Test
+    public void testHashesAreComputedOncePerInstance() {
+        TestPayload payload = new TestPayload("id");
+        assertSame(PayloadHashCache.get32ByteHash(payload), PayloadHashCache.get32ByteHash(payload));
+        assertSame(PayloadHashCache.getCompactHash(payload), PayloadHashCache.getCompactHash(payload));
+        assertSame(PayloadHashCache.getProtoMessage(payload), PayloadHashCache.getProtoMessage(payload));
+        assertEquals(1, payload.numToProtoMessageCalls);
+
+        // Equal instances are cached separately but have the same hash
+        TestPayload equalPayload = new TestPayload("id");
+        assertNotSame(PayloadHashCache.get32ByteHash(payload), PayloadHashCache.get32ByteHash(equalPayload));
+        assertArrayEquals(PayloadHashCache.get32ByteHash(payload), PayloadHashCache.get32ByteHash(equalPayload));
+    }
+
+    @Test
+    public void testP2PDataStorageUsesCache() {
+        TestPayload payload = new TestPayload("id");
+        assertSame(PayloadHashCache.get32ByteHash(payload), P2PDataStorage.get32ByteHash(payload));
+        assertArrayEquals(PayloadHashCache.getCompactHash(payload),
+                P2PDataStorage.getCompactHashAsByteArray(payload).bytes);
+        P2PDataStorage.get32ByteHash(payload);
+        assertEquals(1, payload.numToProtoMessageCalls);
+    }
+
+    private static class TestPayload implements ProtectedStoragePayload {
+        private final String id;
+        private int numToProtoMessageCalls;
+
+        TestPayload(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public PublicKey getOwnerPubKey() {
+            return null;
+        }
+
+        @Nullable
+        @Override
+        public Map<String, String> getExtraDataMap() {
+            return null;
+        }
+
+        @Override
+        public protobuf.StoragePayload toProtoMessage() {
+            numToProtoMessageCalls++;
+            return protobuf.StoragePayload.newBuilder()
+                    .setOfferPayload(protobuf.OfferPayload.newBuilder().setId(id))
+                    .build();
+        }
+
+        // Equal instances, as we would get them from different peers
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TestPayload && ((TestPayload) o).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+}
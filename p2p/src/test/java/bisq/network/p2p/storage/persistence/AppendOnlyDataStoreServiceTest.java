@@ -0,0 +1,160 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.NodeAddress;
+import bisq.network.p2p.mocks.MockPersistableNetworkPayload;
+import bisq.network.p2p.network.NetworkNode;
+import bisq.network.p2p.peers.Broadcaster;
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.SignatureVerifier;
+import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
+
+import bisq.common.crypto.Hash;
+
+import com.google.common.primitives.Ints;
+
+import java.time.Clock;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class AppendOnlyDataStoreServiceTest {
+    private AppendOnlyDataStoreService service;
+    private MockMapStoreService evenStoreService;
+    private MockMapStoreService oddStoreService;
+
+    @SuppressWarnings("deprecation")
+    @Before
+    public void setup() {
+        service = new AppendOnlyDataStoreService(mock(PersistableNetworkPayloadListService.class));
+        evenStoreService = new MockMapStoreService(payload -> payload.getHash()[0] % 2 == 0);
+        oddStoreService = new MockMapStoreService(payload -> payload.getHash()[0] % 2 != 0);
+        service.addService(evenStoreService);
+        service.addService(oddStoreService);
+    }
+
+    @Test
+    public void testPutIsRoutedToService() {
+        PersistableNetworkPayload even = getPayload(2);
+        PersistableNetworkPayload odd = getPayload(3);
+        service.put(new P2PDataStorage.ByteArray(even.getHash()), even);
+        service.put(new P2PDataStorage.ByteArray(odd.getHash()), odd);
+
+        assertEquals(1, evenStoreService.getMap().size());
+        assertEquals(1, oddStoreService.getMap().size());
+        assertTrue(service.containsKey(new P2PDataStorage.ByteArray(even.getHash())));
+        assertTrue(service.containsKey(new P2PDataStorage.ByteArray(odd.getHash())));
+        assertSame(odd, service.get(new P2PDataStorage.ByteArray(odd.getHash())));
+        assertFalse(service.containsKey(new P2PDataStorage.ByteArray(getPayload(4).getHash())));
+        assertNull(service.get(new P2PDataStorage.ByteArray(getPayload(4).getHash())));
+    }
+
+    @Test
+    public void testMapIsLiveView() {
+        Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map = service.getMap();
+        assertTrue(map.isEmpty());
+
+        for (int i = 0; i < 10; i++) {
+            PersistableNetworkPayload payload = getPayload(i);
+            service.put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+        }
+
+        assertEquals(10, map.size());
+        assertFalse(map.isEmpty());
+        Set<P2PDataStorage.ByteArray> keys = new HashSet<>(map.keySet());
+        assertEquals(10, keys.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(keys.contains(new P2PDataStorage.ByteArray(getPayload(i).getHash())));
+        }
+        assertEquals(10, map.values().size());
+    }
+
+    @Test
+    public void testAddPersistableNetworkPayload() {
+        P2PDataStorage p2PDataStorage = new P2PDataStorage(mock(NetworkNode.class),
+                mock(Broadcaster.class),
+                service,
+                mock(ProtectedDataStoreService.class),
+                mock(ResourceDataStoreService.class),
+                mock(SequenceNumberLog.class),
+                Clock.systemUTC(),
+                mock(SignatureVerifier.class));
+        NodeAddress sender = new NodeAddress("localhost:1000");
+        for (int i = 0; i < 10; i++) {
+            assertTrue(p2PDataStorage.addPersistableNetworkPayload(getPayload(i), sender, false, false, false, false));
+        }
+        // Payloads we have already are rejected, whichever service holds them
+        assertFalse(p2PDataStorage.addPersistableNetworkPayload(getPayload(2), sender, false, false, false, false));
+        assertFalse(p2PDataStorage.addPersistableNetworkPayload(getPayload(3), sender, false, false, false, false));
+
+        assertEquals(5, evenStoreService.getMap().size());
+        assertEquals(5, oddStoreService.getMap().size());
+        assertEquals(10, service.getMap().size());
+    }
+
+    @Test
+    public void testRemoveUpdatesKeySetSummary() {
+        // The digests of the summary are taken from the middle of the keys, so we need realistic hashes
+        for (int i = 0; i < 10; i++) {
+            PersistableNetworkPayload payload = new MockPersistableNetworkPayload(Hash.getRipemd160hash(Ints.toByteArray(i)));
+            service.put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+        }
+        KeySetSummary summaryBeforeAdd = service.getKeySetSummary();
+        PersistableNetworkPayload payload = new MockPersistableNetworkPayload(Hash.getRipemd160hash(Ints.toByteArray(10)));
+        P2PDataStorage.ByteArray hash = new P2PDataStorage.ByteArray(payload.getHash());
+        service.put(hash, payload);
+        assertEquals(Set.of(hash), service.getKeysMissingAt(summaryBeforeAdd));
+
+        assertSame(payload, service.remove(hash));
+        assertNull(service.remove(hash));
+        assertFalse(service.containsKey(hash));
+        assertEquals(summaryBeforeAdd, service.getKeySetSummary());
+        assertTrue(service.getKeysMissingAt(summaryBeforeAdd).isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMapIsReadOnly() {
+        PersistableNetworkPayload payload = getPayload(1);
+        service.getMap().put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMapIteratorIsReadOnly() {
+        PersistableNetworkPayload payload = getPayload(1);
+        service.put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+        service.getMap().values().iterator().remove();
+    }
+
+    private static PersistableNetworkPayload getPayload(int seed) {
+        byte[] hash = new byte[20];
+        hash[0] = (byte) seed;
+        return new MockPersistableNetworkPayload(hash);
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
+
+import bisq.common.proto.persistable.PersistableEnvelope;
+import bisq.common.storage.FileUtil;
+import bisq.common.storage.SegmentedLog;
+import bisq.common.storage.Storage;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+
+import java.nio.file.Files;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AppendOnlyLogStoreServiceTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storageDir;
+    private File storeFile;
+    private File logDir;
+
+    @Before
+    public void setup() {
+        storageDir = folder.getRoot();
+        storeFile = new File(storageDir, TestLogStoreService.FILE_NAME);
+        logDir = new File(storageDir, TestLogStoreService.FILE_NAME + "_log");
+    }
+
+    @Test
+    public void testMigrateStoreToLog() throws IOException {
+        TestStore legacyStore = new TestStore();
+        for (int i = 0; i < 10; i++) {
+            put(legacyStore.getMap(), getPayload(i));
+        }
+        Files.write(storeFile.toPath(), new byte[]{1, 2, 3});
+
+        Storage<TestStore> storage = getStorage(legacyStore);
+        TestLogStoreService service = new TestLogStoreService(storageDir, storage);
+        service.readStore();
+
+        assertEquals(10, service.getMap().size());
+        assertTrue(logDir.isDirectory());
+        assertEquals(10, new SegmentedLog(logDir, 1024).read().size());
+        // We keep the legacy store as backup
+        assertFalse(storeFile.exists());
+        assertTrue(new File(storageDir, TestLogStoreService.FILE_NAME +
+                AppendOnlyLogStoreService.BACKUP_POSTFIX).exists());
+
+        // At the next startup we read the log and not the legacy store anymore
+        Storage<TestStore> nextStorage = getStorage(null);
+        TestLogStoreService nextService = new TestLogStoreService(storageDir, nextStorage);
+        nextService.readStore();
+        verify(nextStorage, never()).initAndGetPersistedWithFileName(anyString(), anyLong());
+        assertEquals(10, nextService.getMap().size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(nextService.containsKey(new P2PDataStorage.ByteArray(getPayload(i).getHash())));
+        }
+    }
+
+    @Test
+    public void testPutAppendsToLog() throws IOException {
+        TestLogStoreService service = new TestLogStoreService(storageDir, getStorage(null));
+        service.readStore();
+        for (int i = 0; i < 5; i++) {
+            PersistableNetworkPayload payload = getPayload(i);
+            service.putIfAbsent(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+        }
+        // Not appended again
+        service.putIfAbsent(new P2PDataStorage.ByteArray(getPayload(0).getHash()), getPayload(0));
+
+        assertEquals(5, new SegmentedLog(logDir, 1024).read().size());
+        TestLogStoreService nextService = new TestLogStoreService(storageDir, getStorage(null));
+        nextService.readStore();
+        assertEquals(5, nextService.getMap().size());
+    }
+
+    @Test
+    public void testCompactAtObsoleteRecordsThreshold() throws IOException {
+        int numObsoleteRecords = AppendOnlyLogStoreService.MAX_OBSOLETE_RECORDS;
+        writeLogWithDuplicates(numObsoleteRecords);
+
+        TestLogStoreService service = new TestLogStoreService(storageDir, getStorage(null));
+        service.readStore();
+        assertEquals(1, service.getMap().size());
+        // Below the threshold we don't compact
+        assertEquals(numObsoleteRecords + 1, new SegmentedLog(logDir, 1024).read().size());
+
+        FileUtil.deleteDirectory(logDir);
+        writeLogWithDuplicates(numObsoleteRecords + 1);
+        service = new TestLogStoreService(storageDir, getStorage(null));
+        service.readStore();
+        assertEquals(1, service.getMap().size());
+        assertEquals(1, new SegmentedLog(logDir, 1024).read().size());
+    }
+
+    @Test
+    public void testRemoveRewritesLog() throws IOException {
+        TestLogStoreService service = new TestLogStoreService(storageDir, getStorage(null));
+        service.readStore();
+        for (int i = 0; i < 5; i++) {
+            PersistableNetworkPayload payload = getPayload(i);
+            service.putIfAbsent(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+        }
+        service.remove(new P2PDataStorage.ByteArray(getPayload(0).getHash()));
+
+        TestLogStoreService nextService = new TestLogStoreService(storageDir, getStorage(null));
+        nextService.readStore();
+        assertEquals(4, nextService.getMap().size());
+        assertFalse(nextService.containsKey(new P2PDataStorage.ByteArray(getPayload(0).getHash())));
+    }
+
+    private void writeLogWithDuplicates(int numDuplicates) throws IOException {
+        SegmentedLog log = new SegmentedLog(logDir, 1024);
+        for (int i = 0; i <= numDuplicates; i++) {
+            log.append(getPayload(0).toProtoMessage().toByteArray());
+        }
+        log.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Storage<TestStore> getStorage(TestStore persisted) {
+        Storage<TestStore> storage = mock(Storage.class);
+        when(storage.initAndGetPersistedWithFileName(anyString(), anyLong())).thenReturn(persisted);
+        return storage;
+    }
+
+    private static void put(Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map,
+                            PersistableNetworkPayload payload) {
+        map.put(new P2PDataStorage.ByteArray(payload.getHash()), payload);
+    }
+
+    private static TestPayload getPayload(int seed) {
+        byte[] hash = new byte[20];
+        hash[0] = (byte) seed;
+        return new TestPayload(hash);
+    }
+
+    private static class TestLogStoreService extends AppendOnlyLogStoreService<TestStore> {
+        static final String FILE_NAME = "TestStore";
+
+        TestLogStoreService(File storageDir, Storage<TestStore> storage) {
+            super(storageDir, storage);
+        }
+
+        @Override
+        public String getFileName() {
+            return FILE_NAME;
+        }
+
+        @Override
+        public Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> getMap() {
+            return store.getMap();
+        }
+
+        @Override
+        public boolean canHandle(PersistableNetworkPayload payload) {
+            return payload instanceof TestPayload;
+        }
+
+        @Override
+        protected TestStore createStore() {
+            return new TestStore();
+        }
+
+        @Override
+        protected PersistableNetworkPayload fromProto(protobuf.PersistableNetworkPayload proto) {
+            return new TestPayload(proto.getAccountAgeWitness().getHash().toByteArray());
+        }
+    }
+
+    private static class TestStore implements PersistableEnvelope {
+        private final Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map = new ConcurrentHashMap<>();
+
+        Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> getMap() {
+            return map;
+        }
+
+        @Override
+        public Message toProtoMessage() {
+            return protobuf.PersistableEnvelope.newBuilder()
+                    .setAccountAgeWitnessStore(protobuf.AccountAgeWitnessStore.newBuilder()
+                            .addAllItems(map.values().stream()
+                                    .map(payload -> payload.toProtoMessage().getAccountAgeWitness())
+                                    .collect(Collectors.toList())))
+                    .build();
+        }
+    }
+
+    // We use the AccountAgeWitness proto message as the log stores the serialized payloads
+    private static class TestPayload implements PersistableNetworkPayload {
+        private final byte[] hash;
+
+        TestPayload(byte[] hash) {
+            this.hash = hash;
+        }
+
+        @Override
+        public protobuf.PersistableNetworkPayload toProtoMessage() {
+            return protobuf.PersistableNetworkPayload.newBuilder()
+                    .setAccountAgeWitness(protobuf.AccountAgeWitness.newBuilder().setHash(ByteString.copyFrom(hash)))
+                    .build();
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash;
+        }
+
+        @Override
+        public boolean verifyHashSize() {
+            return hash.length == 20;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TestPayload)) return false;
+            return Arrays.equals(hash, ((TestPayload) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(hash);
+        }
+    }
+}
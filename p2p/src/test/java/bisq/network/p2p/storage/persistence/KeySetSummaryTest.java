@@ -0,0 +1,120 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import bisq.common.crypto.Hash;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeySetSummaryTest {
+    private List<P2PDataStorage.ByteArray> keys;
+    private KeySetSummaryIndex server;
+    private KeySetSummaryIndex client;
+
+    @Before
+    public void setup() {
+        keys = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            keys.add(new P2PDataStorage.ByteArray(Hash.getRipemd160hash(Ints.toByteArray(i))));
+        }
+        server = new KeySetSummaryIndex();
+        server.reset(keys);
+        client = new KeySetSummaryIndex();
+    }
+
+    @Test
+    public void testSameSetHasNoMissingKeys() {
+        client.reset(keys);
+        assertTrue(server.getKeysMissingAt(client.getSummary()).isEmpty());
+    }
+
+    @Test
+    public void testEmptySetGetsAllKeys() {
+        assertEquals(new HashSet<>(keys), server.getKeysMissingAt(client.getSummary()));
+    }
+
+    @Test
+    public void testSubsetGetsMissingKeys() {
+        client.reset(keys.subList(0, 9900));
+        Set<P2PDataStorage.ByteArray> missingKeys = server.getKeysMissingAt(client.getSummary());
+        assertTrue(missingKeys.containsAll(keys.subList(9900, 10000)));
+        // Most buckets differ by a single key, so we only get a few keys the client has already
+        assertTrue(missingKeys.size() < 150);
+    }
+
+    @Test
+    public void testKeysOnlyKnownByClientAreIgnored() {
+        List<P2PDataStorage.ByteArray> clientKeys = new ArrayList<>(keys.subList(0, 9990));
+        clientKeys.add(new P2PDataStorage.ByteArray(Hash.getRipemd160hash(Ints.toByteArray(-1))));
+        client.reset(clientKeys);
+        Set<P2PDataStorage.ByteArray> missingKeys = server.getKeysMissingAt(client.getSummary());
+        assertTrue(missingKeys.containsAll(keys.subList(9990, 10000)));
+        assertTrue(keys.containsAll(missingKeys));
+    }
+
+    @Test
+    public void testRemove() {
+        KeySetSummaryIndex index = new KeySetSummaryIndex();
+        index.reset(keys.subList(0, 100));
+        index.add(keys.get(100));
+        index.remove(keys.get(100));
+        client.reset(keys.subList(0, 100));
+        assertEquals(100, index.size());
+        assertEquals(client.getSummary(), index.getSummary());
+    }
+
+    @Test
+    public void testProtoRoundTrip() {
+        KeySetSummary summary = server.getSummary();
+        assertEquals(2048, summary.getNumBuckets());
+        KeySetSummary fromProto = KeySetSummary.fromProto(summary.toProtoMessage());
+        assertArrayEquals(summary.getDigests(), fromProto.getDigests());
+        assertArrayEquals(summary.getCounts(), fromProto.getCounts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidNumBucketsFromProto() {
+        KeySetSummary.fromProto(protobuf.KeySetSummary.newBuilder()
+                .addAllDigests(Longs.asList(1, 2, 3))
+                .addAllCounts(Ints.asList(1, 2, 3))
+                .build());
+    }
+
+    @Test
+    public void testGetNumBuckets() {
+        assertEquals(1, KeySetSummary.getNumBuckets(0));
+        assertEquals(1, KeySetSummary.getNumBuckets(8));
+        assertEquals(2, KeySetSummary.getNumBuckets(9 * 2));
+        assertEquals(KeySetSummary.MAX_NUM_BUCKETS, KeySetSummary.getNumBuckets(100_000_000));
+    }
+}
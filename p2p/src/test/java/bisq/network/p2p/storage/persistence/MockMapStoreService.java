@@ -0,0 +1,83 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+import bisq.network.p2p.storage.payload.PersistableNetworkPayload;
+
+import bisq.common.proto.persistable.PersistableEnvelope;
+import bisq.common.storage.Storage;
+
+import com.google.protobuf.Message;
+
+import org.apache.commons.lang3.NotImplementedException;
+
+import java.io.File;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * MapStoreService backed by an in-memory store. Persistence is a no-op as the Storage is mocked.
+ */
+public class MockMapStoreService extends MapStoreService<MockMapStoreService.MockStore, PersistableNetworkPayload> {
+    private final Predicate<PersistableNetworkPayload> canHandle;
+
+    @SuppressWarnings("unchecked")
+    public MockMapStoreService(Predicate<PersistableNetworkPayload> canHandle) {
+        super(new File(System.getProperty("java.io.tmpdir")), mock(Storage.class));
+        this.canHandle = canHandle;
+        store = createStore();
+    }
+
+    @Override
+    public Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> getMap() {
+        return store.getMap();
+    }
+
+    @Override
+    public boolean canHandle(PersistableNetworkPayload payload) {
+        return canHandle.test(payload);
+    }
+
+    @Override
+    public String getFileName() {
+        return "MockStore";
+    }
+
+    @Override
+    protected MockStore createStore() {
+        return new MockStore();
+    }
+
+    public static class MockStore implements PersistableEnvelope {
+        private final Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> map = new ConcurrentHashMap<>();
+
+        public Map<P2PDataStorage.ByteArray, PersistableNetworkPayload> getMap() {
+            return map;
+        }
+
+        @Override
+        public Message toProtoMessage() {
+            throw new NotImplementedException("toProtoMessage not impl.");
+        }
+    }
+}
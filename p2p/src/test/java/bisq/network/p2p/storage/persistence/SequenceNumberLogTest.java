@@ -0,0 +1,193 @@
+/*
+ * This file is part of Bisq.
+ *
+ * Bisq is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or (at
+ * your option) any later version.
+ *
+ * Bisq is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Affero General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Bisq. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package bisq.network.p2p.storage.persistence;
+
+import bisq.network.p2p.storage.P2PDataStorage;
+
+import bisq.common.Payload;
+import bisq.common.proto.persistable.PersistableEnvelope;
+import bisq.common.proto.persistable.PersistenceProtoResolver;
+import bisq.common.storage.CorruptedDatabaseFilesHandler;
+import bisq.common.storage.FileUtil;
+import bisq.common.storage.Storage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceNumberLogTest {
+    private static final P2PDataStorage.ByteArray KEY_1 = new P2PDataStorage.ByteArray(new byte[]{1});
+    private static final P2PDataStorage.ByteArray KEY_2 = new P2PDataStorage.ByteArray(new byte[]{2});
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = File.createTempFile("sequence_number_log", "");
+        //noinspection ResultOfMethodCallIgnored
+        dir.delete();
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        FileUtil.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testUpdatesAreReplayedFromLog() {
+        SequenceNumberLog sequenceNumberLog = getSequenceNumberLog();
+        assertNull(sequenceNumberLog.readPersisted(new SequenceNumberMap()));
+        sequenceNumberLog.append(KEY_1, getMapValue(1));
+        sequenceNumberLog.append(KEY_2, getMapValue(1));
+        sequenceNumberLog.append(KEY_1, getMapValue(2));
+        sequenceNumberLog.shutDown();
+
+        assertTrue(new File(dir, SequenceNumberLog.LOG_FILE_NAME).exists());
+        assertFalse(new File(dir, SequenceNumberMap.class.getSimpleName()).exists());
+        // The updates of KEY_1 got coalesced
+        assertEquals(2, sequenceNumberLog.getNumLogEntries());
+        assertTrue(sequenceNumberLog.getTotalBytesWritten() > 0);
+
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> persisted = getSequenceNumberLog().readPersisted(new SequenceNumberMap());
+        assertEquals(2, persisted.size());
+        assertEquals(2, persisted.get(KEY_1).sequenceNr);
+        assertEquals(1, persisted.get(KEY_2).sequenceNr);
+    }
+
+    @Test
+    public void testSnapshotClearsLog() {
+        SequenceNumberLog sequenceNumberLog = getSequenceNumberLog();
+        SequenceNumberMap sequenceNumberMap = new SequenceNumberMap();
+        sequenceNumberLog.readPersisted(sequenceNumberMap);
+        sequenceNumberMap.put(KEY_1, getMapValue(3));
+        sequenceNumberLog.append(KEY_1, getMapValue(3));
+        sequenceNumberLog.writeSnapshot();
+        sequenceNumberLog.shutDown();
+
+        assertFalse(new File(dir, SequenceNumberLog.LOG_FILE_NAME).exists());
+        assertEquals(0, sequenceNumberLog.getNumLogEntries());
+
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> persisted = getSequenceNumberLog().readPersisted(new SequenceNumberMap());
+        assertEquals(1, persisted.size());
+        assertEquals(3, persisted.get(KEY_1).sequenceNr);
+    }
+
+    @Test
+    public void testUpdatesAfterSnapshotCopyAreLogged() {
+        SequenceNumberLog sequenceNumberLog = getSequenceNumberLog();
+        SequenceNumberMap sequenceNumberMap = new SequenceNumberMap();
+        sequenceNumberLog.readPersisted(sequenceNumberMap);
+        sequenceNumberMap.put(KEY_1, getMapValue(3));
+        sequenceNumberLog.append(KEY_1, getMapValue(3));
+        sequenceNumberLog.writeSnapshot();
+        // The copy got taken, so these updates are not part of the snapshot
+        sequenceNumberMap.put(KEY_1, getMapValue(4));
+        sequenceNumberLog.append(KEY_1, getMapValue(4));
+        sequenceNumberMap.put(KEY_2, getMapValue(1));
+        sequenceNumberLog.append(KEY_2, getMapValue(1));
+        sequenceNumberLog.shutDown();
+
+        assertEquals(2, sequenceNumberLog.getNumLogEntries());
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> persisted = getSequenceNumberLog().readPersisted(new SequenceNumberMap());
+        assertEquals(2, persisted.size());
+        assertEquals(4, persisted.get(KEY_1).sequenceNr);
+        assertEquals(1, persisted.get(KEY_2).sequenceNr);
+    }
+
+    @Test
+    public void testFailedSnapshotKeepsUpdates() {
+        SequenceNumberLog sequenceNumberLog = new SequenceNumberLog(
+                new Storage<SequenceNumberMap>(dir, getResolver(), new CorruptedDatabaseFilesHandler()) {
+                    @Override
+                    public void saveNow(SequenceNumberMap persistable) {
+                        throw new RuntimeException("Simulated write failure");
+                    }
+                }, dir);
+        SequenceNumberMap sequenceNumberMap = new SequenceNumberMap();
+        sequenceNumberLog.readPersisted(sequenceNumberMap);
+        sequenceNumberMap.put(KEY_1, getMapValue(3));
+        sequenceNumberLog.append(KEY_1, getMapValue(3));
+        sequenceNumberLog.writeSnapshot();
+        sequenceNumberLog.shutDown();
+
+        assertTrue(new File(dir, SequenceNumberLog.LOG_FILE_NAME).exists());
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> persisted = getSequenceNumberLog().readPersisted(new SequenceNumberMap());
+        assertEquals(1, persisted.size());
+        assertEquals(3, persisted.get(KEY_1).sequenceNr);
+    }
+
+    @Test
+    public void testIncompleteLogEntryIsIgnored() throws IOException {
+        SequenceNumberLog sequenceNumberLog = getSequenceNumberLog();
+        sequenceNumberLog.readPersisted(new SequenceNumberMap());
+        sequenceNumberLog.append(KEY_1, getMapValue(1));
+        sequenceNumberLog.shutDown();
+
+        // An entry of 100 bytes which got cut off by a crash
+        try (FileOutputStream outputStream = new FileOutputStream(new File(dir, SequenceNumberLog.LOG_FILE_NAME), true)) {
+            outputStream.write(new byte[]{100, 10, 2});
+        }
+
+        Map<P2PDataStorage.ByteArray, P2PDataStorage.MapValue> persisted = getSequenceNumberLog().readPersisted(new SequenceNumberMap());
+        assertEquals(1, persisted.size());
+        assertEquals(1, persisted.get(KEY_1).sequenceNr);
+    }
+
+    private SequenceNumberLog getSequenceNumberLog() {
+        return new SequenceNumberLog(new Storage<>(dir, getResolver(), new CorruptedDatabaseFilesHandler()), dir);
+    }
+
+    private static PersistenceProtoResolver getResolver() {
+        return new PersistenceProtoResolver() {
+            @Override
+            public PersistableEnvelope fromProto(protobuf.PersistableEnvelope proto) {
+                return SequenceNumberMap.fromProto(proto.getSequenceNumberMap());
+            }
+
+            @Override
+            public Payload fromProto(protobuf.PaymentAccountPayload proto) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public PersistableEnvelope fromProto(protobuf.PersistableNetworkPayload proto) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static P2PDataStorage.MapValue getMapValue(int sequenceNumber) {
+        return P2PDataStorage.MapValue.fromProto(protobuf.MapValue.newBuilder()
+                .setSequenceNr(sequenceNumber)
+                .setTimeStamp(System.currentTimeMillis())
+                .build());
+    }
+}
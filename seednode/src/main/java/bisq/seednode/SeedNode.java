@@ -20,6 +20,8 @@ package bisq.seednode;
 import bisq.core.app.misc.AppSetup;
 import bisq.core.app.misc.AppSetupWithP2PAndDAO;
 
+import bisq.network.p2p.metrics.NetworkMetricsService;
+
 import com.google.inject.Injector;
 
 import lombok.Setter;
@@ -37,5 +39,7 @@ public class SeedNode {
     public void startApplication() {
         appSetup = injector.getInstance(AppSetupWithP2PAndDAO.class);
         appSetup.start();
+
+        injector.getInstance(NetworkMetricsService.class).startPrometheusEndpoint();
     }
 }